@@ -0,0 +1,40 @@
+/**
+ *    Copyright 2015-2016 Austin Keener & Michael Ritter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import net.dv8tion.jda.audio.player.OpusPacketFile;
+
+import javax.sound.sampled.UnsupportedAudioFileException;
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Converts an audio file to JDA's Opus packet file format, which an OpusPlayer can play without re-encoding.
+ * <pre><code>   java OpusConverterExample &lt;input&gt; &lt;output&gt; [bitrate]</code></pre>
+ */
+public class OpusConverterExample
+{
+    public static void main(String[] args) throws IOException, UnsupportedAudioFileException
+    {
+        if (args.length < 2)
+        {
+            System.err.println("Usage: OpusConverterExample <input> <output> [bitrate]");
+            System.exit(1);
+        }
+        int bitrate = args.length > 2 ? Integer.parseInt(args[2]) : OpusPacketFile.DEFAULT_BITRATE;
+        OpusPacketFile.encode(new File(args[0]), new File(args[1]), bitrate);
+        System.out.println("Converted " + args[0] + " to " + args[1]);
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ *     Copyright 2015-2016 Austin Keener & Michael Ritter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.dv8tion.jda;
+
+import net.dv8tion.jda.entities.Guild;
+import net.dv8tion.jda.entities.Message;
+import net.dv8tion.jda.entities.impl.JDAImpl;
+import net.dv8tion.jda.handle.EntityBuilder;
+import org.json.JSONObject;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Loads the generated gateway payloads the benchmarks run on, from <code>src/jmh/resources/fixtures</code>.
+ * <p>
+ * <code>guild_create.json</code> is a GUILD_CREATE frame of a guild with 1000 members, 30 roles and 40 channels.
+ * <code>message_create.jsonl</code> holds one MESSAGE_CREATE frame per line, sent in that guild.
+ * <p>
+ * The payloads are synthetic, not recorded from Discord. They follow the structure of real frames, but ids, names,
+ * message content and the distribution of mentions and markdown are made up, so absolute numbers can differ from
+ * real traffic. They are meant for comparing changes to JDA against each other.
+ */
+public final class Fixtures
+{
+    public static final String GUILD_CREATE = "guild_create.json";
+    public static final String MESSAGE_CREATE = "message_create.jsonl";
+
+    private Fixtures() {}
+
+    /**
+     * Reads the lines of a fixture.
+     *
+     * @param name
+     *          The file name of the fixture.
+     * @return
+     *      The lines of the fixture, without empty lines.
+     */
+    public static List<String> readLines(String name)
+    {
+        InputStream in = Fixtures.class.getResourceAsStream("/fixtures/" + name);
+        if (in == null)
+            throw new IllegalArgumentException("There is no fixture with the name " + name);
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8)))
+        {
+            return reader.lines().filter(line -> !line.isEmpty()).collect(Collectors.toList());
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * The gateway frames of a fixture, as they were received.
+     *
+     * @param name
+     *          The file name of the fixture.
+     * @return
+     *      One frame per line of the fixture.
+     */
+    public static List<JSONObject> readFrames(String name)
+    {
+        return readLines(name).stream().map(JSONObject::new).collect(Collectors.toList());
+    }
+
+    /**
+     * The data (<code>d</code>) of the GUILD_CREATE fixture.
+     *
+     * @return
+     *      The guild json.
+     */
+    public static JSONObject guild()
+    {
+        return readFrames(GUILD_CREATE).get(0).getJSONObject("d");
+    }
+
+    /**
+     * The data (<code>d</code>) of each MESSAGE_CREATE frame.
+     *
+     * @return
+     *      The message jsons.
+     */
+    public static List<JSONObject> messages()
+    {
+        return Collections.unmodifiableList(readFrames(MESSAGE_CREATE).stream()
+                .map(frame -> frame.getJSONObject("d"))
+                .collect(Collectors.toList()));
+    }
+
+    /**
+     * Creates a JDA instance without a connection and with the fixture guild loaded into it.
+     *
+     * @return
+     *      The JDA instance.
+     */
+    public static JDAImpl createApi()
+    {
+        JDAImpl api = new JDAImpl(false, false, false);
+        new EntityBuilder(api).createGuildFirstPass(guild(), null);
+        return api;
+    }
+
+    /**
+     * The fixture guild of a JDA instance created by {@link #createApi()}.
+     *
+     * @param api
+     *          The JDA instance.
+     * @return
+     *      The guild.
+     */
+    public static Guild getGuild(JDAImpl api)
+    {
+        return api.getGuildMap().values().iterator().next();
+    }
+
+    /**
+     * Builds every MESSAGE_CREATE fixture as a message of the given JDA instance.
+     *
+     * @param api
+     *          A JDA instance created by {@link #createApi()}.
+     * @return
+     *      The messages.
+     */
+    public static List<Message> createMessages(JDAImpl api)
+    {
+        EntityBuilder builder = new EntityBuilder(api);
+        List<Message> messages = new ArrayList<>();
+        for (JSONObject message : messages())
+            messages.add(builder.createMessage(message));
+        return messages;
+    }
+}
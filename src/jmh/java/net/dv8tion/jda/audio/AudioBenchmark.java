@@ -0,0 +1,190 @@
+/*
+ *     Copyright 2015-2016 Austin Keener & Michael Ritter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.dv8tion.jda.audio;
+
+import net.dv8tion.jda.managers.impl.AudioManagerImpl;
+import org.openjdk.jmh.annotations.*;
+
+import java.net.DatagramPacket;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The per frame work of an {@link net.dv8tion.jda.audio.AudioConnection AudioConnection}: encoding 20ms of PCM
+ * to Opus, encrypting and decrypting the {@link net.dv8tion.jda.audio.AudioPacket AudioPacket} and mixing the audio
+ * of the users in a channel.
+ * <p>
+ * The benchmarks measure throughput, which for {@link #encode(EncoderState)} is the amount of frames one core can encode
+ * per second. A connection needs 50 frames per second. Encoding needs the bundled Opus natives for this platform.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AudioBenchmark
+{
+    private static final int FRAMES = 50;
+    private static final int FRAME_BYTES = AudioConnection.OPUS_FRAME_SIZE * AudioConnection.OPUS_CHANNEL_COUNT * 2;
+    private static final int CHANNEL_BITRATE = 64000;
+
+    @State(Scope.Thread)
+    public static class EncoderState
+    {
+        @Param({"5", "10"})
+        public int complexity;
+
+        private Encoder encoder;
+        private byte[][] frames;
+        private int next = 0;
+
+        @Setup
+        public void setup()
+        {
+            if (!AudioManagerImpl.init())
+                throw new IllegalStateException("The Opus natives could not be loaded on this platform");
+            encoder = new Encoder();
+            encoder.setComplexity(complexity);
+            frames = pcmFrames();
+        }
+
+        @TearDown
+        public void tearDown()
+        {
+            encoder.close();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class PacketState
+    {
+        private final InetSocketAddress address = new InetSocketAddress("127.0.0.1", 5000);
+        private final byte[] secretKey = new byte[32];
+        private AudioPacket[] packets;
+        private AudioPacket[] encrypted;
+        private int next = 0;
+
+        @Setup
+        public void setup()
+        {
+            Random random = new Random(45);
+            random.nextBytes(secretKey);
+            packets = new AudioPacket[FRAMES];
+            encrypted = new AudioPacket[FRAMES];
+            for (int i = 0; i < FRAMES; i++)
+            {
+                //A 64kbps Opus frame is about 160 bytes.
+                byte[] opus = new byte[120 + random.nextInt(80)];
+                random.nextBytes(opus);
+                packets[i] = new AudioPacket((char) i, i * AudioConnection.OPUS_FRAME_SIZE, 1, opus);
+                encrypted[i] = new AudioPacket(packets[i].asEncryptedUdpPacket(address, secretKey));
+            }
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class MixState
+    {
+        @Param({"2", "10"})
+        public int users;
+
+        private List<List<short[]>> parts;
+        private int next = 0;
+
+        @Setup
+        public void setup()
+        {
+            byte[][] frames = pcmFrames();
+            parts = new ArrayList<>();
+            for (int frame = 0; frame < FRAMES; frame++)
+            {
+                List<short[]> audio = new ArrayList<>();
+                for (int user = 0; user < users; user++)
+                {
+                    //Every user speaks a different part of the test signal.
+                    byte[] pcm = frames[(frame + user * 7) % FRAMES];
+                    short[] samples = new short[pcm.length / 2];
+                    for (int i = 0; i < samples.length; i++)
+                        samples[i] = (short) ((pcm[2 * i] << 8) | (pcm[2 * i + 1] & 0xFF));
+                    audio.add(samples);
+                }
+                parts.add(audio);
+            }
+        }
+    }
+
+    @Benchmark
+    public byte[] encode(EncoderState state)
+    {
+        byte[] frame = state.frames[state.next];
+        state.next = state.next + 1 == FRAMES ? 0 : state.next + 1;
+        return state.encoder.encodeToOpus(frame, CHANNEL_BITRATE);
+    }
+
+    @Benchmark
+    public DatagramPacket encrypt(PacketState state)
+    {
+        AudioPacket packet = state.packets[state.next];
+        state.next = state.next + 1 == FRAMES ? 0 : state.next + 1;
+        return packet.asEncryptedUdpPacket(state.address, state.secretKey);
+    }
+
+    @Benchmark
+    public AudioPacket decrypt(PacketState state)
+    {
+        AudioPacket packet = state.encrypted[state.next];
+        state.next = state.next + 1 == FRAMES ? 0 : state.next + 1;
+        return AudioPacket.decryptAudioPacket(packet, state.secretKey);
+    }
+
+    @Benchmark
+    public short[] mix(MixState state)
+    {
+        List<short[]> audio = state.parts.get(state.next);
+        state.next = state.next + 1 == FRAMES ? 0 : state.next + 1;
+        return AudioConnection.mix(audio);
+    }
+
+    /**
+     * One second of 48KHz 16bit stereo BigEndian PCM as 20ms frames: a chord with a little noise,
+     * so the encoder has something to work on.
+     */
+    static byte[][] pcmFrames()
+    {
+        Random random = new Random(45);
+        byte[][] frames = new byte[FRAMES][FRAME_BYTES];
+        int sample = 0;
+        for (byte[] frame : frames)
+        {
+            for (int i = 0; i < frame.length; i += 4, sample++)
+            {
+                double t = sample / (double) AudioConnection.OPUS_SAMPLE_RATE;
+                double value = Math.sin(2 * Math.PI * 220 * t) + 0.5 * Math.sin(2 * Math.PI * 277 * t)
+                        + 0.3 * Math.sin(2 * Math.PI * 330 * t) + 0.05 * random.nextGaussian();
+                short left = (short) (value / 2 * 12000);
+                short right = (short) (value / 2 * 10000);
+                frame[i] = (byte) (left >> 8);
+                frame[i + 1] = (byte) left;
+                frame[i + 2] = (byte) (right >> 8);
+                frame[i + 3] = (byte) right;
+            }
+        }
+        return frames;
+    }
+}
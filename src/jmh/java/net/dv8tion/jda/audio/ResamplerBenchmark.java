@@ -0,0 +1,75 @@
+/*
+ *     Copyright 2015-2016 Austin Keener & Michael Ritter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.dv8tion.jda.audio;
+
+import org.openjdk.jmh.annotations.*;
+import org.tritonus.sampled.convert.PolyphaseSampleRateConversionProvider;
+import org.tritonus.sampled.convert.SampleRateConversionProvider;
+import org.tritonus.share.sampled.convert.TSimpleFormatConversionProvider;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Resampling one second of 16bit stereo PCM to the 48KHz of {@link net.dv8tion.jda.audio.AudioSendHandler#INPUT_FORMAT},
+ * with the polyphase converter and the old sample-and-hold converter it replaced.
+ * The score is the amount of seconds of audio one core resamples per second.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ResamplerBenchmark
+{
+    @Param({"polyphase", "old"})
+    public String converter;
+
+    @Param({"44100", "22050"})
+    public int sourceRate;
+
+    private TSimpleFormatConversionProvider provider;
+    private AudioFormat sourceFormat;
+    private byte[] source;
+    private final byte[] buffer = new byte[AudioConnection.OPUS_FRAME_SIZE * 4];
+
+    @Setup
+    public void setup()
+    {
+        provider = converter.equals("polyphase") ? new PolyphaseSampleRateConversionProvider() : new SampleRateConversionProvider();
+        sourceFormat = new AudioFormat(sourceRate, 16, 2, true, true);
+        source = new byte[sourceRate * 4];
+        new Random(45).nextBytes(source);
+    }
+
+    @Benchmark
+    public int resample() throws IOException
+    {
+        AudioInputStream in = new AudioInputStream(new ByteArrayInputStream(source), sourceFormat, sourceRate);
+        AudioInputStream out = provider.getAudioInputStream(AudioSendHandler.INPUT_FORMAT, in);
+        //Reads 20ms at a time, like the AudioSendHandler of a player does.
+        int total = 0;
+        int read;
+        while ((read = out.read(buffer, 0, buffer.length)) > 0)
+            total += read;
+        return total;
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ *     Copyright 2015-2016 Austin Keener & Michael Ritter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.dv8tion.jda.entities.impl;
+
+import net.dv8tion.jda.Fixtures;
+import net.dv8tion.jda.entities.Message;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tokenizing and rendering the content of the generated messages.
+ * <br>Every operation resets the cached content of the message first, so nothing is served from the cache.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MessageBenchmark
+{
+    private MessageImpl[] messages;
+    private String[] contents;
+    private int next = 0;
+
+    @Setup
+    public void setup()
+    {
+        JDAImpl api = Fixtures.createApi();
+        List<Message> created = Fixtures.createMessages(api);
+        messages = created.toArray(new MessageImpl[created.size()]);
+        contents = new String[messages.length];
+        for (int i = 0; i < messages.length; i++)
+            contents[i] = messages[i].getRawContent();
+    }
+
+    @Benchmark
+    public MessageTokens tokenize()
+    {
+        return MessageTokens.tokenize(contents[nextIndex()]);
+    }
+
+    @Benchmark
+    public String getContent()
+    {
+        return reset().getContent();
+    }
+
+    @Benchmark
+    public String getStrippedContent()
+    {
+        return reset().getStrippedContent();
+    }
+
+    private MessageImpl reset()
+    {
+        int index = nextIndex();
+        return messages[index].setContent(contents[index]);
+    }
+
+    private int nextIndex()
+    {
+        int index = next;
+        next = index + 1 == contents.length ? 0 : index + 1;
+        return index;
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ *     Copyright 2015-2016 Austin Keener & Michael Ritter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.dv8tion.jda.handle;
+
+import net.dv8tion.jda.Fixtures;
+import net.dv8tion.jda.entities.Guild;
+import net.dv8tion.jda.entities.Message;
+import net.dv8tion.jda.entities.impl.JDAImpl;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Building entities from the generated GUILD_CREATE and MESSAGE_CREATE payloads.
+ * <p>
+ * {@link #createMessages()} builds {@value #MESSAGES_PER_OPERATION} messages per operation and keeps them,
+ * like a bot receiving 10k messages per second. Run it with <code>-prof gc</code> to see the allocated bytes
+ * per message (<code>gc.alloc.rate.norm</code>).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EntityBuilderBenchmark
+{
+    public static final int MESSAGES_PER_OPERATION = 10_000;
+
+    @State(Scope.Thread)
+    public static class GuildState
+    {
+        private final JDAImpl api = new JDAImpl(false, false, false);
+        private final EntityBuilder builder = new EntityBuilder(api);
+        private final JSONObject guild = Fixtures.guild();
+
+        //A new JDAImpl per invocation would leak, the static caches of EntityBuilder and GuildLock are keyed by it.
+        @Setup(Level.Invocation)
+        public void clear()
+        {
+            api.getGuildMap().clear();
+            api.getUserMap().clear();
+            api.getChannelMap().clear();
+            api.getVoiceChannelMap().clear();
+            api.getEmoteMap().clear();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class MessageState
+    {
+        private JDAImpl api;
+        private EntityBuilder builder;
+        private JSONObject[] messages;
+        private int next = 0;
+
+        @Setup
+        public void setup()
+        {
+            api = Fixtures.createApi();
+            builder = new EntityBuilder(api);
+            List<JSONObject> fixtures = Fixtures.messages();
+            messages = fixtures.toArray(new JSONObject[fixtures.size()]);
+        }
+
+        private JSONObject nextMessage()
+        {
+            JSONObject message = messages[next];
+            next = next + 1 == messages.length ? 0 : next + 1;
+            return message;
+        }
+    }
+
+    @Benchmark
+    public Guild createGuildFirstPass(GuildState state)
+    {
+        return state.builder.createGuildFirstPass(state.guild, null);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public Message createMessage(MessageState state)
+    {
+        return state.builder.createMessage(state.nextMessage());
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(MESSAGES_PER_OPERATION)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public Message[] createMessages(MessageState state)
+    {
+        Message[] messages = new Message[MESSAGES_PER_OPERATION];
+        for (int i = 0; i < messages.length; i++)
+            messages[i] = state.builder.createMessage(state.nextMessage());
+        return messages;
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public List<?> createMessageAndResolve(MessageState state)
+    {
+        //Pays for the lazily resolved parts a listener reading the mentions and timestamp would access.
+        Message message = state.builder.createMessage(state.nextMessage());
+        message.getTime();
+        return message.getMentionedUsers();
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ *     Copyright 2015-2016 Austin Keener & Michael Ritter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.dv8tion.jda.hooks;
+
+import net.dv8tion.jda.Fixtures;
+import net.dv8tion.jda.entities.Message;
+import net.dv8tion.jda.entities.impl.JDAImpl;
+import net.dv8tion.jda.events.message.MessageReceivedEvent;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Dispatching a MessageReceivedEvent through each {@link net.dv8tion.jda.hooks.IEventManager IEventManager}
+ * to a number of listeners.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EventManagerBenchmark
+{
+    @Param({"interfaced", "annotated"})
+    public String manager;
+
+    @Param({"1", "10"})
+    public int listeners;
+
+    private IEventManager eventManager;
+    private MessageReceivedEvent[] events;
+    private int next = 0;
+
+    @Setup
+    public void setup(Blackhole blackhole)
+    {
+        JDAImpl api = Fixtures.createApi();
+        List<Message> messages = Fixtures.createMessages(api);
+        events = new MessageReceivedEvent[messages.size()];
+        for (int i = 0; i < events.length; i++)
+            events[i] = new MessageReceivedEvent(api, i, messages.get(i));
+
+        eventManager = manager.equals("annotated") ? new AnnotatedEventManager() : new InterfacedEventManager();
+        for (int i = 0; i < listeners; i++)
+            eventManager.register(manager.equals("annotated") ? new AnnotatedListener(blackhole) : new Listener(blackhole));
+    }
+
+    @Benchmark
+    public void handle()
+    {
+        eventManager.handle(events[next]);
+        next = next + 1 == events.length ? 0 : next + 1;
+    }
+
+    public static class Listener extends ListenerAdapter
+    {
+        private final Blackhole blackhole;
+
+        public Listener(Blackhole blackhole)
+        {
+            this.blackhole = blackhole;
+        }
+
+        @Override
+        public void onMessageReceived(MessageReceivedEvent event)
+        {
+            blackhole.consume(event.getMessage());
+        }
+    }
+
+    public static class AnnotatedListener
+    {
+        private final Blackhole blackhole;
+
+        public AnnotatedListener(Blackhole blackhole)
+        {
+            this.blackhole = blackhole;
+        }
+
+        @SubscribeEvent
+        public void onMessageReceived(MessageReceivedEvent event)
+        {
+            blackhole.consume(event.getMessage());
+        }
+    }
+}
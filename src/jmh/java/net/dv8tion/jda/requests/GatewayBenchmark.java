@@ -0,0 +1,95 @@
+/*
+ *     Copyright 2015-2016 Austin Keener & Michael Ritter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.dv8tion.jda.requests;
+
+import net.dv8tion.jda.Fixtures;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
+
+/**
+ * Decoding of gateway frames like {@link net.dv8tion.jda.requests.WebSocketClient WebSocketClient} does it:
+ * inflating binary frames and parsing the JSON.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GatewayBenchmark
+{
+    @Param({Fixtures.GUILD_CREATE, Fixtures.MESSAGE_CREATE})
+    public String fixture;
+
+    private String[] text;
+    private byte[][] compressed;
+    private int next = 0;
+
+    @Setup
+    public void setup()
+    {
+        List<String> frames = Fixtures.readLines(fixture);
+        text = frames.toArray(new String[frames.size()]);
+        compressed = new byte[text.length][];
+        for (int i = 0; i < text.length; i++)
+            compressed[i] = compress(text[i]);
+    }
+
+    @Benchmark
+    public String inflate() throws Exception
+    {
+        return WebSocketClient.inflate(compressed[nextIndex()]);
+    }
+
+    @Benchmark
+    public JSONObject parse()
+    {
+        return new JSONObject(text[nextIndex()]);
+    }
+
+    @Benchmark
+    public JSONObject inflateAndParse() throws Exception
+    {
+        return new JSONObject(WebSocketClient.inflate(compressed[nextIndex()]));
+    }
+
+    private int nextIndex()
+    {
+        int index = next;
+        next = index + 1 == text.length ? 0 : index + 1;
+        return index;
+    }
+
+    private static byte[] compress(String frame)
+    {
+        //Discord compresses frames with zlib, which is what Deflater writes by default.
+        Deflater deflater = new Deflater();
+        deflater.setInput(frame.getBytes(StandardCharsets.UTF_8));
+        deflater.finish();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        while (!deflater.finished())
+            out.write(buffer, 0, deflater.deflate(buffer));
+        deflater.end();
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ *     Copyright 2015-2016 Austin Keener & Michael Ritter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.dv8tion.jda.utils;
+
+import net.dv8tion.jda.Fixtures;
+import net.dv8tion.jda.Permission;
+import net.dv8tion.jda.entities.Channel;
+import net.dv8tion.jda.entities.Guild;
+import net.dv8tion.jda.entities.User;
+import net.dv8tion.jda.entities.impl.JDAImpl;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link net.dv8tion.jda.utils.PermissionUtil#checkPermission(Channel, User, Permission...) PermissionUtil.checkPermission}
+ * for every member of the 1000 member fixture guild, in all of its channels.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PermissionUtilBenchmark
+{
+    private Guild guild;
+    private User[] users;
+    private Channel[] channels;
+    private int nextUser = 0;
+    private int nextChannel = 0;
+
+    @Setup
+    public void setup()
+    {
+        JDAImpl api = Fixtures.createApi();
+        guild = Fixtures.getGuild(api);
+        users = guild.getUsers().toArray(new User[0]);
+        List<Channel> all = new ArrayList<>(guild.getTextChannels());
+        all.addAll(guild.getVoiceChannels());
+        channels = all.toArray(new Channel[all.size()]);
+    }
+
+    @Benchmark
+    public boolean checkChannelPermission()
+    {
+        return PermissionUtil.checkPermission(nextChannel(), nextUser(), Permission.MESSAGE_READ);
+    }
+
+    @Benchmark
+    public boolean checkChannelPermissions()
+    {
+        return PermissionUtil.checkPermission(nextChannel(), nextUser(),
+                Permission.MESSAGE_READ, Permission.MESSAGE_WRITE, Permission.MESSAGE_EMBED_LINKS);
+    }
+
+    @Benchmark
+    public boolean checkGuildPermission()
+    {
+        return PermissionUtil.checkPermission(guild, nextUser(), Permission.MANAGE_ROLES);
+    }
+
+    private User nextUser()
+    {
+        User user = users[nextUser];
+        if (++nextUser == users.length)
+        {
+            nextUser = 0;
+            nextChannel = nextChannel + 1 == channels.length ? 0 : nextChannel + 1;
+        }
+        return user;
+    }
+
+    private Channel nextChannel()
+    {
+        return channels[nextChannel];
+    }
+}
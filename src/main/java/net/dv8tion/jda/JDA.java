@@ -20,6 +20,7 @@ import net.dv8tion.jda.hooks.AnnotatedEventManager;
 import net.dv8tion.jda.hooks.IEventManager;
 import net.dv8tion.jda.managers.AccountManager;
 import net.dv8tion.jda.managers.AudioManager;
+import net.dv8tion.jda.utils.LatencyHistogram;
 import org.apache.http.HttpHost;
 
 import java.util.List;
@@ -346,6 +347,25 @@ public interface JDA
      */
     int getResponseTotal();
 
+    /**
+     * The round-trip time, in milliseconds, of the most recent acknowledged heartbeat sent to Discord's gateway.
+     * This is a good indicator for the latency between JDA and Discord.
+     *
+     * @return
+     *      The last heartbeat latency in milliseconds, or -1 if no heartbeat was acknowledged yet.
+     */
+    long getHeartbeatLatency();
+
+    /**
+     * Statistics about the round-trip times of the most recent heartbeats sent to Discord's gateway.
+     * <br>If a heartbeat is not acknowledged before the next one is due, JDA considers the connection dead,
+     * drops it and resumes the session on a new connection.
+     *
+     * @return
+     *      The heartbeat {@link net.dv8tion.jda.utils.LatencyHistogram LatencyHistogram} of this JDA instance.
+     */
+    LatencyHistogram getHeartbeatLatencyHistogram();
+
     /**
      * The proxy settings used by all JDA instances.
      *
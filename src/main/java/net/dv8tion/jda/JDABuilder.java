@@ -17,13 +17,17 @@ package net.dv8tion.jda;
 
 import net.dv8tion.jda.JDA.Status;
 import net.dv8tion.jda.entities.impl.JDAImpl;
+import net.dv8tion.jda.handle.EntitySnapshot;
 import net.dv8tion.jda.events.ReadyEvent;
 import net.dv8tion.jda.hooks.AnnotatedEventManager;
 import net.dv8tion.jda.hooks.IEventManager;
 import net.dv8tion.jda.hooks.ListenerAdapter;
 import net.dv8tion.jda.hooks.SubscribeEvent;
+import net.dv8tion.jda.requests.GatewayRecorder;
+import net.dv8tion.jda.utils.MetricsRegistry;
 
 import javax.security.auth.login.LoginException;
+import java.io.File;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -53,6 +57,10 @@ public class JDABuilder
     protected IEventManager eventManager = null;
     protected boolean reconnect = true;
     protected int[] sharding = null;
+    protected File snapshotFile = null;
+    protected int snapshotInterval = 0;
+    protected MetricsRegistry metrics = null;
+    protected GatewayRecorder gatewayRecorder = null;
 
     /**
      * Creates a completely empty JDABuilder.<br>
@@ -257,6 +265,72 @@ public class JDABuilder
         return this;
     }
 
+    /**
+     * Enables the entity snapshot. JDA writes its Guilds, Channels, Roles, Users and members to the provided file
+     * on shutdown and, if an interval is provided, periodically while connected.
+     * <p>
+     * When JDA is built with an existing snapshot of the same account and shard, the entities are loaded before
+     * connecting to Discord, so they can be used right away. The data received from Discord afterwards is applied to
+     * the loaded entities, and changes that happened while JDA was offline are fired as the usual events.
+     * Presences and voice states are not part of the snapshot.
+     * <br>The shards of a {@link net.dv8tion.jda.ShardManager ShardManager} each write their own file, named after the
+     * provided one with the shard id before the extension, e.g. <code>entities.shard3.snapshot</code>.
+     *
+     * Default is disabled.
+     *
+     * @param file
+     *      The snapshot file, or null to disable snapshots.
+     * @param interval
+     *      Minutes between periodic snapshots, or 0 to only write the snapshot on shutdown.
+     * @return
+     *      Returns the {@link net.dv8tion.jda.JDABuilder JDABuilder} instance. Useful for chaining.
+     */
+    public JDABuilder setEntitySnapshot(File file, int interval)
+    {
+        if (interval < 0)
+            throw new IllegalArgumentException("The snapshot interval cannot be negative! Provided: " + interval);
+        this.snapshotFile = file;
+        this.snapshotInterval = interval;
+        return this;
+    }
+
+    /**
+     * Sets the {@link net.dv8tion.jda.utils.MetricsRegistry MetricsRegistry} that JDA reports gateway, REST, event listener
+     * and audio metrics to. Use {@link net.dv8tion.jda.utils.InMemoryMetricsRegistry InMemoryMetricsRegistry} to collect
+     * them without any external service. A registry can be shared by multiple JDA instances.
+     *
+     * Default is {@link net.dv8tion.jda.utils.MetricsRegistry#NOOP MetricsRegistry.NOOP}, which collects nothing.
+     *
+     * @param metrics
+     *      The registry, or null to disable metrics.
+     * @return
+     *      Returns the {@link net.dv8tion.jda.JDABuilder JDABuilder} instance. Useful for chaining.
+     */
+    public JDABuilder setMetricsRegistry(MetricsRegistry metrics)
+    {
+        this.metrics = metrics;
+        return this;
+    }
+
+    /**
+     * Records every frame received from the gateway with the provided {@link net.dv8tion.jda.requests.GatewayRecorder GatewayRecorder},
+     * starting with the READY. The recording can be replayed without network by the
+     * {@link net.dv8tion.jda.requests.GatewayReplayer GatewayReplayer}, e.g. to compare the event throughput of two versions.
+     * The recorder is closed when JDA shuts down. It can't be used for the shards of a {@link net.dv8tion.jda.ShardManager ShardManager}.
+     *
+     * Default is null, which records nothing.
+     *
+     * @param recorder
+     *      The recorder, or null to disable recording.
+     * @return
+     *      Returns the {@link net.dv8tion.jda.JDABuilder JDABuilder} instance. Useful for chaining.
+     */
+    public JDABuilder setGatewayRecorder(GatewayRecorder recorder)
+    {
+        this.gatewayRecorder = recorder;
+        return this;
+    }
+
     /**
      * Builds a new {@link net.dv8tion.jda.JDA} instance and uses the provided token to start the login process.<br>
      * The login process runs in a different thread, so while this will return immediately, {@link net.dv8tion.jda.JDA} has not
@@ -274,6 +348,37 @@ public class JDABuilder
      *          If the provided token is empty or null.
      */
     public JDA buildAsync() throws LoginException, IllegalArgumentException
+    {
+        JDAImpl jda = create(sharding, snapshotFile);
+        jda.login(token, sharding);
+        return jda;
+    }
+
+    //Builds a shard of a ShardManager, which shares resources with the other shards.
+    JDAImpl buildShard(int shardId, int shardsTotal, ShardManager manager) throws LoginException
+    {
+        if (gatewayRecorder != null)
+            throw new IllegalStateException("A GatewayRecorder can only record a single JDA instance, not the shards of a ShardManager!");
+        int[] shard = new int[] {shardId, shardsTotal};
+        JDAImpl jda = create(shard, snapshotFile == null ? null : getShardFile(snapshotFile, shardId));
+        jda.setShardManager(manager);
+        jda.setEventManager(manager.wrapEventManager(jda.getConfiguredEventManager()));
+        jda.login(token, shard);
+        return jda;
+    }
+
+    //Every shard has its own snapshot, e.g. entities.snapshot becomes entities.shard3.snapshot
+    static File getShardFile(File file, int shardId)
+    {
+        String name = file.getName();
+        int extension = name.lastIndexOf('.');
+        String shardName = extension > 0
+                ? name.substring(0, extension) + ".shard" + shardId + name.substring(extension)
+                : name + ".shard" + shardId;
+        return new File(file.getAbsoluteFile().getParentFile(), shardName);
+    }
+
+    protected JDAImpl create(int[] shard, File snapshot)
     {
         jdaCreated = true;
         JDAImpl jda;
@@ -282,13 +387,17 @@ public class JDABuilder
         else
             jda = new JDAImpl(enableVoice, enableShutdownHook, enableBulkDeleteSplitting);
         jda.setAutoReconnect(reconnect);
+        jda.setMetrics(metrics);
+        jda.setGatewayRecorder(gatewayRecorder);
         if (eventManager != null)
         {
             jda.setEventManager(eventManager);
         }
-        listeners.forEach(jda::addEventListener);
+        //A custom EventManager may be shared by multiple JDA instances (shards) and already know the listeners.
+        listeners.stream().filter(l -> !jda.getRegisteredListeners().contains(l)).forEach(jda::addEventListener);
+        if (snapshot != null)
+            jda.setEntitySnapshot(new EntitySnapshot(jda, snapshot, snapshotInterval, shard));
         jda.setStatus(JDA.Status.INITIALIZED);  //This is already set by JDA internally, but this is to make sure the listeners catch it.
-        jda.login(token, sharding);
         return jda;
     }
 
@@ -0,0 +1,493 @@
+/*
+ *     Copyright 2015-2016 Austin Keener & Michael Ritter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.dv8tion.jda;
+
+import net.dv8tion.jda.entities.Message;
+import net.dv8tion.jda.entities.TextChannel;
+import net.dv8tion.jda.entities.impl.JDAImpl;
+import net.dv8tion.jda.exceptions.PermissionException;
+import net.dv8tion.jda.handle.EntityBuilder;
+import net.dv8tion.jda.requests.RateLimitGate;
+import net.dv8tion.jda.requests.Requester;
+import net.dv8tion.jda.utils.SimpleLog;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * Deletes any amount of messages of a {@link net.dv8tion.jda.entities.TextChannel TextChannel}.
+ * <p>
+ * The history of the channel is read from the newest message on, and every message that matches the filter is deleted. Messages younger than 14 days are deleted in bulk, 100 per request, older
+ * ones have to be deleted one by one. Reading the history, bulk deletes and single deletes run on their own threads,
+ * so messages are already deleted while the history is still read. Each kind of request waits for its rate-limit and
+ * rate-limited requests are retried. If reading the history fails anyway, the messages read so far are still deleted
+ * and {@link net.dv8tion.jda.MessagePurger.Progress#isHistoryFailed() Progress.isHistoryFailed()} is true.
+ * <p>
+ * Usage:
+ * <pre><code>
+ * new MessagePurger(channel)
+ *         .setFilter(message -&gt; raiders.contains(message.getAuthor()))
+ *         .setAfter(raidStart)
+ *         .start(progress -&gt; System.out.println(progress.getDeleted() + " deleted"));
+ * </code></pre>
+ * This requires the {@link net.dv8tion.jda.Permission#MESSAGE_HISTORY MESSAGE_HISTORY} and
+ * {@link net.dv8tion.jda.Permission#MESSAGE_MANAGE MESSAGE_MANAGE} Permissions in the channel.
+ */
+public class MessagePurger
+{
+    public static final SimpleLog LOG = SimpleLog.getLog("JDAPurger");
+
+    /**
+     * The maximum age of a message that can be deleted in bulk, in milliseconds.
+     */
+    public static final long BULK_DELETE_MAX_AGE = TimeUnit.DAYS.toMillis(14);
+
+    /**
+     * The maximum amount of messages deleted by one bulk delete.
+     */
+    public static final int BULK_DELETE_SIZE = 100;
+
+    /**
+     * How often reading a page of the history is tried when it fails with a connection or server error.
+     */
+    public static final int MAX_ATTEMPTS = 3;
+
+    private static final PermissionSet REQUIRED = PermissionSet.of(Permission.MESSAGE_HISTORY, Permission.MESSAGE_MANAGE);
+    private static final long DISCORD_EPOCH = 1420070400000L;
+    //Messages close to the maximum age could become too old while they wait for their bulk delete.
+    private static final long BULK_DELETE_MARGIN = TimeUnit.MINUTES.toMillis(5);
+    private static final List<String> END_OF_CHUNKS = new ArrayList<>(0);
+    private static final String END_OF_MESSAGES = new String("end");
+    private static final AtomicInteger THREAD_COUNT = new AtomicInteger(0);
+
+    private final TextChannel channel;
+    private final JDAImpl api;
+    private Predicate<Message> filter = message -> true;
+    private int limit = Integer.MAX_VALUE;
+    private long after = 0;
+    private boolean started = false;
+
+    private final BlockingQueue<List<String>> chunks = new LinkedBlockingQueue<>();
+    private final BlockingQueue<String> singles = new LinkedBlockingQueue<>();
+    private final AtomicInteger scanned = new AtomicInteger(0);
+    private final AtomicInteger deleted = new AtomicInteger(0);
+    private final AtomicInteger failed = new AtomicInteger(0);
+    private volatile boolean historyFailed = false;
+
+    /**
+     * Creates a purger that deletes all messages of the channel, until filtered or limited.
+     *
+     * @param channel
+     *          The {@link net.dv8tion.jda.entities.TextChannel TextChannel} to delete messages from.
+     * @throws net.dv8tion.jda.exceptions.PermissionException
+     *      if the JDA user doesn't have MESSAGE_HISTORY and MESSAGE_MANAGE in the channel
+     */
+    public MessagePurger(TextChannel channel)
+    {
+        this.channel = channel;
+        this.api = (JDAImpl) channel.getJDA();
+        checkPermission();
+    }
+
+    /**
+     * Only deletes messages that match the filter. The filter is called on the thread reading the history.
+     *
+     * @param filter
+     *          The filter, e.g. checking the author or content of a message.
+     * @return
+     *      this
+     */
+    public MessagePurger setFilter(Predicate<Message> filter)
+    {
+        if (filter == null)
+            throw new IllegalArgumentException("The filter can't be null!");
+        this.filter = filter;
+        return this;
+    }
+
+    /**
+     * Stops after the provided amount of messages matched the filter. By default there is no limit.
+     *
+     * @param limit
+     *          The maximum amount of messages to delete.
+     * @return
+     *      this
+     */
+    public MessagePurger setLimit(int limit)
+    {
+        if (limit < 1)
+            throw new IllegalArgumentException("The limit has to be at least 1! Provided: " + limit);
+        this.limit = limit;
+        return this;
+    }
+
+    /**
+     * Stops reading the history at the first message sent before or at the provided time.
+     * By default the whole history is read.
+     *
+     * @param time
+     *          The time of the oldest message to delete, or null to read the whole history.
+     * @return
+     *      this
+     */
+    public MessagePurger setAfter(OffsetDateTime time)
+    {
+        this.after = time == null ? 0 : time.toInstant().toEpochMilli();
+        return this;
+    }
+
+    /**
+     * Starts reading the history and deleting messages. A purger can only be started once.
+     * <p>
+     * The progress callback is called after every delete request, on the thread that sent it.
+     * The returned future completes with the final {@link net.dv8tion.jda.MessagePurger.Progress Progress} once all
+     * matching messages are deleted or failed, it never completes exceptionally.
+     *
+     * @param progress
+     *          Called after every delete request. May be null.
+     * @return
+     *      A future representing the purge.
+     * @throws java.lang.IllegalStateException
+     *      if the purger was already started
+     */
+    public CompletableFuture<Progress> start(Consumer<Progress> progress)
+    {
+        if (started)
+            throw new IllegalStateException("This purger was already started!");
+        checkPermission();
+        started = true;
+
+        CompletableFuture<Progress> future = new CompletableFuture<>();
+        int number = THREAD_COUNT.incrementAndGet();
+        startThread(this::readHistory, "JDA MessagePurger " + number + " History");
+        startThread(() -> deleteChunks(progress), "JDA MessagePurger " + number + " Bulk");
+        startThread(() ->
+        {
+            deleteSingles(progress);
+            future.complete(getProgress());
+        }, "JDA MessagePurger " + number + " Single");
+        return future;
+    }
+
+    /**
+     * The current state of the purge.
+     *
+     * @return
+     *      The Progress.
+     */
+    public Progress getProgress()
+    {
+        return new Progress(scanned.get(), deleted.get(), failed.get(), historyFailed);
+    }
+
+    private void readHistory()
+    {
+        List<String> chunk = new ArrayList<>(BULK_DELETE_SIZE);
+        boolean finished = false;
+        try
+        {
+            EntityBuilder builder = new EntityBuilder(api);
+            RateLimitGate rateLimit = new RateLimitGate();
+            long bulkLimit = System.currentTimeMillis() - BULK_DELETE_MAX_AGE + BULK_DELETE_MARGIN;
+            int matched = 0;
+            String before = null;
+            read:
+            while (matched < limit)
+            {
+                JSONArray page = readPage(before, rateLimit);
+                if (page == null)
+                    return;
+                for (int i = 0; i < page.length(); i++)
+                {
+                    Message message = builder.createMessage(page.getJSONObject(i));
+                    before = message.getId();
+                    //The id knows the time, the timestamp of the message doesn't have to be parsed.
+                    long time = getTime(message.getId());
+                    if (time <= after)
+                        break read;
+                    scanned.incrementAndGet();
+                    if (!filter.test(message))
+                        continue;
+                    if (time > bulkLimit)
+                    {
+                        chunk.add(message.getId());
+                        if (chunk.size() == BULK_DELETE_SIZE)
+                        {
+                            chunks.add(chunk);
+                            chunk = new ArrayList<>(BULK_DELETE_SIZE);
+                        }
+                    }
+                    else
+                    {
+                        singles.add(message.getId());
+                    }
+                    if (++matched == limit)
+                        break read;
+                }
+                if (page.length() < BULK_DELETE_SIZE)
+                    break;
+            }
+            finished = true;
+        }
+        catch (RuntimeException e)
+        {
+            LOG.log(e);
+        }
+        finally
+        {
+            if (!finished)
+            {
+                LOG.fatal("Reading the history of channel " + channel.getId() + " failed, only the messages read so far are deleted!");
+                historyFailed = true;
+            }
+            //A bulk delete needs at least 2 messages.
+            if (chunk.size() == 1)
+                singles.add(chunk.get(0));
+            else if (!chunk.isEmpty())
+                chunks.add(chunk);
+            chunks.add(END_OF_CHUNKS);
+        }
+    }
+
+    /**
+     * Reads the page of messages before the provided one, or the newest page.
+     *
+     * @return
+     *      The messages, or null if the page couldn't be read.
+     */
+    private JSONArray readPage(String before, RateLimitGate rateLimit)
+    {
+        String url = Requester.DISCORD_API_PREFIX + "channels/" + channel.getId() + "/messages?limit=" + BULK_DELETE_SIZE
+                + (before != null ? "&before=" + before : "");
+        int attempts = 0;
+        int rateLimited = 0;
+        while (true)
+        {
+            rateLimit.await();
+            Requester.Response response = api.getRequester().get(url);
+            attempts++;
+            if (rateLimit.update(response) && ++rateLimited <= RateLimitGate.MAX_RATE_LIMIT_RETRIES)
+                continue;
+            if (response.isOk())
+                return response.getArray();
+            if (attempts < MAX_ATTEMPTS && (response.code == Requester.Response.connectionErrCode || response.code >= 500))
+            {
+                rateLimit.pause(System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(attempts));
+                continue;
+            }
+            LOG.warn("Could not read the history of channel " + channel.getId() + ": " + response);
+            return null;
+        }
+    }
+
+    private void deleteChunks(Consumer<Progress> progress)
+    {
+        String url = Requester.DISCORD_API_PREFIX + "channels/" + channel.getId() + "/messages/bulk_delete";
+        RateLimitGate rateLimit = new RateLimitGate();
+        List<String> chunk;
+        while ((chunk = take(chunks)) != END_OF_CHUNKS)
+        {
+            try
+            {
+                JSONArray messageIds = new JSONArray();
+                chunk.forEach(messageIds::put);
+                JSONObject body = new JSONObject().put("messages", messageIds);
+                Requester.Response response;
+                int rateLimited = 0;
+                do
+                {
+                    rateLimit.await();
+                    response = api.getRequester().post(url, body);
+                }
+                while (rateLimit.update(response) && ++rateLimited <= RateLimitGate.MAX_RATE_LIMIT_RETRIES);
+
+                if (response.isOk())
+                {
+                    deleted.addAndGet(chunk.size());
+                    report(progress);
+                    continue;
+                }
+                //E.g. one of the messages was deleted meanwhile, the single deletes don't care.
+                LOG.debug("Bulk delete in channel " + channel.getId() + " failed, deleting the messages one by one: " + response);
+            }
+            catch (RuntimeException e)
+            {
+                LOG.log(e);
+            }
+            singles.addAll(chunk);
+        }
+        singles.add(END_OF_MESSAGES);
+    }
+
+    private void deleteSingles(Consumer<Progress> progress)
+    {
+        String url = Requester.DISCORD_API_PREFIX + "channels/" + channel.getId() + "/messages/";
+        RateLimitGate rateLimit = new RateLimitGate();
+        String messageId;
+        while ((messageId = take(singles)) != END_OF_MESSAGES)
+        {
+            Requester.Response response = null;
+            int rateLimited = 0;
+            try
+            {
+                do
+                {
+                    rateLimit.await();
+                    response = api.getRequester().delete(url + messageId);
+                }
+                while (rateLimit.update(response) && ++rateLimited <= RateLimitGate.MAX_RATE_LIMIT_RETRIES);
+            }
+            catch (RuntimeException e)
+            {
+                LOG.log(e);
+            }
+
+            //Messages that are already gone count as deleted.
+            if (response != null && (response.isOk() || response.code == 404))
+            {
+                deleted.incrementAndGet();
+            }
+            else
+            {
+                LOG.warn("Could not delete message " + messageId + " in channel " + channel.getId() + ": " + response);
+                failed.incrementAndGet();
+            }
+            report(progress);
+        }
+    }
+
+    private void report(Consumer<Progress> progress)
+    {
+        if (progress == null)
+            return;
+        try
+        {
+            progress.accept(getProgress());
+        }
+        catch (Exception e)
+        {
+            LOG.log(e);
+        }
+    }
+
+    private void checkPermission()
+    {
+        if (!channel.checkPermission(api.getSelfInfo(), REQUIRED))
+        {
+            for (Permission permission : REQUIRED.asSet())
+            {
+                if (!channel.checkPermission(api.getSelfInfo(), permission))
+                    throw new PermissionException(permission);
+            }
+        }
+    }
+
+    private static void startThread(Runnable runnable, String name)
+    {
+        Thread thread = new Thread(runnable, name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private static <T> T take(BlockingQueue<T> queue)
+    {
+        while (true)
+        {
+            try
+            {
+                return queue.take();
+            }
+            catch (InterruptedException e)
+            {
+                //Only the purger uses its threads, the end of the queue is the only way to stop.
+                LOG.debug("Ignored an interrupt of a purger thread");
+            }
+        }
+    }
+
+    private static long getTime(String id)
+    {
+        return (Long.parseLong(id) >>> 22) + DISCORD_EPOCH;
+    }
+
+    /**
+     * The state of a {@link net.dv8tion.jda.MessagePurger MessagePurger}.
+     */
+    public static class Progress
+    {
+        private final int scanned;
+        private final int deleted;
+        private final int failed;
+        private final boolean historyFailed;
+
+        private Progress(int scanned, int deleted, int failed, boolean historyFailed)
+        {
+            this.scanned = scanned;
+            this.deleted = deleted;
+            this.failed = failed;
+            this.historyFailed = historyFailed;
+        }
+
+        /**
+         * The amount of messages read from the history and checked with the filter.
+         */
+        public int getScanned()
+        {
+            return scanned;
+        }
+
+        /**
+         * The amount of deleted messages.
+         */
+        public int getDeleted()
+        {
+            return deleted;
+        }
+
+        /**
+         * The amount of messages that couldn't be deleted.
+         */
+        public int getFailed()
+        {
+            return failed;
+        }
+
+        /**
+         * Whether reading the history stopped early because of an error. Older matching messages weren't deleted then.
+         */
+        public boolean isHistoryFailed()
+        {
+            return historyFailed;
+        }
+
+        @Override
+        public String toString()
+        {
+            return "Progress[scanned: " + scanned + ", deleted: " + deleted + ", failed: " + failed
+                    + (historyFailed ? ", history failed" : "") + ']';
+        }
+    }
+}
@@ -15,7 +15,8 @@
  */
 package net.dv8tion.jda;
 
-import java.util.LinkedList;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 
 public enum Permission
@@ -52,12 +53,40 @@ public enum Permission
 
     UNKNOWN(-1, false, false);
 
+    /**
+     * All known permissions, without {@link #UNKNOWN}. Decoding raw permissions iterates this instead of cloning
+     * {@link #values()} every time.
+     */
+    static final Permission[] KNOWN;
+    /**
+     * The raw value of all known permissions.
+     */
+    public static final int ALL_RAW;
+
+    static
+    {
+        Permission[] values = values();
+        KNOWN = new Permission[values.length - 1];
+        int all = 0;
+        int i = 0;
+        for (Permission perm : values)
+        {
+            if (perm == UNKNOWN)
+                continue;
+            KNOWN[i++] = perm;
+            all |= perm.raw;
+        }
+        ALL_RAW = all;
+    }
+
     private final int offset;
+    private final int raw;
     private final boolean isGuild, isChannel;
 
     Permission(int offset, boolean isGuild, boolean isChannel)
     {
         this.offset = offset;
+        this.raw = offset < 0 ? 0 : 1 << offset;
         this.isGuild = isGuild;
         this.isChannel = isChannel;
     }
@@ -75,6 +104,18 @@ public enum Permission
         return offset;
     }
 
+    /**
+     * The bit of this permission in raw permissions, <code>1 &lt;&lt; {@link #getOffset()}</code>.
+     * {@link #UNKNOWN} has no bit and returns 0.
+     *
+     * @return
+     *      The raw value of this {@link net.dv8tion.jda.Permission Permission}.
+     */
+    public int getRawValue()
+    {
+        return raw;
+    }
+
     /**
      * Gets the {@link net.dv8tion.jda.Permission Permission} relating to the provided offset.<br>
      * If there is no {@link net.dv8tion.jda.Permission Permssions} that matches the provided
@@ -87,7 +128,7 @@ public enum Permission
      */
     public static Permission getFromOffset(int offset)
     {
-        for (Permission perm : values())
+        for (Permission perm : KNOWN)
         {
             if (perm.offset == offset)
                 return perm;
@@ -134,14 +175,44 @@ public enum Permission
      */
     public static List<Permission> getPermissions(int permissions)
     {
-        List<Permission> perms = new LinkedList<>();
-        for (Permission perm : Permission.values())
+        List<Permission> perms = new ArrayList<>(Integer.bitCount(permissions & ALL_RAW) + 1);
+        for (Permission perm : KNOWN)
         {
-            if (perm.equals(Permission.UNKNOWN))
-                continue;
-            if(((permissions >> perm.getOffset()) & 1) == 1)
+            if ((permissions & perm.raw) != 0)
                 perms.add(perm);
         }
         return perms;
     }
+
+    /**
+     * The raw <code>int</code> representation of the provided {@link net.dv8tion.jda.Permission Permissions}.
+     *
+     * @param permissions
+     *          The permissions.
+     * @return
+     *      The raw representation, every provided permission sets its bit.
+     */
+    public static int getRaw(Permission... permissions)
+    {
+        int raw = 0;
+        for (Permission perm : permissions)
+            raw |= perm.raw;
+        return raw;
+    }
+
+    /**
+     * The raw <code>int</code> representation of the provided {@link net.dv8tion.jda.Permission Permissions}.
+     *
+     * @param permissions
+     *          The permissions.
+     * @return
+     *      The raw representation, every provided permission sets its bit.
+     */
+    public static int getRaw(Collection<Permission> permissions)
+    {
+        int raw = 0;
+        for (Permission perm : permissions)
+            raw |= perm.raw;
+        return raw;
+    }
 }
@@ -0,0 +1,273 @@
+/*
+ *     Copyright 2015-2016 Austin Keener & Michael Ritter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.dv8tion.jda;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * An immutable set of {@link net.dv8tion.jda.Permission Permissions}, backed by their raw <code>int</code> representation.
+ * <p>
+ * All set operations are single bit operations and checking a PermissionSet allocates nothing, which makes it the
+ * fastest way to check several permissions at once. Keep sets that are checked often in constants:
+ * <pre><code>
+ * static final PermissionSet MODERATE = PermissionSet.of(Permission.KICK_MEMBERS, Permission.BAN_MEMBERS);
+ * ...
+ * if (PermissionUtil.checkPermission(guild, user, MODERATE))
+ * </code></pre>
+ * Bits of permissions unknown to JDA are kept, so raw values of Discord survive the round trip.
+ */
+public final class PermissionSet
+{
+    public static final PermissionSet EMPTY = new PermissionSet(0);
+    /**
+     * All {@link net.dv8tion.jda.Permission Permissions} known to JDA.
+     */
+    public static final PermissionSet ALL = new PermissionSet(Permission.ALL_RAW);
+
+    private static final PermissionSet[] SINGLE = new PermissionSet[32];
+
+    static
+    {
+        for (Permission perm : Permission.KNOWN)
+            SINGLE[perm.getOffset()] = new PermissionSet(perm.getRawValue());
+    }
+
+    private final int raw;
+    private Set<Permission> decoded = null;
+
+    private PermissionSet(int raw)
+    {
+        this.raw = raw;
+    }
+
+    /**
+     * The set of the provided raw permissions, e.g. of {@link net.dv8tion.jda.entities.Role#getPermissionsRaw() Role.getPermissionsRaw()}.
+     *
+     * @param raw
+     *          The raw <code>int</code> representation.
+     * @return
+     *      The PermissionSet.
+     */
+    public static PermissionSet of(int raw)
+    {
+        if (raw == 0)
+            return EMPTY;
+        if (raw == Permission.ALL_RAW)
+            return ALL;
+        if (Integer.bitCount(raw) == 1)
+        {
+            PermissionSet single = SINGLE[Integer.numberOfTrailingZeros(raw)];
+            if (single != null)
+                return single;
+        }
+        return new PermissionSet(raw);
+    }
+
+    /**
+     * The set of the provided permissions.
+     *
+     * @param permissions
+     *          The permissions. {@link net.dv8tion.jda.Permission#UNKNOWN Permission.UNKNOWN} is ignored.
+     * @return
+     *      The PermissionSet.
+     */
+    public static PermissionSet of(Permission... permissions)
+    {
+        return of(Permission.getRaw(permissions));
+    }
+
+    /**
+     * The set of the provided permissions.
+     *
+     * @param permissions
+     *          The permissions. {@link net.dv8tion.jda.Permission#UNKNOWN Permission.UNKNOWN} is ignored.
+     * @return
+     *      The PermissionSet.
+     */
+    public static PermissionSet of(Collection<Permission> permissions)
+    {
+        return of(Permission.getRaw(permissions));
+    }
+
+    /**
+     * The raw <code>int</code> representation, as used by Discord.
+     *
+     * @return
+     *      The raw permissions.
+     */
+    public int getRaw()
+    {
+        return raw;
+    }
+
+    public boolean contains(Permission permission)
+    {
+        int bit = permission.getRawValue();
+        return bit != 0 && (raw & bit) == bit;
+    }
+
+    /**
+     * Whether every permission of the provided set is in this set. An empty set is contained in every set.
+     *
+     * @param permissions
+     *          The permissions to check for.
+     * @return
+     *      True, if this set contains all of them.
+     */
+    public boolean containsAll(PermissionSet permissions)
+    {
+        return (raw & permissions.raw) == permissions.raw;
+    }
+
+    /**
+     * Whether any permission of the provided set is in this set.
+     *
+     * @param permissions
+     *          The permissions to check for.
+     * @return
+     *      True, if this set contains at least one of them.
+     */
+    public boolean containsAny(PermissionSet permissions)
+    {
+        return (raw & permissions.raw) != 0;
+    }
+
+    public boolean isEmpty()
+    {
+        return raw == 0;
+    }
+
+    /**
+     * The amount of known {@link net.dv8tion.jda.Permission Permissions} in this set.
+     * {@link net.dv8tion.jda.Permission#MANAGE_ROLES MANAGE_ROLES} and
+     * {@link net.dv8tion.jda.Permission#MANAGE_PERMISSIONS MANAGE_PERMISSIONS} share their bit and count as one.
+     *
+     * @return
+     *      The amount of set bits of known permissions.
+     */
+    public int size()
+    {
+        return Integer.bitCount(raw & Permission.ALL_RAW);
+    }
+
+    /**
+     * The union of this and the provided set.
+     *
+     * @param permissions
+     *          The permissions to add.
+     * @return
+     *      A PermissionSet with the permissions of both sets.
+     */
+    public PermissionSet with(PermissionSet permissions)
+    {
+        return (raw | permissions.raw) == raw ? this : of(raw | permissions.raw);
+    }
+
+    public PermissionSet with(Permission... permissions)
+    {
+        return with(of(permissions));
+    }
+
+    /**
+     * This set without the permissions of the provided set.
+     *
+     * @param permissions
+     *          The permissions to remove.
+     * @return
+     *      A PermissionSet with the permissions that are only in this set.
+     */
+    public PermissionSet without(PermissionSet permissions)
+    {
+        return (raw & permissions.raw) == 0 ? this : of(raw & ~permissions.raw);
+    }
+
+    public PermissionSet without(Permission... permissions)
+    {
+        return without(of(permissions));
+    }
+
+    /**
+     * The intersection of this and the provided set.
+     *
+     * @param permissions
+     *          The permissions to keep.
+     * @return
+     *      A PermissionSet with the permissions that are in both sets.
+     */
+    public PermissionSet intersect(PermissionSet permissions)
+    {
+        return (raw & permissions.raw) == raw ? this : of(raw & permissions.raw);
+    }
+
+    /**
+     * The {@link net.dv8tion.jda.Permission Permissions} of this set as unmodifiable Set. The Set is decoded on the
+     * first call and cached.
+     *
+     * @return
+     *      Unmodifiable Set of the permissions.
+     */
+    public Set<Permission> asSet()
+    {
+        Set<Permission> set = decoded;
+        if (set == null)
+        {
+            //Racing threads decode equal sets, any of them may be cached.
+            set = Collections.unmodifiableSet(toEnumSet());
+            decoded = set;
+        }
+        return set;
+    }
+
+    /**
+     * The {@link net.dv8tion.jda.Permission Permissions} of this set as new, modifiable EnumSet.
+     *
+     * @return
+     *      EnumSet of the permissions.
+     */
+    public EnumSet<Permission> toEnumSet()
+    {
+        EnumSet<Permission> set = EnumSet.noneOf(Permission.class);
+        if (raw == 0)
+            return set;
+        for (Permission perm : Permission.KNOWN)
+        {
+            if ((raw & perm.getRawValue()) != 0)
+                set.add(perm);
+        }
+        return set;
+    }
+
+    @Override
+    public boolean equals(Object obj)
+    {
+        return obj instanceof PermissionSet && ((PermissionSet) obj).raw == raw;
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return raw;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "PermissionSet" + asSet();
+    }
+}
@@ -0,0 +1,456 @@
+/*
+ *     Copyright 2015-2016 Austin Keener & Michael Ritter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.dv8tion.jda;
+
+import net.dv8tion.jda.entities.Guild;
+import net.dv8tion.jda.entities.TextChannel;
+import net.dv8tion.jda.entities.User;
+import net.dv8tion.jda.entities.VoiceChannel;
+import net.dv8tion.jda.entities.impl.JDAImpl;
+import net.dv8tion.jda.entities.impl.UserImpl;
+import net.dv8tion.jda.events.Event;
+import net.dv8tion.jda.hooks.IEventManager;
+import net.dv8tion.jda.requests.KeepAliveScheduler;
+import net.dv8tion.jda.utils.SimpleLog;
+
+import javax.security.auth.login.LoginException;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/**
+ * Runs multiple shards of the same bot in one JVM. Use the {@link net.dv8tion.jda.ShardManagerBuilder ShardManagerBuilder}
+ * to create one.
+ * <p>
+ * All shards share:
+ * <ul>
+ *     <li>The IDENTIFY rate-limit. Shards (and re-identifying shards) identify at most once every
+ *     {@value #IDENTIFY_DELAY} milliseconds per concurrency bucket.</li>
+ *     <li>One {@link net.dv8tion.jda.entities.User User} object per Discord user, instead of one copy per shard.</li>
+ *     <li>The message rate-limits, as these are per account and not per connection.</li>
+ *     <li>Optionally one pool of threads dispatching the events of all shards.</li>
+ * </ul>
+ * Every shard is a normal {@link net.dv8tion.jda.JDA JDA} instance and can be restarted on its own.
+ */
+public class ShardManager
+{
+    public static final SimpleLog LOG = SimpleLog.getLog("JDAShardManager");
+
+    /**
+     * Milliseconds between two IDENTIFYs of the same concurrency bucket. Currently {@value #IDENTIFY_DELAY}.
+     */
+    public static final long IDENTIFY_DELAY = 5000;
+
+    private final JDABuilder template;
+    private final int shardsTotal;
+    private final int maxConcurrency;
+    private final JDAImpl[] shards;
+    private final long[] nextIdentify;
+    private final ExecutorService eventPool;
+    private final Map<String, UserReference> users = new ConcurrentHashMap<>();
+    private final ReferenceQueue<UserImpl> collectedUsers = new ReferenceQueue<>();
+    private final Map<String, Long> ratelimitTimeouts = new ConcurrentHashMap<>();
+    private volatile boolean shutdown = false;
+
+    ShardManager(JDABuilder template, int shardsTotal, int maxConcurrency, int eventPoolSize)
+    {
+        this.template = template;
+        this.shardsTotal = shardsTotal;
+        this.maxConcurrency = maxConcurrency;
+        this.shards = new JDAImpl[shardsTotal];
+        this.nextIdentify = new long[maxConcurrency];
+        if (eventPoolSize > 0)
+        {
+            AtomicInteger threadCount = new AtomicInteger(0);
+            this.eventPool = Executors.newFixedThreadPool(eventPoolSize, r ->
+            {
+                Thread thread = new Thread(r, "JDA Event Dispatch " + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        else
+        {
+            this.eventPool = null;
+        }
+    }
+
+    void start() throws LoginException
+    {
+        for (int i = 0; i < shardsTotal; i++)
+            startShard(i);
+    }
+
+    /**
+     * The total amount of shards.
+     *
+     * @return
+     *      The amount of shards managed by this ShardManager.
+     */
+    public int getShardsTotal()
+    {
+        return shardsTotal;
+    }
+
+    /**
+     * The JDA instance of a shard.
+     *
+     * @param shardId
+     *          The id of the shard.
+     * @return
+     *      The shard.
+     */
+    public synchronized JDA getShard(int shardId)
+    {
+        checkShardId(shardId);
+        return shards[shardId];
+    }
+
+    /**
+     * All shards that were started so far, ordered by their shard id.
+     *
+     * @return
+     *      The shards.
+     */
+    public synchronized List<JDA> getShards()
+    {
+        return Collections.unmodifiableList(Arrays.stream(shards).filter(Objects::nonNull).collect(Collectors.toList()));
+    }
+
+    /**
+     * The shard that receives the events of a guild.
+     *
+     * @param guildId
+     *          The id of the guild.
+     * @return
+     *      The shard responsible for the guild.
+     */
+    public JDA getShardForGuild(String guildId)
+    {
+        return getShard((int) ((Long.parseLong(guildId) >> 22) % shardsTotal));
+    }
+
+    /**
+     * The status of a shard.
+     *
+     * @param shardId
+     *          The id of the shard.
+     * @return
+     *      The status of the shard, {@link net.dv8tion.jda.JDA.Status#INITIALIZING INITIALIZING} if it wasn't started yet.
+     */
+    public JDA.Status getStatus(int shardId)
+    {
+        JDA shard = getShard(shardId);
+        return shard == null ? JDA.Status.INITIALIZING : shard.getStatus();
+    }
+
+    /**
+     * The status of every shard.
+     *
+     * @return
+     *      An ordered map of shard id to status.
+     */
+    public Map<Integer, JDA.Status> getStatuses()
+    {
+        Map<Integer, JDA.Status> statuses = new LinkedHashMap<>();
+        for (int i = 0; i < shardsTotal; i++)
+            statuses.put(i, getStatus(i));
+        return Collections.unmodifiableMap(statuses);
+    }
+
+    public Guild getGuildById(String id)
+    {
+        JDA shard = getShardForGuild(id);
+        return shard == null ? null : shard.getGuildById(id);
+    }
+
+    public List<Guild> getGuilds()
+    {
+        return getShards().stream().flatMap(jda -> jda.getGuilds().stream()).collect(Collectors.toList());
+    }
+
+    public TextChannel getTextChannelById(String id)
+    {
+        for (JDA shard : getShards())
+        {
+            TextChannel channel = shard.getTextChannelById(id);
+            if (channel != null)
+                return channel;
+        }
+        return null;
+    }
+
+    public VoiceChannel getVoiceChannelById(String id)
+    {
+        for (JDA shard : getShards())
+        {
+            VoiceChannel channel = shard.getVoiceChannelById(id);
+            if (channel != null)
+                return channel;
+        }
+        return null;
+    }
+
+    public User getUserById(String id)
+    {
+        for (JDA shard : getShards())
+        {
+            User user = shard.getUserById(id);
+            if (user != null)
+                return user;
+        }
+        return null;
+    }
+
+    /**
+     * All users known to any shard. Every user is only contained once, even if multiple shards know them.
+     *
+     * @return
+     *      The users of all shards.
+     */
+    public List<User> getUsers()
+    {
+        Set<User> users = Collections.newSetFromMap(new IdentityHashMap<>());
+        getShards().forEach(jda -> users.addAll(jda.getUsers()));
+        return new ArrayList<>(users);
+    }
+
+    /**
+     * Shuts down a single shard and starts a new session for it. The other shards are not affected.
+     *
+     * @param shardId
+     *          The id of the shard to restart.
+     * @throws LoginException
+     *          If the token was revoked in the meantime.
+     */
+    public void restart(int shardId) throws LoginException
+    {
+        checkShardId(shardId);
+        if (shutdown)
+            throw new IllegalStateException("Cannot restart a shard of a ShardManager that was shut down!");
+        JDAImpl old;
+        synchronized (this)
+        {
+            old = shards[shardId];
+        }
+        if (old != null && old.getStatus() != JDA.Status.SHUTDOWN)
+            old.shutdown(false);    //Unirest is shared by all shards and must stay open
+        startShard(shardId);
+    }
+
+    /**
+     * Shuts down all shards.
+     */
+    public void shutdown()
+    {
+        shutdown = true;
+        List<JDA> shards = getShards();
+        for (int i = 0; i < shards.size(); i++)
+        {
+            JDA shard = shards.get(i);
+            //Unirest is shared by all shards, so only the last one frees it.
+            if (shard.getStatus() != JDA.Status.SHUTDOWN)
+                shard.shutdown(i == shards.size() - 1);
+        }
+        if (eventPool != null)
+            eventPool.shutdown();
+    }
+
+    /**
+     * Schedules the IDENTIFY of a shard, respecting the limit of one IDENTIFY every {@value #IDENTIFY_DELAY}
+     * milliseconds per concurrency bucket. Called by the WebSocketClient of a shard.
+     *
+     * @param shardId
+     *          The id of the identifying shard.
+     * @param identify
+     *          Sends the IDENTIFY.
+     */
+    public void scheduleIdentify(int shardId, Runnable identify)
+    {
+        long delay;
+        synchronized (nextIdentify)
+        {
+            int bucket = shardId % maxConcurrency;
+            long now = System.currentTimeMillis();
+            long at = Math.max(now, nextIdentify[bucket]);
+            nextIdentify[bucket] = at + IDENTIFY_DELAY;
+            delay = at - now;
+        }
+        if (delay == 0)
+        {
+            identify.run();
+        }
+        else
+        {
+            LOG.debug("Shard " + shardId + " will identify in " + delay + "ms");
+            KeepAliveScheduler.scheduleOnce(identify, delay);
+        }
+    }
+
+    /**
+     * Returns the shared User object of the given id, or creates it. Called by the EntityBuilder of a shard.
+     * <br>Shared users don't belong to the shard that created them, their requests are sent by the
+     * {@link #getDefaultShard() default shard}.
+     *
+     * @param id
+     *          The id of the user.
+     * @return
+     *      The shared User object.
+     */
+    public UserImpl getOrCreateUser(String id)
+    {
+        //Users no shard knows anymore are collected, their entries are removed here.
+        Reference<? extends UserImpl> collected;
+        while ((collected = collectedUsers.poll()) != null)
+            users.remove(((UserReference) collected).id, collected);
+
+        UserImpl[] user = new UserImpl[1];
+        users.compute(id, (key, ref) ->
+        {
+            user[0] = ref == null ? null : ref.get();
+            if (user[0] != null)
+                return ref;
+            user[0] = new UserImpl(key, this);
+            return new UserReference(key, user[0], collectedUsers);
+        });
+        return user[0];
+    }
+
+    /**
+     * The shard used by objects shared by all shards, e.g. to open the private channel of a user.
+     * This is shard 0, which receives all private messages, or the first running shard while shard 0 is restarted.
+     *
+     * @return
+     *      The default shard.
+     */
+    public synchronized JDAImpl getDefaultShard()
+    {
+        for (JDAImpl shard : shards)
+        {
+            if (shard != null && shard.getStatus() != JDA.Status.SHUTDOWN)
+                return shard;
+        }
+        return shards[0];
+    }
+
+    public Map<String, Long> getRatelimitTimeouts()
+    {
+        return ratelimitTimeouts;
+    }
+
+    private void startShard(int shardId) throws LoginException
+    {
+        JDAImpl jda = template.buildShard(shardId, shardsTotal, this);
+        synchronized (this)
+        {
+            shards[shardId] = jda;
+        }
+    }
+
+    IEventManager wrapEventManager(IEventManager manager)
+    {
+        return eventPool == null ? manager : new DispatchingEventManager(manager, eventPool);
+    }
+
+    private void checkShardId(int shardId)
+    {
+        if (shardId < 0 || shardId >= shardsTotal)
+            throw new IllegalArgumentException("The shard id must be between 0 and " + (shardsTotal - 1) + "! Provided: " + shardId);
+    }
+
+    private static class UserReference extends WeakReference<UserImpl>
+    {
+        private final String id;
+
+        private UserReference(String id, UserImpl user, ReferenceQueue<UserImpl> queue)
+        {
+            super(user, queue);
+            this.id = id;
+        }
+    }
+
+    //Hands the events of one shard to the shared pool, one at a time, so every shard keeps its event order.
+    private static class DispatchingEventManager implements IEventManager
+    {
+        private static final int BATCH_SIZE = 64;
+
+        private final IEventManager manager;
+        private final Executor pool;
+        private final Queue<Event> queue = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger pending = new AtomicInteger(0);
+
+        DispatchingEventManager(IEventManager manager, Executor pool)
+        {
+            this.manager = manager;
+            this.pool = pool;
+        }
+
+        @Override
+        public void register(Object listener)
+        {
+            manager.register(listener);
+        }
+
+        @Override
+        public void unregister(Object listener)
+        {
+            manager.unregister(listener);
+        }
+
+        @Override
+        public void handle(Event event)
+        {
+            queue.add(event);
+            if (pending.getAndIncrement() == 0)
+                submit();
+        }
+
+        @Override
+        public List<Object> getRegisteredListeners()
+        {
+            return manager.getRegisteredListeners();
+        }
+
+        private void submit()
+        {
+            try
+            {
+                pool.execute(this::drain);
+            }
+            catch (RejectedExecutionException e)
+            {
+                //The pool was shut down, the remaining events (like the ShutdownEvent) are dispatched directly.
+                drain();
+            }
+        }
+
+        private void drain()
+        {
+            for (int i = 0; i < BATCH_SIZE; i++)
+            {
+                manager.handle(queue.poll());
+                if (pending.decrementAndGet() == 0)
+                    return;
+            }
+            //Give the other shards a turn before continuing.
+            submit();
+        }
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ *     Copyright 2015-2016 Austin Keener & Michael Ritter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.dv8tion.jda;
+
+import javax.security.auth.login.LoginException;
+
+/**
+ * Used to create a {@link net.dv8tion.jda.ShardManager ShardManager} that runs all shards of a bot in this JVM.
+ * <p>
+ * Every shard is configured like the provided {@link net.dv8tion.jda.JDABuilder JDABuilder}, including its token
+ * and listeners. Listeners are registered to every shard.
+ */
+public class ShardManagerBuilder
+{
+    protected final JDABuilder template;
+    protected final int shardsTotal;
+    protected int maxConcurrency = 1;
+    protected int eventPoolSize = 0;
+
+    /**
+     * Creates a ShardManagerBuilder.
+     *
+     * @param template
+     *          The JDABuilder used to configure every shard. Its sharding configuration is ignored.
+     * @param shardsTotal
+     *          The total amount of shards.
+     */
+    public ShardManagerBuilder(JDABuilder template, int shardsTotal)
+    {
+        if (template == null)
+            throw new IllegalArgumentException("The template JDABuilder cannot be null!");
+        if (shardsTotal < 2)
+            throw new IllegalArgumentException("A ShardManager needs at least 2 shards! Provided: " + shardsTotal);
+        this.template = template;
+        this.shardsTotal = shardsTotal;
+    }
+
+    /**
+     * Sets how many shards may IDENTIFY at the same time. Shard <code>n</code> identifies in bucket
+     * <code>n % maxConcurrency</code>, and each bucket identifies at most once every
+     * {@value net.dv8tion.jda.ShardManager#IDENTIFY_DELAY} milliseconds.
+     *
+     * Default is 1, which is the limit of normal bots.
+     *
+     * @param maxConcurrency
+     *      The amount of concurrent IDENTIFYs allowed for the bot.
+     * @return
+     *      Returns the {@link net.dv8tion.jda.ShardManagerBuilder ShardManagerBuilder} instance. Useful for chaining.
+     */
+    public ShardManagerBuilder setMaxConcurrency(int maxConcurrency)
+    {
+        if (maxConcurrency < 1)
+            throw new IllegalArgumentException("The max concurrency must be at least 1! Provided: " + maxConcurrency);
+        this.maxConcurrency = maxConcurrency;
+        return this;
+    }
+
+    /**
+     * Dispatches the events of all shards on a shared pool of the given size instead of the WebSocket thread of each
+     * shard. Events of a single shard are still dispatched one after another and in order, but entities may already
+     * have changed again when a listener receives an event.
+     *
+     * Default is 0, which dispatches the events on the WebSocket thread of each shard.
+     *
+     * @param threads
+     *      The amount of dispatching threads, or 0.
+     * @return
+     *      Returns the {@link net.dv8tion.jda.ShardManagerBuilder ShardManagerBuilder} instance. Useful for chaining.
+     */
+    public ShardManagerBuilder setEventPoolSize(int threads)
+    {
+        if (threads < 0)
+            throw new IllegalArgumentException("The event pool size cannot be negative! Provided: " + threads);
+        this.eventPoolSize = threads;
+        return this;
+    }
+
+    /**
+     * Creates the ShardManager and starts the login process of all shards. This returns once every shard was
+     * created, the IDENTIFYs of the shards are sent in the background as the rate-limit allows.
+     *
+     * @return
+     *      The started {@link net.dv8tion.jda.ShardManager ShardManager}.
+     * @throws LoginException
+     *          If the token of the template is invalid.
+     */
+    public ShardManager build() throws LoginException
+    {
+        ShardManager manager = new ShardManager(template, shardsTotal, maxConcurrency, eventPoolSize);
+        manager.start();
+        return manager;
+    }
+}
@@ -15,7 +15,6 @@
  */
 package net.dv8tion.jda.audio;
 
-import com.sun.jna.ptr.PointerByReference;
 import net.dv8tion.jda.JDA;
 import net.dv8tion.jda.entities.Guild;
 import net.dv8tion.jda.entities.User;
@@ -23,20 +22,15 @@ import net.dv8tion.jda.entities.VoiceChannel;
 import net.dv8tion.jda.entities.impl.JDAImpl;
 import net.dv8tion.jda.events.audio.AudioConnectEvent;
 import net.dv8tion.jda.events.audio.AudioTimeoutEvent;
+import net.dv8tion.jda.requests.KeepAliveScheduler;
+import net.dv8tion.jda.utils.MetricsRegistry;
 import net.dv8tion.jda.utils.SimpleLog;
 import org.apache.commons.lang3.tuple.Pair;
 import org.json.JSONObject;
-import tomp2p.opuswrapper.Opus;
 
 import java.net.*;
-import java.nio.ByteBuffer;
-import java.nio.IntBuffer;
-import java.nio.ShortBuffer;
 import java.util.*;
-import java.util.concurrent.ConcurrentLinkedQueue;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.*;
 
 public class AudioConnection
 {
@@ -52,7 +46,7 @@ public class AudioConnection
     private volatile AudioSendHandler sendHandler = null;
     private volatile AudioReceiveHandler receiveHandler = null;
 
-    private PointerByReference opusEncoder;
+    private final Encoder encoder;
     private volatile HashMap<Integer, String> ssrcMap = new HashMap<>();
     private volatile HashMap<Integer, Decoder> opusDecoders = new HashMap<>();
     private volatile HashMap<User, Queue<Pair<Long, short[]>>> combinedQueue = new HashMap<>();
@@ -62,6 +56,11 @@ public class AudioConnection
     private Thread receiveThread;
     private long queueTimeout;
 
+    private CompletableFuture<VoiceChannel> connectFuture;
+    private ScheduledFuture<?> setupTimeoutFuture;
+    private long setupTimeout;
+    private boolean setupFinished = false;
+
     private volatile boolean couldReceive = false;
     private volatile boolean speaking = false;      //Also acts as "couldProvide"
 
@@ -73,55 +72,83 @@ public class AudioConnection
         this.channel = channel;
         this.webSocket = webSocket;
         this.webSocket.audioConnection = this;
+        this.encoder = new Encoder();
+    }
 
-        IntBuffer error = IntBuffer.allocate(4);
-        opusEncoder =
-                Opus.INSTANCE.opus_encoder_create(OPUS_SAMPLE_RATE, OPUS_CHANNEL_COUNT, Opus.OPUS_APPLICATION_AUDIO, error);
+    /**
+     * Starts connecting the AudioWebSocket. The setup continues in the callbacks of the socket,
+     * no thread waits for it to finish.
+     *
+     * @param timeout
+     *          Milliseconds until the setup is aborted, or 0 to wait forever.
+     * @param connectFuture
+     *          Completed once the connection is ready, or exceptionally if the setup failed. May be null.
+     */
+    public void ready(long timeout, CompletableFuture<VoiceChannel> connectFuture)
+    {
+        synchronized (this)
+        {
+            this.setupTimeout = timeout;
+            this.connectFuture = connectFuture;
+            if (timeout > 0)
+                setupTimeoutFuture = KeepAliveScheduler.scheduleOnce(this::onSetupTimeout, timeout);
+        }
+        webSocket.startConnection();
     }
 
-    public void ready(long timeout)
+    //Called by the AudioWebSocket once Discord sent the session description.
+    void onReady()
     {
-        Thread readyThread = new Thread("AudioConnection Ready Guild: " + channel.getGuild().getId())
+        synchronized (this)
         {
-            @Override
-            public void run()
-            {
-                JDAImpl api = (JDAImpl) getJDA();
-                long started = System.currentTimeMillis();
-                boolean connectionTimeout = false;
-                while (!webSocket.isReady() && !connectionTimeout)
-                {
-                    if (timeout > 0 && System.currentTimeMillis() - started > timeout)
-                    {
-                        connectionTimeout = true;
-                        break;
-                    }
+            if (setupFinished)
+                return;
+            setupFinished = true;
+            if (setupTimeoutFuture != null)
+                setupTimeoutFuture.cancel(false);
+        }
+        JDAImpl api = (JDAImpl) getJDA();
+        this.udpSocket = webSocket.getUdpSocket();
+        setupSendThread();
+        setupReceiveThread();
+        api.getEventManager().handle(new AudioConnectEvent(api, channel));
+        if (connectFuture != null)
+            connectFuture.complete(channel);
+    }
 
-                    try
-                    {
-                        Thread.sleep(10);
-                    }
-                    catch (InterruptedException e)
-                    {
-                        LOG.log(e);
-                    }
-                }
-                if (!connectionTimeout)
-                {
-                    AudioConnection.this.udpSocket = webSocket.getUdpSocket();
-                    setupSendThread();
-                    setupReceiveThread();
-                    api.getEventManager().handle(new AudioConnectEvent(api, AudioConnection.this.channel));
-                }
-                else
-                {
-                    webSocket.close(false, AudioWebSocket.CONNECTION_SETUP_TIMEOUT);
-                    api.getEventManager().handle(new AudioTimeoutEvent(api, AudioConnection.this.channel, timeout));
-                }
-            }
-        };
-        readyThread.setDaemon(true);
-        readyThread.start();
+    //Called by the AudioWebSocket when it closes. Fails the setup if the connection never became ready.
+    void onClose(boolean regionChange, int disconnectCode)
+    {
+        synchronized (this)
+        {
+            if (setupTimeoutFuture != null)
+                setupTimeoutFuture.cancel(false);
+            if (setupFinished)
+                return;
+            setupFinished = true;
+        }
+        //On a region change the AudioManager hands the future to the connection with the new voice server.
+        if (regionChange || connectFuture == null)
+            return;
+        if (disconnectCode == AudioWebSocket.UDP_UNABLE_TO_CONNECT || disconnectCode == AudioWebSocket.WEBSOCKET_UNABLE_TO_CONNECT)
+            connectFuture.completeExceptionally(new ConnectException("Unable to connect to the voice server of Guild " + getGuild().getId()));
+        else
+            connectFuture.completeExceptionally(new IllegalStateException("The audio connection was closed before it finished connecting!"));
+    }
+
+    private void onSetupTimeout()
+    {
+        synchronized (this)
+        {
+            if (setupFinished)
+                return;
+            setupFinished = true;
+        }
+        JDAImpl api = (JDAImpl) getJDA();
+        webSocket.close(false, AudioWebSocket.CONNECTION_SETUP_TIMEOUT);
+        api.getEventManager().handle(new AudioTimeoutEvent(api, channel, setupTimeout));
+        if (connectFuture != null)
+            connectFuture.completeExceptionally(new TimeoutException("The audio connection was not ready after " + setupTimeout + "ms"));
     }
 
     public void setSendingHandler(AudioSendHandler handler)
@@ -141,6 +168,11 @@ public class AudioConnection
         this.queueTimeout = queueTimeout;
     }
 
+    public Encoder getEncoder()
+    {
+        return encoder;
+    }
+
     public VoiceChannel getChannel()
     {
         return channel;
@@ -195,8 +227,12 @@ public class AudioConnection
 //        setSpeaking(false);
         if (sendThread != null)
             sendThread.interrupt();
+        else
+            encoder.close();    //Otherwise the SendThread destroys the encoder once it stops using it.
         if (receiveThread != null)
             receiveThread.interrupt();
+        if (combinedAudioExecutor != null)
+            combinedAudioExecutor.shutdownNow();
         webSocket.close(regionChange, -1);
     }
 
@@ -213,6 +249,8 @@ public class AudioConnection
                     int timestamp = 0;      //Used to sync up our packets within the same timeframe of other people talking.
                     long lastFrameSent = System.currentTimeMillis();
                     boolean sentSilenceOnConnect = false;
+                    MetricsRegistry metrics = ((JDAImpl) getJDA()).getMetrics();
+                    String guildId = channel.getGuild().getId();
                     while (!udpSocket.isClosed() && !this.isInterrupted())
                     {
                         try
@@ -232,12 +270,21 @@ public class AudioConnection
                                 {
                                     if (!sendHandler.isOpus())
                                     {
-                                        rawAudio = encodeToOpus(rawAudio);
+                                        rawAudio = encoder.encodeToOpus(rawAudio, channel.getBitrate());
+                                    }
+                                    if (rawAudio == null)
+                                    {
+                                        //Opus failed to encode this frame, the encoder already logged it.
+                                        metrics.increment(MetricsRegistry.AUDIO_FRAMES_MISSED, guildId);
+                                        continue;
                                     }
                                     AudioPacket packet = new AudioPacket(seq, timestamp, webSocket.getSSRC(), rawAudio);
                                     if (!speaking)
                                         setSpeaking(true);
                                     udpSocket.send(packet.asEncryptedUdpPacket(webSocket.getAddress(), webSocket.getSecretKey()));
+                                    metrics.increment(MetricsRegistry.AUDIO_FRAMES_SENT, guildId);
+                                    if (System.currentTimeMillis() - lastFrameSent > OPUS_FRAME_TIME_AMOUNT)
+                                        metrics.increment(MetricsRegistry.AUDIO_FRAMES_LATE, guildId);
             
                                     if (seq + 1 > Character.MAX_VALUE)
                                         seq = 0;
@@ -299,10 +346,15 @@ public class AudioConnection
                             }
                             else
                             {
-                                lastFrameSent = System.currentTimeMillis(); // else reset lastFrameSent to current time
+                                //The frames of the slots that were skipped are lost.
+                                long now = System.currentTimeMillis();
+                                if (speaking)
+                                    metrics.count(MetricsRegistry.AUDIO_FRAMES_MISSED, guildId, (now - lastFrameSent) / OPUS_FRAME_TIME_AMOUNT - 1);
+                                lastFrameSent = now; // else reset lastFrameSent to current time
                             }
                         }
                     }
+                    encoder.close();
                 }
             };
             sendThread.setPriority((Thread.NORM_PRIORITY + Thread.MAX_PRIORITY) / 2);
@@ -330,41 +382,67 @@ public class AudioConnection
                         {
                             LOG.log(e);
                         }
+                        MetricsRegistry metrics = ((JDAImpl) getJDA()).getMetrics();
+                        String guildId = channel.getGuild().getId();
                         while (!udpSocket.isClosed() && !this.isInterrupted())
                         {
                             DatagramPacket receivedPacket = new DatagramPacket(new byte[1920], 1920);
                             try
                             {
                                 udpSocket.receive(receivedPacket);
-                
-                                if (receiveHandler != null && (receiveHandler.canReceiveUser() || receiveHandler.canReceiveCombined()) && webSocket.getSecretKey() != null)
+                                //Too short to be audio. Also returned when the socket is closed while receiving.
+                                if (receivedPacket.getLength() < AudioPacket.RTP_HEADER_BYTE_LENGTH)
+                                    continue;
+
+                                if (receiveHandler != null && (receiveHandler.canReceiveUser() || receiveHandler.canReceiveCombined() || receiveHandler.canReceiveEncoded()) && webSocket.getSecretKey() != null)
                                 {
                                     if (!couldReceive)
                                     {
                                         couldReceive = true;
                                         sendSilentPackets();
                                     }
-                                    AudioPacket decryptedPacket = AudioPacket.decryptAudioPacket(receivedPacket, webSocket.getSecretKey());
-                
-                                    String userId = ssrcMap.get(decryptedPacket.getSSRC());
-                                    Decoder decoder = opusDecoders.get(decryptedPacket.getSSRC());
+                                    //The RTP header isn't encrypted. Everything that can be decided from it and the length
+                                    // of the packet is decided before decrypting and decoding the audio.
+                                    AudioPacket encryptedPacket = new AudioPacket(receivedPacket);
+                                    boolean silent = encryptedPacket.isSilent(true);
+
+                                    String userId = ssrcMap.get(encryptedPacket.getSSRC());
+                                    Decoder decoder = opusDecoders.get(encryptedPacket.getSSRC());
                                     if (userId == null)
                                     {
-                                        byte[] audio = decryptedPacket.getEncodedAudio();
-                                        if (!Arrays.equals(audio, silenceBytes))
+                                        if (!silent)
                                             LOG.debug("Received audio data with an unknown SSRC id.");
                                     }
+                                    else if (silent)
+                                    {
+                                        LOG.trace("Got silent audio packet. Skipping decode.");
+                                        //Silence still uses up sequence numbers, it must not be counted as lost later.
+                                        if (decoder != null && decoder.isInOrder(encryptedPacket.getSequence()))
+                                            decoder.skip(encryptedPacket);
+                                    }
                                     else if (decoder == null)
                                         LOG.warn("Received audio data with known SSRC, but opus decoder for this SSRC was null. uh..HOW?!");
-                                    else if (!decoder.isInOrder(decryptedPacket.getSequence()))
+                                    else if (!decoder.isInOrder(encryptedPacket.getSequence()))
                                         LOG.trace("Got out-of-order audio packet. Ignoring.");
                                     else
                                     {
                                         User user = getJDA().getUserById(userId);
                                         if (user == null)
                                             LOG.warn("Received audio data with a known SSRC, but the userId associate with the SSRC is unknown to JDA!");
-                                        else
+                                        else if (receiveHandler.shouldReceiveUser(user))
                                         {
+                                            metrics.increment(MetricsRegistry.AUDIO_PACKETS_RECEIVED, guildId);
+                                            int lost = decoder.countLostPackets(encryptedPacket.getSequence());
+                                            if (lost > 0)
+                                                metrics.count(MetricsRegistry.AUDIO_PACKETS_LOST, guildId, lost);
+                                            AudioPacket decryptedPacket = AudioPacket.decryptAudioPacket(encryptedPacket, webSocket.getSecretKey());
+                                            if (receiveHandler.canReceiveEncoded())
+                                                receiveHandler.handleEncodedAudio(user, decryptedPacket);
+                                            if (!receiveHandler.canReceiveUser() && !receiveHandler.canReceiveCombined())
+                                            {
+                                                decoder.skip(decryptedPacket);
+                                                continue;
+                                            }
 //                                            if (decoder.wasPacketLost(decryptedPacket.getSequence()))
 //                                            {
 //                                                LOG.debug("Packet(s) missed. Using Opus packetloss-compensation.");
@@ -380,6 +458,7 @@ public class AudioConnection
                                             }
                                             else
                                             {
+                                                metrics.increment(MetricsRegistry.AUDIO_PACKETS_DECODED, guildId);
                                                 if (receiveHandler.canReceiveUser())
                                                 {
                                                     receiveHandler.handleUserAudio(new UserAudio(user, decodedAudio));
@@ -471,24 +550,7 @@ public class AudioConnection
             
                         if (!audioParts.isEmpty())
                         {
-                            int audioLength = audioParts.get(0).length;
-                            short[] mix = new short[1920];  //960 PCM samples for each channel
-                            int sample;
-                            for (int i = 0; i < audioLength; i++)
-                            {
-                                sample = 0;
-                                for (short[] audio : audioParts)
-                                {
-                                    sample += audio[i];
-                                }
-                                if (sample > Short.MAX_VALUE)
-                                    mix[i] = Short.MAX_VALUE;
-                                else if (sample < Short.MIN_VALUE)
-                                    mix[i] = Short.MIN_VALUE;
-                                else
-                                    mix[i] = (short) sample;
-                            }
-                            receiveHandler.handleCombinedAudio(new CombinedAudio(users, mix));
+                            receiveHandler.handleCombinedAudio(new CombinedAudio(users, mix(audioParts)));
                         }
                         else
                         {
@@ -505,30 +567,34 @@ public class AudioConnection
         }
     }
 
-    private byte[] encodeToOpus(byte[] rawAudio)
+    /**
+     * Adds up the 20ms of PCM audio of each user, clipping the sum to the range of a short.
+     *
+     * @param audioParts
+     *          The decoded audio of each user, all of the same length.
+     * @return
+     *      The mixed audio. (960 PCM samples for each channel)
+     */
+    static short[] mix(List<short[]> audioParts)
     {
-        ShortBuffer nonEncodedBuffer = ShortBuffer.allocate(rawAudio.length / 2);
-        ByteBuffer encoded = ByteBuffer.allocate(4096);
-        for (int i = 0; i < rawAudio.length; i += 2)
+        int audioLength = audioParts.get(0).length;
+        short[] mix = new short[1920];  //960 PCM samples for each channel
+        int sample;
+        for (int i = 0; i < audioLength; i++)
         {
-            int firstByte =  (0x000000FF & rawAudio[i]);      //Promotes to int and handles the fact that it was unsigned.
-            int secondByte = (0x000000FF & rawAudio[i + 1]);  //
-
-            //Combines the 2 bytes into a short. Opus deals with unsigned shorts, not bytes.
-            short toShort = (short) ((firstByte << 8) | secondByte);
-
-            nonEncodedBuffer.put(toShort);
+            sample = 0;
+            for (short[] audio : audioParts)
+            {
+                sample += audio[i];
+            }
+            if (sample > Short.MAX_VALUE)
+                mix[i] = Short.MAX_VALUE;
+            else if (sample < Short.MIN_VALUE)
+                mix[i] = Short.MIN_VALUE;
+            else
+                mix[i] = (short) sample;
         }
-        nonEncodedBuffer.flip();
-
-        //TODO: check for 0 / negative value for error.
-        int result = Opus.INSTANCE.opus_encode(opusEncoder, nonEncodedBuffer, OPUS_FRAME_SIZE, encoded, encoded.capacity());
-
-        //ENCODING STOPS HERE
-
-        byte[] audio = new byte[result];
-        encoded.get(audio);
-        return audio;
+        return mix;
     }
 
     private void setSpeaking(boolean isSpeaking)
@@ -30,6 +30,14 @@ public class AudioPacket
 {
     public static final int RTP_HEADER_BYTE_LENGTH = 12;
     public static final int XSALSA20_NONCE_LENGTH = 24;
+    public static final int XSALSA20_MAC_LENGTH = 16;
+
+    /**
+     * Opus packets of at most this many bytes carry no audio. A packet is a TOC byte followed by its frames, and
+     * 20ms frames of 2 bytes or less are either DTX frames (0 or 1 byte) or digital silence, like the
+     * <code>0xF8, 0xFF, 0xFE</code> sent by Discord and JDA when a stream stops.
+     */
+    public static final int MAX_SILENT_OPUS_LENGTH = 3;
 
     /**
      * Bit index 0 and 1 represent the RTP Protocol version used. Discord uses the latest RTP protocol version, 2.<br>
@@ -128,6 +136,21 @@ public class AudioPacket
         return timestamp;
     }
 
+    /**
+     * Whether the Opus audio of this packet is silence, judged by its length alone. This works for encrypted
+     * packets as well, which allows dropping silent packets without decrypting them.
+     *
+     * @param encrypted
+     *          Whether the audio of this packet is still encrypted.
+     * @return
+     *      True, if the packet carries no audio.
+     */
+    public boolean isSilent(boolean encrypted)
+    {
+        int length = encodedAudio.length - (encrypted ? XSALSA20_MAC_LENGTH : 0);
+        return length <= MAX_SILENT_OPUS_LENGTH;
+    }
+
     public DatagramPacket asUdpPacket(InetSocketAddress address)
     {
         //We use getRawPacket() instead of the rawPacket variable so that we get a copy of the array instead of the
@@ -166,9 +189,13 @@ public class AudioPacket
     }
 
     public static AudioPacket decryptAudioPacket(DatagramPacket packet, byte[] secretKey)
+    {
+        return decryptAudioPacket(new AudioPacket(packet), secretKey);
+    }
+
+    public static AudioPacket decryptAudioPacket(AudioPacket encryptedPacket, byte[] secretKey)
     {
         TweetNaclFast.SecretBox boxer = new TweetNaclFast.SecretBox(secretKey);
-        AudioPacket encryptedPacket = new AudioPacket(packet);
 
         byte[] extendedNonce = new byte[XSALSA20_NONCE_LENGTH];
         System.arraycopy(encryptedPacket.getNonce(), 0, extendedNonce, 0, RTP_HEADER_BYTE_LENGTH);
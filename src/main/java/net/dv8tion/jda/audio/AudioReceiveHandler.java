@@ -46,6 +46,52 @@ public interface AudioReceiveHandler
      */
     boolean canReceiveUser();
 
+    /**
+     * Filters the users audio is received from. Packets of users this method returns false for are dropped before
+     * they are decrypted or decoded, so they are neither provided to {@link #handleUserAudio(UserAudio)} nor mixed into
+     * the {@link #handleCombinedAudio(CombinedAudio) combined audio}.<br>
+     * This is called for every received packet, so it should be cheap, like a lookup in a Set.
+     *
+     * @param user
+     *          The {@link net.dv8tion.jda.entities.User User} that sent audio.
+     * @return
+     *      If true, the audio of this user is received.<br>
+     *      Default - True.
+     */
+    default boolean shouldReceiveUser(User user)
+    {
+        return true;
+    }
+
+    /**
+     * If this method returns true, JDA will provide the Opus audio of every user to
+     * {@link #handleEncodedAudio(User, AudioPacket)} without decoding it.<br>
+     * If neither {@link #canReceiveUser()} nor {@link #canReceiveCombined()} return true, received audio isn't decoded at all.
+     *
+     * @return
+     *      If true, JDA provides the received Opus packets.<br>
+     *      Default - False.
+     */
+    default boolean canReceiveEncoded()
+    {
+        return false;
+    }
+
+    /**
+     * If {@link #canReceiveEncoded()} returns true, JDA will provide every non-silent Opus packet a user sends to this method.
+     * Silent packets are not provided, gaps in the {@link net.dv8tion.jda.audio.AudioPacket#getTimestamp() RTP timestamps}
+     * (48KHz clock) of consecutive packets of a user are periods of silence.<p>
+     *
+     * This is called on the thread receiving the audio, so slow work should be handed to another thread.
+     *
+     * @param user
+     *          Never-null {@link net.dv8tion.jda.entities.User User} that sent the packet.
+     * @param packet
+     *          The decrypted packet. {@link net.dv8tion.jda.audio.AudioPacket#getEncodedAudio() getEncodedAudio()}
+     *          provides the Opus audio.
+     */
+    default void handleEncodedAudio(User user, AudioPacket packet) {}
+
     /**
      * If {@link #canReceiveCombined()} returns true, JDA will provide a {@link net.dv8tion.jda.audio.CombinedAudio CombinedAudio}
      * object to this method <b>every 20 milliseconds</b>. The data provided by CombinedAudio is all audio that occured
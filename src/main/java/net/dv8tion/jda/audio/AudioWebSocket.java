@@ -24,6 +24,7 @@ import net.dv8tion.jda.events.audio.AudioDisconnectEvent;
 import net.dv8tion.jda.events.audio.AudioRegionChangeEvent;
 import net.dv8tion.jda.events.audio.AudioUnableToConnectEvent;
 import net.dv8tion.jda.managers.impl.AudioManagerImpl;
+import net.dv8tion.jda.requests.KeepAliveScheduler;
 import net.dv8tion.jda.utils.SimpleLog;
 import org.apache.http.HttpHost;
 import org.json.JSONArray;
@@ -35,6 +36,10 @@ import java.nio.ByteBuffer;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class AudioWebSocket extends WebSocketAdapter
 {
@@ -48,15 +53,42 @@ public class AudioWebSocket extends WebSocketAdapter
     public static final int WEBSOCKET_READ_TIMEOUT = 1008;
     public static final int CONNECTION_SETUP_TIMEOUT = -41;
     public static final int UDP_UNABLE_TO_CONNECT = -42;
+    public static final int WEBSOCKET_UNABLE_TO_CONNECT = -43;
+
+    /**
+     * The stages of the voice connection setup. Each stage is entered from a callback of the socket.
+     */
+    public enum Stage
+    {
+        /** The WebSocket is connecting. */
+        CONNECTING,
+        /** The identify (op 0) was sent, waiting for the ssrc and UDP port (op 2). */
+        IDENTIFYING,
+        /** The UDP discovery finished and the protocol (op 1) was selected, waiting for the secret key (op 4). */
+        AWAITING_SESSION,
+        /** Audio can be sent and received. */
+        READY,
+        /** The connection was closed. */
+        CLOSED
+    }
+
+    //The blocking WebSocket handshakes run here instead of on the thread handling the VOICE_SERVER_UPDATE.
+    private static final AtomicInteger CONNECT_THREAD_COUNT = new AtomicInteger(0);
+    private static final ExecutorService CONNECT_POOL = Executors.newCachedThreadPool(r ->
+    {
+        Thread thread = new Thread(r, "JDA AudioConnect " + CONNECT_THREAD_COUNT.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    });
 
     protected AudioConnection audioConnection;
 
     private final JDAImpl api;
     private final Guild guild;
     private final HttpHost proxy;
-    private boolean connected = false;
-    private boolean ready = false;
-    private Thread keepAliveThread;
+    private volatile boolean connected = false;
+    private volatile Stage stage = Stage.CONNECTING;
+    private ScheduledFuture<?> keepAliveFuture;
     public WebSocket socket;
     private String endpoint;
     private String wssEndpoint;
@@ -70,7 +102,7 @@ public class AudioWebSocket extends WebSocketAdapter
 
     private DatagramSocket udpSocket;
     private InetSocketAddress address;
-    private Thread udpKeepAliveThread;
+    private ScheduledFuture<?> udpKeepAliveFuture;
 
     public AudioWebSocket(String endpoint, JDAImpl api, Guild guild, String sessionId, String token)
     {
@@ -80,8 +112,14 @@ public class AudioWebSocket extends WebSocketAdapter
         this.sessionId = sessionId;
         this.token = token;
 
-        //Append the Secure Websocket scheme so that our websocket library knows how to connect
-        if (!endpoint.startsWith("wss://"))
+        //Append the Secure Websocket scheme so that our websocket library knows how to connect.
+        //Local voice servers used for testing are given with their scheme and port, e.g. ws://localhost:8081
+        if (endpoint.startsWith("wss://") || endpoint.startsWith("ws://"))
+        {
+            wssEndpoint = endpoint;
+            this.endpoint = URI.create(endpoint).getHost();
+        }
+        else
             wssEndpoint = "wss://" + endpoint;
 
         if (sessionId == null || sessionId.isEmpty())
@@ -101,15 +139,34 @@ public class AudioWebSocket extends WebSocketAdapter
         {
             socket = factory.createSocket(wssEndpoint)
                     .addListener(this);
-            socket.connect();
         }
-        catch (IOException | WebSocketException e)
+        catch (IOException e)
         {
             //Completely fail here. We couldn't make the connection.
             throw new RuntimeException(e);
         }
     }
 
+    /**
+     * Connects the socket in the background. Called by the {@link net.dv8tion.jda.audio.AudioConnection AudioConnection}
+     * once it's ready to receive the callbacks of this socket.
+     */
+    public void startConnection()
+    {
+        CONNECT_POOL.execute(() ->
+        {
+            try
+            {
+                socket.connect();
+            }
+            catch (WebSocketException e)
+            {
+                LOG.warn("Unable to connect to the voice server " + wssEndpoint + ": " + e.getMessage());
+                close(false, WEBSOCKET_UNABLE_TO_CONNECT);
+            }
+        });
+    }
+
     public void send(String message)
     {
         socket.sendText(message);
@@ -128,6 +185,7 @@ public class AudioWebSocket extends WebSocketAdapter
                 );
         send(connectObj.toString());
         connected = true;
+        stage = Stage.IDENTIFYING;
     }
 
     @Override
@@ -160,7 +218,7 @@ public class AudioWebSocket extends WebSocketAdapter
                     }
                 } while (externalIpAndPort == null);
 
-                setupUdpKeepAliveThread();
+                setupUdpKeepAlive();
 
                 send(new JSONObject()
                         .put("op", 1)
@@ -173,13 +231,13 @@ public class AudioWebSocket extends WebSocketAdapter
                             )
                         )
                         .toString());
-                setupKeepAliveThread(heartbeatInterval);
-
+                setupKeepAlive(heartbeatInterval);
+                stage = Stage.AWAITING_SESSION;
                 break;
             }
             case HEARTBEAT_PING_RETURN:
             {
-                if (LOG.getEffectiveLevel().getPriority() <= SimpleLog.Level.TRACE.getPriority())
+                if (LOG.isEnabled(SimpleLog.Level.TRACE))
                 {
                     long timePingSent  = contentAll.getLong("d");
                     long ping = System.currentTimeMillis() - timePingSent;
@@ -197,7 +255,8 @@ public class AudioWebSocket extends WebSocketAdapter
                     secretKey[i] = (byte) keyArray.getInt(i);
 
                 LOG.trace("Audio connection has finished connecting!");
-                ready = true;
+                stage = Stage.READY;
+                audioConnection.onReady();
                 break;
             }
             case USER_SPEAKING_UPDATE:
@@ -261,12 +320,16 @@ public class AudioWebSocket extends WebSocketAdapter
 
     public void close(boolean regionChange, int disconnectCode)
     {
-        //Makes sure we don't run this method again after the socket.close(1000) call fires onDisconnect
-        if (shutdown)
-            return;
+        //Makes sure we don't run this method again after the socket.close(1000) call fires onDisconnect.
+        //The setup timeout and the connect pool may close the socket concurrently to the socket callbacks.
+        synchronized (this)
+        {
+            if (shutdown)
+                return;
+            shutdown = true;
+        }
         connected = false;
-        ready = false;
-        shutdown = true;
+        stage = Stage.CLOSED;
         if (!regionChange)
         {
             JSONObject obj = new JSONObject()
@@ -279,26 +342,29 @@ public class AudioWebSocket extends WebSocketAdapter
                     );
             api.getClient().send(obj.toString());
         }
-        if (keepAliveThread != null)
+        if (keepAliveFuture != null)
         {
-            keepAliveThread.interrupt();
-            keepAliveThread = null;
+            keepAliveFuture.cancel(false);
+            keepAliveFuture = null;
         }
-        if (udpKeepAliveThread != null)
+        if (udpKeepAliveFuture != null)
         {
-            udpKeepAliveThread.interrupt();
-            udpKeepAliveThread = null;
+            udpKeepAliveFuture.cancel(false);
+            udpKeepAliveFuture = null;
         }
         if (udpSocket != null)
             udpSocket.close();
         if (socket != null && socket.isOpen())
             socket.sendClose(1000);
 
+        if (audioConnection != null)
+            audioConnection.onClose(regionChange, disconnectCode);
+
         AudioManagerImpl manager = (AudioManagerImpl) guild.getAudioManager();
         VoiceChannel disconnectedChannel = manager.getConnectedChannel();
         manager.setAudioConnection(null);
 
-        if (disconnectCode == WEBSOCKET_READ_TIMEOUT || disconnectCode == UDP_UNABLE_TO_CONNECT)
+        if (disconnectCode == WEBSOCKET_READ_TIMEOUT || disconnectCode == UDP_UNABLE_TO_CONNECT || disconnectCode == WEBSOCKET_UNABLE_TO_CONNECT)
         {
             LOG.warn("Unexpected disconnect of Audio Connection to guild: " + guild.getId());
             manager.setUnexpectedDisconnectChannel(disconnectedChannel);
@@ -315,6 +381,7 @@ public class AudioWebSocket extends WebSocketAdapter
                     //Handled in AudioConnection
                     break;
                 case UDP_UNABLE_TO_CONNECT:
+                case WEBSOCKET_UNABLE_TO_CONNECT:
                     api.getEventManager().handle(new AudioUnableToConnectEvent(api, disconnectedChannel));
                     break;
                 default:
@@ -348,7 +415,12 @@ public class AudioWebSocket extends WebSocketAdapter
     }
     public boolean isReady()
     {
-        return ready;
+        return stage == Stage.READY;
+    }
+
+    public Stage getStage()
+    {
+        return stage;
     }
 
     private InetSocketAddress handleUdpDiscovery(InetSocketAddress address, int ssrc)
@@ -417,79 +489,48 @@ public class AudioWebSocket extends WebSocketAdapter
         }
     }
 
-    private void setupUdpKeepAliveThread()
+    private void setupUdpKeepAlive()
     {
-        udpKeepAliveThread = new Thread("AudioWebSocket UDP-KeepAlive Guild: " + guild.getId())
+        ByteBuffer buffer = ByteBuffer.allocate(Long.BYTES + 1);
+        buffer.put((byte)0xC9);
+        buffer.putLong(0);
+        DatagramPacket keepAlivePacket = new DatagramPacket(buffer.array(), buffer.array().length, address);
+
+        //Send a keepAlivePacket every 5 seconds.
+        udpKeepAliveFuture = KeepAliveScheduler.schedule(() ->
         {
-            @Override
-            public void run()
+            if (!socket.isOpen() || udpSocket.isClosed())
+                return;
+            try
             {
-                while (socket.isOpen() && !udpSocket.isClosed() && !this.isInterrupted())
-                {
-                    long seq = 0;
-                    try
-                    {
-                        ByteBuffer buffer = ByteBuffer.allocate(Long.BYTES + 1);
-                        buffer.put((byte)0xC9);
-                        buffer.putLong(seq);
-                        DatagramPacket keepAlivePacket = new DatagramPacket(buffer.array(), buffer.array().length, address);
-                        udpSocket.send(keepAlivePacket);
-
-                        Thread.sleep(5000); //Wait 5 seconds to send next keepAlivePacket.
-                    }
-                    catch (NoRouteToHostException e)
-                    {
-                        LOG.warn("Closing AudioConnection due to inability to ping audio packets.");
-                        LOG.warn("Cannot send audio packet because JDA navigate the route to Discord.\n" +
-                                "Are you sure you have internet connection? It is likely that you've lost connection.");
-                        AudioWebSocket.this.close(true, -1);
-                        break;
-                    }
-                    catch (IOException e)
-                    {
-                        LOG.log(e);
-                    }
-                    catch (InterruptedException e)
-                    {
-                        //We were asked to close.
-//                        e.printStackTrace();
-                    }
-                }
+                udpSocket.send(keepAlivePacket);
             }
-        };
-        udpKeepAliveThread.setPriority(Thread.NORM_PRIORITY + 1);
-        udpKeepAliveThread.setDaemon(true);
-        udpKeepAliveThread.start();
+            catch (NoRouteToHostException e)
+            {
+                LOG.warn("Closing AudioConnection due to inability to ping audio packets.");
+                LOG.warn("Cannot send audio packet because JDA navigate the route to Discord.\n" +
+                        "Are you sure you have internet connection? It is likely that you've lost connection.");
+                AudioWebSocket.this.close(true, -1);
+            }
+            catch (IOException e)
+            {
+                LOG.log(e);
+            }
+        }, 0, 5000);
     }
 
-    private void setupKeepAliveThread(int keepAliveInterval)
+    private void setupKeepAlive(int keepAliveInterval)
     {
-        keepAliveThread = new Thread("AudioWebSocket WS-KeepAlive Guild: " + guild.getId())
+        keepAliveFuture = KeepAliveScheduler.schedule(() ->
         {
-            @Override
-            public void run()
+            if (socket.isOpen())
             {
-                while (socket.isOpen() && !this.isInterrupted())
-                {
-                    send(new JSONObject()
-                            .put("op", 3)
-                            .put("d", System.currentTimeMillis())
-                            .toString());
-                    try
-                    {
-                        Thread.sleep(keepAliveInterval);
-                    }
-                    catch (InterruptedException e)
-                    {
-                        //We were asked to close.
-//                        e.printStackTrace();
-                    }
-                }
+                send(new JSONObject()
+                        .put("op", 3)
+                        .put("d", System.currentTimeMillis())
+                        .toString());
             }
-        };
-        keepAliveThread.setPriority(Thread.MAX_PRIORITY);
-        keepAliveThread.setDaemon(true);
-        keepAliveThread.start();
+        }, 0, keepAliveInterval);
     }
 }
 
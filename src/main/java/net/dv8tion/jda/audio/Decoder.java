@@ -26,12 +26,15 @@ import java.nio.ShortBuffer;
  */
 public class Decoder
 {
+    //10 seconds of 20ms packets
+    protected static final int MAX_LOST_PACKETS = 500;
+
     protected int ssrc;
     protected char lastSeq;
     protected int lastTimestamp;
     protected PointerByReference opusDecoder;
 
-    protected Decoder(int ssrc)
+    public Decoder(int ssrc)
     {
         this.ssrc = ssrc;
         this.lastSeq = (char) -1;
@@ -53,7 +56,19 @@ public class Decoder
         return newSeq > lastSeq + 1;
     }
 
-    protected short[] decodeFromOpus(AudioPacket decryptedPacket)
+    /**
+     * The amount of packets missing between the last packet and the given in-order packet.
+     * Gaps of more than {@value #MAX_LOST_PACKETS} packets are treated as a restarted sequence instead.
+     */
+    protected int countLostPackets(char newSeq)
+    {
+        if (lastSeq == (char) -1)
+            return 0;
+        int lost = (char) (newSeq - lastSeq - 1);
+        return lost > MAX_LOST_PACKETS ? 0 : lost;
+    }
+
+    public short[] decodeFromOpus(AudioPacket decryptedPacket)
     {
         int result;
         ShortBuffer decoded = ShortBuffer.allocate(4096);
@@ -85,7 +100,14 @@ public class Decoder
         return audio;
     }
 
-    protected void close()
+    //Used instead of decodeFromOpus when the audio of a packet isn't decoded, so the order is still tracked.
+    protected void skip(AudioPacket packet)
+    {
+        this.lastSeq = packet.getSequence();
+        this.lastTimestamp = packet.getTimestamp();
+    }
+
+    public void close()
     {
         Opus.INSTANCE.opus_decoder_destroy(opusDecoder);
     }
@@ -0,0 +1,220 @@
+/*
+ *     Copyright 2015-2016 Austin Keener & Michael Ritter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.dv8tion.jda.audio;
+
+import com.sun.jna.ptr.PointerByReference;
+import net.dv8tion.jda.utils.SimpleLog;
+import tomp2p.opuswrapper.Opus;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+
+/**
+ * Class that wraps functionality around the Opus encoder.
+ * <p>
+ * The PCM and packet buffers are direct buffers that are allocated once per encoder and handed to libopus as-is,
+ * so encoding a frame does not allocate anything besides the resulting packet array.<br>
+ * Encoder settings may be changed from any thread. They are applied by the sending thread right before the next
+ * frame is encoded, because libopus does not allow <code>opus_encoder_ctl</code> to run concurrently with
+ * <code>opus_encode</code>.
+ */
+public class Encoder
+{
+    public static final SimpleLog LOG = SimpleLog.getLog("JDAOpusEncoder");
+
+    /**
+     * Bitrate value which makes the encoder follow the bitrate of the connected
+     * {@link net.dv8tion.jda.entities.VoiceChannel VoiceChannel}.
+     */
+    public static final int BITRATE_AUTO = -1;
+    public static final int DEFAULT_COMPLEXITY = 10;
+    public static final int MAX_PACKET_SIZE = 4000;     //Recommended maximum packet size by the libopus documentation.
+
+    protected PointerByReference opusEncoder;
+    protected final ShortBuffer pcmBuffer;
+    protected final ByteBuffer packetBuffer;
+
+    protected volatile int bitrate = BITRATE_AUTO;
+    protected volatile int complexity = DEFAULT_COMPLEXITY;
+    protected volatile boolean inbandFec = false;
+    protected volatile int packetLossPercent = 0;
+    protected volatile boolean dtx = false;
+    protected volatile boolean settingsChanged = true;
+
+    protected int appliedBitrate = BITRATE_AUTO;
+    protected int errorCount = 0;
+
+    public Encoder()
+    {
+        IntBuffer error = IntBuffer.allocate(1);
+        opusEncoder = Opus.INSTANCE.opus_encoder_create(AudioConnection.OPUS_SAMPLE_RATE,
+                AudioConnection.OPUS_CHANNEL_COUNT, Opus.OPUS_APPLICATION_AUDIO, error);
+        if (error.get(0) != Opus.OPUS_OK || opusEncoder == null)
+            throw new IllegalStateException("Could not create the Opus encoder: " + Opus.INSTANCE.opus_strerror(error.get(0)));
+
+        //Direct buffers in native order can be handed to libopus without JNA copying them for every call.
+        pcmBuffer = ByteBuffer.allocateDirect(AudioConnection.OPUS_FRAME_SIZE * AudioConnection.OPUS_CHANNEL_COUNT * 2)
+                .order(ByteOrder.nativeOrder()).asShortBuffer();
+        packetBuffer = ByteBuffer.allocateDirect(MAX_PACKET_SIZE);
+    }
+
+    /**
+     * Encodes 20 milliseconds of 48KHz 16bit stereo signed BigEndian PCM into a single Opus packet.
+     *
+     * @param rawAudio
+     *          The PCM data as defined by {@link net.dv8tion.jda.audio.AudioSendHandler#INPUT_FORMAT}.
+     * @param channelBitrate
+     *          The bitrate of the currently connected VoiceChannel. Used if the bitrate is set to {@link #BITRATE_AUTO}.
+     * @return
+     *      The encoded Opus packet, or <code>null</code> if libopus reported an error while encoding.
+     */
+    public byte[] encodeToOpus(byte[] rawAudio, int channelBitrate)
+    {
+        applySettings(channelBitrate);
+
+        //Opus expects native-order shorts, the provided audio is BigEndian.
+        int samples = Math.min(rawAudio.length / 2, pcmBuffer.capacity());
+        for (int i = 0; i < samples; i++)
+        {
+            pcmBuffer.put(i, (short) ((rawAudio[2 * i] << 8) | (rawAudio[2 * i + 1] & 0xFF)));
+        }
+        //Pad short frames with silence so that libopus never reads stale samples.
+        for (int i = samples; i < pcmBuffer.capacity(); i++)
+        {
+            pcmBuffer.put(i, (short) 0);
+        }
+
+        int result = Opus.INSTANCE.opus_encode(opusEncoder, pcmBuffer, AudioConnection.OPUS_FRAME_SIZE,
+                packetBuffer, packetBuffer.capacity());
+
+        if (result < 0)
+        {
+            //Only warn about the first failure, a broken encoder would otherwise flood the log every 20ms.
+            String error = "Opus failed to encode an audio frame: " + Opus.INSTANCE.opus_strerror(result) + " (" + result + ")";
+            if (errorCount++ == 0)
+                LOG.warn(error);
+            else
+                LOG.debug(error);
+            return null;
+        }
+
+        byte[] audio = new byte[result];
+        packetBuffer.clear();
+        packetBuffer.get(audio, 0, result);
+        packetBuffer.clear();
+        return audio;
+    }
+
+    /**
+     * Returns the amount of frames that libopus failed to encode since this encoder was created.
+     *
+     * @return
+     *      The amount of failed encode calls.
+     */
+    public int getErrorCount()
+    {
+        return errorCount;
+    }
+
+    public void setBitrate(int bitrate)
+    {
+        this.bitrate = bitrate;
+        this.settingsChanged = true;
+    }
+
+    public int getBitrate()
+    {
+        return bitrate;
+    }
+
+    public void setComplexity(int complexity)
+    {
+        this.complexity = complexity;
+        this.settingsChanged = true;
+    }
+
+    public int getComplexity()
+    {
+        return complexity;
+    }
+
+    public void setInbandFec(boolean inbandFec)
+    {
+        this.inbandFec = inbandFec;
+        this.settingsChanged = true;
+    }
+
+    public boolean isInbandFec()
+    {
+        return inbandFec;
+    }
+
+    public void setPacketLossPercent(int packetLossPercent)
+    {
+        this.packetLossPercent = packetLossPercent;
+        this.settingsChanged = true;
+    }
+
+    public int getPacketLossPercent()
+    {
+        return packetLossPercent;
+    }
+
+    public void setDtx(boolean dtx)
+    {
+        this.dtx = dtx;
+        this.settingsChanged = true;
+    }
+
+    public boolean isDtx()
+    {
+        return dtx;
+    }
+
+    protected void applySettings(int channelBitrate)
+    {
+        int targetBitrate = bitrate == BITRATE_AUTO ? channelBitrate : bitrate;
+        if (!settingsChanged && targetBitrate == appliedBitrate)
+            return;
+
+        settingsChanged = false;
+        if (targetBitrate > 0)
+            ctl(Opus.OPUS_SET_BITRATE_REQUEST, targetBitrate, "bitrate");
+        appliedBitrate = targetBitrate;
+        ctl(Opus.OPUS_SET_COMPLEXITY_REQUEST, complexity, "complexity");
+        ctl(Opus.OPUS_SET_INBAND_FEC_REQUEST, inbandFec ? 1 : 0, "inband FEC");
+        ctl(Opus.OPUS_SET_PACKET_LOSS_PERC_REQUEST, packetLossPercent, "expected packet loss");
+        ctl(Opus.OPUS_SET_DTX_REQUEST, dtx ? 1 : 0, "DTX");
+    }
+
+    public void close()
+    {
+        if (opusEncoder != null)
+        {
+            Opus.INSTANCE.opus_encoder_destroy(opusEncoder);
+            opusEncoder = null;
+        }
+    }
+
+    private void ctl(int request, int value, String name)
+    {
+        int result = Opus.INSTANCE.opus_encoder_ctl(opusEncoder, request, value);
+        if (result != Opus.OPUS_OK)
+            LOG.warn("Could not set the Opus encoder " + name + " to " + value + ": " + Opus.INSTANCE.opus_strerror(result));
+    }
+}
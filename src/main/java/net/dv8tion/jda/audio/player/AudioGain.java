@@ -0,0 +1,303 @@
+/*
+ *     Copyright 2015-2016 Austin Keener & Michael Ritter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.dv8tion.jda.audio.player;
+
+import net.dv8tion.jda.audio.AudioConnection;
+
+/**
+ * Applies volume, fades, ducking and muting directly to 16 bit BigEndian PCM frames, like the 20 millisecond frames
+ * provided by a {@link net.dv8tion.jda.audio.player.Player Player}.
+ * <p>
+ * The resulting gain is <code>volume * fade * duck</code>, or 0 while muted. Every change is applied as a ramp across
+ * the next frame, so volume changes and muting don't cause audible clicks. The samples are scaled with fixed-point
+ * math in place, and a frame at unity gain is not touched at all.
+ * <p>
+ * The settings can be changed from any thread. {@link #process(byte[], int)} is meant to be called once per frame
+ * by the thread providing the audio, as fades progress by the duration of audio that was processed.
+ */
+public class AudioGain
+{
+    /**
+     * The maximum supported volume. Currently {@value #MAX_VOLUME}.
+     */
+    public static final float MAX_VOLUME = 4.0F;
+
+    private static final int UNITY = 1 << 16;
+    //Exponential fades interpolate in the log domain, so they need a floor. -60dB is perceived as silence.
+    private static final float EXPONENTIAL_FLOOR = 0.001F;
+
+    /**
+     * The shape of a fade.
+     */
+    public enum Curve
+    {
+        /**
+         * The amplitude changes linearly over time.
+         */
+        LINEAR,
+        /**
+         * The amplitude changes by the same amount of decibels per time, which is perceived as an even fade.
+         */
+        EXPONENTIAL
+    }
+
+    private final Ramp fade = new Ramp(1.0F);
+    private final Ramp duck = new Ramp(1.0F);
+    private float volume = 1.0F;
+    private boolean muted = false;
+
+    //Gain, in 16.16 fixed-point, that was applied to the last sample of the previous frame.
+    private int currentGain = UNITY;
+
+    /**
+     * Sets the volume. The change is ramped in over the next frame.
+     *
+     * @param volume
+     *          The volume, where 1.0 is the original volume and 0 is silence. Cannot be larger than {@value #MAX_VOLUME}.
+     */
+    public synchronized void setVolume(float volume)
+    {
+        checkLevel(volume, "volume");
+        this.volume = volume;
+    }
+
+    /**
+     * The volume set with {@link #setVolume(float)}. This does not include fades, ducking or muting.
+     *
+     * @return
+     *      The volume.
+     */
+    public synchronized float getVolume()
+    {
+        return volume;
+    }
+
+    /**
+     * Starts a fade from the current fade level to the provided level. Fades are applied on top of the volume,
+     * so a player can be faded out and back in without knowing its volume.
+     *
+     * @param level
+     *          The fade level to reach, where 1.0 means no fade and 0 is silence.
+     * @param milliseconds
+     *          The duration of the fade. 0 applies the level on the next frame.
+     * @param curve
+     *          The shape of the fade.
+     */
+    public synchronized void fadeTo(float level, int milliseconds, Curve curve)
+    {
+        checkLevel(level, "fade level");
+        if (milliseconds < 0)
+            throw new IllegalArgumentException("The fade duration cannot be negative! Provided: " + milliseconds);
+        if (curve == null)
+            throw new IllegalArgumentException("Cannot fade with a null Curve!");
+        fade.start(level, toSamples(milliseconds), curve);
+    }
+
+    /**
+     * The fade level at the current position of the audio, without volume, ducking or muting.
+     *
+     * @return
+     *      The current fade level.
+     */
+    public synchronized float getFadeLevel()
+    {
+        return fade.value();
+    }
+
+    /**
+     * Whether a fade is still in progress.
+     *
+     * @return
+     *      True if a fade started with {@link #fadeTo(float, int, Curve)} has not reached its level yet.
+     */
+    public synchronized boolean isFading()
+    {
+        return fade.isRunning();
+    }
+
+    /**
+     * Lowers the audio to the provided level, for example while someone is speaking, until {@link #unduck(int)}
+     * is called. Ducking is applied on top of the volume and any fade.
+     *
+     * @param level
+     *          The level to duck to, usually between 0.1 and 0.5.
+     * @param milliseconds
+     *          The duration of the transition.
+     */
+    public synchronized void duck(float level, int milliseconds)
+    {
+        checkLevel(level, "duck level");
+        if (milliseconds < 0)
+            throw new IllegalArgumentException("The duck duration cannot be negative! Provided: " + milliseconds);
+        duck.start(level, toSamples(milliseconds), Curve.EXPONENTIAL);
+    }
+
+    /**
+     * Returns the audio from a previous {@link #duck(float, int)} back to its normal level.
+     *
+     * @param milliseconds
+     *          The duration of the transition.
+     */
+    public synchronized void unduck(int milliseconds)
+    {
+        duck(1.0F, milliseconds);
+    }
+
+    /**
+     * Whether the audio is ducked or returning from being ducked.
+     *
+     * @return
+     *      True if the duck level is not 1.0.
+     */
+    public synchronized boolean isDucked()
+    {
+        return duck.isRunning() || duck.value() != 1.0F;
+    }
+
+    /**
+     * Mutes or unmutes the audio. Muting keeps volume, fades and ducking untouched and ramps to silence
+     * over the next frame.
+     *
+     * @param muted
+     *          True to mute the audio.
+     */
+    public synchronized void setMuted(boolean muted)
+    {
+        this.muted = muted;
+    }
+
+    public synchronized boolean isMuted()
+    {
+        return muted;
+    }
+
+    /**
+     * Applies the gain in place to a frame of 16 bit BigEndian interleaved PCM and advances fades by the
+     * duration of the frame.
+     *
+     * @param frame
+     *          The PCM frame to modify.
+     * @param channels
+     *          The amount of interleaved channels in the frame.
+     */
+    public void process(byte[] frame, int channels)
+    {
+        int samples = frame.length / (2 * channels);
+        if (samples == 0)
+            return;
+
+        int startGain;
+        int endGain;
+        synchronized (this)
+        {
+            fade.advance(samples);
+            duck.advance(samples);
+            startGain = currentGain;
+            endGain = muted ? 0 : (int) (volume * fade.value() * duck.value() * UNITY + 0.5F);
+            currentGain = endGain;
+        }
+
+        if (startGain == UNITY && endGain == UNITY)
+            return;
+        if (startGain == 0 && endGain == 0)
+        {
+            for (int i = 0; i < samples * 2 * channels; i++)
+                frame[i] = 0;
+            return;
+        }
+
+        //Linear ramp from the previous gain to the new one across the frame.
+        long gain = (long) startGain << 16;
+        long step = (((long) endGain - startGain) << 16) / samples;
+        int pos = 0;
+        for (int i = 0; i < samples; i++)
+        {
+            gain += step;
+            int g = (int) (gain >> 16);
+            for (int c = 0; c < channels; c++)
+            {
+                int sample = (frame[pos] << 8) | (frame[pos + 1] & 0xFF);
+                sample = (int) (((long) sample * g + (UNITY >> 1)) >> 16);
+                if (sample > Short.MAX_VALUE)
+                    sample = Short.MAX_VALUE;
+                else if (sample < Short.MIN_VALUE)
+                    sample = Short.MIN_VALUE;
+                frame[pos] = (byte) (sample >> 8);
+                frame[pos + 1] = (byte) sample;
+                pos += 2;
+            }
+        }
+    }
+
+    private static void checkLevel(float level, String name)
+    {
+        if (Float.isNaN(level) || level < 0 || level > MAX_VOLUME)
+            throw new IllegalArgumentException("The " + name + " must be between 0 and " + MAX_VOLUME + "! Provided: " + level);
+    }
+
+    private static long toSamples(int milliseconds)
+    {
+        return (long) milliseconds * (long) AudioConnection.OPUS_SAMPLE_RATE / 1000;
+    }
+
+    //A level that moves from one value to another over a given amount of samples.
+    private static class Ramp
+    {
+        private float from;
+        private float to;
+        private long length = 0;
+        private long position = 0;
+        private Curve curve = Curve.LINEAR;
+
+        Ramp(float value)
+        {
+            this.from = value;
+            this.to = value;
+        }
+
+        void start(float target, long samples, Curve curve)
+        {
+            this.from = value();
+            this.to = target;
+            this.length = samples;
+            this.position = 0;
+            this.curve = curve;
+        }
+
+        void advance(long samples)
+        {
+            position = Math.min(length, position + samples);
+        }
+
+        boolean isRunning()
+        {
+            return position < length;
+        }
+
+        float value()
+        {
+            if (position >= length)
+                return to;
+            float t = (float) position / length;
+            if (curve == Curve.LINEAR)
+                return from + (to - from) * t;
+
+            float start = Math.max(from, EXPONENTIAL_FLOOR);
+            float end = Math.max(to, EXPONENTIAL_FLOOR);
+            return (float) (start * Math.pow(end / start, t));
+        }
+    }
+}
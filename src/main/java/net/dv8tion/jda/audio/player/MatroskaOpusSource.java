@@ -0,0 +1,267 @@
+/*
+ *     Copyright 2015-2016 Austin Keener & Michael Ritter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.dv8tion.jda.audio.player;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Queue;
+
+/**
+ * Demuxes the Opus packets of the first Opus track (codec <code>A_OPUS</code>) of a Matroska or WebM stream.
+ * <p>
+ * The stream is read strictly sequentially, so this also works with non-seekable sources like HTTP streams and
+ * live streams that use unknown element sizes.
+ */
+public class MatroskaOpusSource implements OpusSource
+{
+    private static final int SEGMENT = 0x18538067;
+    private static final int TRACKS = 0x1654AE6B;
+    private static final int TRACK_ENTRY = 0xAE;
+    private static final int TRACK_NUMBER = 0xD7;
+    private static final int CODEC_ID = 0x86;
+    private static final int CLUSTER = 0x1F43B675;
+    private static final int BLOCK_GROUP = 0xA0;
+    private static final int BLOCK = 0xA1;
+    private static final int SIMPLE_BLOCK = 0xA3;
+
+    private static final long UNKNOWN_SIZE = -1;
+
+    private final DataInputStream in;
+    private final Queue<byte[]> pendingFrames = new ArrayDeque<>();
+
+    private long entryTrackNumber = -1;
+    private String entryCodec = null;
+    private long opusTrack = -1;
+
+    public MatroskaOpusSource(InputStream in)
+    {
+        if (in == null)
+            throw new IllegalArgumentException("Cannot read Matroska audio from a null InputStream!");
+        this.in = new DataInputStream(in);
+    }
+
+    @Override
+    public byte[] readPacket() throws IOException
+    {
+        while (pendingFrames.isEmpty())
+        {
+            int id;
+            try
+            {
+                id = readElementId();
+            }
+            catch (EOFException e)
+            {
+                return null;
+            }
+            long size = readSize();
+
+            switch (id)
+            {
+                //Master elements that contain something we need. We simply continue with their children.
+                case SEGMENT:
+                case TRACKS:
+                case CLUSTER:
+                case BLOCK_GROUP:
+                    break;
+                case TRACK_ENTRY:
+                    entryTrackNumber = -1;
+                    entryCodec = null;
+                    break;
+                case TRACK_NUMBER:
+                    entryTrackNumber = readUnsigned(size);
+                    checkTrackEntry();
+                    break;
+                case CODEC_ID:
+                    entryCodec = new String(readData(size), StandardCharsets.US_ASCII).trim();
+                    checkTrackEntry();
+                    break;
+                case BLOCK:
+                case SIMPLE_BLOCK:
+                    readBlock(size);
+                    break;
+                default:
+                    if (size == UNKNOWN_SIZE)
+                        throw new IOException("Matroska element 0x" + Integer.toHexString(id) + " has an unknown size and cannot be skipped.");
+                    skipFully(size);
+            }
+        }
+        return pendingFrames.poll();
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        in.close();
+    }
+
+    private void checkTrackEntry()
+    {
+        if (opusTrack == -1 && entryTrackNumber != -1 && "A_OPUS".equals(entryCodec))
+            opusTrack = entryTrackNumber;
+    }
+
+    private void readBlock(long size) throws IOException
+    {
+        if (size == UNKNOWN_SIZE)
+            throw new IOException("Matroska block with an unknown size.");
+        byte[] block = readData(size);
+        int[] offset = {0};
+        long track = readVint(block, offset);
+        if (opusTrack == -1 || track != opusTrack)
+            return;
+
+        int pos = offset[0] + 2;                //Skip the relative timecode.
+        int flags = block[pos++] & 0xFF;
+        int lacing = (flags >> 1) & 0x03;
+        if (lacing == 0)
+        {
+            pendingFrames.add(Arrays.copyOfRange(block, pos, block.length));
+            return;
+        }
+
+        int frameCount = (block[pos++] & 0xFF) + 1;
+        int[] sizes = new int[frameCount];
+        int total = 0;
+        switch (lacing)
+        {
+            case 1:     //Xiph lacing
+                for (int i = 0; i < frameCount - 1; i++)
+                {
+                    int value;
+                    do
+                    {
+                        value = block[pos++] & 0xFF;
+                        sizes[i] += value;
+                    }
+                    while (value == 255);
+                    total += sizes[i];
+                }
+                break;
+            case 2:     //Fixed-size lacing
+                int frameSize = (block.length - pos) / frameCount;
+                Arrays.fill(sizes, 0, frameCount - 1, frameSize);
+                total = frameSize * (frameCount - 1);
+                break;
+            case 3:     //EBML lacing, first size is absolute, the following ones are signed differences.
+                offset[0] = pos;
+                sizes[0] = (int) readVint(block, offset);
+                total = sizes[0];
+                for (int i = 1; i < frameCount - 1; i++)
+                {
+                    int start = offset[0];
+                    long raw = readVint(block, offset);
+                    int length = offset[0] - start;
+                    long bias = (1L << (7 * length - 1)) - 1;
+                    sizes[i] = (int) (sizes[i - 1] + raw - bias);
+                    total += sizes[i];
+                }
+                pos = offset[0];
+                break;
+        }
+        sizes[frameCount - 1] = block.length - pos - total;
+        if (sizes[frameCount - 1] < 0)
+            throw new IOException("Malformed laced Matroska block.");
+
+        for (int frameSize : sizes)
+        {
+            pendingFrames.add(Arrays.copyOfRange(block, pos, pos + frameSize));
+            pos += frameSize;
+        }
+    }
+
+    private int readElementId() throws IOException
+    {
+        int first = in.read();
+        if (first == -1)
+            throw new EOFException();
+        int length = Integer.numberOfLeadingZeros(first) - 23;
+        if (length < 1 || length > 4)
+            throw new IOException("Invalid EBML element id.");
+        int id = first;
+        for (int i = 1; i < length; i++)
+            id = (id << 8) | in.readUnsignedByte();
+        return id;
+    }
+
+    private long readSize() throws IOException
+    {
+        int first = in.readUnsignedByte();
+        int length = Integer.numberOfLeadingZeros(first) - 23;
+        if (length < 1 || length > 8)
+            throw new IOException("Invalid EBML variable size integer.");
+        long value = first & (0xFF >> length);
+        boolean allOnes = value == (0xFF >> length);
+        for (int i = 1; i < length; i++)
+        {
+            int next = in.readUnsignedByte();
+            allOnes &= next == 0xFF;
+            value = (value << 8) | next;
+        }
+        return allOnes ? UNKNOWN_SIZE : value;
+    }
+
+    private static long readVint(byte[] data, int[] offset) throws IOException
+    {
+        if (offset[0] >= data.length)
+            throw new IOException("Unexpected end of Matroska block.");
+        int first = data[offset[0]++] & 0xFF;
+        int length = Integer.numberOfLeadingZeros(first) - 23;
+        if (length < 1 || length > 8 || offset[0] + length - 1 > data.length)
+            throw new IOException("Invalid EBML variable size integer.");
+        long value = first & (0xFF >> length);
+        for (int i = 1; i < length; i++)
+            value = (value << 8) | (data[offset[0]++] & 0xFF);
+        return value;
+    }
+
+    private long readUnsigned(long size) throws IOException
+    {
+        long value = 0;
+        for (long i = 0; i < size; i++)
+            value = (value << 8) | in.readUnsignedByte();
+        return value;
+    }
+
+    private byte[] readData(long size) throws IOException
+    {
+        if (size < 0 || size > Integer.MAX_VALUE)
+            throw new IOException("Matroska element is too large: " + size);
+        byte[] data = new byte[(int) size];
+        in.readFully(data);
+        return data;
+    }
+
+    private void skipFully(long size) throws IOException
+    {
+        while (size > 0)
+        {
+            long skipped = in.skip(size);
+            if (skipped <= 0)
+            {
+                if (in.read() == -1)
+                    throw new EOFException();
+                skipped = 1;
+            }
+            size -= skipped;
+        }
+    }
+}
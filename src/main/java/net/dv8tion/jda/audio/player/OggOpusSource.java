@@ -0,0 +1,176 @@
+/*
+ *     Copyright 2015-2016 Austin Keener & Michael Ritter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.dv8tion.jda.audio.player;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Demuxes the Opus packets of an Ogg/Opus stream (RFC 7845), like the <code>.opus</code> files created by opusenc.
+ * <p>
+ * Only the first Opus logical stream is read, other multiplexed streams are skipped.
+ * Multistream (surround) Opus streams are not supported.
+ */
+public class OggOpusSource implements OpusSource
+{
+    private static final int PAGE_HEADER_LENGTH = 27;
+
+    private final DataInputStream in;
+    private final byte[] pageHeader = new byte[PAGE_HEADER_LENGTH];
+    private final byte[] segmentTable = new byte[255];
+    private final byte[] pageData = new byte[255 * 255];
+
+    private int segmentCount = 0;
+    private int segmentIndex = 0;
+    private int pageDataOffset = 0;
+
+    private byte[] packet = new byte[4096];
+    private int packetLength = 0;
+
+    private int streamSerial;
+    private int headerPackets = 0;      //OpusHead and OpusTags need to be skipped.
+
+    public OggOpusSource(InputStream in)
+    {
+        if (in == null)
+            throw new IllegalArgumentException("Cannot read Ogg/Opus audio from a null InputStream!");
+        this.in = new DataInputStream(in);
+    }
+
+    @Override
+    public byte[] readPacket() throws IOException
+    {
+        while (true)
+        {
+            if (segmentIndex >= segmentCount && !readPage())
+                return null;
+
+            //Packets are split into 255 byte segments. A segment shorter than 255 bytes ends the packet.
+            int segmentLength = segmentTable[segmentIndex++] & 0xFF;
+            ensurePacketCapacity(packetLength + segmentLength);
+            System.arraycopy(pageData, pageDataOffset, packet, packetLength, segmentLength);
+            pageDataOffset += segmentLength;
+            packetLength += segmentLength;
+            if (segmentLength == 255)
+                continue;
+
+            byte[] completed = Arrays.copyOf(packet, packetLength);
+            packetLength = 0;
+
+            if (headerPackets == 0)
+            {
+                checkOpusHead(completed);
+                headerPackets++;
+            }
+            else if (headerPackets == 1)
+            {
+                if (!startsWith(completed, "OpusTags"))
+                    throw new IOException("Ogg/Opus stream is missing the OpusTags header.");
+                headerPackets++;
+            }
+            else if (completed.length > 0)
+            {
+                return completed;
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        in.close();
+    }
+
+    private boolean readPage() throws IOException
+    {
+        while (true)
+        {
+            try
+            {
+                in.readFully(pageHeader);
+            }
+            catch (EOFException e)
+            {
+                return false;
+            }
+
+            if (pageHeader[0] != 'O' || pageHeader[1] != 'g' || pageHeader[2] != 'g' || pageHeader[3] != 'S')
+                throw new IOException("Invalid Ogg page, capture pattern is missing.");
+            if (pageHeader[4] != 0)
+                throw new IOException("Unsupported Ogg version: " + pageHeader[4]);
+
+            boolean beginOfStream = (pageHeader[5] & 0x02) != 0;
+            int serial = (pageHeader[14] & 0xFF) | (pageHeader[15] & 0xFF) << 8
+                    | (pageHeader[16] & 0xFF) << 16 | (pageHeader[17] & 0xFF) << 24;
+            segmentCount = pageHeader[26] & 0xFF;
+            in.readFully(segmentTable, 0, segmentCount);
+
+            int dataLength = 0;
+            for (int i = 0; i < segmentCount; i++)
+                dataLength += segmentTable[i] & 0xFF;
+            in.readFully(pageData, 0, dataLength);
+
+            //Lock onto the first logical stream that starts with an OpusHead packet.
+            if (headerPackets == 0 && packetLength == 0)
+            {
+                if (!beginOfStream || !startsWith(pageData, "OpusHead"))
+                    continue;
+                streamSerial = serial;
+            }
+            else if (serial != streamSerial)
+            {
+                continue;
+            }
+
+            segmentIndex = 0;
+            pageDataOffset = 0;
+            if (segmentCount > 0)
+                return true;
+        }
+    }
+
+    private void checkOpusHead(byte[] head) throws IOException
+    {
+        if (!startsWith(head, "OpusHead") || head.length < 19)
+            throw new IOException("Ogg/Opus stream is missing the OpusHead header.");
+        int channelMappingFamily = head[18] & 0xFF;
+        if (channelMappingFamily != 0)
+            throw new IOException("Multistream Ogg/Opus audio is not supported. Channel mapping family: " + channelMappingFamily);
+    }
+
+    private void ensurePacketCapacity(int capacity)
+    {
+        if (packet.length < capacity)
+            packet = Arrays.copyOf(packet, Math.max(capacity, packet.length * 2));
+    }
+
+    private static boolean startsWith(byte[] data, String magic)
+    {
+        byte[] magicBytes = magic.getBytes(StandardCharsets.US_ASCII);
+        if (data.length < magicBytes.length)
+            return false;
+        for (int i = 0; i < magicBytes.length; i++)
+        {
+            if (data[i] != magicBytes[i])
+                return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ *     Copyright 2015-2016 Austin Keener & Michael Ritter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.dv8tion.jda.audio.player;
+
+import net.dv8tion.jda.audio.Encoder;
+import net.dv8tion.jda.managers.impl.AudioManagerImpl;
+
+import javax.sound.sampled.UnsupportedAudioFileException;
+import java.io.*;
+
+/**
+ * Reads and writes JDA's compact Opus packet file format.<br>
+ * The file starts with the 4 byte magic {@value #MAGIC} followed by a version byte. After that every 20 millisecond
+ * Opus packet is stored as a 2 byte BigEndian length followed by the packet itself.
+ * <p>
+ * Encoding a file once with {@link #encode(File, File, int)} and playing it with an
+ * {@link net.dv8tion.jda.audio.player.OpusPlayer OpusPlayer} avoids decoding, resampling and re-encoding the audio
+ * every time it is played.
+ */
+public class OpusPacketFile implements OpusSource
+{
+    public static final String MAGIC = "JDAO";
+    public static final int VERSION = 1;
+    public static final int DEFAULT_BITRATE = 64000;
+
+    private final DataInputStream in;
+
+    /**
+     * Creates a new reader for an Opus packet file. The magic and version header is read and validated immediately.
+     *
+     * @param in
+     *          The stream containing the Opus packet file.
+     * @throws IOException
+     *          If the stream could not be read or is not an Opus packet file of a supported version.
+     */
+    public OpusPacketFile(InputStream in) throws IOException
+    {
+        if (in == null)
+            throw new IllegalArgumentException("Cannot read an Opus packet file from a null InputStream!");
+        this.in = new DataInputStream(in);
+
+        for (int i = 0; i < MAGIC.length(); i++)
+        {
+            if (this.in.readUnsignedByte() != MAGIC.charAt(i))
+                throw new IOException("The provided stream is not an Opus packet file.");
+        }
+        int version = this.in.readUnsignedByte();
+        if (version != VERSION)
+            throw new IOException("Unsupported Opus packet file version: " + version);
+    }
+
+    @Override
+    public byte[] readPacket() throws IOException
+    {
+        int first = in.read();
+        if (first == -1)
+            return null;
+        int length = (first << 8) | in.readUnsignedByte();
+        byte[] packet = new byte[length];
+        in.readFully(packet);
+        return packet;
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        in.close();
+    }
+
+    /**
+     * Decodes the provided audio file with the same decoders that the {@link net.dv8tion.jda.audio.player.FilePlayer FilePlayer}
+     * supports and writes it as Opus packet file.
+     *
+     * @param input
+     *          The audio file to encode.
+     * @param output
+     *          The file to write the Opus packets to. Will be overwritten if it exists.
+     * @param bitrate
+     *          The bitrate, in bits per second, to encode the audio with.
+     * @throws IOException
+     *          If the input could not be read or the output could not be written.
+     * @throws UnsupportedAudioFileException
+     *          If the input file format is not supported.
+     */
+    public static void encode(File input, File output, int bitrate) throws IOException, UnsupportedAudioFileException
+    {
+        FilePlayer player = new FilePlayer();
+        player.setBufferDuration(0);
+        player.setAudioFile(input);
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(output)))
+        {
+            encode(player, out, bitrate);
+        }
+    }
+
+    /**
+     * Encodes all audio provided by the given {@link net.dv8tion.jda.audio.player.Player Player} and writes
+     * it as Opus packet file to the provided stream. The player is stopped once all audio was read.
+     *
+     * @param player
+     *          The player providing the audio to encode. The read-ahead of this player has to be disabled
+     *          with {@link Player#setBufferDuration(int) setBufferDuration(0)}, so every frame is decoded on request.
+     * @param out
+     *          The stream to write the Opus packet file to. This stream is not closed by this method.
+     * @param bitrate
+     *          The bitrate, in bits per second, to encode the audio with.
+     * @throws IOException
+     *          If the output could not be written.
+     */
+    public static void encode(Player player, OutputStream out, int bitrate) throws IOException
+    {
+        if (player.getBufferDuration() != 0)
+            throw new IllegalArgumentException("The read-ahead of the provided player has to be disabled to encode its audio.");
+        if (!AudioManagerImpl.init())
+            throw new UnsupportedOperationException("Cannot encode audio because the Opus library could not be loaded.");
+
+        Encoder encoder = new Encoder();
+        try
+        {
+            encoder.setBitrate(bitrate);
+            DataOutputStream data = new DataOutputStream(out);
+            data.writeBytes(MAGIC);
+            data.writeByte(VERSION);
+
+            player.play();
+            byte[] pcm;
+            while ((pcm = player.provide20MsAudio()) != null)
+            {
+                if (pcm.length == 0)
+                    throw new IOException("The provided player failed to read its audio source.");
+                byte[] packet = encoder.encodeToOpus(pcm, bitrate);
+                if (packet == null)
+                    throw new IOException("Opus failed to encode the provided audio.");
+                data.writeShort(packet.length);
+                data.write(packet);
+            }
+            data.flush();
+        }
+        finally
+        {
+            encoder.close();
+        }
+    }
+}
@@ -0,0 +1,359 @@
+/*
+ *     Copyright 2015-2016 Austin Keener & Michael Ritter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.dv8tion.jda.audio.player;
+
+import net.dv8tion.jda.JDA;
+import net.dv8tion.jda.audio.AudioConnection;
+import net.dv8tion.jda.requests.Requester;
+import net.dv8tion.jda.utils.SimpleLog;
+import org.apache.http.HttpHost;
+
+import javax.sound.sampled.UnsupportedAudioFileException;
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * This implementation of an {@link net.dv8tion.jda.audio.AudioSendHandler AudioSendHandler} sends pre-encoded Opus audio
+ * to a {@link net.dv8tion.jda.entities.VoiceChannel VoiceChannel} without decoding or re-encoding it.
+ * <br>Supported sources are Ogg/Opus (<code>.opus</code>), WebM/Matroska files with an Opus track and
+ * Opus packet files created by {@link net.dv8tion.jda.audio.player.OpusPacketFile OpusPacketFile}.
+ * The Opus audio has to consist of 20 millisecond packets, which is the default of most Opus encoders.
+ * <p>
+ * Because the audio is never decoded, {@link #setVolume(float)} has no effect on this player.
+ */
+public class OpusPlayer extends Player
+{
+    protected final JDA api;
+    protected File audioFile = null;
+    protected URL audioUrl = null;
+    protected OpusSource opusSource = null;
+    protected byte[] firstPacket = null;
+
+    protected boolean started = false;
+    protected boolean playing = false;
+    protected boolean paused = false;
+    protected boolean stopped = true;
+
+    /**
+     * Creates a new instance of an {@link OpusPlayer} without a source.
+     *
+     * @param api
+     *          The JDA instance, used for its proxy settings when playing from a URL. May be null if no URL is played.
+     */
+    public OpusPlayer(JDA api)
+    {
+        this.api = api;
+    }
+
+    /**
+     * Creates a new instance of an {@link OpusPlayer} and sets the given File as audio source.
+     *
+     * @param file
+     *          An Ogg/Opus, WebM/Matroska or Opus packet file.
+     * @throws IOException
+     *          If the file is not available.
+     * @throws UnsupportedAudioFileException
+     *          If the file is not supported by the player.
+     */
+    public OpusPlayer(File file) throws IOException, UnsupportedAudioFileException
+    {
+        this.api = null;
+        setAudioFile(file);
+    }
+
+    /**
+     * Creates a new instance of an {@link OpusPlayer} and sets the resource of the given URL as audio source.
+     *
+     * @param api
+     *          The JDA instance
+     * @param urlOfResource
+     *          A URL that links to an Ogg/Opus, WebM/Matroska or Opus packet file.
+     * @throws IOException
+     *          If the resource is not available.
+     * @throws UnsupportedAudioFileException
+     *          If the resource is not supported by the player.
+     */
+    public OpusPlayer(JDA api, URL urlOfResource) throws IOException, UnsupportedAudioFileException
+    {
+        this.api = api;
+        setAudioUrl(urlOfResource);
+    }
+
+    /**
+     * Sets the given file as the player's audio source.
+     *
+     * @param file
+     *          An Ogg/Opus, WebM/Matroska or Opus packet file.
+     * @throws IOException
+     *          If the file is not available.
+     * @throws UnsupportedAudioFileException
+     *          If the file is not supported by the player.
+     */
+    public void setAudioFile(File file) throws IOException, UnsupportedAudioFileException
+    {
+        if (file == null)
+            throw new IllegalArgumentException("A null File was provided to the OpusPlayer! Cannot play a null file!");
+        if (!file.exists())
+            throw new IllegalArgumentException("A non-existent file was provided to the OpusPlayer! Cannot play a file that doesn't exist!");
+
+        reset();
+        setOpusSource(new FileInputStream(file));
+        audioFile = file;
+    }
+
+    /**
+     * Sets the resource provided by the given {@link URL URL} as the player's audio source.
+     *
+     * @param urlOfResource
+     *          A URL that links to an Ogg/Opus, WebM/Matroska or Opus packet file.
+     * @throws IOException
+     *          If the resource is not available.
+     * @throws UnsupportedAudioFileException
+     *          If the resource is not supported by the player.
+     */
+    public void setAudioUrl(URL urlOfResource) throws IOException, UnsupportedAudioFileException
+    {
+        if (urlOfResource == null)
+            throw new IllegalArgumentException("A null URL was provided to the OpusPlayer! Cannot find resource to play from a null URL!");
+
+        URLConnection conn;
+        HttpHost jdaProxy = api != null ? api.getGlobalProxy() : null;
+        if (jdaProxy != null)
+        {
+            InetSocketAddress proxyAddress = new InetSocketAddress(jdaProxy.getHostName(), jdaProxy.getPort());
+            conn = urlOfResource.openConnection(new Proxy(Proxy.Type.HTTP, proxyAddress));
+        }
+        else
+        {
+            conn = urlOfResource.openConnection();
+        }
+        if (conn == null)
+            throw new IllegalArgumentException("The provided URL resulted in a null URLConnection! Does the resource exist?");
+        conn.setRequestProperty("user-agent", Requester.USER_AGENT);
+
+        reset();
+        setOpusSource(conn.getInputStream());
+        audioUrl = urlOfResource;
+    }
+
+    /**
+     * Detects the container format of the provided stream and uses it as the player's audio source.
+     *
+     * @param in
+     *          A stream containing an Ogg/Opus, WebM/Matroska or Opus packet file.
+     * @throws IOException
+     *          If the stream could not be read.
+     * @throws UnsupportedAudioFileException
+     *          If the stream does not contain a supported container or the Opus packets aren't 20 milliseconds long.
+     */
+    public void setOpusSource(InputStream in) throws IOException, UnsupportedAudioFileException
+    {
+        if (in == null)
+            throw new IllegalArgumentException("Cannot create an OpusPlayer from a null InputStream!");
+        closeSource();
+
+        BufferedInputStream buffered = new BufferedInputStream(in);
+        buffered.mark(4);
+        byte[] magic = new byte[4];
+        int read = 0;
+        while (read < magic.length)
+        {
+            int amount = buffered.read(magic, read, magic.length - read);
+            if (amount == -1)
+                break;
+            read += amount;
+        }
+        buffered.reset();
+
+        OpusSource source;
+        if (read == 4 && magic[0] == 'O' && magic[1] == 'g' && magic[2] == 'g' && magic[3] == 'S')
+            source = new OggOpusSource(buffered);
+        else if (read == 4 && (magic[0] & 0xFF) == 0x1A && (magic[1] & 0xFF) == 0x45 && (magic[2] & 0xFF) == 0xDF && (magic[3] & 0xFF) == 0xA3)
+            source = new MatroskaOpusSource(buffered);
+        else if (read == 4 && new String(magic, StandardCharsets.US_ASCII).equals(OpusPacketFile.MAGIC))
+            source = new OpusPacketFile(buffered);
+        else
+        {
+            buffered.close();
+            throw new UnsupportedAudioFileException("The provided stream is neither Ogg/Opus, WebM/Matroska nor an Opus packet file.");
+        }
+
+        try
+        {
+            //Peek the first packet so unsupported streams fail here instead of while playing.
+            byte[] packet = source.readPacket();
+            if (packet == null)
+                throw new UnsupportedAudioFileException("The provided stream does not contain any Opus audio.");
+            if (OpusSource.getSampleCount(packet) != AudioConnection.OPUS_FRAME_SIZE)
+                throw new UnsupportedAudioFileException("Only Opus audio with 20 millisecond packets is supported. " +
+                        "Found a packet with " + OpusSource.getSampleCount(packet) + " samples.");
+            opusSource = source;
+            firstPacket = packet;
+        }
+        catch (IOException | UnsupportedAudioFileException e)
+        {
+            source.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public byte[] provide20MsAudio()
+    {
+        if (opusSource == null)
+            throw new IllegalStateException("The Opus source was never set for this player!\n" +
+                    "Please provide a source using setAudioFile, setAudioUrl or setOpusSource.");
+        try
+        {
+            byte[] packet;
+            if (firstPacket != null)
+            {
+                packet = firstPacket;
+                firstPacket = null;
+            }
+            else
+            {
+                packet = opusSource.readPacket();
+            }
+
+            if (packet == null)
+            {
+                stop();
+                return null;
+            }
+            return packet;
+        }
+        catch (IOException e)
+        {
+            SimpleLog.getLog("JDAPlayer").log(e);
+            stop();
+        }
+        return null;
+    }
+
+    @Override
+    public boolean isOpus()
+    {
+        return true;
+    }
+
+    @Override
+    public void play()
+    {
+        if (started && stopped)
+            throw new IllegalStateException("Cannot start a player after it has been stopped.\n" +
+                    "Please use the restart method or load a new file.");
+        started = true;
+        playing = true;
+        paused = false;
+        stopped = false;
+    }
+
+    @Override
+    public void pause()
+    {
+        playing = false;
+        paused = true;
+    }
+
+    @Override
+    public void stop()
+    {
+        playing = false;
+        paused = false;
+        stopped = true;
+        closeSource();
+    }
+
+    @Override
+    public void restart()
+    {
+        File oldFile = audioFile;
+        URL oldUrl = audioUrl;
+        try
+        {
+            if (oldFile != null)
+                setAudioFile(oldFile);
+            else if (oldUrl != null)
+                setAudioUrl(oldUrl);
+            else
+                throw new IllegalStateException("Cannot restart an OpusPlayer that was given a raw InputStream.");
+            play();
+        }
+        catch (IOException e)
+        {
+            SimpleLog.getLog("JDAPlayer").fatal("Attempted to restart the OpusPlayer playback, but something went wrong!");
+            SimpleLog.getLog("JDAPlayer").log(e);
+        }
+        catch (UnsupportedAudioFileException e)
+        {
+            SimpleLog.getLog("JDAPlayer").log(e);
+        }
+    }
+
+    @Override
+    public boolean isStarted()
+    {
+        return started;
+    }
+
+    @Override
+    public boolean isPlaying()
+    {
+        return playing;
+    }
+
+    @Override
+    public boolean isPaused()
+    {
+        return paused;
+    }
+
+    @Override
+    public boolean isStopped()
+    {
+        return stopped;
+    }
+
+    protected void reset()
+    {
+        closeSource();
+        audioFile = null;
+        audioUrl = null;
+        started = false;
+        playing = false;
+        paused = false;
+        stopped = true;
+    }
+
+    protected void closeSource()
+    {
+        if (opusSource != null)
+        {
+            try
+            {
+                opusSource.close();
+            }
+            catch (IOException ignored) {}
+            opusSource = null;
+        }
+        firstPacket = null;
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ *     Copyright 2015-2016 Austin Keener & Michael Ritter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.dv8tion.jda.audio.player;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * A source of pre-encoded Opus packets, usually a demuxer for a container format.<br>
+ * Used by the {@link net.dv8tion.jda.audio.player.OpusPlayer OpusPlayer} to send Opus audio without decoding it.
+ */
+public interface OpusSource extends Closeable
+{
+    /**
+     * Reads the next Opus packet from this source.
+     *
+     * @return
+     *      The next Opus packet, or <code>null</code> if the end of the source was reached.
+     * @throws IOException
+     *      If the underlying stream could not be read or is malformed.
+     */
+    byte[] readPacket() throws IOException;
+
+    /**
+     * Calculates the amount of samples per channel, at 48KHz, that are contained in the provided Opus packet.
+     * This only inspects the TOC byte (and the frame count byte for code 3 packets) of the packet.
+     *
+     * @param packet
+     *          The Opus packet.
+     * @return
+     *      The amount of samples per channel, or -1 if the packet is malformed.
+     */
+    static int getSampleCount(byte[] packet)
+    {
+        if (packet == null || packet.length < 1)
+            return -1;
+
+        int config = (packet[0] >> 3) & 0x1F;
+        int frameSize;                              //In samples at 48KHz.
+        if (config < 12)                            //SILK-only: 10, 20, 40, 60ms
+            frameSize = (config & 3) == 3 ? 2880 : 480 << (config & 3);
+        else if (config < 16)                       //Hybrid: 10, 20ms
+            frameSize = (config & 1) == 0 ? 480 : 960;
+        else                                        //CELT-only: 2.5, 5, 10, 20ms
+            frameSize = 120 << (config & 3);
+
+        int frames;
+        switch (packet[0] & 3)
+        {
+            case 0:
+                frames = 1;
+                break;
+            case 1:
+            case 2:
+                frames = 2;
+                break;
+            default:
+                if (packet.length < 2)
+                    return -1;
+                frames = packet[1] & 0x3F;
+        }
+        return frames * frameSize;
+    }
+}
@@ -18,20 +18,73 @@ package net.dv8tion.jda.audio.player;
 import net.dv8tion.jda.audio.AudioConnection;
 import net.dv8tion.jda.audio.AudioSendHandler;
 import net.dv8tion.jda.utils.SimpleLog;
-import org.tritonus.dsp.ais.AmplitudeAudioInputStream;
+import org.tritonus.sampled.convert.PolyphaseSampleRateConversionProvider;
 
 import javax.sound.sampled.AudioFormat;
 import javax.sound.sampled.AudioInputStream;
 import javax.sound.sampled.AudioSystem;
 import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
 
+/**
+ * Base class of JDA's {@link net.dv8tion.jda.audio.AudioSendHandler AudioSendHandler} implementations that play
+ * audio from an {@link javax.sound.sampled.AudioInputStream AudioInputStream}.
+ * <p>
+ * By default the audio is decoded ahead of time by a decoder thread into a bounded buffer of ready frames, so slow
+ * decoders or network reads don't delay the audio sending thread. Decoder threads are pooled, but a stalled stream
+ * only ever blocks the decoder thread of its own player.
+ * The size of that buffer can be changed with {@link #setBufferDuration(int)}. A duration of 0 disables the
+ * read-ahead and decodes every frame when it is requested.
+ * <p>
+ * Volume, fades, ducking and muting are applied by an {@link net.dv8tion.jda.audio.player.AudioGain AudioGain} to each
+ * frame right before it is sent, so changes take effect within 20 milliseconds even when audio is buffered.
+ */
 public abstract class Player implements AudioSendHandler
 {
+    /**
+     * The default duration, in milliseconds, of audio that is decoded ahead of time. Currently {@value #DEFAULT_BUFFER_DURATION}.
+     */
+    public static final int DEFAULT_BUFFER_DURATION = 200;
+
+    private static final AtomicInteger DECODER_THREAD_COUNT = new AtomicInteger(0);
+    private static final PolyphaseSampleRateConversionProvider RESAMPLER = new PolyphaseSampleRateConversionProvider();
+    //Cached rather than fixed, a read from a stalled network stream must not hold up the decoding of other players.
+    private static final ExecutorService DECODER_POOL = Executors.newCachedThreadPool(r ->
+    {
+        Thread thread = new Thread(r, "JDA Player Decoder " + DECODER_THREAD_COUNT.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    });
+
     protected AudioInputStream audioSource = null;
     protected AudioFormat audioFormat = null;
-    protected AmplitudeAudioInputStream amplitudeAudioStream = null;
+    protected final AudioGain gain = new AudioGain();
 
-    protected float amplitude = 1.0F;
+    protected int bufferDuration = DEFAULT_BUFFER_DURATION;
+
+    //Read-ahead buffer. Frames move from freeFrames to readyFrames on the decoder thread and back on the sending thread.
+    //decodeLock guards the buffer and source, it is never held during a read. readLock keeps reads of the source in order.
+    private final Object decodeLock = new Object();
+    private final ReentrantLock readLock = new ReentrantLock();
+    private int generation = 0;
+    private final AtomicBoolean decoding = new AtomicBoolean(false);
+    private volatile BlockingQueue<byte[]> freeFrames = null;
+    private volatile BlockingQueue<byte[]> readyFrames = null;
+    private byte[] providedFrame = null;
+    private byte[] silenceFrame = null;
+    private byte[] directFrame = null;
+    private volatile boolean sourceEnded = false;
+
+    private volatile long underruns = 0;
+    private volatile long framesDecoded = 0;
+    private volatile long decodeTimeTotal = 0;
+    private volatile long decodeTimeMax = 0;
 
     public abstract void play();
     public abstract void pause();
@@ -49,25 +102,32 @@ public abstract class Player implements AudioSendHandler
         if (inSource == null)
             throw new IllegalArgumentException("Cannot create an audio player from a null AudioInputStream!");
 
-        if (audioSource != null)
-        {
-            try{
-                audioSource.close();
-            } catch(Exception ignored) {}
-        }
-
         AudioFormat baseFormat = inSource.getFormat();
 
-        //Converts first to PCM data. If the data is already PCM data, this will not change anything.
+        //Converts first to 16 bit PCM data. If the data is already 16 bit PCM data, this will not change anything.
+        //Volume can only be applied to 16 bit samples, which is also what Opus encodes.
         AudioFormat toPCM = new AudioFormat(
                 AudioFormat.Encoding.PCM_SIGNED,
                 baseFormat.getSampleRate(),//AudioConnection.OPUS_SAMPLE_RATE,
-                baseFormat.getSampleSizeInBits() != -1 ? baseFormat.getSampleSizeInBits() : 16,
+                16,
                 baseFormat.getChannels(),
-                //If we are given a frame size, use it. Otherwise, assume 16 bits (2 8bit shorts) per channel.
-                baseFormat.getFrameSize() != -1 ? baseFormat.getFrameSize() : 2 * baseFormat.getChannels(),
+                2 * baseFormat.getChannels(),
                 baseFormat.getFrameRate() != -1 ? baseFormat.getFrameRate() : baseFormat.getSampleRate(),
                 baseFormat.isBigEndian());
+        if (!AudioSystem.isConversionSupported(toPCM, baseFormat))
+        {
+            //Keep the bit depth of the source, volume changes won't be applied to it.
+            toPCM = new AudioFormat(
+                    AudioFormat.Encoding.PCM_SIGNED,
+                    baseFormat.getSampleRate(),
+                    baseFormat.getSampleSizeInBits() != -1 ? baseFormat.getSampleSizeInBits() : 16,
+                    baseFormat.getChannels(),
+                    //If we are given a frame size, use it. Otherwise, assume 16 bits (2 8bit shorts) per channel.
+                    baseFormat.getFrameSize() != -1 ? baseFormat.getFrameSize() : 2 * baseFormat.getChannels(),
+                    baseFormat.getFrameRate() != -1 ? baseFormat.getFrameRate() : baseFormat.getSampleRate(),
+                    baseFormat.isBigEndian());
+            SimpleLog.getLog("JDAPlayer").warn("Could not convert " + baseFormat + " to 16 bit, the volume of this audio can't be changed");
+        }
         AudioInputStream pcmStream = AudioSystem.getAudioInputStream(toPCM ,inSource);
 
         //Then resamples to a sample rate of 48000hz and ensures that data is Big Endian.
@@ -80,20 +140,157 @@ public abstract class Player implements AudioSendHandler
                 AudioConnection.OPUS_SAMPLE_RATE,
                 true);
 
-        //Used to control volume
-        amplitudeAudioStream = new AmplitudeAudioInputStream(pcmStream);
-        amplitudeAudioStream.setAmplitudeLinear(amplitude);
+        synchronized (decodeLock)
+        {
+            if (audioSource != null)
+            {
+                try{
+                    audioSource.close();
+                } catch(Exception ignored) {}
+            }
 
-        audioSource = AudioSystem.getAudioInputStream(audioFormat, amplitudeAudioStream);
+            //The polyphase resampler handles the common 16 bit rates (44.1kHz, 22.05kHz, 16kHz...) much cheaper than
+            // the generic converter that AudioSystem would pick.
+            if (RESAMPLER.isConversionSupported(audioFormat, pcmStream.getFormat()))
+                audioSource = RESAMPLER.getAudioInputStream(audioFormat, pcmStream);
+            else
+                audioSource = AudioSystem.getAudioInputStream(audioFormat, pcmStream);
+            sourceEnded = false;
+            generation++;
+            setupFrames();
+        }
+        scheduleDecode();
     }
 
-    public void setVolume(float volume)
+    /**
+     * Sets the duration of audio, in milliseconds, that is decoded ahead of time.<br>
+     * Larger values protect better against slow decoding or network hiccups, but use more memory per player.
+     * A value of 0 disables the read-ahead, in which case audio is decoded on the audio sending thread.
+     * <p>
+     * Audio that was already decoded ahead of time is discarded when this is changed during playback.
+     *
+     * @param milliseconds
+     *          The duration of audio to decode ahead of time, rounded up to whole 20 millisecond frames.
+     */
+    public void setBufferDuration(int milliseconds)
     {
-        this.amplitude = volume;
-        if (amplitudeAudioStream != null)
+        if (milliseconds < 0)
+            throw new IllegalArgumentException("The buffer duration cannot be negative! Provided: " + milliseconds);
+        synchronized (decodeLock)
         {
-            amplitudeAudioStream.setAmplitudeLinear(amplitude);
+            this.bufferDuration = milliseconds;
+            if (audioFormat != null)
+            {
+                generation++;
+                setupFrames();
+            }
         }
+        scheduleDecode();
+    }
+
+    /**
+     * The duration of audio, in milliseconds, that is decoded ahead of time.
+     *
+     * @return
+     *      The read-ahead duration, or 0 if read-ahead is disabled.
+     */
+    public int getBufferDuration()
+    {
+        return bufferDuration;
+    }
+
+    /**
+     * The amount of 20 millisecond frames that are currently decoded and waiting to be sent.
+     *
+     * @return
+     *      The amount of buffered frames.
+     */
+    public int getBufferedFrames()
+    {
+        BlockingQueue<byte[]> ready = readyFrames;
+        return ready == null ? 0 : ready.size();
+    }
+
+    /**
+     * The amount of times audio was requested while the read-ahead buffer was empty. Each underrun causes
+     * 20 milliseconds of silence.
+     *
+     * @return
+     *      The amount of buffer underruns since this player was created.
+     */
+    public long getUnderruns()
+    {
+        return underruns;
+    }
+
+    /**
+     * The amount of 20 millisecond frames that were decoded since this player was created.
+     *
+     * @return
+     *      The amount of decoded frames.
+     */
+    public long getFramesDecoded()
+    {
+        return framesDecoded;
+    }
+
+    /**
+     * The average time, in nanoseconds, that it took to decode a single 20 millisecond frame.
+     *
+     * @return
+     *      The average decode time in nanoseconds, or 0 if no frame was decoded yet.
+     */
+    public long getAverageDecodeTime()
+    {
+        long frames = framesDecoded;
+        return frames == 0 ? 0 : decodeTimeTotal / frames;
+    }
+
+    /**
+     * The longest time, in nanoseconds, that it took to decode a single 20 millisecond frame.
+     *
+     * @return
+     *      The maximum decode time in nanoseconds.
+     */
+    public long getMaxDecodeTime()
+    {
+        return decodeTimeMax;
+    }
+
+    /**
+     * Sets the volume of this player. The change is ramped in over the next 20 millisecond frame.
+     * <p>
+     * The volume is applied to 16 bit samples. Sources with another bit depth are converted to 16 bit when the audio
+     * source is set. If Java can't convert a source, it is played at its original volume.
+     *
+     * @param volume
+     *          The volume, where 1.0 is the original volume and 0 is silence. Values larger than
+     *          {@value net.dv8tion.jda.audio.player.AudioGain#MAX_VOLUME} are lowered to
+     *          {@value net.dv8tion.jda.audio.player.AudioGain#MAX_VOLUME}.
+     *
+     * @throws java.lang.IllegalArgumentException
+     *          If the volume is negative or NaN.
+     */
+    public void setVolume(float volume)
+    {
+        gain.setVolume(Math.min(volume, AudioGain.MAX_VOLUME));
+    }
+
+    public float getVolume()
+    {
+        return gain.getVolume();
+    }
+
+    /**
+     * The {@link net.dv8tion.jda.audio.player.AudioGain AudioGain} applied to the audio of this player.
+     * It can be used to fade, duck or mute the player.
+     *
+     * @return
+     *      The AudioGain of this player.
+     */
+    public AudioGain getAudioGain()
+    {
+        return gain;
     }
 
     @Override
@@ -108,26 +305,223 @@ public abstract class Player implements AudioSendHandler
         if (audioSource == null || audioFormat == null)
             throw new IllegalStateException("The Audio source was never set for this player!\n" +
                     "Please provide an AudioInputStream using setAudioSource.");
+
+        BlockingQueue<byte[]> ready = readyFrames;
+        BlockingQueue<byte[]> free = freeFrames;
+        if (ready == null || free == null)
+            return provideDirect();
+
+        //The frame handed out by the previous call has been sent by now and can be decoded into again.
+        if (providedFrame != null)
+        {
+            free.offer(providedFrame);
+            providedFrame = null;
+        }
+
+        byte[] frame = ready.poll();
+        if (frame != null)
+        {
+            providedFrame = frame;
+            scheduleDecode();
+            return applyGain(frame);
+        }
+
+        if (sourceEnded)
+        {
+            stop();
+            closeSource();
+            return null;
+        }
+
+        underruns++;
+        scheduleDecode();
+        return applyGain(silenceFrame);
+    }
+
+    private byte[] provideDirect()
+    {
+        AudioInputStream source;
+        byte[] frame;
+        byte[] silence;
+        synchronized (decodeLock)
+        {
+            source = audioSource;
+            frame = directFrame;
+            silence = silenceFrame;
+        }
+        //A decoder started before the read-ahead was disabled might still be reading.
+        if (frame == null || !readLock.tryLock())
+        {
+            underruns++;
+            return applyGain(silence);
+        }
         try
         {
-            int amountRead;
-            byte[] audio = new byte[AudioConnection.OPUS_FRAME_SIZE * audioFormat.getFrameSize()];
-            amountRead = audioSource.read(audio, 0, audio.length);
-            if (amountRead > -1)
-            {
-                return audio;
-            }
-            else
+            if (readFrame(source, frame))
+                return applyGain(frame);
+            stop();
+            closeSource();
+            return null;
+        }
+        catch (IOException e)
+        {
+            SimpleLog.getLog("JDAPlayer").log(e);
+        }
+        finally
+        {
+            readLock.unlock();
+        }
+        return new byte[0];
+    }
+
+    private byte[] applyGain(byte[] frame)
+    {
+        //Frames are always BigEndian, but only 16 bit samples can be scaled.
+        if (audioFormat.getSampleSizeInBits() == 16)
+            gain.process(frame, audioFormat.getChannels());
+        return frame;
+    }
+
+    private void setupFrames()
+    {
+        int frameLength = AudioConnection.OPUS_FRAME_SIZE * audioFormat.getFrameSize();
+        int frameCount = (bufferDuration + AudioConnection.OPUS_FRAME_TIME_AMOUNT - 1) / AudioConnection.OPUS_FRAME_TIME_AMOUNT;
+
+        providedFrame = null;
+        silenceFrame = new byte[frameLength];
+        if (frameCount == 0)
+        {
+            freeFrames = null;
+            readyFrames = null;
+            directFrame = new byte[frameLength];
+            return;
+        }
+
+        //One additional frame because the frame last handed to the sending thread is still in use.
+        directFrame = null;
+        freeFrames = new ArrayBlockingQueue<>(frameCount + 1);
+        readyFrames = new ArrayBlockingQueue<>(frameCount + 1);
+        for (int i = 0; i < frameCount + 1; i++)
+            freeFrames.add(new byte[frameLength]);
+    }
+
+    private void scheduleDecode()
+    {
+        BlockingQueue<byte[]> free = freeFrames;
+        if (free != null && !sourceEnded && !free.isEmpty() && decoding.compareAndSet(false, true))
+            DECODER_POOL.execute(this::decodeAhead);
+    }
+
+    private void decodeAhead()
+    {
+        try
+        {
+            while (true)
             {
-                stop();
-                audioSource.close();
-                return null;
+                AudioInputStream source;
+                BlockingQueue<byte[]> ready;
+                byte[] frame;
+                int gen;
+                synchronized (decodeLock)
+                {
+                    if (sourceEnded || freeFrames == null || (frame = freeFrames.poll()) == null)
+                        break;
+                    source = audioSource;
+                    ready = readyFrames;
+                    gen = generation;
+                }
+
+                boolean read;
+                try
+                {
+                    readLock.lock();
+                    try
+                    {
+                        read = readFrame(source, frame);
+                    }
+                    finally
+                    {
+                        readLock.unlock();
+                    }
+                }
+                catch (Exception e)
+                {
+                    synchronized (decodeLock)
+                    {
+                        //The source or buffer was replaced during the read, replaced sources are closed.
+                        if (gen != generation)
+                            continue;
+                        //Players close their streams when stopped, which fails any read that is still in progress.
+                        if (!(e instanceof IOException) || !isStopped())
+                            SimpleLog.getLog("JDAPlayer").log(e);
+                        sourceEnded = true;
+                    }
+                    continue;
+                }
+
+                synchronized (decodeLock)
+                {
+                    if (gen != generation)
+                        continue;
+                    if (read)
+                    {
+                        ready.offer(frame);
+                    }
+                    else
+                    {
+                        freeFrames.offer(frame);
+                        sourceEnded = true;
+                    }
+                }
             }
         }
+        finally
+        {
+            decoding.set(false);
+        }
+        //A frame might have been freed after the loop ended but before decoding was reset.
+        scheduleDecode();
+    }
+
+    /**
+     * Reads a complete frame from the audio source. Partially filled frames at the end of the stream are padded with silence.
+     *
+     * @return
+     *      False if the end of the audio source was reached before anything could be read.
+     */
+    private boolean readFrame(AudioInputStream source, byte[] frame) throws IOException
+    {
+        long start = System.nanoTime();
+        int offset = 0;
+        while (offset < frame.length)
+        {
+            int amountRead = source.read(frame, offset, frame.length - offset);
+            if (amountRead < 0)
+                break;
+            offset += amountRead;
+        }
+        if (offset == 0)
+            return false;
+        for (int i = offset; i < frame.length; i++)
+            frame[i] = 0;
+
+        long decodeTime = System.nanoTime() - start;
+        framesDecoded++;
+        decodeTimeTotal += decodeTime;
+        if (decodeTime > decodeTimeMax)
+            decodeTimeMax = decodeTime;
+        return true;
+    }
+
+    private void closeSource()
+    {
+        try
+        {
+            audioSource.close();
+        }
         catch (IOException e)
         {
             SimpleLog.getLog("JDAPlayer").log(e);
         }
-        return new byte[0];
     }
 }
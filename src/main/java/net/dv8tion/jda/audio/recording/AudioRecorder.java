@@ -0,0 +1,355 @@
+/*
+ *     Copyright 2015-2016 Austin Keener & Michael Ritter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.dv8tion.jda.audio.recording;
+
+import net.dv8tion.jda.audio.AudioPacket;
+import net.dv8tion.jda.audio.AudioReceiveHandler;
+import net.dv8tion.jda.audio.CombinedAudio;
+import net.dv8tion.jda.audio.UserAudio;
+import net.dv8tion.jda.entities.User;
+import net.dv8tion.jda.utils.SimpleLog;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+
+/**
+ * An {@link net.dv8tion.jda.audio.AudioReceiveHandler AudioReceiveHandler} that records every user into its own file.
+ * <p>
+ * Every SSRC (a user during one audio connection) gets a track named <code>&lt;userId&gt;-&lt;ssrc&gt;&lt;extension&gt;</code>
+ * in the provided directory. Periods in which a user is silent are written as silence, so all tracks of a recording
+ * share the same timeline from the moment the user first spoke.
+ * <p>
+ * The receive thread only hands the received Opus packets to a bounded queue. A dedicated I/O thread decodes them
+ * (for {@link net.dv8tion.jda.audio.recording.RecordingFormat#WAV WAV}) and writes them in large buffered chunks.
+ * If the disk can't keep up and the queue is full, packets are dropped instead of delaying the receive thread.
+ * These drops, the queue depth and the written bytes are available to monitor the recorder.
+ * <p>
+ * Tracks are only complete once the recorder was {@link #close() closed}. An AudioRecorder should only be used
+ * for a single {@link net.dv8tion.jda.managers.AudioManager AudioManager}.
+ */
+public class AudioRecorder implements AudioReceiveHandler, Closeable
+{
+    public static final SimpleLog LOG = SimpleLog.getLog("JDAAudioRecorder");
+
+    /**
+     * The default capacity of the queue in packets, about 10 seconds of audio of 10 users.
+     */
+    public static final int DEFAULT_QUEUE_CAPACITY = 5000;
+
+    private static final AtomicInteger THREAD_COUNT = new AtomicInteger(0);
+    private static final Frame END = new Frame(null, null);
+
+    private final File directory;
+    private final RecordingFormat format;
+    private final BlockingQueue<Frame> queue;
+    private final Map<Integer, Track> tracks = new HashMap<>();     //Only used by the I/O thread.
+    private final Thread ioThread;
+
+    private volatile Predicate<User> userFilter = null;
+    private volatile boolean closed = false;
+
+    private final AtomicInteger maxQueueDepth = new AtomicInteger(0);
+    private final AtomicLong droppedPackets = new AtomicLong(0);
+    private volatile long writtenPackets = 0;
+    private volatile long writtenBytes = 0;
+    private volatile int trackCount = 0;
+
+    /**
+     * Creates a recorder writing tracks in the given format to the given directory.
+     *
+     * @param directory
+     *          The directory to write the tracks to. Will be created if it doesn't exist.
+     * @param format
+     *          The format of the tracks.
+     */
+    public AudioRecorder(File directory, RecordingFormat format)
+    {
+        this(directory, format, DEFAULT_QUEUE_CAPACITY);
+    }
+
+    /**
+     * Creates a recorder writing tracks in the given format to the given directory.
+     *
+     * @param directory
+     *          The directory to write the tracks to. Will be created if it doesn't exist.
+     * @param format
+     *          The format of the tracks.
+     * @param queueCapacity
+     *          The amount of packets that can wait for the I/O thread before new packets are dropped.
+     */
+    public AudioRecorder(File directory, RecordingFormat format, int queueCapacity)
+    {
+        if (directory == null)
+            throw new IllegalArgumentException("The recording directory cannot be null!");
+        if (format == null)
+            throw new IllegalArgumentException("The recording format cannot be null!");
+        if (queueCapacity < 1)
+            throw new IllegalArgumentException("The queue capacity must be at least 1! Provided: " + queueCapacity);
+        directory.mkdirs();
+        if (!directory.isDirectory())
+            throw new IllegalArgumentException("The recording directory could not be created! Provided: " + directory);
+
+        this.directory = directory;
+        this.format = format;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.ioThread = new Thread(this::run, "JDA AudioRecorder " + THREAD_COUNT.incrementAndGet());
+        this.ioThread.setDaemon(true);
+        this.ioThread.start();
+    }
+
+    /**
+     * Only records the users the filter accepts. Packets of other users are dropped before they are decrypted.
+     *
+     * @param filter
+     *          The filter, or null to record all users.
+     */
+    public void setUserFilter(Predicate<User> filter)
+    {
+        this.userFilter = filter;
+    }
+
+    public RecordingFormat getFormat()
+    {
+        return format;
+    }
+
+    public File getDirectory()
+    {
+        return directory;
+    }
+
+    /**
+     * The amount of packets waiting for the I/O thread.
+     *
+     * @return
+     *      The current queue depth.
+     */
+    public int getQueueDepth()
+    {
+        return queue.size();
+    }
+
+    /**
+     * The highest amount of packets that were waiting for the I/O thread at the same time.
+     * A value close to the queue capacity means the disk barely keeps up.
+     *
+     * @return
+     *      The maximum queue depth.
+     */
+    public int getMaxQueueDepth()
+    {
+        return maxQueueDepth.get();
+    }
+
+    /**
+     * The amount of packets that were dropped because the queue was full.
+     *
+     * @return
+     *      The amount of dropped packets.
+     */
+    public long getDroppedPackets()
+    {
+        return droppedPackets.get();
+    }
+
+    public long getWrittenPackets()
+    {
+        return writtenPackets;
+    }
+
+    /**
+     * The amount of bytes written to all tracks, including silence and data that is still buffered.
+     *
+     * @return
+     *      The written bytes.
+     */
+    public long getWrittenBytes()
+    {
+        return writtenBytes;
+    }
+
+    public int getTrackCount()
+    {
+        return trackCount;
+    }
+
+    @Override
+    public boolean canReceiveCombined()
+    {
+        return false;
+    }
+
+    @Override
+    public boolean canReceiveUser()
+    {
+        return false;
+    }
+
+    @Override
+    public boolean canReceiveEncoded()
+    {
+        return !closed;
+    }
+
+    @Override
+    public boolean shouldReceiveUser(User user)
+    {
+        Predicate<User> filter = userFilter;
+        return filter == null || filter.test(user);
+    }
+
+    @Override
+    public void handleEncodedAudio(User user, AudioPacket packet)
+    {
+        if (closed)
+            return;
+        if (!queue.offer(new Frame(user.getId(), packet)))
+        {
+            droppedPackets.incrementAndGet();
+            return;
+        }
+        int depth = queue.size();
+        if (depth > maxQueueDepth.get())
+            maxQueueDepth.accumulateAndGet(depth, Math::max);
+    }
+
+    @Override
+    public void handleCombinedAudio(CombinedAudio combinedAudio) {}
+
+    @Override
+    public void handleUserAudio(UserAudio userAudio) {}
+
+    @Override
+    public void handleUserTalking(User user, boolean talking) {}
+
+    /**
+     * Stops recording, writes all queued packets and completes the tracks. Blocks until all tracks were closed.
+     */
+    @Override
+    public void close()
+    {
+        if (closed)
+            return;
+        closed = true;
+        try
+        {
+            //If the I/O thread died, nothing takes from the queue anymore and it might be full.
+            while (ioThread.isAlive() && !queue.offer(END, 100, TimeUnit.MILLISECONDS)) {}
+            ioThread.join();
+        }
+        catch (InterruptedException e)
+        {
+            LOG.warn("Interrupted while waiting for the recording to be written. Tracks may be incomplete.");
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void run()
+    {
+        try
+        {
+            while (true)
+            {
+                Frame frame = queue.take();
+                if (frame == END)
+                    break;
+                write(frame);
+            }
+        }
+        catch (InterruptedException e)
+        {
+            LOG.warn("The I/O thread of the recorder was interrupted. Tracks may be incomplete.");
+        }
+        finally
+        {
+            for (Track track : tracks.values())
+            {
+                if (track == null)
+                    continue;
+                try
+                {
+                    track.close();
+                }
+                catch (IOException | RuntimeException e)
+                {
+                    LOG.warn("Could not complete the track " + track.getFile() + ": " + e);
+                }
+            }
+        }
+    }
+
+    private void write(Frame frame)
+    {
+        int ssrc = frame.packet.getSSRC();
+        Track track = tracks.get(ssrc);
+        try
+        {
+            if (track == null)
+            {
+                if (tracks.containsKey(ssrc))
+                    return;     //Creating the track failed before.
+                File file = new File(directory, frame.userId + "-" + Integer.toUnsignedString(ssrc) + format.getExtension());
+                try
+                {
+                    track = Track.create(format, file, ssrc);
+                }
+                finally
+                {
+                    tracks.put(ssrc, track);
+                    trackCount = tracks.size();
+                }
+            }
+            long sizeBefore = track.getSize();
+            track.write(frame.packet);
+            writtenBytes += track.getSize() - sizeBefore;
+            writtenPackets++;
+        }
+        //Also covers a track that fails to load its decoder, only that track stops recording.
+        catch (IOException | RuntimeException | LinkageError e)
+        {
+            LOG.warn("Could not write to the track of SSRC " + Integer.toUnsignedString(ssrc) + ", it won't be recorded anymore: " + e);
+            if (track != null)
+            {
+                try
+                {
+                    track.close();
+                }
+                catch (IOException | RuntimeException ignored) {}
+            }
+            tracks.put(ssrc, null);
+        }
+    }
+
+    private static class Frame
+    {
+        private final String userId;
+        private final AudioPacket packet;
+
+        private Frame(String userId, AudioPacket packet)
+        {
+            this.userId = userId;
+            this.packet = packet;
+        }
+    }
+}
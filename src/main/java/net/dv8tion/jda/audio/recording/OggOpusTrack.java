@@ -0,0 +1,169 @@
+/*
+ *     Copyright 2015-2016 Austin Keener & Michael Ritter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.dv8tion.jda.audio.recording;
+
+import net.dv8tion.jda.audio.AudioConnection;
+import net.dv8tion.jda.audio.AudioPacket;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Muxes the Opus packets of a track into an Ogg/Opus stream (RFC 7845).
+ * <p>
+ * Packets are never split across pages. A page is written once it holds {@value #PACKETS_PER_PAGE} packets
+ * (one second of audio) or the next packet doesn't fit anymore. The last page is kept until the track is closed,
+ * so it can be marked as end of the stream.
+ */
+class OggOpusTrack extends Track
+{
+    private static final int PACKETS_PER_PAGE = 50;
+    private static final int PAGE_HEADER_LENGTH = 27;
+    private static final int FLAG_BEGIN_OF_STREAM = 0x02;
+    private static final int FLAG_END_OF_STREAM = 0x04;
+    private static final int[] CRC_TABLE = new int[256];
+
+    static
+    {
+        //Ogg uses CRC-32 with the polynomial 0x04C11DB7, without reflection and without a final XOR.
+        for (int i = 0; i < CRC_TABLE.length; i++)
+        {
+            int crc = i << 24;
+            for (int bit = 0; bit < 8; bit++)
+                crc = (crc & 0x80000000) != 0 ? (crc << 1) ^ 0x04C11DB7 : crc << 1;
+            CRC_TABLE[i] = crc;
+        }
+    }
+
+    private final byte[] segments = new byte[255];
+    private final byte[] pageData = new byte[255 * 255];
+    private int segmentCount = 0;
+    private int pageLength = 0;
+    private int pagePackets = 0;
+    private int pageSequence = 0;
+    private long granulePosition = 0;
+
+    OggOpusTrack(File file, int ssrc) throws IOException
+    {
+        super(file, ssrc, ByteOrder.LITTLE_ENDIAN);
+    }
+
+    @Override
+    protected void writeHeader() throws IOException
+    {
+        //The identification header has to be alone on the first page.
+        ByteBuffer head = ByteBuffer.allocate(19).order(ByteOrder.LITTLE_ENDIAN);
+        head.put("OpusHead".getBytes(StandardCharsets.US_ASCII));
+        head.put((byte) 1);                                     //Version
+        head.put((byte) AudioConnection.OPUS_CHANNEL_COUNT);
+        head.putShort((short) 0);                               //Pre-skip, the packets weren't encoded by us.
+        head.putInt(AudioConnection.OPUS_SAMPLE_RATE);          //Input sample rate
+        head.putShort((short) 0);                               //Output gain
+        head.put((byte) 0);                                     //Channel mapping family: mono or stereo
+        addPacket(head.array());
+        writePage(FLAG_BEGIN_OF_STREAM);
+
+        byte[] vendor = "JDA".getBytes(StandardCharsets.UTF_8);
+        ByteBuffer tags = ByteBuffer.allocate(8 + 4 + vendor.length + 4).order(ByteOrder.LITTLE_ENDIAN);
+        tags.put("OpusTags".getBytes(StandardCharsets.US_ASCII));
+        tags.putInt(vendor.length);
+        tags.put(vendor);
+        tags.putInt(0);                                         //No user comments
+        addPacket(tags.array());
+        writePage(0);
+    }
+
+    @Override
+    protected void writePacket(AudioPacket packet, byte[] opus, int samples) throws IOException
+    {
+        writePacket(opus, samples);
+    }
+
+    @Override
+    protected void writeSilence(int samples) throws IOException
+    {
+        for (int i = 0; i < samples / FRAME_SIZE; i++)
+            writePacket(SILENCE, FRAME_SIZE);
+    }
+
+    @Override
+    long getSize() throws IOException
+    {
+        return super.getSize() + segmentCount + pageLength;
+    }
+
+    @Override
+    protected void finish() throws IOException
+    {
+        writePage(FLAG_END_OF_STREAM);
+        flush();
+    }
+
+    private void writePacket(byte[] opus, int samples) throws IOException
+    {
+        if (pagePackets == PACKETS_PER_PAGE || segmentCount + opus.length / 255 + 1 > segments.length)
+            writePage(0);
+        addPacket(opus);
+        granulePosition += samples;
+    }
+
+    private void addPacket(byte[] packet)
+    {
+        //A packet is split into 255 byte segments, a segment shorter than 255 bytes (possibly 0) ends it.
+        int remaining = packet.length;
+        do
+        {
+            int segment = Math.min(remaining, 255);
+            segments[segmentCount++] = (byte) segment;
+            remaining -= segment;
+            if (segment < 255)
+                break;
+        }
+        while (true);
+        System.arraycopy(packet, 0, pageData, pageLength, packet.length);
+        pageLength += packet.length;
+        pagePackets++;
+    }
+
+    private void writePage(int flags) throws IOException
+    {
+        byte[] page = new byte[PAGE_HEADER_LENGTH + segmentCount + pageLength];
+        ByteBuffer header = ByteBuffer.wrap(page).order(ByteOrder.LITTLE_ENDIAN);
+        header.put("OggS".getBytes(StandardCharsets.US_ASCII));
+        header.put((byte) 0);                       //Version
+        header.put((byte) flags);
+        header.putLong(granulePosition);
+        header.putInt(ssrc);                        //Stream serial number
+        header.putInt(pageSequence++);
+        header.putInt(0);                           //CRC, calculated over the page with this field set to 0.
+        header.put((byte) segmentCount);
+        header.put(segments, 0, segmentCount);
+        header.put(pageData, 0, pageLength);
+
+        int crc = 0;
+        for (byte b : page)
+            crc = (crc << 8) ^ CRC_TABLE[((crc >>> 24) ^ b) & 0xFF];
+        header.putInt(22, crc);
+
+        put(page, 0, page.length);
+        segmentCount = 0;
+        pageLength = 0;
+        pagePackets = 0;
+    }
+}
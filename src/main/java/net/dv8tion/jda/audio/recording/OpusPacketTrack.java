@@ -0,0 +1,63 @@
+/*
+ *     Copyright 2015-2016 Austin Keener & Michael Ritter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.dv8tion.jda.audio.recording;
+
+import net.dv8tion.jda.audio.AudioPacket;
+import net.dv8tion.jda.audio.player.OpusPacketFile;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Writes the Opus packets of a track as {@link net.dv8tion.jda.audio.player.OpusPacketFile OpusPacketFile}.
+ * Silence is written as 20ms silence packets, as the format has no timestamps.
+ */
+class OpusPacketTrack extends Track
+{
+    OpusPacketTrack(File file, int ssrc) throws IOException
+    {
+        super(file, ssrc, ByteOrder.BIG_ENDIAN);
+    }
+
+    @Override
+    protected void writeHeader() throws IOException
+    {
+        ByteBuffer header = reserve(OpusPacketFile.MAGIC.length() + 1);
+        header.put(OpusPacketFile.MAGIC.getBytes());
+        header.put((byte) OpusPacketFile.VERSION);
+    }
+
+    @Override
+    protected void writePacket(AudioPacket packet, byte[] opus, int samples) throws IOException
+    {
+        writePacket(opus);
+    }
+
+    @Override
+    protected void writeSilence(int samples) throws IOException
+    {
+        for (int i = 0; i < samples / FRAME_SIZE; i++)
+            writePacket(SILENCE);
+    }
+
+    private void writePacket(byte[] opus) throws IOException
+    {
+        reserve(2).putShort((short) opus.length);
+        put(opus, 0, opus.length);
+    }
+}
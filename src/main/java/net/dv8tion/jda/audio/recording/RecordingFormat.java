@@ -0,0 +1,55 @@
+/*
+ *     Copyright 2015-2016 Austin Keener & Michael Ritter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.dv8tion.jda.audio.recording;
+
+/**
+ * The file formats an {@link net.dv8tion.jda.audio.recording.AudioRecorder AudioRecorder} can write tracks in.
+ */
+public enum RecordingFormat
+{
+    /**
+     * 48KHz 16bit stereo signed LittleEndian PCM in a WAVE file. The Opus audio is decoded on the I/O thread of the recorder.
+     */
+    WAV(".wav"),
+    /**
+     * JDA's {@link net.dv8tion.jda.audio.player.OpusPacketFile Opus packet file} format. The received Opus packets
+     * are written without decoding them and can be played with an {@link net.dv8tion.jda.audio.player.OpusPlayer OpusPlayer}.
+     */
+    OPUS_PACKETS(".jdao"),
+    /**
+     * An Ogg/Opus file (RFC 7845), playable by most media players. The received Opus packets are written without
+     * decoding them.
+     */
+    OGG_OPUS(".opus");
+
+    private final String extension;
+
+    RecordingFormat(String extension)
+    {
+        this.extension = extension;
+    }
+
+    /**
+     * The file extension of tracks in this format, including the dot.
+     *
+     * @return
+     *      The file extension.
+     */
+    public String getExtension()
+    {
+        return extension;
+    }
+}
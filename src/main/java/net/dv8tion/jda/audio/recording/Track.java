@@ -0,0 +1,193 @@
+/*
+ *     Copyright 2015-2016 Austin Keener & Michael Ritter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.dv8tion.jda.audio.recording;
+
+import net.dv8tion.jda.audio.AudioConnection;
+import net.dv8tion.jda.audio.AudioPacket;
+import net.dv8tion.jda.audio.player.OpusSource;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A file containing the audio of a single SSRC. Only used by the I/O thread of an AudioRecorder.
+ * <p>
+ * Writes are collected in a large direct buffer and handed to the FileChannel once it is full, so the file system
+ * sees a few large writes instead of one small write per 20ms packet.
+ */
+abstract class Track implements Closeable
+{
+    static final int BUFFER_SIZE = 1 << 16;
+    static final int FRAME_SIZE = AudioConnection.OPUS_FRAME_SIZE;
+    //Gaps longer than this are most likely a reset of the RTP timestamp instead of silence.
+    static final int MAX_GAP = AudioConnection.OPUS_SAMPLE_RATE * 60 * 60;
+    static final byte[] SILENCE = new byte[] {(byte) 0xF8, (byte) 0xFF, (byte) 0xFE};
+
+    protected final File file;
+    protected final int ssrc;
+    protected final FileChannel channel;
+    protected final ByteBuffer buffer;
+
+    private int nextTimestamp;
+    private boolean started = false;
+
+    protected Track(File file, int ssrc, ByteOrder order) throws IOException
+    {
+        this.file = file;
+        this.ssrc = ssrc;
+        this.channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        this.buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(order);
+    }
+
+    static Track create(RecordingFormat format, File file, int ssrc) throws IOException
+    {
+        Track track;
+        switch (format)
+        {
+            case WAV:
+                track = new WaveTrack(file, ssrc);
+                break;
+            case OPUS_PACKETS:
+                track = new OpusPacketTrack(file, ssrc);
+                break;
+            case OGG_OPUS:
+                track = new OggOpusTrack(file, ssrc);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown recording format: " + format);
+        }
+        try
+        {
+            track.writeHeader();
+        }
+        catch (IOException e)
+        {
+            track.channel.close();
+            throw e;
+        }
+        return track;
+    }
+
+    /**
+     * Writes the packet, preceded by silence if the RTP timestamp of the packet shows that packets were left out.
+     *
+     * @param packet
+     *          The decrypted packet.
+     * @throws IOException
+     *          If the file could not be written.
+     */
+    void write(AudioPacket packet) throws IOException
+    {
+        byte[] opus = packet.getEncodedAudio();
+        if (started)
+        {
+            int gap = packet.getTimestamp() - nextTimestamp;    //int math handles the wrap-around of the timestamp.
+            if (gap > 0 && gap <= MAX_GAP)
+                writeSilence(gap);
+        }
+        int samples = OpusSource.getSampleCount(opus);
+        if (samples < 0)
+            samples = FRAME_SIZE;
+        writePacket(packet, opus, samples);
+        nextTimestamp = packet.getTimestamp() + samples;
+        started = true;
+    }
+
+    protected abstract void writeHeader() throws IOException;
+
+    protected abstract void writePacket(AudioPacket packet, byte[] opus, int samples) throws IOException;
+
+    protected abstract void writeSilence(int samples) throws IOException;
+
+    //Called once all buffered data was written, before the channel is closed. Used to write trailers and fix up headers.
+    protected void finish() throws IOException {}
+
+    /**
+     * Makes sure the buffer has room for the given amount of bytes, writing it to the file if it doesn't.
+     *
+     * @param bytes
+     *          The amount of bytes that will be put, at most {@value #BUFFER_SIZE}.
+     * @return
+     *      The buffer.
+     * @throws IOException
+     *          If the file could not be written.
+     */
+    protected ByteBuffer reserve(int bytes) throws IOException
+    {
+        if (buffer.remaining() < bytes)
+            flush();
+        return buffer;
+    }
+
+    protected void put(byte[] data, int offset, int length) throws IOException
+    {
+        while (length > 0)
+        {
+            if (!buffer.hasRemaining())
+                flush();
+            int chunk = Math.min(length, buffer.remaining());
+            buffer.put(data, offset, chunk);
+            offset += chunk;
+            length -= chunk;
+        }
+    }
+
+    protected void flush() throws IOException
+    {
+        buffer.flip();
+        while (buffer.hasRemaining())
+            channel.write(buffer);
+        buffer.clear();
+    }
+
+    /**
+     * The size of the track, including data that is still buffered.
+     *
+     * @return
+     *      The size in bytes.
+     * @throws IOException
+     *          If the position of the file could not be read.
+     */
+    long getSize() throws IOException
+    {
+        return channel.position() + buffer.position();
+    }
+
+    File getFile()
+    {
+        return file;
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        try
+        {
+            flush();
+            finish();
+        }
+        finally
+        {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ *     Copyright 2015-2016 Austin Keener & Michael Ritter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.dv8tion.jda.audio.recording;
+
+import net.dv8tion.jda.audio.AudioConnection;
+import net.dv8tion.jda.audio.AudioPacket;
+import net.dv8tion.jda.audio.Decoder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Decodes the Opus packets of a track and writes them as PCM WAVE file.
+ * The sizes in the header are written once the track is closed.
+ */
+class WaveTrack extends Track
+{
+    private static final int HEADER_LENGTH = 44;
+    private static final int BYTES_PER_SAMPLE = AudioConnection.OPUS_CHANNEL_COUNT * 2;
+    private static final byte[] ZEROS = new byte[FRAME_SIZE * BYTES_PER_SAMPLE];
+
+    private final Decoder decoder;
+
+    WaveTrack(File file, int ssrc) throws IOException
+    {
+        super(file, ssrc, ByteOrder.LITTLE_ENDIAN);
+        this.decoder = new Decoder(ssrc);
+    }
+
+    @Override
+    protected void writeHeader() throws IOException
+    {
+        ByteBuffer header = reserve(HEADER_LENGTH);
+        header.put("RIFF".getBytes());
+        header.putInt(0);                               //Size of the file - 8, written in finish()
+        header.put("WAVE".getBytes());
+        header.put("fmt ".getBytes());
+        header.putInt(16);                              //Size of the fmt chunk
+        header.putShort((short) 1);                     //PCM
+        header.putShort((short) AudioConnection.OPUS_CHANNEL_COUNT);
+        header.putInt(AudioConnection.OPUS_SAMPLE_RATE);
+        header.putInt(AudioConnection.OPUS_SAMPLE_RATE * BYTES_PER_SAMPLE);     //Byte rate
+        header.putShort((short) BYTES_PER_SAMPLE);      //Block align
+        header.putShort((short) 16);                    //Bits per sample
+        header.put("data".getBytes());
+        header.putInt(0);                               //Size of the data, written in finish()
+    }
+
+    @Override
+    protected void writePacket(AudioPacket packet, byte[] opus, int samples) throws IOException
+    {
+        short[] pcm = decoder.decodeFromOpus(packet);
+        if (pcm == null)
+        {
+            //Keep the timeline intact if Opus fails to decode the packet.
+            writeSilence(samples);
+            return;
+        }
+        ByteBuffer buffer = reserve(pcm.length * 2);
+        for (short sample : pcm)
+            buffer.putShort(sample);
+    }
+
+    @Override
+    protected void writeSilence(int samples) throws IOException
+    {
+        long bytes = (long) samples * BYTES_PER_SAMPLE;
+        while (bytes > 0)
+        {
+            int chunk = (int) Math.min(bytes, ZEROS.length);
+            put(ZEROS, 0, chunk);
+            bytes -= chunk;
+        }
+    }
+
+    @Override
+    protected void finish() throws IOException
+    {
+        decoder.close();
+        long dataSize = channel.size() - HEADER_LENGTH;
+        //The sizes are unsigned 32bit integers. Files over 4GB are still readable by most tools if the size is capped.
+        int riffSize = (int) Math.min(dataSize + HEADER_LENGTH - 8, 0xFFFFFFFFL);
+        int dataChunkSize = (int) Math.min(dataSize, 0xFFFFFFFFL);
+
+        ByteBuffer size = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+        size.putInt(0, riffSize);
+        channel.write(size, 4);
+        size.clear();
+        size.putInt(0, dataChunkSize);
+        channel.write(size, 40);
+    }
+}
@@ -17,6 +17,7 @@ package net.dv8tion.jda.entities;
 
 import net.dv8tion.jda.JDA;
 import net.dv8tion.jda.Permission;
+import net.dv8tion.jda.PermissionSet;
 import net.dv8tion.jda.managers.ChannelManager;
 import net.dv8tion.jda.managers.PermissionOverrideManager;
 import net.dv8tion.jda.utils.InviteUtil;
@@ -107,6 +108,19 @@ public interface Channel
      */
     boolean checkPermission(User user, Permission... permissions);
 
+    /**
+     * Checks if the given {@link net.dv8tion.jda.entities.User User} has all {@link net.dv8tion.jda.Permission Permissions}
+     * of the given {@link net.dv8tion.jda.PermissionSet PermissionSet} in this Channel
+     *
+     * @param user
+     *          the User to check the Permissions against
+     * @param permissions
+     *          the Permissions to check for
+     * @return
+     *      if the given User has the given Permissions in this Channel
+     */
+    boolean checkPermission(User user, PermissionSet permissions);
+
     /**
      * Returns the {@link net.dv8tion.jda.managers.ChannelManager ChannelManager} for this Channel.
      * In the ChannelManager, you can modify the name, topic and position of this Channel.
@@ -20,7 +20,10 @@ import net.dv8tion.jda.MessageHistory;
 import net.dv8tion.jda.exceptions.VerificationLevelException;
 
 import java.io.File;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.function.Consumer;
 
 /**
@@ -171,6 +174,8 @@ public interface MessageChannel
      * Sends the provided {@link net.dv8tion.jda.entities.Message Message} with the uploaded file.<br>
      * If you do not wish to send a Message with the uploaded file, you can provide <code>null</code> for
      * the <code>message</code> parameter.
+     * <p>
+     * Use {@link #sendFileAsync(java.io.File, net.dv8tion.jda.entities.Message)} to get a future instead of a callback.
      *
      * @param file
      *          The file to upload to the {@link net.dv8tion.jda.entities.TextChannel TextChannel}.
@@ -178,6 +183,7 @@ public interface MessageChannel
      *          The message to be sent along with the uploaded file. This value can be <code>null</code>.
      * @param callback
      *          Function to deal with the returned {@link net.dv8tion.jda.entities.Message Message} after asynchronous uploading completes.
+     *          Receives null if the upload failed. This value can be <code>null</code>.
      * @throws net.dv8tion.jda.exceptions.PermissionException
      *      <ul>
      *          <li>
@@ -195,6 +201,168 @@ public interface MessageChannel
      */
     void sendFileAsync(File file, Message message, Consumer<Message> callback);
 
+    /**
+     * Asynchronously uploads a file to the Discord servers and sends it to this {@link net.dv8tion.jda.entities.TextChannel TextChannel}.
+     * Sends the provided {@link net.dv8tion.jda.entities.Message Message} with the uploaded file.<br>
+     * If you do not wish to send a Message with the uploaded file, you can provide <code>null</code> for
+     * the <code>message</code> parameter.
+     *
+     * @param file
+     *          The file to upload to the {@link net.dv8tion.jda.entities.TextChannel TextChannel}.
+     * @param message
+     *          The message to be sent along with the uploaded file. This value can be <code>null</code>.
+     * @return
+     *      A future that completes with the created {@link net.dv8tion.jda.entities.Message Message},
+     *      or exceptionally if the upload failed.
+     * @throws net.dv8tion.jda.exceptions.PermissionException
+     *      <ul>
+     *          <li>
+     *              If this is a {@link net.dv8tion.jda.entities.TextChannel TextChannel} and the logged in account does
+     *              not have {@link net.dv8tion.jda.Permission#MESSAGE_WRITE Permission.MESSAGE_WRITE}.
+     *          </li>
+     *          <li>
+     *              If this is a {@link net.dv8tion.jda.entities.TextChannel TextChannel} and the logged in account does
+     *              not have {@link net.dv8tion.jda.Permission#MESSAGE_ATTACH_FILES Permission.MESSAGE_ATTACH_FILES}.
+     *          </li>
+     *      </ul>
+     * @throws VerificationLevelException
+     *      If this is a {@link net.dv8tion.jda.entities.TextChannel TextChannel}
+     *      and you do not meet the required verification-level of the guild.
+     */
+    CompletableFuture<Message> sendFileAsync(File file, Message message);
+
+    /**
+     * Uploads the content of the provided {@link java.io.InputStream InputStream} to the Discord servers and sends it
+     * to this channel, along with the provided {@link net.dv8tion.jda.entities.Message Message}.<br>
+     * The stream is read while uploading and closed afterwards. As its length is not known up front,
+     * the upload is aborted once it exceeds the maximum file-size of 8MB.
+     * <p>
+     * <b>Note:</b> This method is blocking.
+     *
+     * @param data
+     *          The data to upload.
+     * @param fileName
+     *          The name of the uploaded file. Its extension is used by Discord to detect images.
+     * @param message
+     *          The message to be sent along with the uploaded file. This value can be <code>null</code>.
+     * @return
+     *      The {@link net.dv8tion.jda.entities.Message Message} created from this upload.
+     * @throws net.dv8tion.jda.exceptions.PermissionException
+     *      <ul>
+     *          <li>
+     *              If this is a {@link net.dv8tion.jda.entities.TextChannel TextChannel} and the logged in account does
+     *              not have {@link net.dv8tion.jda.Permission#MESSAGE_WRITE Permission.MESSAGE_WRITE}.
+     *          </li>
+     *          <li>
+     *              If this is a {@link net.dv8tion.jda.entities.TextChannel TextChannel} and the logged in account does
+     *              not have {@link net.dv8tion.jda.Permission#MESSAGE_ATTACH_FILES Permission.MESSAGE_ATTACH_FILES}.
+     *          </li>
+     *      </ul>
+     * @throws VerificationLevelException
+     *      If this is a {@link net.dv8tion.jda.entities.TextChannel TextChannel}
+     *      and you do not meet the required verification-level of the guild.
+     */
+    Message sendFile(InputStream data, String fileName, Message message);
+
+    /**
+     * Uploads the remaining content of the provided {@link java.nio.ByteBuffer ByteBuffer} to the Discord servers
+     * and sends it to this channel, along with the provided {@link net.dv8tion.jda.entities.Message Message}.
+     * The position of the buffer is not modified.
+     * <p>
+     * <b>Note:</b> This method is blocking.
+     *
+     * @param data
+     *          The data to upload.
+     * @param fileName
+     *          The name of the uploaded file. Its extension is used by Discord to detect images.
+     * @param message
+     *          The message to be sent along with the uploaded file. This value can be <code>null</code>.
+     * @return
+     *      The {@link net.dv8tion.jda.entities.Message Message} created from this upload.
+     * @throws net.dv8tion.jda.exceptions.PermissionException
+     *      <ul>
+     *          <li>
+     *              If this is a {@link net.dv8tion.jda.entities.TextChannel TextChannel} and the logged in account does
+     *              not have {@link net.dv8tion.jda.Permission#MESSAGE_WRITE Permission.MESSAGE_WRITE}.
+     *          </li>
+     *          <li>
+     *              If this is a {@link net.dv8tion.jda.entities.TextChannel TextChannel} and the logged in account does
+     *              not have {@link net.dv8tion.jda.Permission#MESSAGE_ATTACH_FILES Permission.MESSAGE_ATTACH_FILES}.
+     *          </li>
+     *      </ul>
+     * @throws VerificationLevelException
+     *      If this is a {@link net.dv8tion.jda.entities.TextChannel TextChannel}
+     *      and you do not meet the required verification-level of the guild.
+     */
+    Message sendFile(ByteBuffer data, String fileName, Message message);
+
+    /**
+     * Asynchronous version of {@link #sendFile(java.io.InputStream, String, net.dv8tion.jda.entities.Message)}.
+     * The upload runs on a bounded pool of upload threads shared by all channels.
+     *
+     * @param data
+     *          The data to upload.
+     * @param fileName
+     *          The name of the uploaded file. Its extension is used by Discord to detect images.
+     * @param message
+     *          The message to be sent along with the uploaded file. This value can be <code>null</code>.
+     * @param callback
+     *          Function to deal with the returned {@link net.dv8tion.jda.entities.Message Message} after asynchronous uploading completes.
+     *          Receives null if the upload failed. This value can be <code>null</code>.
+     * @return
+     *      A future that completes with the created {@link net.dv8tion.jda.entities.Message Message},
+     *      or exceptionally if the upload failed.
+     * @throws net.dv8tion.jda.exceptions.PermissionException
+     *      <ul>
+     *          <li>
+     *              If this is a {@link net.dv8tion.jda.entities.TextChannel TextChannel} and the logged in account does
+     *              not have {@link net.dv8tion.jda.Permission#MESSAGE_WRITE Permission.MESSAGE_WRITE}.
+     *          </li>
+     *          <li>
+     *              If this is a {@link net.dv8tion.jda.entities.TextChannel TextChannel} and the logged in account does
+     *              not have {@link net.dv8tion.jda.Permission#MESSAGE_ATTACH_FILES Permission.MESSAGE_ATTACH_FILES}.
+     *          </li>
+     *      </ul>
+     * @throws VerificationLevelException
+     *      If this is a {@link net.dv8tion.jda.entities.TextChannel TextChannel}
+     *      and you do not meet the required verification-level of the guild.
+     */
+    CompletableFuture<Message> sendFileAsync(InputStream data, String fileName, Message message, Consumer<Message> callback);
+
+    /**
+     * Asynchronous version of {@link #sendFile(java.nio.ByteBuffer, String, net.dv8tion.jda.entities.Message)}.
+     * The upload runs on a bounded pool of upload threads shared by all channels.
+     * The buffer must not be modified until the upload completed.
+     *
+     * @param data
+     *          The data to upload.
+     * @param fileName
+     *          The name of the uploaded file. Its extension is used by Discord to detect images.
+     * @param message
+     *          The message to be sent along with the uploaded file. This value can be <code>null</code>.
+     * @param callback
+     *          Function to deal with the returned {@link net.dv8tion.jda.entities.Message Message} after asynchronous uploading completes.
+     *          Receives null if the upload failed. This value can be <code>null</code>.
+     * @return
+     *      A future that completes with the created {@link net.dv8tion.jda.entities.Message Message},
+     *      or exceptionally if the upload failed.
+     * @throws net.dv8tion.jda.exceptions.PermissionException
+     *      <ul>
+     *          <li>
+     *              If this is a {@link net.dv8tion.jda.entities.TextChannel TextChannel} and the logged in account does
+     *              not have {@link net.dv8tion.jda.Permission#MESSAGE_WRITE Permission.MESSAGE_WRITE}.
+     *          </li>
+     *          <li>
+     *              If this is a {@link net.dv8tion.jda.entities.TextChannel TextChannel} and the logged in account does
+     *              not have {@link net.dv8tion.jda.Permission#MESSAGE_ATTACH_FILES Permission.MESSAGE_ATTACH_FILES}.
+     *          </li>
+     *      </ul>
+     * @throws VerificationLevelException
+     *      If this is a {@link net.dv8tion.jda.entities.TextChannel TextChannel}
+     *      and you do not meet the required verification-level of the guild.
+     */
+    CompletableFuture<Message> sendFileAsync(ByteBuffer data, String fileName, Message message, Consumer<Message> callback);
+
     /**
      * Attempts to get a {@link net.dv8tion.jda.entities.Message Message} from the Discord servers that has
      * the same id as the id provided.<br>
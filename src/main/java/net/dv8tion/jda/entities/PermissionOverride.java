@@ -17,6 +17,7 @@ package net.dv8tion.jda.entities;
 
 import net.dv8tion.jda.JDA;
 import net.dv8tion.jda.Permission;
+import net.dv8tion.jda.PermissionSet;
 import net.dv8tion.jda.managers.PermissionOverrideManager;
 
 import java.util.List;
@@ -78,6 +79,24 @@ public interface PermissionOverride
      */
     List<Permission> getDenied();
 
+    /**
+     * The {@link net.dv8tion.jda.Permission Permissions} that are specifically allowed by this override, as
+     * {@link net.dv8tion.jda.PermissionSet PermissionSet}.
+     *
+     * @return
+     *      The allowed permissions.
+     */
+    PermissionSet getAllowedSet();
+
+    /**
+     * The {@link net.dv8tion.jda.Permission Permissions} that are denied by this override, as
+     * {@link net.dv8tion.jda.PermissionSet PermissionSet}.
+     *
+     * @return
+     *      The denied permissions.
+     */
+    PermissionSet getDeniedSet();
+
     /**
      * The {@link net.dv8tion.jda.JDA JDA} instance that this {@link net.dv8tion.jda.entities.PermissionOverride PermissionOverride} is related to.
      *
@@ -17,6 +17,7 @@ package net.dv8tion.jda.entities;
 
 import net.dv8tion.jda.JDA;
 import net.dv8tion.jda.Permission;
+import net.dv8tion.jda.PermissionSet;
 import net.dv8tion.jda.managers.RoleManager;
 
 import java.util.List;
@@ -114,6 +115,16 @@ public interface Role extends Comparable<Role>
      */
     List<Permission> getPermissions();
 
+    /**
+     * The literal {@link net.dv8tion.jda.Permission Permissions} of this {@link net.dv8tion.jda.entities.Role Role} as
+     * {@link net.dv8tion.jda.PermissionSet PermissionSet}. The set is cached until the permissions change.<br>
+     * <b>NOTE:</b> these do not necessarily represent the permissions this role will have in a {@link net.dv8tion.jda.entities.Channel Channel}.
+     *
+     * @return
+     *      The literal permissions of this role.
+     */
+    PermissionSet getPermissionSet();
+
     /**
      * The color this {@link net.dv8tion.jda.entities.Role Role} is displayed in.
      *
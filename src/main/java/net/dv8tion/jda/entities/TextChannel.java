@@ -43,6 +43,7 @@ public interface TextChannel extends Channel, MessageChannel, Comparable<TextCha
      * <p>
      * Must be at least 2 messages and not be more than 100 messages at a time.<br>
      * If you only have 1 message, use the {@link Message#deleteMessage()} method.<br>
+     * To delete more messages, or messages older than 14 days, use a {@link net.dv8tion.jda.MessagePurger MessagePurger}.<br>
      * <p>
      * You must have {@link net.dv8tion.jda.Permission#MESSAGE_MANAGE Permission.MESSAGE_MANAGE} in this channel to use
      * this function.
@@ -68,6 +69,7 @@ public interface TextChannel extends Channel, MessageChannel, Comparable<TextCha
      * <p>
      * Must be at least 2 messages and not be more than 100 messages at a time.<br>
      * If you only have 1 message, use the {@link Message#deleteMessage()} method.<br>
+     * To delete more messages, or messages older than 14 days, use a {@link net.dv8tion.jda.MessagePurger MessagePurger}.<br>
      * <p>
      * You must have {@link net.dv8tion.jda.Permission#MESSAGE_MANAGE Permission.MESSAGE_MANAGE} in this channel to use
      * this function.
@@ -17,11 +17,14 @@ package net.dv8tion.jda.entities.impl;
 
 import com.mashape.unirest.http.Unirest;
 import net.dv8tion.jda.JDA;
+import net.dv8tion.jda.ShardManager;
 import net.dv8tion.jda.entities.*;
 import net.dv8tion.jda.events.Event;
 import net.dv8tion.jda.events.StatusChangeEvent;
 import net.dv8tion.jda.events.guild.GuildJoinEvent;
 import net.dv8tion.jda.exceptions.RateLimitedException;
+import net.dv8tion.jda.handle.EntitySnapshot;
+import net.dv8tion.jda.handle.SessionReconciler;
 import net.dv8tion.jda.hooks.EventListener;
 import net.dv8tion.jda.hooks.IEventManager;
 import net.dv8tion.jda.hooks.InterfacedEventManager;
@@ -30,8 +33,11 @@ import net.dv8tion.jda.managers.AccountManager;
 import net.dv8tion.jda.managers.AudioManager;
 import net.dv8tion.jda.managers.GuildManager;
 import net.dv8tion.jda.managers.impl.AudioManagerImpl;
+import net.dv8tion.jda.requests.GatewayRecorder;
 import net.dv8tion.jda.requests.Requester;
 import net.dv8tion.jda.requests.WebSocketClient;
+import net.dv8tion.jda.utils.LatencyHistogram;
+import net.dv8tion.jda.utils.MetricsRegistry;
 import net.dv8tion.jda.utils.SimpleLog;
 import org.apache.http.HttpHost;
 import org.json.JSONException;
@@ -40,6 +46,8 @@ import org.json.JSONObject;
 import javax.security.auth.login.LoginException;
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
@@ -55,7 +63,7 @@ public class JDAImpl implements JDA
     protected final Map<String, TextChannel> textChannelMap = new HashMap<>();
     protected final Map<String, VoiceChannel> voiceChannelMap = new HashMap<>();
     protected final Map<String, PrivateChannel> pmChannelMap = new HashMap<>();
-    protected final Map<String, Long> messageRatelimitTimeouts = new HashMap<>(); //(GuildId or GlobalPrivateChannel) - Timeout.
+    protected Map<String, Long> messageRatelimitTimeouts = new ConcurrentHashMap<>(); //(GuildId or GlobalPrivateChannel) - Timeout.
     protected final Map<String, String> offline_pms = new HashMap<>();    //Userid -> channelid
     protected final Map<Guild, AudioManager> audioManagers = new HashMap<>();
     protected final Map<String, Emote> emoteMap = new HashMap<>();
@@ -64,10 +72,17 @@ public class JDAImpl implements JDA
     protected final boolean bulkDeleteSplittingEnabled;
     protected volatile Status status;
     protected IEventManager eventManager = new InterfacedEventManager();
+    //JDA fires its events through this, so listeners never run while the cache lock is held.
+    protected final IEventManager dispatcher = new CacheUnlockingEventManager();
     protected SelfInfo selfInfo = null;
     protected AccountManager accountManager;
     protected String authToken = null;
     protected WebSocketClient client;
+    protected EntitySnapshot snapshot = null;
+    protected final ReentrantLock cacheLock = new ReentrantLock();
+    protected volatile GatewayRecorder gatewayRecorder = null;
+    protected ShardManager shardManager = null;
+    protected MetricsRegistry metrics = MetricsRegistry.NOOP;
     protected Requester requester = new Requester(this);
     protected boolean reconnect;
     protected int responseTotal;
@@ -129,8 +144,40 @@ public class JDAImpl implements JDA
         verifyToken(token);
 
         LOG.info("Login Successful!");
-        client = new WebSocketClient(this, proxy, sharding);
+        connect(token, sharding, null);
+    }
+
+    /**
+     * Connects to a gateway at the given url instead of the one Discord's REST api returns, without verifying the token.
+     * <br>Meant for load tests against a local gateway, like the MockGateway of the testkit. REST requests still go to Discord.
+     *
+     * @param token
+     *          The token sent in the IDENTIFY.
+     * @param gatewayUrl
+     *          The url of the gateway, e.g. <code>ws://localhost:8080</code>.
+     * @param sharding
+     *          A array of length 2 used for sharding or null.
+     */
+    public void loginToGateway(String token, String gatewayUrl, int[] sharding)
+    {
+        if (gatewayUrl == null || gatewayUrl.isEmpty())
+            throw new IllegalArgumentException("The provided gatewayUrl was empty / null.");
+        setStatus(Status.LOGGING_IN);
+        LOG.info("JDA starting with gateway " + gatewayUrl + "...");
+        this.authToken = token;
+        accountManager = new AccountManager(this);
+        connect(token, sharding, gatewayUrl);
+    }
+
+    private void connect(String token, int[] sharding, String gatewayUrl)
+    {
+        //Entities of the snapshot are available right away. The READY of the new session is reconciled with them.
+        if (snapshot != null && snapshot.load(token))
+            SessionReconciler.begin(this);
+        client = new WebSocketClient(this, proxy, sharding, gatewayUrl);
         client.setAutoReconnect(reconnect);
+        if (snapshot != null)
+            snapshot.start();
 
 
         if (useShutdownHook)
@@ -185,6 +232,66 @@ public class JDAImpl implements JDA
         this.authToken = token;
     }
 
+    public void setEntitySnapshot(EntitySnapshot snapshot)
+    {
+        this.snapshot = snapshot;
+    }
+
+    /**
+     * Held by the WebSocket thread while it updates the entity caches for an event. It is let go while the listeners
+     * of the event run. While it is held by another thread, the entity caches don't change.
+     *
+     * @return
+     *      The lock of the entity caches.
+     */
+    public ReentrantLock getCacheLock()
+    {
+        return cacheLock;
+    }
+
+    public EntitySnapshot getEntitySnapshot()
+    {
+        return snapshot;
+    }
+
+    /**
+     * Sets the recorder that every received gateway frame is written to. The recorder is closed on shutdown.
+     *
+     * @param recorder
+     *          The recorder, or null to stop recording.
+     */
+    public void setGatewayRecorder(GatewayRecorder recorder)
+    {
+        this.gatewayRecorder = recorder;
+    }
+
+    public GatewayRecorder getGatewayRecorder()
+    {
+        return gatewayRecorder;
+    }
+
+    public void setShardManager(ShardManager shardManager)
+    {
+        this.shardManager = shardManager;
+        //Message rate-limits are per account, so all shards have to know about them.
+        this.messageRatelimitTimeouts = shardManager.getRatelimitTimeouts();
+    }
+
+    public ShardManager getShardManager()
+    {
+        return shardManager;
+    }
+
+    public void setMetrics(MetricsRegistry metrics)
+    {
+        this.metrics = metrics == null ? MetricsRegistry.NOOP : metrics;
+    }
+
+    public MetricsRegistry getMetrics()
+    {
+        return metrics;
+    }
+
     @Override
     public Status getStatus()
     {
@@ -197,7 +304,7 @@ public class JDAImpl implements JDA
         {
             Status oldStatus = this.status;
             this.status = status;
-            eventManager.handle(new StatusChangeEvent(this, status, oldStatus));
+            dispatcher.handle(new StatusChangeEvent(this, status, oldStatus));
         }
     }
 
@@ -225,7 +332,25 @@ public class JDAImpl implements JDA
         return Collections.unmodifiableList(getEventManager().getRegisteredListeners());
     }
 
+    /**
+     * The event manager JDA fires its events through. It hands them to the manager set with
+     * {@link #setEventManager(net.dv8tion.jda.hooks.IEventManager)}.
+     *
+     * @return
+     *      The event manager to fire events with.
+     */
     public IEventManager getEventManager()
+    {
+        return dispatcher;
+    }
+
+    /**
+     * The event manager set with {@link #setEventManager(net.dv8tion.jda.hooks.IEventManager)}.
+     *
+     * @return
+     *      The configured event manager.
+     */
+    public IEventManager getConfiguredEventManager()
     {
         return eventManager;
     }
@@ -235,6 +360,20 @@ public class JDAImpl implements JDA
         return client;
     }
 
+    /**
+     * Replaces the gateway connection, used by the {@link net.dv8tion.jda.requests.GatewayReplayer GatewayReplayer}
+     * to feed recorded frames instead of connecting to Discord.
+     *
+     * @param client
+     *          The client.
+     */
+    public void setClient(WebSocketClient client)
+    {
+        this.client = client;
+        if (accountManager == null)
+            accountManager = new AccountManager(this);
+    }
+
     public Map<String, User> getUserMap()
     {
         return userMap;
@@ -405,6 +544,18 @@ public class JDAImpl implements JDA
         this.responseTotal = responseTotal;
     }
 
+    @Override
+    public long getHeartbeatLatency()
+    {
+        return getHeartbeatLatencyHistogram().getLast();
+    }
+
+    @Override
+    public LatencyHistogram getHeartbeatLatencyHistogram()
+    {
+        return client == null ? new LatencyHistogram() : client.getHeartbeatLatency();
+    }
+
     public Requester getRequester()
     {
         return requester;
@@ -460,10 +611,17 @@ public class JDAImpl implements JDA
     public void shutdown(boolean free)
     {
         setStatus(Status.SHUTTING_DOWN);
+        if (snapshot != null)
+        {
+            snapshot.stop();
+            snapshot.write();
+        }
         TextChannelImpl.AsyncMessageSender.stopAll(this);
         audioManagers.values().forEach(mng -> mng.closeAudioConnection());
         client.setAutoReconnect(false);
         client.close();
+        if (gatewayRecorder != null)
+            gatewayRecorder.close();
         authToken = null; //make further requests fail
         if (free)
         {
@@ -537,4 +695,43 @@ public class JDAImpl implements JDA
     {
         throw new UnsupportedOperationException("Nice try m8!");
     }
+
+    //Lets go of the cache lock while the listeners run, they may block or call into JDA from other threads.
+    private class CacheUnlockingEventManager implements IEventManager
+    {
+        @Override
+        public void register(Object listener)
+        {
+            eventManager.register(listener);
+        }
+
+        @Override
+        public void unregister(Object listener)
+        {
+            eventManager.unregister(listener);
+        }
+
+        @Override
+        public void handle(Event event)
+        {
+            int holds = cacheLock.getHoldCount();
+            for (int i = 0; i < holds; i++)
+                cacheLock.unlock();
+            try
+            {
+                eventManager.handle(event);
+            }
+            finally
+            {
+                for (int i = 0; i < holds; i++)
+                    cacheLock.lock();
+            }
+        }
+
+        @Override
+        public List<Object> getRegisteredListeners()
+        {
+            return eventManager.getRegisteredListeners();
+        }
+    }
 }
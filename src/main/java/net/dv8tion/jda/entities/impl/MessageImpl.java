@@ -22,14 +22,13 @@ import net.dv8tion.jda.exceptions.PermissionException;
 import net.dv8tion.jda.exceptions.RateLimitedException;
 import net.dv8tion.jda.handle.EntityBuilder;
 import net.dv8tion.jda.requests.Requester;
+import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
 import java.time.OffsetDateTime;
 import java.util.*;
 import java.util.function.Consumer;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 public class MessageImpl implements Message
 {
@@ -42,17 +41,27 @@ public class MessageImpl implements Message
     private boolean pinned;
     private String channelId;
     private String content;
+    private MessageTokens tokens = null;
     private String subContent = null;
     private String strippedContent = null;
     private User author;
-    private OffsetDateTime time;
+
+    //Most messages are only read for their content and author. Everything else is kept as received from Discord
+    // and only resolved on first access. A null list is not resolved yet, resolved lists are unmodifiable.
+    private String timestamp = null;
+    private String editedTimestamp = null;
+    private OffsetDateTime time = null;
     private OffsetDateTime editedTime = null;
-    private List<User> mentionedUsers = new LinkedList<>();
-    private List<TextChannel> mentionedChannels = new LinkedList<>();
-    private List<Role> mentionedRoles = new LinkedList<>();
-    private List<Attachment> attachments = new LinkedList<>();
-    private List<MessageEmbed> embeds = new LinkedList<>();
-    private List<Emote> emotes = new LinkedList<>();
+    private JSONArray rawMentions = null;
+    private JSONArray rawRoleMentions = null;
+    private JSONArray rawAttachments = null;
+    private JSONArray rawEmbeds = null;
+    private List<User> mentionedUsers = null;
+    private List<TextChannel> mentionedChannels = null;
+    private List<Role> mentionedRoles = null;
+    private List<Attachment> attachments = null;
+    private List<MessageEmbed> embeds = null;
+    private List<Emote> emotes = null;
 
     public MessageImpl(String id, JDAImpl api)
     {
@@ -117,25 +126,31 @@ public class MessageImpl implements Message
     @Override
     public List<User> getMentionedUsers()
     {
-        return Collections.unmodifiableList(mentionedUsers);
+        if (mentionedUsers == null)
+            resolveMentions();
+        return mentionedUsers;
     }
 
     @Override
     public boolean isMentioned(User user)
     {
-        return mentionsEveryone() || mentionedUsers.contains(user);
+        return mentionsEveryone() || getMentionedUsers().contains(user);
     }
 
     @Override
     public List<TextChannel> getMentionedChannels()
     {
-        return Collections.unmodifiableList(mentionedChannels);
+        if (mentionedChannels == null)
+            resolveMentions();
+        return mentionedChannels;
     }
 
     @Override
     public List<Role> getMentionedRoles()
     {
-        return Collections.unmodifiableList(mentionedRoles);
+        if (mentionedRoles == null)
+            resolveMentions();
+        return mentionedRoles;
     }
 
     @Override
@@ -147,18 +162,22 @@ public class MessageImpl implements Message
     @Override
     public OffsetDateTime getTime()
     {
+        if (time == null && timestamp != null)
+            time = OffsetDateTime.parse(timestamp);
         return time;
     }
 
     @Override
     public boolean isEdited()
     {
-        return editedTime != null;
+        return editedTime != null || editedTimestamp != null;
     }
 
     @Override
     public OffsetDateTime getEditedTimestamp()
     {
+        if (editedTime == null && editedTimestamp != null)
+            editedTime = OffsetDateTime.parse(editedTimestamp);
         return editedTime;
     }
 
@@ -173,39 +192,88 @@ public class MessageImpl implements Message
     {
         if (subContent == null)
         {
-            Guild g = isPrivate ? null : api.getTextChannelById(channelId).getGuild();
-            String tmp = content;
-            for (User user : mentionedUsers)
+            MessageTokens tokens = getTokens();
+            if (tokens.size() == 0)
+                return subContent = content;
+            Guild guild = getGuild();
+            StringBuilder out = new StringBuilder(content.length());
+            int currIndex = 0;
+            for (int i = 0; i < tokens.size(); i++)
             {
-                if (isPrivate)
+                if (tokens.getType(i) == MessageTokens.FORMAT)
+                    continue;
+                String replacement = resolve(tokens, i, guild);
+                if (replacement == null)
+                    continue;
+                out.append(content, currIndex, tokens.getStart(i)).append(replacement);
+                currIndex = tokens.getEnd(i);
+            }
+            subContent = out.append(content, currIndex, content.length()).toString();
+        }
+        return subContent;
+    }
+
+    /**
+     * The tokens of the raw content, which all other representations of the content are built from.
+     *
+     * @return
+     *      The tokens of the raw content.
+     */
+    public MessageTokens getTokens()
+    {
+        if (tokens == null)
+            tokens = MessageTokens.tokenize(content);
+        return tokens;
+    }
+
+    private Guild getGuild()
+    {
+        if (isPrivate)
+            return null;
+        TextChannel channel = api.getTextChannelById(channelId);
+        return channel == null ? null : channel.getGuild();
+    }
+
+    /**
+     * The readable form of a mention or emote token, or null if it doesn't refer to a mentioned entity of this message.
+     */
+    private String resolve(MessageTokens tokens, int index, Guild guild)
+    {
+        switch (tokens.getType(index))
+        {
+            case MessageTokens.USER:
+                for (User user : getMentionedUsers())
                 {
-                    tmp = tmp.replace("<@" + user.getId() + '>', '@' + user.getUsername())
-                            .replace("<@!" + user.getId() + '>', '@' + user.getUsername());
+                    if (!tokens.hasId(index, user.getId()))
+                        continue;
+                    String name = guild == null ? null : guild.getNicknameForUser(user);
+                    return '@' + (name == null ? user.getUsername() : name);
                 }
-                else
+                return null;
+            case MessageTokens.ROLE:
+                for (Role role : getMentionedRoles())
                 {
-                    String name = g.getNicknameForUser(user);
-                    if (name == null)
-                        name = user.getUsername();
-                    tmp = tmp.replace("<@" + user.getId() + '>', '@' + name)
-                            .replace("<@!" + user.getId() + '>', '@' + name);
+                    if (tokens.hasId(index, role.getId()))
+                        return '@' + role.getName();
                 }
-            }
-            for (TextChannel mentionedChannel : mentionedChannels)
-            {
-                tmp = tmp.replace("<#" + mentionedChannel.getId() + '>', '#' + mentionedChannel.getName());
-            }
-            for (Role mentionedRole : mentionedRoles)
-            {
-                tmp = tmp.replace("<@&" + mentionedRole.getId() + '>', '@' + mentionedRole.getName());
-            }
-            for (Emote emote : emotes)
-            {
-                tmp = tmp.replace(emote.getAsEmote(), ":" + emote.getName() + ":");
-            }
-            subContent = tmp;
+                return null;
+            case MessageTokens.CHANNEL:
+                for (TextChannel channel : getMentionedChannels())
+                {
+                    if (tokens.hasId(index, channel.getId()))
+                        return '#' + channel.getName();
+                }
+                return null;
+            case MessageTokens.EMOTE:
+                for (Emote emote : getEmotes())
+                {
+                    if (tokens.hasId(index, emote.getId()))
+                        return ':' + emote.getName() + ':';
+                }
+                return null;
+            default:
+                return null;
         }
-        return subContent;
     }
 
     @Override
@@ -229,19 +297,176 @@ public class MessageImpl implements Message
     @Override
     public List<Attachment> getAttachments()
     {
-        return Collections.unmodifiableList(attachments);
+        if (attachments == null)
+            resolveAttachments();
+        return attachments;
     }
 
     @Override
     public List<MessageEmbed> getEmbeds()
     {
-        return Collections.unmodifiableList(embeds);
+        if (embeds == null)
+            resolveEmbeds();
+        return embeds;
     }
 
     @Override
     public List<Emote> getEmotes()
     {
-        return Collections.unmodifiableList(emotes);
+        if (emotes == null)
+            resolveEmotes();
+        return emotes;
+    }
+
+    // The resolve methods are synchronized so listeners on different threads resolve a message only once.
+    // The lists are published through the final field of their unmodifiable wrapper.
+
+    private synchronized void resolveMentions()
+    {
+        if (mentionedUsers != null && mentionedRoles != null && mentionedChannels != null)
+            return;
+        Guild guild = getGuild();
+        if (rawMentions == null || guild == null)
+        {
+            if (mentionedUsers == null)
+                mentionedUsers = Collections.emptyList();
+            if (mentionedRoles == null)
+                mentionedRoles = Collections.emptyList();
+            if (mentionedChannels == null)
+                mentionedChannels = Collections.emptyList();
+            return;
+        }
+
+        //The users and roles provided by Discord are the ones that were actually mentioned.
+        Map<String, User> mentionableUsers = new HashMap<>();
+        for (int i = 0; i < rawMentions.length(); i++)
+        {
+            String userId = rawMentions.getJSONObject(i).getString("id");
+            User u = api.getUserMap().get(userId);
+            if (u != null)
+                mentionableUsers.put(userId, u);
+        }
+        Map<String, Role> mentionableRoles = new HashMap<>();
+        for (int i = 0; i < rawRoleMentions.length(); i++)
+        {
+            String roleId = rawRoleMentions.getString(i);
+            Role r = guild.getRoleById(roleId);
+            if (r != null)
+                mentionableRoles.put(roleId, r);
+        }
+        Map<String, TextChannel> chanMap = ((GuildImpl) guild).getTextChannelsMap();
+
+        //Mentions are ordered by their position in the content.
+        MessageTokens tokens = getTokens();
+        List<User> users = new ArrayList<>(mentionableUsers.size());
+        List<Role> roles = new ArrayList<>(mentionableRoles.size());
+        List<TextChannel> channels = new ArrayList<>();
+        for (int i = 0; i < tokens.size(); i++)
+        {
+            switch (tokens.getType(i))
+            {
+                case MessageTokens.USER:
+                {
+                    User u = mentionableUsers.remove(tokens.getId(i));
+                    if (u != null)
+                        users.add(u);
+                    break;
+                }
+                case MessageTokens.ROLE:
+                {
+                    Role r = mentionableRoles.remove(tokens.getId(i));
+                    if (r != null)
+                        roles.add(r);
+                    break;
+                }
+                case MessageTokens.CHANNEL:
+                {
+                    TextChannel channel = chanMap.get(tokens.getId(i));
+                    if (channel != null && !channels.contains(channel))
+                        channels.add(channel);
+                    break;
+                }
+            }
+        }
+        //Mentions that are not part of the content anymore, e.g. because of an edit.
+        users.addAll(mentionableUsers.values());
+        roles.addAll(mentionableRoles.values());
+
+        if (mentionedUsers == null)
+            mentionedUsers = unmodifiable(users);
+        if (mentionedRoles == null)
+            mentionedRoles = unmodifiable(roles);
+        if (mentionedChannels == null)
+            mentionedChannels = unmodifiable(channels);
+        rawMentions = null;
+        rawRoleMentions = null;
+    }
+
+    private synchronized void resolveEmotes()
+    {
+        if (emotes != null)
+            return;
+        MessageTokens tokens = getTokens();
+        List<Emote> list = null;
+        for (int i = 0; api != null && i < tokens.size(); i++)
+        {
+            if (tokens.getType(i) != MessageTokens.EMOTE)
+                continue;
+            if (list == null)
+                list = new ArrayList<>();
+            String emoteId = tokens.getId(i);
+            Emote emote = api.getEmoteById(emoteId);
+            list.add(emote != null ? emote : new EmoteImpl(tokens.getName(i), emoteId));
+        }
+        emotes = unmodifiable(list);
+    }
+
+    private synchronized void resolveAttachments()
+    {
+        if (attachments != null)
+            return;
+        List<Attachment> list = null;
+        if (rawAttachments != null)
+        {
+            list = new ArrayList<>(rawAttachments.length());
+            for (int i = 0; i < rawAttachments.length(); i++)
+            {
+                JSONObject jsonAttachment = rawAttachments.getJSONObject(i);
+                list.add(new Attachment(
+                        jsonAttachment.getString("id"),
+                        jsonAttachment.getString("url"),
+                        jsonAttachment.getString("proxy_url"),
+                        jsonAttachment.getString("filename"),
+                        jsonAttachment.getInt("size"),
+                        jsonAttachment.has("height") ? jsonAttachment.getInt("height") : 0,
+                        jsonAttachment.has("width") ? jsonAttachment.getInt("width") : 0,
+                        api
+                ));
+            }
+        }
+        attachments = unmodifiable(list);
+        rawAttachments = null;
+    }
+
+    private synchronized void resolveEmbeds()
+    {
+        if (embeds != null)
+            return;
+        List<MessageEmbed> list = null;
+        if (rawEmbeds != null)
+        {
+            EntityBuilder builder = new EntityBuilder(api);
+            list = new ArrayList<>(rawEmbeds.length());
+            for (int i = 0; i < rawEmbeds.length(); i++)
+                list.add(builder.createMessageEmbed(rawEmbeds.getJSONObject(i)));
+        }
+        embeds = unmodifiable(list);
+        rawEmbeds = null;
+    }
+
+    private static <T> List<T> unmodifiable(List<T> list)
+    {
+        return list == null || list.isEmpty() ? Collections.emptyList() : Collections.unmodifiableList(list);
     }
 
     @Override
@@ -304,19 +529,36 @@ public class MessageImpl implements Message
 
     public MessageImpl setMentionedUsers(List<User> mentionedUsers)
     {
-        this.mentionedUsers = mentionedUsers;
+        this.mentionedUsers = unmodifiable(mentionedUsers);
         return this;
     }
 
     public MessageImpl setMentionedChannels(List<TextChannel> mentionedChannels)
     {
-        this.mentionedChannels = mentionedChannels;
+        this.mentionedChannels = unmodifiable(mentionedChannels);
         return this;
     }
 
     public MessageImpl setMentionedRoles(List<Role> mentionedRoles)
     {
-        this.mentionedRoles = mentionedRoles;
+        this.mentionedRoles = unmodifiable(mentionedRoles);
+        return this;
+    }
+
+    /**
+     * Sets the mentions as received from Discord. They are resolved to users, roles and channels on first access.
+     *
+     * @param mentions
+     *          The <code>mentions</code> array of user objects.
+     * @param roleMentions
+     *          The <code>mention_roles</code> array of role ids.
+     * @return
+     *      This message.
+     */
+    public MessageImpl setRawMentions(JSONArray mentions, JSONArray roleMentions)
+    {
+        this.rawMentions = mentions;
+        this.rawRoleMentions = roleMentions;
         return this;
     }
 
@@ -338,12 +580,34 @@ public class MessageImpl implements Message
         return this;
     }
 
+    /**
+     * Sets the ISO-8601 timestamp of the message, which is parsed on first access.
+     *
+     * @param timestamp
+     *          The timestamp.
+     * @return
+     *      This message.
+     */
+    public MessageImpl setTimestamp(String timestamp)
+    {
+        this.timestamp = timestamp;
+        this.time = null;
+        return this;
+    }
+
     public MessageImpl setEditedTime(OffsetDateTime editedTime)
     {
         this.editedTime = editedTime;
         return this;
     }
 
+    public MessageImpl setEditedTimestamp(String editedTimestamp)
+    {
+        this.editedTimestamp = editedTimestamp;
+        this.editedTime = null;
+        return this;
+    }
+
     public MessageImpl setAuthor(User author)
     {
         this.author = author;
@@ -365,24 +629,59 @@ public class MessageImpl implements Message
     public MessageImpl setContent(String content)
     {
         this.content = content;
+        this.tokens = null;
+        this.subContent = null;
+        this.strippedContent = null;
         return this;
     }
 
     public MessageImpl setAttachments(List<Attachment> attachments)
     {
-        this.attachments = attachments;
+        this.attachments = unmodifiable(attachments);
+        return this;
+    }
+
+    /**
+     * Sets the attachments as received from Discord, they are created on first access.
+     * An empty array is not kept at all.
+     *
+     * @param attachments
+     *          The <code>attachments</code> array.
+     * @return
+     *      This message.
+     */
+    public MessageImpl setRawAttachments(JSONArray attachments)
+    {
+        this.rawAttachments = attachments == null || attachments.length() == 0 ? null : attachments;
+        this.attachments = this.rawAttachments == null ? Collections.emptyList() : null;
         return this;
     }
 
     public MessageImpl setEmbeds(List<MessageEmbed> embeds)
     {
-        this.embeds = embeds;
+        this.embeds = unmodifiable(embeds);
+        return this;
+    }
+
+    /**
+     * Sets the embeds as received from Discord, they are created on first access.
+     * An empty array is not kept at all.
+     *
+     * @param embeds
+     *          The <code>embeds</code> array.
+     * @return
+     *      This message.
+     */
+    public MessageImpl setRawEmbeds(JSONArray embeds)
+    {
+        this.rawEmbeds = embeds == null || embeds.length() == 0 ? null : embeds;
+        this.embeds = this.rawEmbeds == null ? Collections.emptyList() : null;
         return this;
     }
 
     public MessageImpl setEmotes(List<Emote> emotes)
     {
-        this.emotes = emotes;
+        this.emotes = unmodifiable(emotes);
         return this;
     }
 
@@ -417,53 +716,46 @@ public class MessageImpl implements Message
     {
         if (strippedContent == null)
         {
-            String tmp = getContent();
-            //all the formatting keys to keep track of
-            String[] keys = new String[]{"*", "_", "`", "~~"};
+            MessageTokens tokens = getTokens();
+            Guild guild = getGuild();
 
-            //find all tokens (formatting strings described above)
-            TreeSet<FormatToken> tokens = new TreeSet<>((t1, t2) -> Integer.compare(t1.start, t2.start));
-            for (String key : keys)
-            {
-                Matcher matcher = Pattern.compile(Pattern.quote(key)).matcher(tmp);
-                while (matcher.find())
-                {
-                    tokens.add(new FormatToken(key, matcher.start()));
-                }
-            }
-
-            //iterate over all tokens, find all matching pairs, and add them to the list toRemove
-            Stack<FormatToken> stack = new Stack<>();
-            List<FormatToken> toRemove = new ArrayList<>();
+            //iterate over all formatting tokens, find all matching pairs, and mark them to be removed
+            boolean[] remove = new boolean[tokens.size()];
+            int[] stack = new int[tokens.size()];
+            int stackSize = 0;
             boolean inBlock = false;
-            for (FormatToken token : tokens)
+            for (int i = 0; i < tokens.size(); i++)
             {
-                if (stack.empty() || !stack.peek().format.equals(token.format) || stack.peek().start + token.format.length() == token.start)
+                if (tokens.getType(i) != MessageTokens.FORMAT)
+                    continue;
+                char format = content.charAt(tokens.getStart(i));
+                int top = stackSize == 0 ? -1 : stack[stackSize - 1];
+                if (top == -1 || content.charAt(tokens.getStart(top)) != format || tokens.getEnd(top) == tokens.getStart(i))
                 {
                     //we are at opening tag
                     if (!inBlock)
                     {
                         //we are outside of block -> handle normally
-                        if (token.format.equals("`"))
+                        if (format == '`')
                         {
                             //block start... invalidate all previous tags
-                            stack.clear();
+                            stackSize = 0;
                             inBlock = true;
                         }
-                        stack.push(token);
+                        stack[stackSize++] = i;
                     }
-                    else if (token.format.equals("`"))
+                    else if (format == '`')
                     {
                         //we are inside of a block -> handle only block tag
-                        stack.push(token);
+                        stack[stackSize++] = i;
                     }
                 }
-                else if (!stack.empty())
+                else
                 {
                     //we found a matching close-tag
-                    toRemove.add(stack.pop());
-                    toRemove.add(token);
-                    if (token.format.equals("`") && stack.empty())
+                    remove[stack[--stackSize]] = true;
+                    remove[i] = true;
+                    if (format == '`' && stackSize == 0)
                     {
                         //close tag closed the block
                         inBlock = false;
@@ -471,37 +763,38 @@ public class MessageImpl implements Message
                 }
             }
 
-            //sort tags to remove by their start-index and iteratively build the remaining string
-            Collections.sort(toRemove, (t1, t2) -> Integer.compare(t1.start, t2.start));
-            StringBuilder out = new StringBuilder();
+            //build the remaining string, escaping all remaining formatting characters
+            //(did not have matching open/close before or were left/right of block)
+            //Mentions are inserted as plain text, so formatting characters in names are escaped as well.
+            StringBuilder out = new StringBuilder(content.length());
             int currIndex = 0;
-            for (FormatToken formatToken : toRemove)
+            for (int i = 0; i < tokens.size(); i++)
             {
-                if (currIndex < formatToken.start)
-                {
-                    out.append(tmp.substring(currIndex, formatToken.start));
-                }
-                currIndex = formatToken.start + formatToken.format.length();
-            }
-            if (currIndex < tmp.length())
-            {
-                out.append(tmp.substring(currIndex));
+                int start = tokens.getStart(i);
+                appendEscaped(out, content, currIndex, start);
+                currIndex = tokens.getEnd(i);
+                if (remove[i])
+                    continue;
+                String replacement = tokens.getType(i) == MessageTokens.FORMAT ? null : resolve(tokens, i, guild);
+                if (replacement != null)
+                    appendEscaped(out, replacement, 0, replacement.length());
+                else
+                    appendEscaped(out, content, start, currIndex);
             }
-            //return the stripped text, escape all remaining formatting characters (did not have matching open/close before or were left/right of block
-            strippedContent = out.toString().replace("*", "\\*").replace("_", "\\_").replace("~", "\\~");
+            appendEscaped(out, content, currIndex, content.length());
+            strippedContent = out.toString();
         }
         return strippedContent;
     }
 
-    private static class FormatToken
+    private static void appendEscaped(StringBuilder out, String text, int start, int end)
     {
-        public final String format;
-        public final int start;
-
-        public FormatToken(String format, int start)
+        for (int i = start; i < end; i++)
         {
-            this.format = format;
-            this.start = start;
+            char c = text.charAt(i);
+            if (c == '*' || c == '_' || c == '~')
+                out.append('\\');
+            out.append(c);
         }
     }
 }
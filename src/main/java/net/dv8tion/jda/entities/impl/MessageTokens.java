@@ -0,0 +1,298 @@
+/*
+ *     Copyright 2015-2016 Austin Keener & Michael Ritter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.dv8tion.jda.entities.impl;
+
+import java.util.Arrays;
+
+/**
+ * The mentions, emotes and formatting characters of a message content, found in a single pass without regex.
+ * <p>
+ * Everything between the tokens is plain text. The content, the stripped content and the mention lists of a
+ * {@link net.dv8tion.jda.entities.impl.MessageImpl MessageImpl} are all built from the same tokens.
+ * <p>
+ * Tokens are stored in parallel arrays, in the order they appear in the content:
+ * <ul>
+ *     <li>{@link #USER} <code>&lt;@id&gt;</code> and <code>&lt;@!id&gt;</code></li>
+ *     <li>{@link #ROLE} <code>&lt;@&amp;id&gt;</code></li>
+ *     <li>{@link #CHANNEL} <code>&lt;#id&gt;</code></li>
+ *     <li>{@link #EMOTE} <code>&lt;:name:id&gt;</code></li>
+ *     <li>{@link #FORMAT} one of <code>*</code>, <code>_</code>, <code>`</code> or <code>~~</code></li>
+ * </ul>
+ */
+public final class MessageTokens
+{
+    public static final byte USER = 0;
+    public static final byte ROLE = 1;
+    public static final byte CHANNEL = 2;
+    public static final byte EMOTE = 3;
+    public static final byte FORMAT = 4;
+
+    private static final MessageTokens EMPTY = new MessageTokens("", 0);
+
+    private final String content;
+    private byte[] types;
+    private int[] starts;
+    private int[] ends;
+    private int[] idStarts;
+    private int size = 0;
+
+    private MessageTokens(String content, int capacity)
+    {
+        this.content = content;
+        this.types = new byte[capacity];
+        this.starts = new int[capacity];
+        this.ends = new int[capacity];
+        this.idStarts = new int[capacity];
+    }
+
+    /**
+     * Tokenizes the given content.
+     *
+     * @param content
+     *          The raw content of a message.
+     * @return
+     *      The tokens of the content. Never null.
+     */
+    public static MessageTokens tokenize(String content)
+    {
+        if (content == null || content.isEmpty())
+            return EMPTY;
+        MessageTokens tokens = null;
+        int length = content.length();
+        int i = 0;
+        while (i < length)
+        {
+            switch (content.charAt(i))
+            {
+                case '<':
+                    if (tokens == null)
+                        tokens = new MessageTokens(content, 8);
+                    int end = tokens.mention(i);
+                    if (end > 0)
+                    {
+                        i = end;
+                        continue;
+                    }
+                    break;
+                case '*':
+                case '_':
+                case '`':
+                    if (tokens == null)
+                        tokens = new MessageTokens(content, 8);
+                    tokens.add(FORMAT, i, i + 1, i);
+                    break;
+                case '~':
+                    if (i + 1 < length && content.charAt(i + 1) == '~')
+                    {
+                        if (tokens == null)
+                            tokens = new MessageTokens(content, 8);
+                        tokens.add(FORMAT, i, i + 2, i);
+                        i += 2;
+                        continue;
+                    }
+                    break;
+            }
+            i++;
+        }
+        return tokens == null ? EMPTY : tokens;
+    }
+
+    /**
+     * Adds the mention or emote starting with the '&lt;' at the given index.
+     *
+     * @return
+     *      The index after the token, or -1 if there is no mention at the index.
+     */
+    private int mention(int start)
+    {
+        int length = content.length();
+        int i = start + 1;
+        if (i >= length)
+            return -1;
+        byte type;
+        switch (content.charAt(i))
+        {
+            case '@':
+                i++;
+                type = USER;
+                if (i < length && content.charAt(i) == '!')
+                {
+                    i++;
+                }
+                else if (i < length && content.charAt(i) == '&')
+                {
+                    i++;
+                    type = ROLE;
+                }
+                break;
+            case '#':
+                i++;
+                type = CHANNEL;
+                break;
+            case ':':
+                //The emote name can't contain a colon. Names also never contain angle brackets, stopping at them
+                // keeps this from scanning the rest of the content for every '<:'.
+                i++;
+                int nameStart = i;
+                while (i < length && content.charAt(i) != ':')
+                {
+                    char c = content.charAt(i);
+                    if (c == '<' || c == '>')
+                        return -1;
+                    i++;
+                }
+                if (i == nameStart || i == length)
+                    return -1;
+                i++;
+                type = EMOTE;
+                break;
+            default:
+                return -1;
+        }
+        int idStart = i;
+        while (i < length && content.charAt(i) >= '0' && content.charAt(i) <= '9')
+            i++;
+        if (i == idStart || i == length || content.charAt(i) != '>')
+            return -1;
+        add(type, start, i + 1, idStart);
+        return i + 1;
+    }
+
+    private void add(byte type, int start, int end, int idStart)
+    {
+        if (size == types.length)
+        {
+            int capacity = size * 2;
+            types = Arrays.copyOf(types, capacity);
+            starts = Arrays.copyOf(starts, capacity);
+            ends = Arrays.copyOf(ends, capacity);
+            idStarts = Arrays.copyOf(idStarts, capacity);
+        }
+        types[size] = type;
+        starts[size] = start;
+        ends[size] = end;
+        idStarts[size] = idStart;
+        size++;
+    }
+
+    public String getContent()
+    {
+        return content;
+    }
+
+    public int size()
+    {
+        return size;
+    }
+
+    public byte getType(int index)
+    {
+        return types[index];
+    }
+
+    /**
+     * The index of the first character of the token in the content.
+     *
+     * @param index
+     *          The index of the token.
+     * @return
+     *      The start of the token.
+     */
+    public int getStart(int index)
+    {
+        return starts[index];
+    }
+
+    /**
+     * The index after the last character of the token in the content.
+     *
+     * @param index
+     *          The index of the token.
+     * @return
+     *      The end of the token.
+     */
+    public int getEnd(int index)
+    {
+        return ends[index];
+    }
+
+    /**
+     * The id of a mention or emote token.
+     *
+     * @param index
+     *          The index of the token.
+     * @return
+     *      The id, or null for {@link #FORMAT} tokens.
+     */
+    public String getId(int index)
+    {
+        return types[index] == FORMAT ? null : content.substring(idStarts[index], ends[index] - 1);
+    }
+
+    /**
+     * Whether the id of a mention or emote token equals the given id, without creating a substring.
+     *
+     * @param index
+     *          The index of the token.
+     * @param id
+     *          The id to compare.
+     * @return
+     *      True, if the token has the given id.
+     */
+    public boolean hasId(int index, String id)
+    {
+        int idLength = ends[index] - 1 - idStarts[index];
+        return types[index] != FORMAT && id.length() == idLength && content.regionMatches(idStarts[index], id, 0, idLength);
+    }
+
+    /**
+     * The name of an {@link #EMOTE} token.
+     *
+     * @param index
+     *          The index of the token.
+     * @return
+     *      The name of the emote, or null for other tokens.
+     */
+    public String getName(int index)
+    {
+        return types[index] == EMOTE ? content.substring(starts[index] + 2, idStarts[index] - 1) : null;
+    }
+
+    /**
+     * The formatting characters of a {@link #FORMAT} token.
+     *
+     * @param index
+     *          The index of the token.
+     * @return
+     *      The characters, or null for other tokens.
+     */
+    public String getFormat(int index)
+    {
+        if (types[index] != FORMAT)
+            return null;
+        switch (content.charAt(starts[index]))
+        {
+            case '*':
+                return "*";
+            case '_':
+                return "_";
+            case '`':
+                return "`";
+            default:
+                return "~~";
+        }
+    }
+}
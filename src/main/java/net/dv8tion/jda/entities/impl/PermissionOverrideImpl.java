@@ -17,6 +17,7 @@ package net.dv8tion.jda.entities.impl;
 
 import net.dv8tion.jda.JDA;
 import net.dv8tion.jda.Permission;
+import net.dv8tion.jda.PermissionSet;
 import net.dv8tion.jda.entities.*;
 import net.dv8tion.jda.managers.PermissionOverrideManager;
 
@@ -75,6 +76,18 @@ public class PermissionOverrideImpl implements PermissionOverride
         return Collections.unmodifiableList(Permission.getPermissions(deny));
     }
 
+    @Override
+    public PermissionSet getAllowedSet()
+    {
+        return PermissionSet.of(allow);
+    }
+
+    @Override
+    public PermissionSet getDeniedSet()
+    {
+        return PermissionSet.of(deny);
+    }
+
     @Override
     public JDA getJDA()
     {
@@ -15,11 +15,6 @@
  */
 package net.dv8tion.jda.entities.impl;
 
-import com.mashape.unirest.http.HttpResponse;
-import com.mashape.unirest.http.JsonNode;
-import com.mashape.unirest.http.Unirest;
-import com.mashape.unirest.http.exceptions.UnirestException;
-import com.mashape.unirest.request.body.MultipartBody;
 import net.dv8tion.jda.JDA;
 import net.dv8tion.jda.MessageBuilder;
 import net.dv8tion.jda.MessageHistory;
@@ -31,15 +26,19 @@ import net.dv8tion.jda.exceptions.BlockedException;
 import net.dv8tion.jda.exceptions.PermissionException;
 import net.dv8tion.jda.exceptions.RateLimitedException;
 import net.dv8tion.jda.handle.EntityBuilder;
+import net.dv8tion.jda.requests.FileUploader;
 import net.dv8tion.jda.requests.Requester;
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
 import java.io.File;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.function.Consumer;
 
 public class PrivateChannelImpl implements PrivateChannel
@@ -127,82 +126,43 @@ public class PrivateChannelImpl implements PrivateChannel
     @Override
     public Message sendFile(File file, Message message)
     {
-        if(file == null || !file.exists() || !file.canRead())
-            throw new IllegalArgumentException("Provided file is either null, doesn't exist or is not readable!");
-        if (file.length() > 8<<20)   //8MB
-            throw new IllegalArgumentException("File is to big! Max file-size is 8MB");
+        return FileUploader.upload(api, id, RATE_LIMIT_IDENTIFIER, FileUploader.Source.of(file), message);
+    }
 
-        JDAImpl api = (JDAImpl) getJDA();
-        try
-        {
-            MultipartBody body = Unirest.post(Requester.DISCORD_API_PREFIX + "channels/" + getId() + "/messages")
-                    .header("authorization", getJDA().getAuthToken())
-                    .header("user-agent", Requester.USER_AGENT)
-                    .field("file", file);
-            if (message != null)
-                body.field("content", message.getRawContent()).field("tts", message.isTTS());
-
-            String dbg = String.format("Requesting %s -> %s\n\tPayload: file: %s, message: %s, tts: %s\n\tResponse: ",
-                    body.getHttpRequest().getHttpMethod().name(), body.getHttpRequest().getUrl(),
-                    file.getAbsolutePath(), message == null ? "null" : message.getRawContent(), message == null ? "N/A" : message.isTTS());
-            HttpResponse<JsonNode> response = body.asJson();
-            Requester.LOG.trace(dbg + body);
-
-            try
-            {
-                int status = response.getStatus();
-
-                if (status >= 200 && status < 300)
-                {
-                    return new EntityBuilder(api).createMessage(response.getBody().getObject());
-                }
-                else if (response.getStatus() == 429)
-                {
-                    long retryAfter = response.getBody().getObject().getLong("retry_after");
-                    api.setMessageTimeout(RATE_LIMIT_IDENTIFIER, retryAfter);
-                    throw new RateLimitedException(retryAfter);
-                }
-                else
-                {
-                    throw new RuntimeException("An unknown status code was returned when attempting to upload file. Status: " + status + " JSON: " + response.getBody().toString());
-                }
+    @Override
+    public Message sendFile(InputStream data, String fileName, Message message)
+    {
+        return FileUploader.upload(api, id, RATE_LIMIT_IDENTIFIER, FileUploader.Source.of(data, fileName), message);
+    }
 
-            }
-            catch (JSONException e)
-            {
-                Requester.LOG.fatal("Following json caused an exception: " + response.getBody().toString());
-                Requester.LOG.log(e);
-            }
-        }
-        catch (UnirestException e)
-        {
-            Requester.LOG.log(e);
-        }
-        return null;
+    @Override
+    public Message sendFile(ByteBuffer data, String fileName, Message message)
+    {
+        return FileUploader.upload(api, id, RATE_LIMIT_IDENTIFIER, FileUploader.Source.of(data, fileName), message);
     }
 
     @Override
     public void sendFileAsync(File file, Message message, Consumer<Message> callback)
     {
-        Thread thread = new Thread(() ->
-        {
-            Message messageReturn;
-            try
-            {
-                messageReturn = sendFile(file, message);
-            }
-            catch (RateLimitedException e)
-            {
-                JDAImpl.LOG.warn("Got ratelimited when trying to upload file. Providing null to callback.");
-                messageReturn = null;
-            }
+        FileUploader.uploadAsync(api, id, RATE_LIMIT_IDENTIFIER, FileUploader.Source.of(file), message, callback);
+    }
+
+    @Override
+    public CompletableFuture<Message> sendFileAsync(File file, Message message)
+    {
+        return FileUploader.uploadAsync(api, id, RATE_LIMIT_IDENTIFIER, FileUploader.Source.of(file), message, null);
+    }
+
+    @Override
+    public CompletableFuture<Message> sendFileAsync(InputStream data, String fileName, Message message, Consumer<Message> callback)
+    {
+        return FileUploader.uploadAsync(api, id, RATE_LIMIT_IDENTIFIER, FileUploader.Source.of(data, fileName), message, callback);
+    }
 
-            if (callback != null)
-                callback.accept(messageReturn);
-        });
-        thread.setName("PrivateChannelImpl SendFileAsync Channel: " + id);
-        thread.setDaemon(true);
-        thread.start();
+    @Override
+    public CompletableFuture<Message> sendFileAsync(ByteBuffer data, String fileName, Message message, Consumer<Message> callback)
+    {
+        return FileUploader.uploadAsync(api, id, RATE_LIMIT_IDENTIFIER, FileUploader.Source.of(data, fileName), message, callback);
     }
 
     @Override
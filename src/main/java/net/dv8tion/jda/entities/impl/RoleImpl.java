@@ -17,6 +17,7 @@ package net.dv8tion.jda.entities.impl;
 
 import net.dv8tion.jda.JDA;
 import net.dv8tion.jda.Permission;
+import net.dv8tion.jda.PermissionSet;
 import net.dv8tion.jda.entities.Guild;
 import net.dv8tion.jda.entities.Role;
 import net.dv8tion.jda.managers.RoleManager;
@@ -33,6 +34,7 @@ public class RoleImpl implements net.dv8tion.jda.entities.Role
     private int color;
     private int position;
     private int permissions;
+    private PermissionSet permissionSet = null;
     private boolean managed, grouped, mentionable;
     private RoleManager manager = null;
 
@@ -72,6 +74,15 @@ public class RoleImpl implements net.dv8tion.jda.entities.Role
         return Permission.getPermissions(permissions);
     }
 
+    @Override
+    public PermissionSet getPermissionSet()
+    {
+        PermissionSet set = permissionSet;
+        if (set == null || set.getRaw() != permissions)
+            permissionSet = set = PermissionSet.of(permissions);
+        return set;
+    }
+
     @Override
     public String getName()
     {
@@ -110,7 +121,7 @@ public class RoleImpl implements net.dv8tion.jda.entities.Role
     @Override
     public boolean hasPermission(Permission perm)
     {
-        return ((1 << perm.getOffset()) & permissions) > 0 || ((1 << Permission.ADMINISTRATOR.getOffset()) & permissions) > 0;
+        return (perm.getRawValue() & permissions) != 0 || (Permission.ADMINISTRATOR.getRawValue() & permissions) != 0;
     }
 
     @Override
@@ -15,15 +15,11 @@
  */
 package net.dv8tion.jda.entities.impl;
 
-import com.mashape.unirest.http.HttpResponse;
-import com.mashape.unirest.http.JsonNode;
-import com.mashape.unirest.http.Unirest;
-import com.mashape.unirest.http.exceptions.UnirestException;
-import com.mashape.unirest.request.body.MultipartBody;
 import net.dv8tion.jda.JDA;
 import net.dv8tion.jda.MessageBuilder;
 import net.dv8tion.jda.MessageHistory;
 import net.dv8tion.jda.Permission;
+import net.dv8tion.jda.PermissionSet;
 import net.dv8tion.jda.entities.*;
 import net.dv8tion.jda.exceptions.PermissionException;
 import net.dv8tion.jda.exceptions.RateLimitedException;
@@ -31,6 +27,7 @@ import net.dv8tion.jda.exceptions.VerificationLevelException;
 import net.dv8tion.jda.handle.EntityBuilder;
 import net.dv8tion.jda.managers.ChannelManager;
 import net.dv8tion.jda.managers.PermissionOverrideManager;
+import net.dv8tion.jda.requests.FileUploader;
 import net.dv8tion.jda.requests.Requester;
 import net.dv8tion.jda.utils.InviteUtil;
 import net.dv8tion.jda.utils.MiscUtil;
@@ -40,8 +37,15 @@ import org.json.JSONException;
 import org.json.JSONObject;
 
 import java.io.File;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.time.OffsetDateTime;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
@@ -219,93 +223,59 @@ public class TextChannelImpl implements TextChannel
     @Override
     public Message sendFile(File file, Message message)
     {
-        checkVerification();
-        if (!checkPermission(getJDA().getSelfInfo(), Permission.MESSAGE_WRITE))
-            throw new PermissionException(Permission.MESSAGE_WRITE);
-        if (!checkPermission(getJDA().getSelfInfo(), Permission.MESSAGE_ATTACH_FILES))
-            throw new PermissionException(Permission.MESSAGE_ATTACH_FILES);
-        if(file == null || !file.exists() || !file.canRead())
-            throw new IllegalArgumentException("Provided file is either null, doesn't exist or is not readable!");
-        if (file.length() > 8<<20)   //8MB
-            throw new IllegalArgumentException("File is to big! Max file-size is 8MB");
+        checkUpload();
+        return FileUploader.upload((JDAImpl) getJDA(), id, guild.getId(), FileUploader.Source.of(file), message);
+    }
 
-        JDAImpl api = (JDAImpl) getJDA();
-        try
-        {
-            MultipartBody body = Unirest.post(Requester.DISCORD_API_PREFIX + "channels/" + getId() + "/messages")
-                    .header("authorization", getJDA().getAuthToken())
-                    .header("user-agent", Requester.USER_AGENT)
-                    .field("file", file);
-            if (message != null)
-                body.field("content", message.getRawContent()).field("tts", message.isTTS());
+    @Override
+    public Message sendFile(InputStream data, String fileName, Message message)
+    {
+        checkUpload();
+        return FileUploader.upload((JDAImpl) getJDA(), id, guild.getId(), FileUploader.Source.of(data, fileName), message);
+    }
 
-            String dbg = String.format("Requesting %s -> %s\n\tPayload: file: %s, message: %s, tts: %s\n\tResponse: ",
-                    body.getHttpRequest().getHttpMethod().name(), body.getHttpRequest().getUrl(),
-                    file.getAbsolutePath(), message == null ? "null" : message.getRawContent(), message == null ? "N/A" : message.isTTS());
-            HttpResponse<JsonNode> response = body.asJson();
-            Requester.LOG.trace(dbg + body);
+    @Override
+    public Message sendFile(ByteBuffer data, String fileName, Message message)
+    {
+        checkUpload();
+        return FileUploader.upload((JDAImpl) getJDA(), id, guild.getId(), FileUploader.Source.of(data, fileName), message);
+    }
 
-            try
-            {
-                int status = response.getStatus();
+    @Override
+    public void sendFileAsync(File file, Message message, Consumer<Message> callback)
+    {
+        checkUpload();
+        FileUploader.uploadAsync((JDAImpl) getJDA(), id, guild.getId(), FileUploader.Source.of(file), message, callback);
+    }
 
-                if (status >= 200 && status < 300)
-                {
-                    return new EntityBuilder(api).createMessage(response.getBody().getObject());
-                }
-                else if (response.getStatus() == 429)
-                {
-                    long retryAfter = response.getBody().getObject().getLong("retry_after");
-                    api.setMessageTimeout(guild.getId(), retryAfter);
-                    throw new RateLimitedException(retryAfter);
-                }
-                else
-                {
-                    throw new RuntimeException("An unknown status code was returned when attempting to upload file. Status: " + status + " JSON: " + response.getBody().toString());
-                }
+    @Override
+    public CompletableFuture<Message> sendFileAsync(File file, Message message)
+    {
+        checkUpload();
+        return FileUploader.uploadAsync((JDAImpl) getJDA(), id, guild.getId(), FileUploader.Source.of(file), message, null);
+    }
 
-            }
-            catch (JSONException e)
-            {
-                Requester.LOG.fatal("Following json caused an exception: " + response.getBody().toString());
-                Requester.LOG.log(e);
-            }
-        }
-        catch (UnirestException e)
-        {
-            Requester.LOG.log(e);
-        }
-        return null;
+    @Override
+    public CompletableFuture<Message> sendFileAsync(InputStream data, String fileName, Message message, Consumer<Message> callback)
+    {
+        checkUpload();
+        return FileUploader.uploadAsync((JDAImpl) getJDA(), id, guild.getId(), FileUploader.Source.of(data, fileName), message, callback);
     }
 
     @Override
-    public void sendFileAsync(File file, Message message, Consumer<Message> callback)
+    public CompletableFuture<Message> sendFileAsync(ByteBuffer data, String fileName, Message message, Consumer<Message> callback)
+    {
+        checkUpload();
+        return FileUploader.uploadAsync((JDAImpl) getJDA(), id, guild.getId(), FileUploader.Source.of(data, fileName), message, callback);
+    }
+
+    private void checkUpload()
     {
         checkVerification();
         if (!checkPermission(getJDA().getSelfInfo(), Permission.MESSAGE_WRITE))
             throw new PermissionException(Permission.MESSAGE_WRITE);
         if (!checkPermission(getJDA().getSelfInfo(), Permission.MESSAGE_ATTACH_FILES))
             throw new PermissionException(Permission.MESSAGE_ATTACH_FILES);
-
-        Thread thread = new Thread(() ->
-        {
-            Message messageReturn;
-            try
-            {
-                messageReturn = sendFile(file, message);
-            }
-            catch (RateLimitedException e)
-            {
-                JDAImpl.LOG.warn("Got ratelimited when trying to upload file. Providing null to callback.");
-                messageReturn = null;
-            }
-
-            if (callback != null)
-                callback.accept(messageReturn);
-        });
-        thread.setName("TextChannelImpl sendFileAsync Channel: " + id);
-        thread.setDaemon(true);
-        thread.start();
     }
 
     @Override
@@ -416,6 +386,12 @@ public class TextChannelImpl implements TextChannel
         return PermissionUtil.checkPermission(this, user, permissions);
     }
 
+    @Override
+    public boolean checkPermission(User user, PermissionSet permissions)
+    {
+        return PermissionUtil.checkPermission(this, user, permissions);
+    }
+
     @Override
     public synchronized ChannelManager getManager()
     {
@@ -573,15 +549,38 @@ public class TextChannelImpl implements TextChannel
         return chanTime.compareTo(thisTime);
     }
 
+    /**
+     * Sends asynchronous messages and edits in order, per rate-limit identifier (a guild id or
+     * {@link net.dv8tion.jda.entities.impl.PrivateChannelImpl#RATE_LIMIT_IDENTIFIER}).
+     * <p>
+     * No sender has its own thread. Queues are drained by a small scheduler shared by all JDA instances. A queue
+     * that hits its rate-limit is parked on the scheduler until the limit expires. Consecutive edits of the same
+     * message that are still queued are coalesced, so only the latest content is sent and every callback
+     * receives the result.
+     */
     public static class AsyncMessageSender
     {
+        private static final int POOL_SIZE = 4;
+        private static final AtomicInteger WORKER_COUNT = new AtomicInteger(0);
+        private static final ScheduledExecutorService SCHEDULER = Executors.newScheduledThreadPool(POOL_SIZE, r ->
+        {
+            Thread thread = new Thread(r, "AsyncMessageSender Worker " + WORKER_COUNT.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
         private static final Map<JDA, Map<String, AsyncMessageSender>> instances = new HashMap<>();
         private final JDAImpl api;
         private final String ratelimitIdentifier; //GuildId or GlobalPrivateChannel
-        private Runner runner = null;
-        private boolean runnerRunning = false;
+        private final Deque<Task> queue = new ArrayDeque<>();
+        private boolean scheduled = false;      //A drain is submitted to or parked on the scheduler.
         private boolean alive = true;
-        private final Queue<Task> queue = new LinkedList<>();
+
+        private long sentCount = 0;
+        private long coalescedCount = 0;
+        private long rateLimitCount = 0;
+        private long waitTimeTotal = 0;
+        private long waitTimeMax = 0;
 
         private AsyncMessageSender(JDAImpl api, String ratelimitIdentifier)
         {
@@ -589,7 +588,7 @@ public class TextChannelImpl implements TextChannel
             this.ratelimitIdentifier = ratelimitIdentifier;
         }
 
-        public static AsyncMessageSender getInstance(JDA api, String ratelimitIdentifier)
+        public synchronized static AsyncMessageSender getInstance(JDA api, String ratelimitIdentifier)
         {
             Map<String, AsyncMessageSender> senders = instances.get(api);
             if (senders == null)
@@ -607,6 +606,23 @@ public class TextChannelImpl implements TextChannel
             return sender;
         }
 
+        /**
+         * All senders of the provided JDA instance, keyed by their rate-limit identifier.
+         * Can be used to monitor queue lengths and wait times.
+         *
+         * @param api
+         *          The JDA instance
+         * @return
+         *      An immutable snapshot of the senders.
+         */
+        public synchronized static Map<String, AsyncMessageSender> getInstances(JDA api)
+        {
+            Map<String, AsyncMessageSender> senders = instances.get(api);
+            return senders == null
+                    ? Collections.emptyMap()
+                    : Collections.unmodifiableMap(new HashMap<>(senders));
+        }
+
         public synchronized static void stop(JDA api, String ratelimitIdentifier)
         {
             Map<String, AsyncMessageSender> senders = instances.get(api);
@@ -621,64 +637,308 @@ public class TextChannelImpl implements TextChannel
             }
         }
 
-        public synchronized static void stopAll(JDA api)
+        /**
+         * Drops all queued messages and edits of one channel, without stopping the sender of its guild.
+         *
+         * @param api
+         *          The JDA instance
+         * @param ratelimitIdentifier
+         *          The rate-limit identifier of the sender, the id of the guild of the channel.
+         * @param channelId
+         *          The id of the channel whose messages should be dropped.
+         */
+        public synchronized static void purge(JDA api, String ratelimitIdentifier, String channelId)
         {
             Map<String, AsyncMessageSender> senders = instances.get(api);
             if (senders != null && !senders.isEmpty())
             {
-                senders.values().forEach(sender ->
-                {
-                    sender.kill();
-                });
+                AsyncMessageSender sender = senders.get(ratelimitIdentifier);
+                if (sender != null)
+                    sender.purge(channelId);
+            }
+        }
+
+        public synchronized static void stopAll(JDA api)
+        {
+            Map<String, AsyncMessageSender> senders = instances.remove(api);
+            if (senders != null && !senders.isEmpty())
+            {
+                senders.values().forEach(AsyncMessageSender::kill);
                 senders.clear();
             }
         }
 
-        public synchronized void enqueue(Message msg, boolean isEdit, Consumer<Message> callback)
+        public void enqueue(Message msg, boolean isEdit, Consumer<Message> callback)
         {
             enqueue(new Task(msg, isEdit, callback));
         }
 
         public synchronized void enqueue(Task task)
         {
-            queue.add(task);
-            if (runner == null)
-            {
-                runnerRunning = true;
-                runner = new Runner(this);
-                runner.setDaemon(true);
-                runner.start();
-            }
-            else if (!runnerRunning)
+            if (!alive)
             {
-                runnerRunning = true;
-                notifyAll();
+                JDAImpl.LOG.debug("Dropped async message for stopped sender " + ratelimitIdentifier);
+                return;
             }
+            if (!coalesce(task))
+                queue.add(task);
+            schedule(0);
+        }
+
+        public synchronized void purge(String channelId)
+        {
+            queue.removeIf(task -> task.message.getChannelId().equals(channelId));
         }
 
         public synchronized void kill()
         {
             alive = false;
-            notifyAll();
+            queue.clear();
         }
 
-        private synchronized void waitNew()
+        /**
+         * The amount of messages and edits waiting to be sent.
+         *
+         * @return
+         *      The current queue length.
+         */
+        public synchronized int getQueueLength()
         {
-            if (!queue.isEmpty())
+            return queue.size();
+        }
+
+        /**
+         * The amount of messages and edits that were sent to Discord, including ones that Discord rejected.
+         *
+         * @return
+         *      The amount of completed requests.
+         */
+        public synchronized long getSentCount()
+        {
+            return sentCount;
+        }
+
+        /**
+         * The amount of edits that were merged into a later edit of the same message instead of being sent.
+         *
+         * @return
+         *      The amount of coalesced edits.
+         */
+        public synchronized long getCoalescedCount()
+        {
+            return coalescedCount;
+        }
+
+        /**
+         * The amount of times this sender had to wait for a rate-limit reported by Discord.
+         *
+         * @return
+         *      The amount of encountered rate-limits.
+         */
+        public synchronized long getRateLimitCount()
+        {
+            return rateLimitCount;
+        }
+
+        /**
+         * The average time, in milliseconds, between a message being queued and its request completing.
+         *
+         * @return
+         *      The average wait time, or 0 if nothing was sent yet.
+         */
+        public synchronized long getAverageWaitTime()
+        {
+            return sentCount == 0 ? 0 : waitTimeTotal / sentCount;
+        }
+
+        /**
+         * The longest time, in milliseconds, between a message being queued and its request completing.
+         *
+         * @return
+         *      The maximum wait time.
+         */
+        public synchronized long getMaxWaitTime()
+        {
+            return waitTimeMax;
+        }
+
+        /**
+         * Merges an edit into the last queued task if that is an edit of the same message.
+         * Only the tail is merged with, merging into an earlier edit would send it before the messages queued after it.
+         * The merged task keeps the enqueue time of the older edit.
+         */
+        private boolean coalesce(Task task)
+        {
+            Task queued = queue.peekLast();
+            if (!isSameEdit(queued, task))
+                return false;
+
+            Task merged = new Task(task.message, true, chain(queued.callback, task.callback));
+            merged.enqueueTime = queued.enqueueTime;
+            queue.pollLast();
+            queue.addLast(merged);
+            coalescedCount++;
+            return true;
+        }
+
+        private static boolean isSameEdit(Task queued, Task task)
+        {
+            return queued != null && queued.isEdit && task.isEdit && queued.message.getId().equals(task.message.getId());
+        }
+
+        private static Consumer<Message> chain(Consumer<Message> first, Consumer<Message> second)
+        {
+            if (first == null)
+                return second;
+            if (second == null)
+                return first;
+            return first.andThen(second);
+        }
+
+        private void schedule(long delay)
+        {
+            if (scheduled || !alive || queue.isEmpty())
                 return;
-            runnerRunning = false;
-            while(!runnerRunning) {
-                try {
-                    wait();
-                } catch(InterruptedException ignored) {}
+            scheduled = true;
+            if (delay > 0)
+                SCHEDULER.schedule(this::drain, delay, TimeUnit.MILLISECONDS);
+            else
+                SCHEDULER.execute(this::drain);
+        }
+
+        /**
+         * Sends the next queued task. Only one task is sent per run, after which the sender re-submits itself,
+         * so a single busy guild can't hold a worker while other guilds are waiting.
+         */
+        private void drain()
+        {
+            Task task;
+            synchronized (this)
+            {
+                scheduled = false;
+                if (!alive || queue.isEmpty())
+                    return;
+                Long messageLimit = api.getMessageLimit(ratelimitIdentifier);
+                if (messageLimit != null)
+                {
+                    //Park the queue until the rate-limit expires.
+                    schedule(Math.max(1, messageLimit - System.currentTimeMillis()));
+                    return;
+                }
+                task = queue.poll();
+                scheduled = true;
+            }
+
+            try
+            {
+                send(task);
+            }
+            catch (RuntimeException e)
+            {
+                JDAImpl.LOG.log(e);
+            }
+            finally
+            {
+                synchronized (this)
+                {
+                    scheduled = false;
+                    schedule(0);
+                }
             }
         }
 
-        private synchronized Queue<Task> getQueue()
+        private void send(Task task)
         {
-            Queue<Task> copy = new LinkedList<>(queue);
-            queue.clear();
-            return copy;
+            Message msg = task.message;
+            if (api.getTextChannelById(msg.getChannelId()) == null
+                    && api.getPrivateChannelById(msg.getChannelId()) == null)
+            {
+                //We no longer have access to the MessageChannel that this message is queued to
+                // send to. This is most likely because it was deleted.
+                JDAImpl.LOG.debug("Dropped async message for unavailable channel " + msg.getChannelId());
+                return;
+            }
+
+            Requester.Response response;
+            if (task.isEdit)
+            {
+                response = api.getRequester().patch(Requester.DISCORD_API_PREFIX + "channels/" + msg.getChannelId() + "/messages/" + msg.getId(),
+                        new JSONObject().put("content", msg.getRawContent()));
+            }
+            else
+            {
+                response = api.getRequester().post(Requester.DISCORD_API_PREFIX + "channels/" + msg.getChannelId() + "/messages",
+                        new JSONObject().put("content", msg.getRawContent()).put("tts", msg.isTTS()));
+            }
+
+            if (response.responseText == null)
+            {
+                JDAImpl.LOG.debug("Error sending async-message (returned null-text)... Retrying after 1s");
+                api.setMessageTimeout(ratelimitIdentifier, 1000);
+                retry(task);
+                return;
+            }
+            if (response.isRateLimit())
+            {
+                api.setMessageTimeout(ratelimitIdentifier, response.getObject().getLong("retry_after"));
+                synchronized (this)
+                {
+                    rateLimitCount++;
+                }
+                retry(task);
+                return;
+            }
+
+            //success/unrecoverable error
+            synchronized (this)
+            {
+                long waitTime = System.currentTimeMillis() - task.enqueueTime;
+                sentCount++;
+                waitTimeTotal += waitTime;
+                if (waitTime > waitTimeMax)
+                    waitTimeMax = waitTime;
+            }
+            try
+            {
+                if (response.isOk())
+                {
+                    if (task.callback != null)
+                        task.callback.accept(new EntityBuilder(api).createMessage(response.getObject()));
+                }
+                else
+                {
+                    //if response didn't have id, sending failed (due to permission/blocked pm,...
+                    JDAImpl.LOG.fatal("Could not send/update async message to channel: " + msg.getChannelId() + ". Discord-response: " + response.toString());
+                    if (task.callback != null)
+                        task.callback.accept(null);
+                }
+            }
+            catch (JSONException | IllegalArgumentException ex)
+            {
+                //could not generate message from json
+                JDAImpl.LOG.log(ex);
+            }
+        }
+
+        /**
+         * Puts a task that could not be sent back at the front of the queue.
+         * If the front of the queue is a newer edit of the same message, the task is merged into that one instead.
+         */
+        private synchronized void retry(Task task)
+        {
+            if (!alive)
+                return;
+            Task queued = queue.peekFirst();
+            if (isSameEdit(queued, task))
+            {
+                Task merged = new Task(queued.message, true, chain(task.callback, queued.callback));
+                merged.enqueueTime = task.enqueueTime;
+                queue.pollFirst();
+                queue.addFirst(merged);
+                coalescedCount++;
+                return;
+            }
+            queue.addFirst(task);
         }
 
         public static class Task
@@ -686,6 +946,7 @@ public class TextChannelImpl implements TextChannel
             public final Message message;
             public final boolean isEdit;
             public final Consumer<Message> callback;
+            private long enqueueTime = System.currentTimeMillis();
 
             public Task(Message message, boolean isEdit, Consumer<Message> callback)
             {
@@ -694,104 +955,5 @@ public class TextChannelImpl implements TextChannel
                 this.callback = callback;
             }
         }
-
-        private static class Runner extends Thread
-        {
-            private final AsyncMessageSender sender;
-
-            public Runner(AsyncMessageSender sender)
-            {
-                this.sender = sender;
-                this.setName("AsyncMessageSender Runner. Identifier: " + sender.ratelimitIdentifier);
-            }
-
-            @Override
-            public void run()
-            {
-                sending:    //Label so that, if needed, we can completely kill the while loop from inside the nested loop.
-                    while (sender.alive)
-                    {
-                        Queue<Task> queue = sender.getQueue();
-                        while (sender.alive && !queue.isEmpty())
-                        {
-                            Long messageLimit = sender.api.getMessageLimit(sender.ratelimitIdentifier);
-                            if (messageLimit != null)
-                            {
-                                try
-                                {
-                                    Thread.sleep(messageLimit - System.currentTimeMillis());
-                                }
-                                catch (InterruptedException e)
-                                {
-                                    JDAImpl.LOG.log(e);
-                                }
-                            }
-                            Task task = queue.peek();
-                            Message msg = task.message;
-                            Requester.Response response;
-                            if (sender.api.getTextChannelById(msg.getChannelId()) == null
-                                    && sender.api.getPrivateChannelById(msg.getChannelId()) == null)
-                            {
-                                //We no longer have access to the MessageChannel that this message is queued to
-                                // send to. This is most likely because it was deleted.
-                                AsyncMessageSender.stop(sender.api, sender.ratelimitIdentifier);
-                                break sending;
-                            }
-                            if(task.isEdit)
-                            {
-                                response = sender.api.getRequester().patch(Requester.DISCORD_API_PREFIX + "channels/" + msg.getChannelId() + "/messages/" + msg.getId(),
-                                        new JSONObject().put("content", msg.getRawContent()));
-                            }
-                            else
-                            {
-                                response = sender.api.getRequester().post(Requester.DISCORD_API_PREFIX + "channels/" + msg.getChannelId() + "/messages",
-                                        new JSONObject().put("content", msg.getRawContent()).put("tts", msg.isTTS()));
-                            }
-                            if (response.responseText == null)
-                            {
-                                JDAImpl.LOG.debug("Error sending async-message (returned null-text)... Retrying after 1s");
-                                sender.api.setMessageTimeout(sender.ratelimitIdentifier, 1000);
-                            }
-                            else if (!response.isRateLimit())   //success/unrecoverable error
-                            {
-                                queue.poll();//remove from queue
-                                try
-                                {
-                                    if (response.isOk())
-                                    {
-                                        if (task.callback != null)
-                                            task.callback.accept(new EntityBuilder(sender.api).createMessage(response.getObject()));
-                                    }
-                                    else
-                                    {
-                                        //if response didn't have id, sending failed (due to permission/blocked pm,...
-                                        JDAImpl.LOG.fatal("Could not send/update async message to channel: " + msg.getChannelId() + ". Discord-response: " + response.toString());
-                                        if (task.callback != null)
-                                            task.callback.accept(null);
-                                    }
-                                }
-                                catch (JSONException ex)
-                                {
-                                    //could not generate message from json
-                                    JDAImpl.LOG.log(ex);
-                                }
-                                catch (IllegalArgumentException ex)
-                                {
-                                    JDAImpl.LOG.log(ex);
-                                }
-                            }
-                            else
-                            {
-                                sender.api.setMessageTimeout(sender.ratelimitIdentifier, response.getObject().getLong("retry_after"));
-                            }
-                            if (queue.isEmpty())
-                            {
-                                queue = sender.getQueue();
-                            }
-                        }
-                        sender.waitNew();
-                    }
-            }
-        }
     }
 }
@@ -17,6 +17,7 @@ package net.dv8tion.jda.entities.impl;
 
 import net.dv8tion.jda.JDA;
 import net.dv8tion.jda.OnlineStatus;
+import net.dv8tion.jda.ShardManager;
 import net.dv8tion.jda.entities.Game;
 import net.dv8tion.jda.entities.PrivateChannel;
 import net.dv8tion.jda.entities.User;
@@ -29,6 +30,7 @@ public class UserImpl implements User
 {
     private final String id;
     private final JDAImpl api;
+    private final ShardManager manager;
     private String username;
     private String discriminator;
     private String avatarId;
@@ -41,12 +43,26 @@ public class UserImpl implements User
     {
         this.id = id;
         this.api = api;
+        this.manager = null;
+    }
+
+    //Users shared by the shards of a ShardManager don't belong to a single shard, which might be restarted.
+    public UserImpl(String id, ShardManager manager)
+    {
+        this.id = id;
+        this.api = null;
+        this.manager = manager;
     }
 
     @Override
     public JDA getJDA()
     {
-        return api;
+        return getApi();
+    }
+
+    private JDAImpl getApi()
+    {
+        return manager != null ? manager.getDefaultShard() : api;
     }
 
     @Override
@@ -116,6 +132,7 @@ public class UserImpl implements User
         {
             try
             {
+                JDAImpl api = getApi();
                 Requester.Response response = api.getRequester().post(Requester.DISCORD_API_PREFIX + "users/@me/channels",
                         new JSONObject().put("recipient_id", getId()));
                 if(response.isOk())
@@ -172,7 +189,7 @@ public class UserImpl implements User
         this.privateChannel = channel;
         if (channel != null)
         {
-            api.getPmChannelMap().put(channel.getId(), channel);
+            getApi().getPmChannelMap().put(channel.getId(), channel);
         }
         return this;
     }
@@ -17,6 +17,7 @@ package net.dv8tion.jda.entities.impl;
 
 import net.dv8tion.jda.JDA;
 import net.dv8tion.jda.Permission;
+import net.dv8tion.jda.PermissionSet;
 import net.dv8tion.jda.entities.*;
 import net.dv8tion.jda.exceptions.PermissionException;
 import net.dv8tion.jda.managers.ChannelManager;
@@ -135,6 +136,12 @@ public class VoiceChannelImpl implements VoiceChannel
         return PermissionUtil.checkPermission(this, user, permissions);
     }
 
+    @Override
+    public boolean checkPermission(User user, PermissionSet permissions)
+    {
+        return PermissionUtil.checkPermission(this, user, permissions);
+    }
+
     @Override
     public synchronized ChannelManager getManager()
     {
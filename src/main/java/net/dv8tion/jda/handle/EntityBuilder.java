@@ -18,12 +18,14 @@ package net.dv8tion.jda.handle;
 import net.dv8tion.jda.EmbedType;
 import net.dv8tion.jda.JDA;
 import net.dv8tion.jda.OnlineStatus;
+import net.dv8tion.jda.ShardManager;
 import net.dv8tion.jda.Region;
 import net.dv8tion.jda.entities.*;
 import net.dv8tion.jda.entities.MessageEmbed.Provider;
 import net.dv8tion.jda.entities.MessageEmbed.Thumbnail;
 import net.dv8tion.jda.entities.MessageEmbed.VideoInfo;
 import net.dv8tion.jda.entities.impl.*;
+import net.dv8tion.jda.requests.GatewaySendQueue;
 import net.dv8tion.jda.requests.GuildLock;
 import net.dv8tion.jda.requests.WebSocketClient;
 import org.json.JSONArray;
@@ -33,20 +35,18 @@ import org.json.JSONObject;
 import java.time.OffsetDateTime;
 import java.util.*;
 import java.util.function.Consumer;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 public class EntityBuilder
 {
     private static final HashMap<JDA, HashMap<String, JSONObject>> cachedJdaGuildJsons = new HashMap<>();
     private static final HashMap<JDA, HashMap<String, Consumer<Guild>>> cachedJdaGuildCallbacks = new HashMap<>();
-    private static final Pattern channelMentionPattern = Pattern.compile("<#(\\d+)>");
-    private static final Pattern emotePatter = Pattern.compile("<:([^:]+):(\\d+)>");
     private final JDAImpl api;
+    private final SessionReconciler reconciler;
 
     public EntityBuilder(JDAImpl api)
     {
         this.api = api;
+        this.reconciler = SessionReconciler.get(api);
         if (!cachedJdaGuildCallbacks.containsKey(api))
             cachedJdaGuildCallbacks.put(api, new HashMap<>());
         if (!cachedJdaGuildJsons.containsKey(api))
@@ -68,6 +68,8 @@ public class EntityBuilder
             guildObj = new GuildImpl(api, id);
             api.getGuildMap().put(id, guildObj);
         }
+        if (reconciler != null)
+            reconciler.markGuild(id);
         if (guild.has("unavailable") && guild.getBoolean("unavailable"))
         {
             guildObj.setAvailable(false);
@@ -109,6 +111,7 @@ public class EntityBuilder
                 api.getEmoteMap().putIfAbsent(emojID, emote);
                 guildObj.getEmoteMap().put(emojID, emote);
                 ((EmoteImpl) emote).addGuild(guildObj);
+                markSeen(emote);
             }
         }
         else
@@ -174,6 +177,10 @@ public class EntityBuilder
 
         if (guild.has("voice_states"))
         {
+            //The voice states replace whatever an existing Guild knew about connected users.
+            guildObj.getVoiceChannelsMap().values().forEach(chan -> ((VoiceChannelImpl) chan).getUsersModifiable().clear());
+            guildObj.getVoiceStatusMap().values().forEach(status -> ((VoiceStatusImpl) status).setChannel(null));
+
             JSONArray voiceStates = guild.getJSONArray("voice_states");
             for (int i = 0; i < voiceStates.length(); i++)
             {
@@ -217,7 +224,7 @@ public class EntityBuilder
                                 .put("query", "")
                                 .put("limit", 0)
                         );
-                api.getClient().send(obj.toString());
+                api.getClient().send(obj.toString(), GatewaySendQueue.Lane.BULK);
             }
             else
             {
@@ -229,6 +236,8 @@ public class EntityBuilder
 
         JSONArray channels = guild.getJSONArray("channels");
         createGuildChannelPass(guildObj, channels);
+        if (reconciler != null)
+            reconciler.reconcileGuild(guildObj);
 
         if (secondPassCallback != null)
         {
@@ -273,6 +282,8 @@ public class EntityBuilder
 
         JSONArray channels = guildJson.getJSONArray("channels");
         createGuildChannelPass(guildObj, channels);
+        if (reconciler != null)
+            reconciler.reconcileGuild(guildObj);
 
         secondPassCallback.accept(guildObj);
         GuildLock.get(api).unlock(guildId);
@@ -289,6 +300,8 @@ public class EntityBuilder
         {
             JSONObject member = members.getJSONObject(i);
             User user = createUser(member.getJSONObject("user"));
+            if (reconciler != null)
+                reconciler.markMember(guildObj, user);
             userRoles.put(user, new ArrayList<>());
             JSONArray roleArr = member.getJSONArray("roles");
             for (int j = 0; j < roleArr.length(); j++)
@@ -306,13 +319,19 @@ public class EntityBuilder
                             "GuildId: " + guildObj.getId() + " UserId: " + user.getId() + " RoleId: " + roleId);
                 }
             }
-            VoiceStatusImpl voiceStatus = new VoiceStatusImpl(user, guildObj);
+            VoiceStatusImpl voiceStatus = (VoiceStatusImpl) voiceStatusMap.get(user);
+            if (voiceStatus == null)
+            {
+                voiceStatus = new VoiceStatusImpl(user, guildObj);
+                voiceStatusMap.put(user, voiceStatus);
+            }
             voiceStatus.setServerDeaf(member.getBoolean("deaf"));
             voiceStatus.setServerMute(member.getBoolean("mute"));
-            voiceStatusMap.put(user, voiceStatus);
             joinedAtMap.put(user, OffsetDateTime.parse(member.getString("joined_at")));
             if (member.has("nick") && !member.isNull("nick"))
                 nickMap.put(user, member.getString("nick"));
+            else
+                nickMap.remove(user);
         }
     }
 
@@ -367,6 +386,7 @@ public class EntityBuilder
             api.getChannelMap().put(id, channel);
         }
 
+        markSeen(channel);
         return channel
                 .setName(json.getString("name"))
                 .setTopic(json.isNull("topic") ? "" : json.getString("topic"))
@@ -385,6 +405,7 @@ public class EntityBuilder
             api.getVoiceChannelMap().put(id, channel);
         }
 
+        markSeen(channel);
         return channel
                 .setName(json.getString("name"))
                 .setPosition(json.getInt("position"))
@@ -404,6 +425,9 @@ public class EntityBuilder
             return null;
         }
 
+        if (user.hasPrivateChannel() && user.getPrivateChannel().getId().equals(privatechat.getString("id")))
+            return user.getPrivateChannel();
+
         PrivateChannelImpl priv = new PrivateChannelImpl(privatechat.getString("id"), user, api);
         user.setPrivateChannel(priv);
         return priv;
@@ -419,6 +443,7 @@ public class EntityBuilder
             role = new RoleImpl(id, guild);
             guild.getRolesMap().put(id, role);
         }
+        markSeen(role);
         role.setName(roleJson.getString("name"))
                 .setPosition(roleJson.getInt("position"))
                 .setPermissions(roleJson.getInt("permissions"))
@@ -441,7 +466,9 @@ public class EntityBuilder
         UserImpl userObj = ((UserImpl) api.getUserMap().get(id));
         if (userObj == null)
         {
-            userObj = new UserImpl(id, api);
+            //Shards of a ShardManager share one User object per user.
+            ShardManager manager = api.getShardManager();
+            userObj = manager != null ? manager.getOrCreateUser(id) : new UserImpl(id, api);
             api.getUserMap().put(id, userObj);
         }
         return userObj
@@ -473,52 +500,20 @@ public class EntityBuilder
 
     public Message createMessage(JSONObject jsonObject)
     {
+        //Timestamps, attachments, embeds, mentions and emotes are only resolved by the message when they are accessed.
         String id = jsonObject.getString("id");
-        String content = jsonObject.getString("content");
         MessageImpl message = new MessageImpl(id, api)
                 .setAuthor(api.getUserMap().get(jsonObject.getJSONObject("author").getString("id")))
-                .setContent(content)
-                .setTime(OffsetDateTime.parse(jsonObject.getString("timestamp")))
+                .setContent(jsonObject.getString("content"))
+                .setTimestamp(jsonObject.getString("timestamp"))
                 .setMentionsEveryone(jsonObject.getBoolean("mention_everyone"))
                 .setTTS(jsonObject.getBoolean("tts"))
-                .setPinned(jsonObject.getBoolean("pinned"));
-
-        List<Message.Attachment> attachments = new LinkedList<>();
-        JSONArray jsonAttachments = jsonObject.getJSONArray("attachments");
-        for (int i = 0; i < jsonAttachments.length(); i++)
-        {
-            JSONObject jsonAttachment = jsonAttachments.getJSONObject(i);
-            attachments.add(new Message.Attachment(
-                    jsonAttachment.getString("id"),
-                    jsonAttachment.getString("url"),
-                    jsonAttachment.getString("proxy_url"),
-                    jsonAttachment.getString("filename"),
-                    jsonAttachment.getInt("size"),
-                    jsonAttachment.has("height") ? jsonAttachment.getInt("height") : 0,
-                    jsonAttachment.has("width") ? jsonAttachment.getInt("width") : 0,
-                    api
-            ));
-        }
-        message.setAttachments(attachments);
-
-        List<MessageEmbed> embeds = new LinkedList<>();
-        JSONArray jsonEmbeds = jsonObject.getJSONArray("embeds");
-        for (int i = 0; i < jsonEmbeds.length(); i++)
-        {
-            embeds.add(createMessageEmbed(jsonEmbeds.getJSONObject(i)));
-        }
-        message.setEmbeds(embeds);
-
-        Matcher matcher = emotePatter.matcher(content);
-        List<Emote> emoteList = new LinkedList<>();
-        while (matcher.find())
-            emoteList.add(api.getEmoteById(matcher.group(2)) == null
-                    ? new EmoteImpl(matcher.group(1), matcher.group(2))
-                    : api.getEmoteById(matcher.group(2)));
-        message.setEmotes(emoteList);
+                .setPinned(jsonObject.getBoolean("pinned"))
+                .setRawAttachments(jsonObject.getJSONArray("attachments"))
+                .setRawEmbeds(jsonObject.getJSONArray("embeds"));
 
         if (!jsonObject.isNull("edited_timestamp"))
-            message.setEditedTime(OffsetDateTime.parse(jsonObject.getString("edited_timestamp")));
+            message.setEditedTimestamp(jsonObject.getString("edited_timestamp"));
 
         String channelId = jsonObject.getString("channel_id");
         TextChannel textChannel = api.getChannelMap().get(channelId);
@@ -526,47 +521,7 @@ public class EntityBuilder
         {
             message.setChannelId(textChannel.getId());
             message.setIsPrivate(false);
-            TreeMap<Integer, User> mentionedUsers = new TreeMap<>();
-            JSONArray mentions = jsonObject.getJSONArray("mentions");
-            for (int i = 0; i < mentions.length(); i++)
-            {
-                JSONObject mention = mentions.getJSONObject(i);
-                User u = api.getUserMap().get(mention.getString("id"));
-                if (u != null)
-                {
-                    //We do this to properly order the mentions. The array given by discord is out of order sometimes.
-                    int index = content.indexOf("<@" + mention.getString("id") + ">");
-                    mentionedUsers.put(index, u);
-                }
-            }
-            message.setMentionedUsers(new LinkedList<User>(mentionedUsers.values()));
-
-            TreeMap<Integer, Role> mentionedRoles = new TreeMap<>();
-            JSONArray roleMentions = jsonObject.getJSONArray("mention_roles");
-            for (int i = 0; i < roleMentions.length(); i++)
-            {
-                String roleId = roleMentions.getString(i);
-                Role r = textChannel.getGuild().getRoleById(roleId);
-                if (r != null)
-                {
-                    int index = content.indexOf("<@&" + roleId + ">");
-                    mentionedRoles.put(index, r);
-                }
-            }
-            message.setMentionedRoles(new LinkedList<Role>(mentionedRoles.values()));
-
-            List<TextChannel> mentionedChannels = new LinkedList<>();
-            Map<String, TextChannel> chanMap = ((GuildImpl) textChannel.getGuild()).getTextChannelsMap();
-            matcher = channelMentionPattern.matcher(content);
-            while (matcher.find())
-            {
-                TextChannel channel = chanMap.get(matcher.group(1));
-                if (channel != null && !mentionedChannels.contains(channel))
-                {
-                    mentionedChannels.add(channel);
-                }
-            }
-            message.setMentionedChannels(mentionedChannels);
+            message.setRawMentions(jsonObject.getJSONArray("mentions"), jsonObject.getJSONArray("mention_roles"));
         }
         else
         {
@@ -585,7 +540,7 @@ public class EntityBuilder
         return message;
     }
 
-    protected MessageEmbed createMessageEmbed(JSONObject messageEmbed)
+    public MessageEmbed createMessageEmbed(JSONObject messageEmbed)
     {
         MessageEmbedImpl embed = new MessageEmbedImpl()
                 .setUrl(messageEmbed.getString("url"))
@@ -679,10 +634,17 @@ public class EntityBuilder
             default:
                 throw new IllegalArgumentException("Provided with an unknown PermissionOverride type! JSON: " + override);
         }
+        markSeen(permOverride);
         return permOverride.setAllow(allow)
                 .setDeny(deny);
     }
 
+    private void markSeen(Object entity)
+    {
+        if (reconciler != null)
+            reconciler.mark(entity);
+    }
+
     public VoiceStatus createVoiceStatus(JSONObject status, Guild guildObj, User user)
     {
         GuildImpl guild = (GuildImpl) guildObj;
@@ -0,0 +1,629 @@
+/*
+ *     Copyright 2015-2016 Austin Keener & Michael Ritter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.dv8tion.jda.handle;
+
+import net.dv8tion.jda.JDA;
+import net.dv8tion.jda.Region;
+import net.dv8tion.jda.ShardManager;
+import net.dv8tion.jda.entities.*;
+import net.dv8tion.jda.entities.impl.*;
+import net.dv8tion.jda.utils.SimpleLog;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Collectors;
+
+/**
+ * Persists the entity registry of a JDA instance (users, guilds with their roles, channels, permission overrides,
+ * emotes and members, and private channels) to a compact binary file.
+ * <p>
+ * On startup the snapshot is memory-mapped and its guilds are decoded in parallel before the gateway connects, so
+ * lookups work immediately. The following READY is then applied to the loaded entities by the
+ * {@link SessionReconciler SessionReconciler}, which removes what no longer exists and fires events for what changed
+ * while JDA was offline.
+ * <p>
+ * Presences, voice states and unavailable guilds are not persisted. A snapshot is only loaded by the same account
+ * with the same sharding configuration it was written with.
+ */
+public class EntitySnapshot
+{
+    public static final SimpleLog LOG = SimpleLog.getLog("JDASnapshot");
+
+    /**
+     * The version of the snapshot format. Snapshots of other versions are ignored.
+     */
+    public static final int VERSION = 1;
+
+    private static final int MAGIC = 0x4A444153;    //JDAS
+
+    private static final AtomicInteger THREAD_COUNT = new AtomicInteger(0);
+    private static final ScheduledExecutorService EXECUTOR = Executors.newSingleThreadScheduledExecutor(r ->
+    {
+        Thread thread = new Thread(r, "JDA Snapshot " + THREAD_COUNT.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final JDAImpl api;
+    private final File file;
+    private final int interval;
+    private final int[] sharding;
+    private ScheduledFuture<?> periodicWrite = null;
+
+    /**
+     * Creates a snapshot handler for a JDA instance.
+     *
+     * @param api
+     *          The JDA instance whose entities are persisted.
+     * @param file
+     *          The snapshot file.
+     * @param interval
+     *          Minutes between periodic snapshots while connected, or 0 to only write a snapshot on shutdown.
+     * @param sharding
+     *          The sharding configuration of the JDA instance, or null.
+     */
+    public EntitySnapshot(JDAImpl api, File file, int interval, int[] sharding)
+    {
+        if (file == null)
+            throw new IllegalArgumentException("The snapshot file cannot be null!");
+        if (interval < 0)
+            throw new IllegalArgumentException("The snapshot interval cannot be negative! Provided: " + interval);
+        this.api = api;
+        this.file = file;
+        this.interval = interval;
+        this.sharding = sharding;
+    }
+
+    public File getFile()
+    {
+        return file;
+    }
+
+    /**
+     * Starts writing periodic snapshots, if an interval was configured.
+     */
+    public synchronized void start()
+    {
+        if (interval == 0 || periodicWrite != null)
+            return;
+        periodicWrite = EXECUTOR.scheduleWithFixedDelay(() ->
+        {
+            if (api.getStatus() == JDA.Status.CONNECTED)
+                write();
+        }, interval, interval, TimeUnit.MINUTES);
+    }
+
+    public synchronized void stop()
+    {
+        if (periodicWrite != null)
+        {
+            periodicWrite.cancel(false);
+            periodicWrite = null;
+        }
+    }
+
+    /**
+     * Writes the current entities to the snapshot file. The file is replaced atomically, so a crash while writing
+     * leaves the previous snapshot intact.
+     *
+     * @return
+     *      True if the snapshot was written.
+     */
+    public synchronized boolean write()
+    {
+        String token = api.getAuthToken();
+        if (token == null || api.getSelfInfo() == null)
+            return false;
+        long start = System.currentTimeMillis();
+        byte[] data;
+        try
+        {
+            data = encode(token);
+            Path target = file.toPath().toAbsolutePath();
+            Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+            Files.write(temp, data);
+            try
+            {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            }
+            catch (AtomicMoveNotSupportedException e)
+            {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        catch (IOException e)
+        {
+            LOG.warn("Could not write the entity snapshot to " + file);
+            LOG.log(e);
+            return false;
+        }
+        catch (RuntimeException e)
+        {
+            //Neither shutdown nor the periodic snapshots may be stopped by a broken snapshot.
+            LOG.fatal("Could not encode the entity snapshot!");
+            LOG.log(e);
+            return false;
+        }
+        LOG.debug("Wrote entity snapshot of " + data.length + " bytes in " + (System.currentTimeMillis() - start) + "ms");
+        return true;
+    }
+
+    /**
+     * Loads the snapshot file into the (empty) registries of the JDA instance.
+     * Nothing is loaded if the file doesn't exist, is corrupt or belongs to another account or shard.
+     *
+     * @param token
+     *          The token used to login.
+     * @return
+     *      True if the entities were loaded.
+     */
+    public boolean load(String token)
+    {
+        if (!file.isFile())
+            return false;
+        long start = System.currentTimeMillis();
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ))
+        {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION)
+            {
+                LOG.info("Ignoring entity snapshot " + file + " of an unknown format.");
+                return false;
+            }
+            long created = buffer.getLong();
+            byte[] tokenHash = new byte[32];
+            buffer.get(tokenHash);
+            int shardId = buffer.getInt();
+            int shardCount = buffer.getInt();
+            if (!Arrays.equals(tokenHash, hash(token)))
+            {
+                LOG.info("Ignoring entity snapshot " + file + " that was written by another account.");
+                return false;
+            }
+            if (shardId != (sharding == null ? -1 : sharding[0]) || shardCount != (sharding == null ? -1 : sharding[1]))
+            {
+                LOG.info("Ignoring entity snapshot " + file + " that was written by another shard.");
+                return false;
+            }
+
+            //Users are shared by all guilds, so they are read first.
+            //Shards of a ShardManager share one User object per user, like in EntityBuilder.createUser.
+            ShardManager manager = api.getShardManager();
+            UserImpl[] users = new UserImpl[buffer.getInt()];
+            for (int i = 0; i < users.length; i++)
+            {
+                String id = Long.toString(buffer.getLong());
+                UserImpl user = i == 0 ? new SelfInfoImpl(id, api) : manager != null ? manager.getOrCreateUser(id) : new UserImpl(id, api);
+                String name = readString(buffer);
+                String discriminator = readString(buffer);
+                String avatarId = readString(buffer);
+                boolean bot = buffer.get() != 0;
+                //A shared user another shard already knows is more recent than the snapshot.
+                if (user.getUsername() == null)
+                {
+                    user.setUserName(name)
+                            .setDiscriminator(discriminator)
+                            .setAvatarId(avatarId)
+                            .setIsBot(bot);
+                }
+                if (i == 0)
+                    ((SelfInfoImpl) user).setVerified(buffer.get() != 0);
+                users[i] = user;
+            }
+
+            //Every guild is an independent block, which lets us decode them in parallel.
+            int guildCount = buffer.getInt();
+            List<ByteBuffer> blocks = new ArrayList<>(guildCount);
+            for (int i = 0; i < guildCount; i++)
+            {
+                int length = buffer.getInt();
+                ByteBuffer block = buffer.slice();
+                block.limit(length);
+                blocks.add(block);
+                buffer.position(buffer.position() + length);
+            }
+            List<GuildImpl> guilds = blocks.parallelStream()
+                    .map(block -> readGuild(block, users))
+                    .collect(Collectors.toList());
+
+            Map<PrivateChannelImpl, UserImpl> privateChannels = new HashMap<>();
+            int privateCount = buffer.getInt();
+            for (int i = 0; i < privateCount; i++)
+            {
+                UserImpl user = users[buffer.getInt()];
+                privateChannels.put(new PrivateChannelImpl(Long.toString(buffer.getLong()), user, api), user);
+            }
+
+            //Nothing was added to JDA yet. Only now that everything was decoded, the registries are filled.
+            api.setSelfInfo((SelfInfoImpl) users[0]);
+            for (UserImpl user : users)
+                api.getUserMap().put(user.getId(), user);
+            for (GuildImpl guild : guilds)
+                register(guild);
+            privateChannels.forEach((priv, user) ->
+            {
+                if (!user.hasPrivateChannel())
+                    user.setPrivateChannel(priv);
+            });
+
+            LOG.info("Loaded entity snapshot from " + Instant.ofEpochMilli(created) + " with " + guilds.size() + " Guilds and "
+                    + users.length + " Users in " + (System.currentTimeMillis() - start) + "ms");
+            return true;
+        }
+        catch (IOException | RuntimeException e)
+        {
+            LOG.warn("Could not load the entity snapshot " + file + ". Starting without it.");
+            LOG.log(e);
+            return false;
+        }
+    }
+
+    private void register(GuildImpl guild)
+    {
+        api.getGuildMap().put(guild.getId(), guild);
+        guild.getTextChannelsMap().forEach(api.getChannelMap()::put);
+        guild.getVoiceChannelsMap().forEach(api.getVoiceChannelMap()::put);
+        //Emotes can be shared between guilds, so every guild uses the first instance that was registered.
+        for (Map.Entry<String, Emote> entry : guild.getEmoteMap().entrySet())
+        {
+            Emote emote = api.getEmoteMap().putIfAbsent(entry.getKey(), entry.getValue());
+            if (emote == null)
+                emote = entry.getValue();
+            entry.setValue(emote);
+            ((EmoteImpl) emote).addGuild(guild);
+        }
+    }
+
+    //The WebSocket thread only changes the entities while it holds the cache lock. It is taken once per slice
+    //(users, each guild, private channels) so the gateway never waits for more than one guild to be encoded.
+    //Users that show up after the user slice are left out of the guilds, see writeGuild.
+    private byte[] encode(String token)
+    {
+        ReentrantLock cacheLock = api.getCacheLock();
+        try
+        {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(System.currentTimeMillis());
+            out.write(hash(token));
+            out.writeInt(sharding == null ? -1 : sharding[0]);
+            out.writeInt(sharding == null ? -1 : sharding[1]);
+
+            SelfInfo self = api.getSelfInfo();
+            List<User> users;
+            List<Guild> guilds;
+            Map<User, Integer> userIndex = new IdentityHashMap<>();
+            cacheLock.lock();
+            try
+            {
+                users = new ArrayList<>(api.getUserMap().size());
+                users.add(self);
+                api.getUserMap().values().stream().filter(u -> u != self).forEach(users::add);
+                out.writeInt(users.size());
+                for (User user : users)
+                {
+                    userIndex.put(user, userIndex.size());
+                    out.writeLong(Long.parseLong(user.getId()));
+                    writeString(out, user.getUsername());
+                    writeString(out, user.getDiscriminator());
+                    writeString(out, user.getAvatarId());
+                    out.writeBoolean(user.isBot());
+                    if (user == self)
+                        out.writeBoolean(self.isVerified());
+                }
+                guilds = api.getGuildMap().values().stream().filter(Guild::isAvailable).collect(Collectors.toList());
+            }
+            finally
+            {
+                cacheLock.unlock();
+            }
+
+            ByteArrayOutputStream block = new ByteArrayOutputStream();
+            out.writeInt(guilds.size());
+            for (Guild guild : guilds)
+            {
+                block.reset();
+                cacheLock.lock();
+                try
+                {
+                    writeGuild(new DataOutputStream(block), (GuildImpl) guild, userIndex);
+                }
+                finally
+                {
+                    cacheLock.unlock();
+                }
+                out.writeInt(block.size());
+                block.writeTo(out);
+            }
+
+            block.reset();
+            DataOutputStream privateChannels = new DataOutputStream(block);
+            cacheLock.lock();
+            try
+            {
+                List<User> withPrivateChannel = users.stream().filter(u -> ((UserImpl) u).hasPrivateChannel()).collect(Collectors.toList());
+                privateChannels.writeInt(withPrivateChannel.size());
+                for (User user : withPrivateChannel)
+                {
+                    privateChannels.writeInt(userIndex.get(user));
+                    privateChannels.writeLong(Long.parseLong(user.getPrivateChannel().getId()));
+                }
+            }
+            finally
+            {
+                cacheLock.unlock();
+            }
+            block.writeTo(out);
+            out.flush();
+            return bytes.toByteArray();
+        }
+        catch (IOException e)
+        {
+            //Can't happen with a ByteArrayOutputStream
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void writeGuild(DataOutputStream out, GuildImpl guild, Map<User, Integer> userIndex) throws IOException
+    {
+        out.writeLong(Long.parseLong(guild.getId()));
+        writeString(out, guild.getName());
+        writeString(out, guild.getIconId());
+        writeString(out, guild.getRegion() == null ? null : guild.getRegion().getKey());
+        out.writeInt(guild.getAfkTimeout());
+        writeString(out, guild.getAfkChannelId());
+        Integer owner = guild.getOwner() == null ? null : userIndex.get(guild.getOwner());
+        out.writeInt(owner == null ? -1 : owner);
+        out.writeInt(guild.getVerificationLevel() == null ? 0 : guild.getVerificationLevel().getKey());
+
+        List<Role> roles = new ArrayList<>(guild.getRolesMap().values());
+        Map<Role, Integer> roleIndex = new IdentityHashMap<>();
+        out.writeInt(roles.size());
+        for (Role role : roles)
+        {
+            roleIndex.put(role, roleIndex.size());
+            out.writeLong(Long.parseLong(role.getId()));
+            writeString(out, role.getName());
+            out.writeInt(role.getPositionRaw());
+            out.writeInt(role.getPermissionsRaw());
+            out.writeInt(role.getColor());
+            out.writeByte((role.isManaged() ? 1 : 0) | (role.isGrouped() ? 2 : 0) | (role.isMentionable() ? 4 : 0));
+        }
+
+        out.writeInt(guild.getEmoteMap().size());
+        for (Emote emote : guild.getEmoteMap().values())
+        {
+            out.writeLong(Long.parseLong(emote.getId()));
+            writeString(out, emote.getName());
+        }
+
+        out.writeInt(guild.getTextChannelsMap().size());
+        for (TextChannel channel : guild.getTextChannelsMap().values())
+        {
+            out.writeLong(Long.parseLong(channel.getId()));
+            writeString(out, channel.getName());
+            writeString(out, channel.getTopic());
+            out.writeInt(channel.getPositionRaw());
+            writeOverrides(out, channel, roleIndex, userIndex);
+        }
+        out.writeInt(guild.getVoiceChannelsMap().size());
+        for (VoiceChannel channel : guild.getVoiceChannelsMap().values())
+        {
+            out.writeLong(Long.parseLong(channel.getId()));
+            writeString(out, channel.getName());
+            out.writeInt(channel.getPositionRaw());
+            out.writeInt(channel.getUserLimit());
+            out.writeInt(channel.getBitrate());
+            writeOverrides(out, channel, roleIndex, userIndex);
+        }
+
+        List<User> members = guild.getUserRoles().entrySet().stream()
+                .filter(entry -> entry.getValue() != null && userIndex.containsKey(entry.getKey()))
+                .map(Map.Entry::getKey)
+                .collect(Collectors.toList());
+        out.writeInt(members.size());
+        for (User user : members)
+        {
+            out.writeInt(userIndex.get(user));
+            OffsetDateTime joined = guild.getJoinedAtMap().get(user);
+            out.writeLong(joined == null ? 0 : joined.toInstant().toEpochMilli());
+            writeString(out, guild.getNickMap().get(user));
+            VoiceStatus status = guild.getVoiceStatusMap().get(user);
+            out.writeBoolean(status != null && status.isServerDeaf());
+            out.writeBoolean(status != null && status.isServerMuted());
+            List<Role> memberRoles = guild.getUserRoles().get(user).stream()
+                    .filter(roleIndex::containsKey).collect(Collectors.toList());
+            out.writeShort(memberRoles.size());
+            for (Role role : memberRoles)
+                out.writeShort(roleIndex.get(role));
+        }
+    }
+
+    private static void writeOverrides(DataOutputStream out, Channel channel, Map<Role, Integer> roleIndex, Map<User, Integer> userIndex) throws IOException
+    {
+        List<PermissionOverride> overrides = channel.getPermissionOverrides().stream()
+                .filter(o -> o.isRoleOverride() ? roleIndex.containsKey(o.getRole()) : userIndex.containsKey(o.getUser()))
+                .collect(Collectors.toList());
+        out.writeInt(overrides.size());
+        for (PermissionOverride override : overrides)
+        {
+            out.writeBoolean(override.isRoleOverride());
+            out.writeInt(override.isRoleOverride() ? roleIndex.get(override.getRole()) : userIndex.get(override.getUser()));
+            out.writeInt(override.getAllowedRaw());
+            out.writeInt(override.getDeniedRaw());
+        }
+    }
+
+    private GuildImpl readGuild(ByteBuffer in, UserImpl[] users)
+    {
+        String id = Long.toString(in.getLong());
+        GuildImpl guild = new GuildImpl(api, id);
+        guild.setAvailable(true)
+                .setName(readString(in))
+                .setIconId(readString(in));
+        String region = readString(in);
+        guild.setRegion(region == null ? Region.UNKNOWN : Region.fromKey(region))
+                .setAfkTimeout(in.getInt())
+                .setAfkChannelId(readString(in));
+        int owner = in.getInt();
+        if (owner >= 0)
+            guild.setOwner(users[owner]);
+        guild.setVerificationLevel(Guild.VerificationLevel.fromKey(in.getInt()));
+
+        RoleImpl[] roles = new RoleImpl[in.getInt()];
+        for (int i = 0; i < roles.length; i++)
+        {
+            RoleImpl role = new RoleImpl(Long.toString(in.getLong()), guild);
+            role.setName(readString(in))
+                    .setPosition(in.getInt())
+                    .setPermissions(in.getInt())
+                    .setColor(in.getInt());
+            int flags = in.get();
+            role.setManaged((flags & 1) != 0)
+                    .setGrouped((flags & 2) != 0)
+                    .setMentionable((flags & 4) != 0);
+            guild.getRolesMap().put(role.getId(), role);
+            if (role.getId().equals(id))
+                guild.setPublicRole(role);
+            roles[i] = role;
+        }
+
+        int emoteCount = in.getInt();
+        for (int i = 0; i < emoteCount; i++)
+        {
+            String emoteId = Long.toString(in.getLong());
+            guild.getEmoteMap().put(emoteId, new EmoteImpl(readString(in), emoteId));
+        }
+
+        int textCount = in.getInt();
+        for (int i = 0; i < textCount; i++)
+        {
+            TextChannelImpl channel = new TextChannelImpl(Long.toString(in.getLong()), guild);
+            channel.setName(readString(in))
+                    .setTopic(readString(in))
+                    .setPosition(in.getInt());
+            readOverrides(in, channel, channel.getRolePermissionOverridesMap(), channel.getUserPermissionOverridesMap(), roles, users);
+            guild.getTextChannelsMap().put(channel.getId(), channel);
+            if (channel.getId().equals(id))
+                guild.setPublicChannel(channel);
+        }
+        int voiceCount = in.getInt();
+        for (int i = 0; i < voiceCount; i++)
+        {
+            VoiceChannelImpl channel = new VoiceChannelImpl(Long.toString(in.getLong()), guild);
+            channel.setName(readString(in))
+                    .setPosition(in.getInt())
+                    .setUserLimit(in.getInt())
+                    .setBitrate(in.getInt());
+            readOverrides(in, channel, channel.getRolePermissionOverridesMap(), channel.getUserPermissionOverridesMap(), roles, users);
+            guild.getVoiceChannelsMap().put(channel.getId(), channel);
+        }
+
+        int memberCount = in.getInt();
+        for (int i = 0; i < memberCount; i++)
+        {
+            UserImpl user = users[in.getInt()];
+            long joined = in.getLong();
+            guild.getJoinedAtMap().put(user, OffsetDateTime.ofInstant(Instant.ofEpochMilli(joined), ZoneOffset.UTC));
+            String nick = readString(in);
+            if (nick != null)
+                guild.getNickMap().put(user, nick);
+            VoiceStatusImpl status = new VoiceStatusImpl(user, guild);
+            status.setServerDeaf(in.get() != 0);
+            status.setServerMute(in.get() != 0);
+            guild.getVoiceStatusMap().put(user, status);
+            int roleCount = in.getShort();
+            List<Role> memberRoles = new ArrayList<>(roleCount);
+            for (int j = 0; j < roleCount; j++)
+                memberRoles.add(roles[in.getShort()]);
+            guild.getUserRoles().put(user, memberRoles);
+        }
+        return guild;
+    }
+
+    private static void readOverrides(ByteBuffer in, Channel channel, Map<Role, PermissionOverride> roleOverrides,
+                                      Map<User, PermissionOverride> userOverrides, RoleImpl[] roles, UserImpl[] users)
+    {
+        int count = in.getInt();
+        for (int i = 0; i < count; i++)
+        {
+            boolean isRole = in.get() != 0;
+            int index = in.getInt();
+            PermissionOverrideImpl override = isRole
+                    ? new PermissionOverrideImpl(channel, null, roles[index])
+                    : new PermissionOverrideImpl(channel, users[index], null);
+            override.setAllow(in.getInt())
+                    .setDeny(in.getInt());
+            if (isRole)
+                roleOverrides.put(roles[index], override);
+            else
+                userOverrides.put(users[index], override);
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String string) throws IOException
+    {
+        if (string == null)
+        {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer in)
+    {
+        int length = in.getInt();
+        if (length < 0)
+            return null;
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static byte[] hash(String token)
+    {
+        try
+        {
+            return MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.UTF_8));
+        }
+        catch (NoSuchAlgorithmException e)
+        {
+            //Every Java platform is required to support SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -21,6 +21,7 @@ import net.dv8tion.jda.entities.ChannelType;
 import net.dv8tion.jda.entities.Game;
 import net.dv8tion.jda.entities.Guild;
 import net.dv8tion.jda.entities.impl.JDAImpl;
+import net.dv8tion.jda.requests.GatewaySendQueue;
 import org.json.JSONArray;
 import org.json.JSONObject;
 
@@ -169,7 +170,7 @@ public class ReadyHandler extends SocketHandler
                                 .put("query","")
                                 .put("limit", 0)
                         );
-                api.getClient().send(obj.toString());
+                api.getClient().send(obj.toString(), GatewaySendQueue.Lane.BULK);
                 arr = new JSONArray();
             }
         }
@@ -182,7 +183,7 @@ public class ReadyHandler extends SocketHandler
                             .put("query","")
                             .put("limit", 0)
                     );
-            api.getClient().send(obj.toString());
+            api.getClient().send(obj.toString(), GatewaySendQueue.Lane.BULK);
         }
         chunkIds.get(api).clear();
     }
@@ -0,0 +1,554 @@
+/*
+ *     Copyright 2015-2016 Austin Keener & Michael Ritter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.dv8tion.jda.handle;
+
+import net.dv8tion.jda.JDA;
+import net.dv8tion.jda.Region;
+import net.dv8tion.jda.entities.*;
+import net.dv8tion.jda.entities.impl.*;
+import net.dv8tion.jda.events.guild.GuildLeaveEvent;
+import net.dv8tion.jda.events.guild.GuildUpdateEvent;
+import net.dv8tion.jda.events.guild.member.*;
+import net.dv8tion.jda.events.guild.role.*;
+import net.dv8tion.jda.events.channel.text.*;
+import net.dv8tion.jda.events.channel.voice.*;
+import net.dv8tion.jda.events.user.UserAvatarUpdateEvent;
+import net.dv8tion.jda.events.user.UserNameUpdateEvent;
+import net.dv8tion.jda.managers.AudioManager;
+import net.dv8tion.jda.utils.SimpleLog;
+
+import java.util.*;
+
+/**
+ * Keeps the existing entity objects through a session invalidation (op 9 or a failed resume).
+ * <p>
+ * Instead of clearing all registries and building everything from scratch, the state of every guild is recorded
+ * when the session is invalidated. The {@link EntityBuilder EntityBuilder} then applies the fresh READY and GUILD_CREATE
+ * data to the existing objects and reports everything it saw. Once a guild is complete, entities that weren't reported
+ * anymore are removed and the differences to the recorded state are fired as the usual create, update and delete events.
+ * References held by listeners stay valid and nothing is fired for entities that didn't change.
+ */
+public class SessionReconciler
+{
+    public static final SimpleLog LOG = SimpleLog.getLog("JDAReconciler");
+
+    private static final Map<JDA, SessionReconciler> reconcilers = new HashMap<>();
+
+    private final JDAImpl api;
+    private final Map<Guild, GuildState> guilds = new HashMap<>();
+    private final Map<User, UserState> users = new HashMap<>();
+    private final Set<String> seenGuilds = new HashSet<>();
+    private final Set<Object> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+
+    private SessionReconciler(JDAImpl api)
+    {
+        this.api = api;
+        for (Guild guild : api.getGuildMap().values())
+        {
+            if (guild.isAvailable())
+                guilds.put(guild, new GuildState((GuildImpl) guild));
+        }
+        for (User user : api.getUserMap().values())
+            users.put(user, new UserState(user));
+    }
+
+    /**
+     * Records the current state of all entities and starts reconciling the following READY against it.
+     * A previously started reconciliation that didn't finish is discarded.
+     *
+     * @param api
+     *          The JDA instance whose session got invalidated.
+     */
+    public static synchronized void begin(JDAImpl api)
+    {
+        reconcilers.put(api, new SessionReconciler(api));
+    }
+
+    /**
+     * The running reconciliation of the JDA instance.
+     *
+     * @param api
+     *          The JDA instance.
+     * @return
+     *      The reconciler, or null if the JDA instance is not re-identifying with preserved entities.
+     */
+    public static synchronized SessionReconciler get(JDA api)
+    {
+        return reconcilers.get(api);
+    }
+
+    public static synchronized void clear(JDA api)
+    {
+        reconcilers.remove(api);
+    }
+
+    void markGuild(String guildId)
+    {
+        seenGuilds.add(guildId);
+    }
+
+    void mark(Object entity)
+    {
+        seen.add(entity);
+    }
+
+    void markMember(Guild guild, User user)
+    {
+        GuildState state = guilds.get(guild);
+        if (state != null)
+            state.seenMembers.add(user);
+    }
+
+    /**
+     * Called by the {@link EntityBuilder EntityBuilder} when all data of a guild was applied, including member chunks.
+     * Removes what wasn't part of the new data and fires the events for all changes of the guild.
+     *
+     * @param guild
+     *          The completely built guild.
+     */
+    void reconcileGuild(GuildImpl guild)
+    {
+        GuildState state = guilds.remove(guild);
+        if (state == null)
+            return;     //New guild, or one that was unavailable when the session was invalidated.
+        int responseNumber = api.getResponseTotal();
+
+        //Removed roles
+        List<Role> deletedRoles = new LinkedList<>();
+        for (Iterator<Role> it = guild.getRolesMap().values().iterator(); it.hasNext(); )
+        {
+            Role role = it.next();
+            if (!seen.contains(role))
+            {
+                it.remove();
+                deletedRoles.add(role);
+            }
+        }
+        for (Role role : deletedRoles)
+        {
+            guild.getUserRoles().values().forEach(roles -> roles.remove(role));
+            guild.getTextChannels().forEach(c -> ((TextChannelImpl) c).getRolePermissionOverridesMap().remove(role));
+            guild.getVoiceChannels().forEach(c -> ((VoiceChannelImpl) c).getRolePermissionOverridesMap().remove(role));
+            api.getEventManager().handle(new GuildRoleDeleteEvent(api, responseNumber, guild, role));
+        }
+
+        //Removed channels
+        for (Iterator<TextChannel> it = guild.getTextChannelsMap().values().iterator(); it.hasNext(); )
+        {
+            TextChannel channel = it.next();
+            if (!seen.contains(channel))
+            {
+                it.remove();
+                api.getChannelMap().remove(channel.getId());
+                TextChannelImpl.AsyncMessageSender.purge(api, guild.getId(), channel.getId());
+                api.getEventManager().handle(new TextChannelDeleteEvent(api, responseNumber, channel));
+            }
+        }
+        for (Iterator<VoiceChannel> it = guild.getVoiceChannelsMap().values().iterator(); it.hasNext(); )
+        {
+            VoiceChannel channel = it.next();
+            if (!seen.contains(channel))
+            {
+                it.remove();
+                api.getVoiceChannelMap().remove(channel.getId());
+                AudioManager manager = api.getAudioManagersMap().get(guild);
+                if (manager != null && manager.isConnected() && manager.getConnectedChannel() == channel)
+                    manager.closeAudioConnection();
+                api.getEventManager().handle(new VoiceChannelDeleteEvent(api, responseNumber, channel));
+            }
+        }
+
+        //Removed members
+        List<User> leftMembers = new LinkedList<>();
+        for (User user : guild.getUserRoles().keySet())
+        {
+            if (!state.seenMembers.contains(user))
+                leftMembers.add(user);
+        }
+        for (User user : leftMembers)
+        {
+            VoiceStatus status = guild.getVoiceStatusMap().remove(user);
+            if (status != null && status.getChannel() != null)
+                ((VoiceChannelImpl) status.getChannel()).getUsersModifiable().remove(user);
+            guild.getUserRoles().remove(user);
+            guild.getJoinedAtMap().remove(user);
+            guild.getNickMap().remove(user);
+            guild.getTextChannels().forEach(c -> ((TextChannelImpl) c).getUserPermissionOverridesMap().remove(user));
+            guild.getVoiceChannels().forEach(c -> ((VoiceChannelImpl) c).getUserPermissionOverridesMap().remove(user));
+            api.getEventManager().handle(new GuildMemberLeaveEvent(api, responseNumber, guild, user));
+        }
+
+        //Removed emotes. There are no emote events.
+        for (Iterator<Emote> it = guild.getEmoteMap().values().iterator(); it.hasNext(); )
+        {
+            Emote emote = it.next();
+            if (!seen.contains(emote))
+            {
+                it.remove();
+                ((EmoteImpl) emote).removeGuild(guild);
+                if (emote.getGuilds().isEmpty())
+                    api.getEmoteMap().remove(emote.getId());
+            }
+        }
+
+        //Changed guild
+        if (!Objects.equals(state.name, guild.getName())
+                || !Objects.equals(state.iconId, guild.getIconId())
+                || state.region != guild.getRegion()
+                || !Objects.equals(state.afkChannelId, guild.getAfkChannelId())
+                || state.afkTimeout != guild.getAfkTimeout()
+                || state.owner != guild.getOwner()
+                || state.verificationLevel != guild.getVerificationLevel())
+        {
+            api.getEventManager().handle(new GuildUpdateEvent(api, responseNumber, guild));
+        }
+
+        //Created and changed roles
+        for (Role role : guild.getRolesMap().values())
+        {
+            RoleState old = state.roles.get(role);
+            if (old == null)
+            {
+                api.getEventManager().handle(new GuildRoleCreateEvent(api, responseNumber, guild, role));
+                continue;
+            }
+            boolean changed = false;
+            if (!Objects.equals(old.name, role.getName()))
+            {
+                api.getEventManager().handle(new GuildRoleUpdateNameEvent(api, responseNumber, role));
+                changed = true;
+            }
+            if (old.position != role.getPositionRaw())
+            {
+                api.getEventManager().handle(new GuildRoleUpdatePositionEvent(api, responseNumber, role));
+                changed = true;
+            }
+            if (old.permissions != role.getPermissionsRaw())
+            {
+                api.getEventManager().handle(new GuildRoleUpdatePermissionEvent(api, responseNumber, role));
+                changed = true;
+            }
+            if (old.color != role.getColor())
+            {
+                api.getEventManager().handle(new GuildRoleUpdateColorEvent(api, responseNumber, role));
+                changed = true;
+            }
+            if (old.grouped != role.isGrouped())
+            {
+                api.getEventManager().handle(new GuildRoleUpdateGroupedEvent(api, responseNumber, role));
+                changed = true;
+            }
+            if (changed || old.mentionable != role.isMentionable())
+                api.getEventManager().handle(new GuildRoleUpdateEvent(api, responseNumber, role));
+        }
+
+        //Created and changed channels
+        for (TextChannel channel : guild.getTextChannels())
+        {
+            ChannelState old = state.channels.get(channel);
+            if (old == null)
+            {
+                api.getEventManager().handle(new TextChannelCreateEvent(api, responseNumber, channel));
+                continue;
+            }
+            if (!Objects.equals(old.name, channel.getName()))
+                api.getEventManager().handle(new TextChannelUpdateNameEvent(api, responseNumber, channel, old.name));
+            if (!Objects.equals(old.topic, channel.getTopic()))
+                api.getEventManager().handle(new TextChannelUpdateTopicEvent(api, responseNumber, channel, old.topic));
+            if (old.position != channel.getPositionRaw())
+                api.getEventManager().handle(new TextChannelUpdatePositionEvent(api, responseNumber, channel, old.position));
+            List<Role> changedRoles = new LinkedList<>();
+            List<User> changedUsers = new LinkedList<>();
+            diffOverrides(old, channel, changedRoles, changedUsers);
+            if (!changedRoles.isEmpty() || !changedUsers.isEmpty())
+                api.getEventManager().handle(new TextChannelUpdatePermissionsEvent(api, responseNumber, channel, changedRoles, changedUsers));
+        }
+        for (VoiceChannel channel : guild.getVoiceChannels())
+        {
+            ChannelState old = state.channels.get(channel);
+            if (old == null)
+            {
+                api.getEventManager().handle(new VoiceChannelCreateEvent(api, responseNumber, channel));
+                continue;
+            }
+            if (!Objects.equals(old.name, channel.getName()))
+                api.getEventManager().handle(new VoiceChannelUpdateNameEvent(api, responseNumber, channel, old.name));
+            if (old.position != channel.getPositionRaw())
+                api.getEventManager().handle(new VoiceChannelUpdatePositionEvent(api, responseNumber, channel, old.position));
+            if (old.userLimit != channel.getUserLimit())
+                api.getEventManager().handle(new VoiceChannelUpdateUserLimitEvent(api, responseNumber, channel, old.userLimit));
+            if (old.bitrate != channel.getBitrate())
+                api.getEventManager().handle(new VoiceChannelUpdateBitrateEvent(api, responseNumber, channel, old.bitrate));
+            List<Role> changedRoles = new LinkedList<>();
+            List<User> changedUsers = new LinkedList<>();
+            diffOverrides(old, channel, changedRoles, changedUsers);
+            if (!changedRoles.isEmpty() || !changedUsers.isEmpty())
+                api.getEventManager().handle(new VoiceChannelUpdatePermissionsEvent(api, responseNumber, channel, changedRoles, changedUsers));
+        }
+
+        //Joined and changed members
+        for (Map.Entry<User, List<Role>> entry : guild.getUserRoles().entrySet())
+        {
+            User user = entry.getKey();
+            MemberState old = state.members.get(user);
+            if (old == null)
+            {
+                api.getEventManager().handle(new GuildMemberJoinEvent(api, responseNumber, guild, user));
+                continue;
+            }
+            String nick = guild.getNickMap().get(user);
+            if (!Objects.equals(old.nick, nick))
+                api.getEventManager().handle(new GuildMemberNickChangeEvent(api, responseNumber, guild, user, old.nick, nick));
+
+            List<Role> added = new LinkedList<>(entry.getValue());
+            added.removeAll(old.roles);
+            List<Role> removed = new LinkedList<>(old.roles);
+            removed.removeAll(entry.getValue());
+            removed.removeAll(deletedRoles);    //Already covered by the GuildRoleDeleteEvent
+            if (!added.isEmpty())
+                api.getEventManager().handle(new GuildMemberRoleAddEvent(api, responseNumber, guild, user, added));
+            if (!removed.isEmpty())
+                api.getEventManager().handle(new GuildMemberRoleRemoveEvent(api, responseNumber, guild, user, removed));
+        }
+    }
+
+    /**
+     * Called once the new session is READY. Removes guilds that are not part of the new session, cleans up users
+     * that don't share a guild anymore and fires the update events of changed users.
+     * Guilds that are still unavailable keep their old state.
+     */
+    public void finish()
+    {
+        synchronized (SessionReconciler.class)
+        {
+            if (reconcilers.get(api) == this)
+                reconcilers.remove(api);
+        }
+        int responseNumber = api.getResponseTotal();
+
+        List<Guild> leftGuilds = new LinkedList<>();
+        for (Guild guild : api.getGuildMap().values())
+        {
+            if (!seenGuilds.contains(guild.getId()))
+                leftGuilds.add(guild);
+        }
+        for (Guild guild : leftGuilds)
+        {
+            AudioManager manager = api.getAudioManagersMap().remove(guild);
+            if (manager != null)
+                manager.closeAudioConnection();
+            for (Emote emote : guild.getEmotes())
+            {
+                ((EmoteImpl) emote).removeGuild(guild);
+                if (emote.getGuilds().isEmpty())
+                    api.getEmoteMap().remove(emote.getId());
+            }
+            api.getGuildMap().remove(guild.getId());
+            guild.getTextChannels().forEach(chan -> api.getChannelMap().remove(chan.getId()));
+            guild.getVoiceChannels().forEach(chan -> api.getVoiceChannelMap().remove(chan.getId()));
+            TextChannelImpl.AsyncMessageSender.stop(api, guild.getId());
+            api.getEventManager().handle(new GuildLeaveEvent(api, responseNumber, guild));
+        }
+        if (!guilds.isEmpty())
+            LOG.debug(guilds.size() + " Guilds were not available after re-identifying and keep their previous state.");
+
+        //Users that we don't share a guild with anymore
+        Set<User> members = new HashSet<>();
+        api.getGuildMap().values().forEach(g -> members.addAll(((GuildImpl) g).getUserRoles().keySet()));
+        for (Iterator<User> it = api.getUserMap().values().iterator(); it.hasNext(); )
+        {
+            UserImpl user = (UserImpl) it.next();
+            if (members.contains(user) || user == api.getSelfInfo())
+                continue;
+            if (user.hasPrivateChannel())
+            {
+                api.getOffline_pms().put(user.getId(), user.getPrivateChannel().getId());
+                api.getPmChannelMap().remove(user.getPrivateChannel().getId());
+            }
+            it.remove();
+        }
+
+        for (User user : api.getUserMap().values())
+        {
+            UserState old = users.get(user);
+            if (old == null)
+                continue;
+            if (!Objects.equals(old.username, user.getUsername()))
+                api.getEventManager().handle(new UserNameUpdateEvent(api, responseNumber, user, old.username));
+            if (!Objects.equals(old.avatarId, user.getAvatarId()))
+                api.getEventManager().handle(new UserAvatarUpdateEvent(api, responseNumber, user, old.avatarId));
+        }
+    }
+
+    private void diffOverrides(ChannelState old, Channel channel, List<Role> changedRoles, List<User> changedUsers)
+    {
+        for (Map.Entry<Object, Long> entry : old.overrides.entrySet())
+        {
+            Object holder = entry.getKey();
+            PermissionOverride override = holder instanceof Role
+                    ? channel.getOverrideForRole((Role) holder)
+                    : channel.getOverrideForUser((User) holder);
+            if (override == null || !seen.contains(override))
+            {
+                //The override was deleted. Overrides of deleted roles and left members were already removed with them.
+                removeOverride(channel, holder);
+                if (holder instanceof Role && ((GuildImpl) channel.getGuild()).getRolesMap().containsValue(holder))
+                    changedRoles.add((Role) holder);
+                else if (holder instanceof User && ((GuildImpl) channel.getGuild()).getUserRoles().containsKey(holder))
+                    changedUsers.add((User) holder);
+            }
+            else if (entry.getValue() != pack(override))
+            {
+                if (holder instanceof Role)
+                    changedRoles.add((Role) holder);
+                else
+                    changedUsers.add((User) holder);
+            }
+        }
+        for (PermissionOverride override : channel.getPermissionOverrides())
+        {
+            Object holder = override.isRoleOverride() ? override.getRole() : override.getUser();
+            if (old.overrides.containsKey(holder))
+                continue;
+            if (override.isRoleOverride())
+                changedRoles.add(override.getRole());
+            else
+                changedUsers.add(override.getUser());
+        }
+    }
+
+    private static void removeOverride(Channel channel, Object holder)
+    {
+        if (channel instanceof TextChannelImpl)
+        {
+            ((TextChannelImpl) channel).getRolePermissionOverridesMap().remove(holder);
+            ((TextChannelImpl) channel).getUserPermissionOverridesMap().remove(holder);
+        }
+        else
+        {
+            ((VoiceChannelImpl) channel).getRolePermissionOverridesMap().remove(holder);
+            ((VoiceChannelImpl) channel).getUserPermissionOverridesMap().remove(holder);
+        }
+    }
+
+    private static long pack(PermissionOverride override)
+    {
+        return ((long) override.getAllowedRaw() << 32) | (override.getDeniedRaw() & 0xFFFFFFFFL);
+    }
+
+    private static class GuildState
+    {
+        final String name;
+        final String iconId;
+        final Region region;
+        final String afkChannelId;
+        final int afkTimeout;
+        final User owner;
+        final Guild.VerificationLevel verificationLevel;
+        final Map<Role, RoleState> roles = new HashMap<>();
+        final Map<Channel, ChannelState> channels = new HashMap<>();
+        final Map<User, MemberState> members = new HashMap<>();
+        final Set<User> seenMembers = new HashSet<>();
+
+        GuildState(GuildImpl guild)
+        {
+            name = guild.getName();
+            iconId = guild.getIconId();
+            region = guild.getRegion();
+            afkChannelId = guild.getAfkChannelId();
+            afkTimeout = guild.getAfkTimeout();
+            owner = guild.getOwner();
+            verificationLevel = guild.getVerificationLevel();
+            guild.getRolesMap().values().forEach(r -> roles.put(r, new RoleState(r)));
+            guild.getTextChannels().forEach(c -> channels.put(c, new ChannelState(c)));
+            guild.getVoiceChannels().forEach(c -> channels.put(c, new ChannelState(c)));
+            guild.getUserRoles().forEach((u, r) -> members.put(u, new MemberState(guild.getNickMap().get(u), r)));
+        }
+    }
+
+    private static class RoleState
+    {
+        final String name;
+        final int position;
+        final int permissions;
+        final int color;
+        final boolean grouped;
+        final boolean mentionable;
+
+        RoleState(Role role)
+        {
+            name = role.getName();
+            position = role.getPositionRaw();
+            permissions = role.getPermissionsRaw();
+            color = role.getColor();
+            grouped = role.isGrouped();
+            mentionable = role.isMentionable();
+        }
+    }
+
+    private static class ChannelState
+    {
+        final String name;
+        final String topic;
+        final int position;
+        final int userLimit;
+        final int bitrate;
+        final Map<Object, Long> overrides = new HashMap<>();
+
+        ChannelState(Channel channel)
+        {
+            name = channel.getName();
+            topic = channel.getTopic();
+            position = channel.getPositionRaw();
+            if (channel instanceof VoiceChannel)
+            {
+                userLimit = ((VoiceChannel) channel).getUserLimit();
+                bitrate = ((VoiceChannel) channel).getBitrate();
+            }
+            else
+            {
+                userLimit = 0;
+                bitrate = 0;
+            }
+            for (PermissionOverride override : channel.getPermissionOverrides())
+                overrides.put(override.isRoleOverride() ? override.getRole() : override.getUser(), pack(override));
+        }
+    }
+
+    private static class MemberState
+    {
+        final String nick;
+        final List<Role> roles;
+
+        MemberState(String nick, List<Role> roles)
+        {
+            this.nick = nick;
+            this.roles = new ArrayList<>(roles);
+        }
+    }
+
+    private static class UserState
+    {
+        final String username;
+        final String avatarId;
+
+        UserState(User user)
+        {
+            username = user.getUsername();
+            avatarId = user.getAvatarId();
+        }
+    }
+}
@@ -48,8 +48,9 @@ public class VoiceServerUpdateHandler extends SocketHandler
         if (sessionId == null)
             throw new IllegalArgumentException("Attempted to create audio connection without having a session ID. Did VOICE_STATE_UPDATED fail?");
 
-        //Strip the port from the endpoint.
-        endpoint = endpoint.replace(":80", "");
+        //Strip the port from the endpoint. Only the trailing one, ":80" can also be part of another port.
+        if (endpoint.endsWith(":80"))
+            endpoint = endpoint.substring(0, endpoint.length() - 3);
 
         AudioManagerImpl audioManager = (AudioManagerImpl) guild.getAudioManager();
         if (audioManager.isConnected())
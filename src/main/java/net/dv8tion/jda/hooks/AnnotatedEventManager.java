@@ -17,6 +17,7 @@ package net.dv8tion.jda.hooks;
 
 import net.dv8tion.jda.entities.impl.JDAImpl;
 import net.dv8tion.jda.events.Event;
+import net.dv8tion.jda.utils.MetricsRegistry;
 
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
@@ -55,6 +56,7 @@ public class AnnotatedEventManager implements IEventManager
     @SuppressWarnings("unchecked")
     public void handle(Event event)
     {
+        MetricsRegistry metrics = event.getJDA() == null ? MetricsRegistry.NOOP : ((JDAImpl) event.getJDA()).getMetrics();
         Class<? extends Event> eventClass = event.getClass();
         do
         {
@@ -65,7 +67,10 @@ public class AnnotatedEventManager implements IEventManager
                     try
                     {
                         e.getValue().setAccessible(true);
+                        long start = metrics.isEnabled() ? System.nanoTime() : 0;
                         e.getValue().invoke(e.getKey(), event);
+                        if (metrics.isEnabled())
+                            metrics.time(MetricsRegistry.LISTENER_TIME, e.getKey().getClass().getName(), System.nanoTime() - start);
                     }
                     catch (IllegalAccessException | InvocationTargetException e1)
                     {
@@ -17,6 +17,7 @@ package net.dv8tion.jda.hooks;
 
 import net.dv8tion.jda.entities.impl.JDAImpl;
 import net.dv8tion.jda.events.Event;
+import net.dv8tion.jda.utils.MetricsRegistry;
 
 import java.util.Collections;
 import java.util.LinkedList;
@@ -57,11 +58,21 @@ public class InterfacedEventManager implements IEventManager
     @Override
     public void handle(Event event)
     {
+        MetricsRegistry metrics = event.getJDA() == null ? MetricsRegistry.NOOP : ((JDAImpl) event.getJDA()).getMetrics();
         for (EventListener listener : listeners)
         {
             try
             {
-                listener.onEvent(event);
+                if (metrics.isEnabled())
+                {
+                    long start = System.nanoTime();
+                    listener.onEvent(event);
+                    metrics.time(MetricsRegistry.LISTENER_TIME, listener.getClass().getName(), System.nanoTime() - start);
+                }
+                else
+                {
+                    listener.onEvent(event);
+                }
             }
             catch (Throwable throwable)
             {
@@ -23,6 +23,7 @@ import net.dv8tion.jda.entities.User;
 import net.dv8tion.jda.entities.impl.GameImpl;
 import net.dv8tion.jda.entities.impl.JDAImpl;
 import net.dv8tion.jda.entities.impl.SelfInfoImpl;
+import net.dv8tion.jda.requests.GatewaySendQueue;
 import net.dv8tion.jda.requests.Requester;
 import net.dv8tion.jda.utils.AvatarUtil;
 import org.json.JSONObject;
@@ -196,6 +197,6 @@ public class AccountManager
         JSONObject content = new JSONObject()
                 .put("game", game == null ? JSONObject.NULL : game)
                 .put("idle_since", selfInfo.getOnlineStatus() == OnlineStatus.AWAY ? System.currentTimeMillis() : JSONObject.NULL);
-        api.getClient().send(new JSONObject().put("op", 3).put("d", content).toString());
+        api.getClient().send(new JSONObject().put("op", 3).put("d", content).toString(), GatewaySendQueue.Lane.PRESENCE);
     }
 }
@@ -22,6 +22,8 @@ import net.dv8tion.jda.entities.Guild;
 import net.dv8tion.jda.entities.VoiceChannel;
 import net.dv8tion.jda.utils.SimpleLog;
 
+import java.util.concurrent.CompletableFuture;
+
 /**
  * AudioManager deals with creating, managing and severing audio connections to
  * {@link net.dv8tion.jda.entities.VoiceChannel VoiceChannels}. Also controls audio handlers.
@@ -36,8 +38,18 @@ public interface AudioManager
      * Note: Currently you can only be connected to a single {@link net.dv8tion.jda.entities.VoiceChannel VoiceChannel}
      * per {@link net.dv8tion.jda.entities.Guild Guild}.
      *
+     * <p>
+     * The connection is set up in the background. The returned future completes with the channel once audio can be
+     * sent and received, the same time the {@link net.dv8tion.jda.events.audio.AudioConnectEvent AudioConnectEvent}
+     * is fired. It completes exceptionally with a {@link java.util.concurrent.TimeoutException TimeoutException}
+     * if the connection wasn't ready within the {@link #setConnectTimeout(long) connect timeout}, with a
+     * {@link java.net.ConnectException ConnectException} if the voice server couldn't be reached, or with an
+     * {@link java.lang.IllegalStateException IllegalStateException} if the connection was closed before it was ready.
+     *
      * @param channel
      *          The {@link net.dv8tion.jda.entities.VoiceChannel VoiceChannel} to open an audio connection with.
+     * @return
+     *      A future that completes once the audio connection is ready.
      *
      * @throws java.lang.IllegalStateException
      *          If JDA is already has an active audio connection with a {@link net.dv8tion.jda.entities.VoiceChannel VoiceChannel}
@@ -47,7 +59,7 @@ public interface AudioManager
      *          For both of these situations, first checking {@link #isAttemptingToConnect()} and {@link #isConnected()}
      *          is advised.
      */
-    void openAudioConnection(VoiceChannel channel);
+    CompletableFuture<VoiceChannel> openAudioConnection(VoiceChannel channel);
 
     /**
      * Moves the audio connection from one {@link net.dv8tion.jda.entities.VoiceChannel VoiceChannel} to a different
@@ -205,4 +217,104 @@ public interface AudioManager
      *      The currently active {@link net.dv8tion.jda.audio.AudioReceiveHandler AudioReceiveHandler} or <code>null</code>.
      */
     AudioReceiveHandler getReceiveHandler();
+
+    /**
+     * Sets the bitrate, in bits per second, that the Opus encoder will target when encoding audio provided by an
+     * {@link net.dv8tion.jda.audio.AudioSendHandler AudioSendHandler}.<br>
+     * By default this is {@link net.dv8tion.jda.audio.Encoder#BITRATE_AUTO Encoder.BITRATE_AUTO}, which makes the encoder
+     * follow the bitrate of the {@link net.dv8tion.jda.entities.VoiceChannel VoiceChannel} JDA is connected to.
+     * <p>
+     * This setting persists between audio connections and has no effect on pre-encoded Opus audio.
+     *
+     * @param bitrate
+     *          The bitrate in bits per second or {@link net.dv8tion.jda.audio.Encoder#BITRATE_AUTO Encoder.BITRATE_AUTO}.
+     *
+     * @throws java.lang.IllegalArgumentException
+     *          If the provided bitrate is not between 500 and 512000.
+     */
+    void setEncoderBitrate(int bitrate);
+
+    /**
+     * Returns the bitrate, in bits per second, used by the Opus encoder.
+     *
+     * @return
+     *      The bitrate or {@link net.dv8tion.jda.audio.Encoder#BITRATE_AUTO Encoder.BITRATE_AUTO}.
+     */
+    int getEncoderBitrate();
+
+    /**
+     * Sets the computational complexity of the Opus encoder. Lower values use less CPU at the cost of quality.<br>
+     * The default value is {@value net.dv8tion.jda.audio.Encoder#DEFAULT_COMPLEXITY}.
+     *
+     * @param complexity
+     *          The complexity, between 0 and 10.
+     *
+     * @throws java.lang.IllegalArgumentException
+     *          If the provided complexity is not between 0 and 10.
+     */
+    void setEncoderComplexity(int complexity);
+
+    /**
+     * Returns the computational complexity of the Opus encoder.
+     *
+     * @return
+     *      The complexity, between 0 and 10.
+     */
+    int getEncoderComplexity();
+
+    /**
+     * Enables or disables Opus in-band forward error correction. When enabled, the encoder embeds a low bitrate copy
+     * of the previous frame in every packet, so receivers can recover single lost packets.<br>
+     * This only has an effect if the expected packet loss ({@link #setEncoderPacketLoss(int)}) is larger than 0.
+     * Default - False.
+     *
+     * @param enabled
+     *          True, to enable in-band forward error correction.
+     */
+    void setEncoderInbandFec(boolean enabled);
+
+    /**
+     * Whether or not the Opus encoder uses in-band forward error correction.
+     *
+     * @return
+     *      True, if in-band forward error correction is enabled.
+     */
+    boolean isEncoderInbandFec();
+
+    /**
+     * Sets the packet loss, in percent, that the Opus encoder should expect. Higher values make the encoder
+     * produce more robust packets at the cost of quality. Default - 0.
+     *
+     * @param percent
+     *          The expected packet loss, between 0 and 100.
+     *
+     * @throws java.lang.IllegalArgumentException
+     *          If the provided percentage is not between 0 and 100.
+     */
+    void setEncoderPacketLoss(int percent);
+
+    /**
+     * Returns the packet loss, in percent, that the Opus encoder expects.
+     *
+     * @return
+     *      The expected packet loss, between 0 and 100.
+     */
+    int getEncoderPacketLoss();
+
+    /**
+     * Enables or disables Opus discontinuous transmission. When enabled, the encoder produces tiny packets
+     * during silence, which reduces bandwidth and CPU usage. Default - False.
+     *
+     * @param enabled
+     *          True, to enable discontinuous transmission.
+     */
+    void setEncoderDtx(boolean enabled);
+
+    /**
+     * Whether or not the Opus encoder uses discontinuous transmission.
+     *
+     * @return
+     *      True, if discontinuous transmission is enabled.
+     */
+    boolean isEncoderDtx();
 }
@@ -434,7 +434,9 @@ public class GuildManager
     }
 
     /**
-     * This method will apply all accumulated changes received by setters
+     * This method will apply all accumulated changes received by setters.
+     * <br>Role changes of many users are applied with a {@link net.dv8tion.jda.managers.MemberRoleBatch MemberRoleBatch},
+     * which can also be used directly to follow the progress without blocking.
      *
      * @throws net.dv8tion.jda.exceptions.GuildUnavailableException
      *      if the guild is temporarily unavailable
@@ -468,24 +470,16 @@ public class GuildManager
 
         if (addedRoles.size() > 0)
         {
-            checkPermission(Permission.MANAGE_ROLES);
-
+            //Skips unchanged members and sends the others concurrently, within the rate-limit.
+            MemberRoleBatch batch = new MemberRoleBatch(guild);
             for (User user : addedRoles.keySet())
             {
-                List<Role> roles = guild.getRolesForUser(user);
-                List<String> roleIds = new LinkedList<>();
-                roles.forEach(r -> roleIds.add(r.getId()));
-
-                addedRoles.get(user).stream().filter(role -> !roleIds.contains(role.getId())).forEach(role -> roleIds.add(role.getId()));
-                removedRoles.get(user).stream().filter(role -> roleIds.contains(role.getId())).forEach(role -> roleIds.remove(role.getId()));
-
-                ((JDAImpl) guild.getJDA()).getRequester().patch(
-                        Requester.DISCORD_API_PREFIX + "guilds/" + guild.getId() + "/members/" + user.getId(),
-                        new JSONObject().put("roles", roleIds));
-
+                batch.addRoles(user, addedRoles.get(user).toArray(new Role[0]));
+                batch.removeRoles(user, removedRoles.get(user).toArray(new Role[0]));
             }
             addedRoles.clear();
             removedRoles.clear();
+            batch.submit(null).join();
         }
     }
 
@@ -0,0 +1,505 @@
+/*
+ *     Copyright 2015-2016 Austin Keener & Michael Ritter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.dv8tion.jda.managers;
+
+import net.dv8tion.jda.Permission;
+import net.dv8tion.jda.entities.Guild;
+import net.dv8tion.jda.entities.Role;
+import net.dv8tion.jda.entities.User;
+import net.dv8tion.jda.entities.impl.GuildImpl;
+import net.dv8tion.jda.entities.impl.JDAImpl;
+import net.dv8tion.jda.exceptions.GuildUnavailableException;
+import net.dv8tion.jda.exceptions.PermissionException;
+import net.dv8tion.jda.requests.RateLimitGate;
+import net.dv8tion.jda.requests.Requester;
+import net.dv8tion.jda.utils.PermissionUtil;
+import net.dv8tion.jda.utils.SimpleLog;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Changes the {@link net.dv8tion.jda.entities.Role Roles} of many members of a {@link net.dv8tion.jda.entities.Guild Guild} at once.
+ * <p>
+ * Changes are collected per member and compared to the cached roles of the member when the batch is
+ * {@link #submit(java.util.function.Consumer) submitted}. Members whose roles wouldn't change are skipped, every other
+ * member gets exactly one request with its new roles.
+ * <br>The requests are sent by up to {@link #setConcurrency(int) concurrency} threads. All of them pause when the rate-limit
+ * of the member route is used up or a request got rate-limited, and rate-limited requests are retried.
+ * <p>
+ * Only the difference to the cached roles is sent, so submitting the same changes again, e.g. after a restart
+ * interrupted a batch, only updates the members that weren't updated yet.
+ * <p>
+ * This requires the {@link net.dv8tion.jda.Permission#MANAGE_ROLES MANAGE_ROLES Permission} and every added or removed
+ * Role has to be lower than the highest Role of the JDA user.
+ */
+public class MemberRoleBatch
+{
+    public static final SimpleLog LOG = SimpleLog.getLog("JDARoleBatch");
+
+    /**
+     * The default amount of concurrent requests.
+     */
+    public static final int DEFAULT_CONCURRENCY = 5;
+
+    /**
+     * How often a request that failed with a connection or server error is sent before the member counts as failed.
+     */
+    public static final int MAX_ATTEMPTS = 3;
+
+    private static final AtomicInteger THREAD_COUNT = new AtomicInteger(0);
+
+    private final GuildImpl guild;
+    private final Map<User, Change> changes = new LinkedHashMap<>();
+    private int concurrency = DEFAULT_CONCURRENCY;
+    private boolean submitted = false;
+
+    private final RateLimitGate rateLimit = new RateLimitGate();
+
+    /**
+     * Creates an empty batch for the provided {@link net.dv8tion.jda.entities.Guild Guild}.
+     *
+     * @param guild
+     *          The {@link net.dv8tion.jda.entities.Guild Guild} whose members are changed.
+     * @throws net.dv8tion.jda.exceptions.GuildUnavailableException
+     *      if the guild is temporarily unavailable
+     * @throws net.dv8tion.jda.exceptions.PermissionException
+     *      if the JDA user doesn't have the {@link net.dv8tion.jda.Permission#MANAGE_ROLES MANAGE_ROLES Permission}
+     */
+    public MemberRoleBatch(Guild guild)
+    {
+        if (!guild.isAvailable())
+            throw new GuildUnavailableException();
+        this.guild = (GuildImpl) guild;
+        checkPermission();
+    }
+
+    public Guild getGuild()
+    {
+        return guild;
+    }
+
+    /**
+     * Gives the {@link net.dv8tion.jda.entities.User User} the provided {@link net.dv8tion.jda.entities.Role Roles}.
+     * Roles the User already has are ignored, the public Role is always ignored.
+     *
+     * @param user
+     *          The member that gains the Roles.
+     * @param roles
+     *          The Roles to give the member.
+     * @return
+     *      this
+     * @throws java.lang.IllegalArgumentException
+     *      if the User isn't a member of the Guild or a Role is from another Guild
+     */
+    public MemberRoleBatch addRoles(User user, Role... roles)
+    {
+        Change change = getChange(user);
+        for (Role role : roles)
+        {
+            if (checkRole(role))
+            {
+                change.removed.remove(role);
+                change.added.add(role);
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Removes the provided {@link net.dv8tion.jda.entities.Role Roles} from the {@link net.dv8tion.jda.entities.User User}.
+     * Roles the User doesn't have are ignored, the public Role is always ignored.
+     *
+     * @param user
+     *          The member that loses the Roles.
+     * @param roles
+     *          The Roles to remove from the member.
+     * @return
+     *      this
+     * @throws java.lang.IllegalArgumentException
+     *      if the User isn't a member of the Guild or a Role is from another Guild
+     */
+    public MemberRoleBatch removeRoles(User user, Role... roles)
+    {
+        Change change = getChange(user);
+        for (Role role : roles)
+        {
+            if (checkRole(role))
+            {
+                change.added.remove(role);
+                change.removed.add(role);
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Sets the {@link net.dv8tion.jda.entities.Role Roles} of the {@link net.dv8tion.jda.entities.User User}, replacing all
+     * changes made for this User before. Roles the User has that are higher than the highest Role of the JDA user are kept.
+     *
+     * @param user
+     *          The member whose Roles are set.
+     * @param roles
+     *          All Roles the member should have.
+     * @return
+     *      this
+     * @throws java.lang.IllegalArgumentException
+     *      if the User isn't a member of the Guild or a Role is from another Guild
+     */
+    public MemberRoleBatch setRoles(User user, Collection<Role> roles)
+    {
+        Change change = getChange(user);
+        change.added.clear();
+        change.removed.clear();
+        Set<Role> current = new HashSet<>(guild.getUserRoles().get(user));
+        Set<Role> kept = new HashSet<>(roles);
+        for (Role role : current)
+        {
+            if (!kept.contains(role) && PermissionUtil.canInteract(guild.getJDA().getSelfInfo(), role))
+                change.removed.add(role);
+        }
+        for (Role role : kept)
+        {
+            if (!current.contains(role) && checkRole(role))
+                change.added.add(role);
+        }
+        return this;
+    }
+
+    /**
+     * The amount of members with changes. Members whose roles wouldn't change are only skipped when the batch is submitted.
+     *
+     * @return
+     *      The amount of members.
+     */
+    public int size()
+    {
+        return changes.size();
+    }
+
+    /**
+     * Sets the maximum amount of requests sent at the same time. Default: {@value #DEFAULT_CONCURRENCY}
+     *
+     * @param concurrency
+     *          The amount of threads sending requests.
+     * @return
+     *      this
+     */
+    public MemberRoleBatch setConcurrency(int concurrency)
+    {
+        if (concurrency < 1)
+            throw new IllegalArgumentException("The concurrency has to be at least 1! Provided: " + concurrency);
+        this.concurrency = concurrency;
+        return this;
+    }
+
+    /**
+     * Computes the new Roles of every member and starts sending the requests.
+     * A batch can only be submitted once.
+     * <p>
+     * The progress callback is called on the sending threads after every member that was updated or failed.
+     * The returned future completes with the {@link net.dv8tion.jda.managers.MemberRoleBatch.Result Result} once
+     * all members are done, it never completes exceptionally.
+     *
+     * @param progress
+     *          Called after every sent member. May be null.
+     * @return
+     *      A future representing the batch.
+     * @throws java.lang.IllegalStateException
+     *      if the batch was already submitted
+     * @throws net.dv8tion.jda.exceptions.GuildUnavailableException
+     *      if the guild is temporarily unavailable
+     */
+    public CompletableFuture<Result> submit(Consumer<Progress> progress)
+    {
+        if (submitted)
+            throw new IllegalStateException("This batch was already submitted!");
+        if (!guild.isAvailable())
+            throw new GuildUnavailableException();
+        checkPermission();
+        submitted = true;
+
+        Queue<Update> queue = new ConcurrentLinkedQueue<>();
+        int skipped = 0;
+        for (Map.Entry<User, Change> entry : changes.entrySet())
+        {
+            List<Role> current = guild.getUserRoles().get(entry.getKey());
+            if (current == null)
+            {
+                //Left the guild in the meantime.
+                skipped++;
+                continue;
+            }
+            Change change = entry.getValue();
+            Set<Role> roles = new HashSet<>(current);
+            boolean changed = roles.addAll(change.added);
+            changed |= roles.removeAll(change.removed);
+            if (!changed)
+            {
+                skipped++;
+                continue;
+            }
+            JSONArray roleIds = new JSONArray();
+            roles.forEach(role -> roleIds.put(role.getId()));
+            queue.add(new Update(entry.getKey(), roleIds));
+        }
+
+        Result result = new Result(queue.size(), skipped);
+        CompletableFuture<Result> future = new CompletableFuture<>();
+        if (queue.isEmpty())
+        {
+            future.complete(result);
+            return future;
+        }
+        int threads = Math.min(concurrency, queue.size());
+        AtomicInteger running = new AtomicInteger(threads);
+        for (int i = 0; i < threads; i++)
+        {
+            Thread thread = new Thread(() ->
+            {
+                try
+                {
+                    Update update;
+                    while ((update = queue.poll()) != null)
+                    {
+                        Requester.Response response;
+                        try
+                        {
+                            response = send(update);
+                        }
+                        catch (RuntimeException e)
+                        {
+                            LOG.log(e);
+                            response = new Requester.Response(e);
+                        }
+                        Progress done = result.done(update.user, response);
+                        if (progress != null)
+                        {
+                            try
+                            {
+                                progress.accept(done);
+                            }
+                            catch (Exception e)
+                            {
+                                LOG.log(e);
+                            }
+                        }
+                    }
+                }
+                finally
+                {
+                    if (running.decrementAndGet() == 0)
+                        future.complete(result);
+                }
+            }, "JDA MemberRoleBatch " + THREAD_COUNT.incrementAndGet());
+            thread.setDaemon(true);
+            thread.start();
+        }
+        return future;
+    }
+
+    private Requester.Response send(Update update)
+    {
+        Requester requester = ((JDAImpl) guild.getJDA()).getRequester();
+        String url = Requester.DISCORD_API_PREFIX + "guilds/" + guild.getId() + "/members/" + update.user.getId();
+        JSONObject body = new JSONObject().put("roles", update.roleIds);
+        int attempts = 0;
+        int rateLimited = 0;
+        while (true)
+        {
+            rateLimit.await();
+            Requester.Response response = requester.patch(url, body);
+            attempts++;
+            if (rateLimit.update(response) && ++rateLimited <= RateLimitGate.MAX_RATE_LIMIT_RETRIES)
+            {
+                LOG.debug("Got rate-limited while updating the roles of " + update.user.getId() + ", retrying");
+                continue;
+            }
+            if (!response.isOk() && attempts < MAX_ATTEMPTS
+                    && (response.code == Requester.Response.connectionErrCode || response.code >= 500))
+            {
+                rateLimit.pause(System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(attempts));
+                continue;
+            }
+            if (!response.isOk())
+                LOG.warn("Could not update the roles of " + update.user.getId() + " in guild " + guild.getId() + ": " + response);
+            return response;
+        }
+    }
+
+    private Change getChange(User user)
+    {
+        if (guild.getUserRoles().get(user) == null)
+            throw new IllegalArgumentException("The user is not a member of the guild! Provided: " + user.getId());
+        Change change = changes.get(user);
+        if (change == null)
+        {
+            change = new Change();
+            changes.put(user, change);
+        }
+        return change;
+    }
+
+    private boolean checkRole(Role role)
+    {
+        if (!guild.equals(role.getGuild()))
+            throw new IllegalArgumentException("The role is not from this guild! Provided: " + role.getId());
+        if (guild.getPublicRole().equals(role))
+            return false;
+        if (!PermissionUtil.canInteract(guild.getJDA().getSelfInfo(), role))
+            throw new PermissionException("Can't modify a role with higher or equal highest role than yourself!");
+        return true;
+    }
+
+    private void checkPermission()
+    {
+        if (!PermissionUtil.checkPermission(guild, guild.getJDA().getSelfInfo(), Permission.MANAGE_ROLES))
+            throw new PermissionException(Permission.MANAGE_ROLES);
+    }
+
+    private static class Change
+    {
+        private final Set<Role> added = new HashSet<>();
+        private final Set<Role> removed = new HashSet<>();
+    }
+
+    private static class Update
+    {
+        private final User user;
+        private final JSONArray roleIds;
+
+        private Update(User user, JSONArray roleIds)
+        {
+            this.user = user;
+            this.roleIds = roleIds;
+        }
+    }
+
+    /**
+     * The state of a {@link net.dv8tion.jda.managers.MemberRoleBatch MemberRoleBatch} after one member was sent.
+     */
+    public static class Progress
+    {
+        private final User user;
+        private final Requester.Response response;
+        private final int done;
+        private final int total;
+
+        private Progress(User user, Requester.Response response, int done, int total)
+        {
+            this.user = user;
+            this.response = response;
+            this.done = done;
+            this.total = total;
+        }
+
+        /**
+         * The member that was just sent.
+         */
+        public User getUser()
+        {
+            return user;
+        }
+
+        /**
+         * Whether the roles of the member were updated.
+         */
+        public boolean isSuccess()
+        {
+            return response.isOk();
+        }
+
+        /**
+         * The last response of Discord for the member.
+         */
+        public Requester.Response getResponse()
+        {
+            return response;
+        }
+
+        /**
+         * The amount of members sent so far, including this one.
+         */
+        public int getDone()
+        {
+            return done;
+        }
+
+        /**
+         * The amount of members that are sent, without the skipped ones.
+         */
+        public int getTotal()
+        {
+            return total;
+        }
+    }
+
+    /**
+     * The outcome of a {@link net.dv8tion.jda.managers.MemberRoleBatch MemberRoleBatch}.
+     */
+    public static class Result
+    {
+        private final int total;
+        private final int skipped;
+        private final AtomicInteger done = new AtomicInteger(0);
+        private final Map<User, Requester.Response> failed = new ConcurrentHashMap<>();
+
+        private Result(int total, int skipped)
+        {
+            this.total = total;
+            this.skipped = skipped;
+        }
+
+        private Progress done(User user, Requester.Response response)
+        {
+            if (!response.isOk())
+                failed.put(user, response);
+            return new Progress(user, response, done.incrementAndGet(), total);
+        }
+
+        /**
+         * The amount of members whose roles were updated.
+         */
+        public int getUpdated()
+        {
+            return total - failed.size();
+        }
+
+        /**
+         * The amount of members that weren't sent, because their roles wouldn't change or they left the guild.
+         */
+        public int getSkipped()
+        {
+            return skipped;
+        }
+
+        /**
+         * The members whose roles couldn't be updated, with the last response of Discord.
+         * These can be added to a new batch to try again.
+         */
+        public Map<User, Requester.Response> getFailed()
+        {
+            return Collections.unmodifiableMap(failed);
+        }
+    }
+}
@@ -16,6 +16,7 @@
 package net.dv8tion.jda.managers;
 
 import net.dv8tion.jda.Permission;
+import net.dv8tion.jda.PermissionSet;
 import net.dv8tion.jda.entities.PermissionOverride;
 import net.dv8tion.jda.entities.impl.JDAImpl;
 import net.dv8tion.jda.exceptions.PermissionException;
@@ -75,14 +76,24 @@ public class PermissionOverrideManager
      */
     public PermissionOverrideManager grant(Permission... perms)
     {
-        for (Permission perm : perms)
-        {
-            checkPermission(perm);
-        }
-        for (Permission perm : perms)
-        {
-            allow = allow | (1<<perm.getOffset());
-        }
+        return grant(PermissionSet.of(perms));
+    }
+
+    /**
+     * Sets this Override to grant given Permissions
+     *
+     * This change will only be applied, if {@link #update()} is called.
+     * So multiple changes can be made at once.
+     *
+     * @param perms
+     *      The Permissions that should be granted
+     * @return
+     *      this
+     */
+    public PermissionOverrideManager grant(PermissionSet perms)
+    {
+        checkPermission(perms);
+        allow = allow | perms.getRaw();
         deny = deny & (~allow);
         return this;
     }
@@ -100,14 +111,24 @@ public class PermissionOverrideManager
      */
     public PermissionOverrideManager deny(Permission... perms)
     {
-        for (Permission perm : perms)
-        {
-            checkPermission(perm);
-        }
-        for (Permission perm : perms)
-        {
-            deny = deny | (1<<perm.getOffset());
-        }
+        return deny(PermissionSet.of(perms));
+    }
+
+    /**
+     * Sets this Override to deny given Permissions
+     *
+     * This change will only be applied, if {@link #update()} is called.
+     * So multiple changes can be made at once.
+     *
+     * @param perms
+     *      The Permissions that should be denied
+     * @return
+     *      this
+     */
+    public PermissionOverrideManager deny(PermissionSet perms)
+    {
+        checkPermission(perms);
+        deny = deny | perms.getRaw();
         allow = allow & (~deny);
         return this;
     }
@@ -126,15 +147,26 @@ public class PermissionOverrideManager
      */
     public PermissionOverrideManager reset(Permission... perms)
     {
-        for (Permission perm : perms)
-        {
-            checkPermission(perm);
-        }
-        for (Permission perm : perms)
-        {
-            allow = allow & (~(1 << perm.getOffset()));
-            deny = deny & (~(1 << perm.getOffset()));
-        }
+        return reset(PermissionSet.of(perms));
+    }
+
+    /**
+     * Resets the allow/deny status for one or more {@link net.dv8tion.jda.Permission Permissions}.
+     * This means, that this neither explicitly allows nor denies given Permissions.
+     *
+     * This change will only be applied, if {@link #update()} is called.
+     * So multiple changes can be made at once.
+     *
+     * @param perms
+     *      The Permissions that should be reset
+     * @return
+     *      this
+     */
+    public PermissionOverrideManager reset(PermissionSet perms)
+    {
+        checkPermission(perms);
+        allow = allow & (~perms.getRaw());
+        deny = deny & (~perms.getRaw());
         return this;
     }
 
@@ -181,4 +213,11 @@ public class PermissionOverrideManager
         if(!override.getChannel().checkPermission(override.getJDA().getSelfInfo(), permission))
             throw new PermissionException(permission);
     }
+
+    private void checkPermission(PermissionSet permissions)
+    {
+        //Only looks for the missing permission if the check failed.
+        if (!override.getChannel().checkPermission(override.getJDA().getSelfInfo(), permissions))
+            permissions.asSet().forEach(this::checkPermission);
+    }
 }
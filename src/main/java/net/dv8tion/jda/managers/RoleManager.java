@@ -16,6 +16,7 @@
 package net.dv8tion.jda.managers;
 
 import net.dv8tion.jda.Permission;
+import net.dv8tion.jda.PermissionSet;
 import net.dv8tion.jda.entities.Role;
 import net.dv8tion.jda.entities.impl.JDAImpl;
 import net.dv8tion.jda.exceptions.PermissionException;
@@ -277,19 +278,28 @@ public class RoleManager
      *      this
      */
     public RoleManager give(Permission... perms)
+    {
+        return give(PermissionSet.of(perms));
+    }
+
+    /**
+     * Gives this Role one or more {@link net.dv8tion.jda.Permission Permissions}.
+     * This change will only be applied, if {@link #update()} is called.
+     * So multiple changes can be made at once.
+     *
+     * @param perms
+     *      the Permissions to give this Role
+     * @return
+     *      this
+     */
+    public RoleManager give(PermissionSet perms)
     {
         checkPermission(Permission.MANAGE_ROLES);
         checkPosition();
         //we need to have all perms ourself
-        for (Permission perm : perms)
-        {
-            checkPermission(perm);
-        }
+        checkPermission(perms);
 
-        for (Permission perm : perms)
-        {
-            this.perms = this.perms | (1 << perm.getOffset());
-        }
+        this.perms = this.perms | perms.getRaw();
         return this;
     }
 
@@ -304,18 +314,27 @@ public class RoleManager
      *      this
      */
     public RoleManager revoke(Permission... perms)
+    {
+        return revoke(PermissionSet.of(perms));
+    }
+
+    /**
+     * Removes one or more {@link net.dv8tion.jda.Permission Permissions} from this Role.
+     * This change will only be applied, if {@link #update()} is called.
+     * So multiple changes can be made at once.
+     *
+     * @param perms
+     *      the Permissions to remove from this Role
+     * @return
+     *      this
+     */
+    public RoleManager revoke(PermissionSet perms)
     {
         checkPermission(Permission.MANAGE_ROLES);
         checkPosition();
-        for (Permission perm : perms)
-        {
-            checkPermission(perm);
-        }
+        checkPermission(perms);
 
-        for (Permission perm : perms)
-        {
-            this.perms = this.perms & (~(1 << perm.getOffset()));
-        }
+        this.perms = this.perms & (~perms.getRaw());
         return this;
     }
 
@@ -383,10 +402,17 @@ public class RoleManager
 
     private void checkPermission(Permission perm)
     {
-        if (!PermissionUtil.checkPermission(role.getJDA().getSelfInfo(), perm, role.getGuild()))
+        if (!PermissionUtil.checkPermission(role.getGuild(), role.getJDA().getSelfInfo(), perm))
             throw new PermissionException(perm);
     }
 
+    private void checkPermission(PermissionSet perms)
+    {
+        //Only looks for the missing permission if the check failed.
+        if (!PermissionUtil.checkPermission(role.getGuild(), role.getJDA().getSelfInfo(), perms))
+            perms.asSet().forEach(this::checkPermission);
+    }
+
     private void checkPosition()
     {
         if(!PermissionUtil.canInteract(role.getJDA().getSelfInfo(), role))
@@ -20,16 +20,22 @@ import net.dv8tion.jda.JDA;
 import net.dv8tion.jda.audio.AudioConnection;
 import net.dv8tion.jda.audio.AudioReceiveHandler;
 import net.dv8tion.jda.audio.AudioSendHandler;
+import net.dv8tion.jda.audio.Encoder;
 import net.dv8tion.jda.entities.Guild;
 import net.dv8tion.jda.entities.VoiceChannel;
 import net.dv8tion.jda.entities.impl.JDAImpl;
+import net.dv8tion.jda.events.audio.AudioTimeoutEvent;
 import net.dv8tion.jda.exceptions.GuildUnavailableException;
 import net.dv8tion.jda.managers.AudioManager;
+import net.dv8tion.jda.requests.KeepAliveScheduler;
 import net.dv8tion.jda.utils.NativeUtils;
 import net.dv8tion.jda.utils.ServiceUtil;
 import org.json.JSONObject;
 
 import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeoutException;
 
 public class AudioManagerImpl implements AudioManager
 {
@@ -44,6 +50,8 @@ public class AudioManagerImpl implements AudioManager
     protected AudioConnection audioConnection = null;
     protected VoiceChannel queuedAudioConnection = null;
     protected VoiceChannel unexpectedDisconnectedChannel = null;
+    protected CompletableFuture<VoiceChannel> connectFuture = null;
+    protected ScheduledFuture<?> queueTimeoutFuture = null;
 
     protected AudioSendHandler sendHandler;
     protected AudioReceiveHandler receiveHandler;
@@ -51,6 +59,12 @@ public class AudioManagerImpl implements AudioManager
 
     protected long timeout = DEFAULT_CONNECTION_TIMEOUT;
 
+    protected int encoderBitrate = Encoder.BITRATE_AUTO;
+    protected int encoderComplexity = Encoder.DEFAULT_COMPLEXITY;
+    protected boolean encoderInbandFec = false;
+    protected int encoderPacketLoss = 0;
+    protected boolean encoderDtx = false;
+
     public AudioManagerImpl(Guild guild)
     {
         this.guild = guild;
@@ -59,7 +73,7 @@ public class AudioManagerImpl implements AudioManager
     }
 
     @Override
-    public void openAudioConnection(VoiceChannel channel)
+    public CompletableFuture<VoiceChannel> openAudioConnection(VoiceChannel channel)
     {
         if (!AUDIO_SUPPORTED)
             throw new UnsupportedOperationException("Sorry! Audio is disabled due to an internal JDA error! Contact Dev!");
@@ -73,6 +87,10 @@ public class AudioManagerImpl implements AudioManager
             throw new GuildUnavailableException("Cannot open an Audio Connection with an unavailable guild. " +
                     "Please wait until this Guild is available to open a connection.");
         queuedAudioConnection = channel;
+        connectFuture = new CompletableFuture<>();
+        //Discord might never send the voice server, so the connect times out before an AudioConnection exists too.
+        if (timeout > 0)
+            queueTimeoutFuture = KeepAliveScheduler.scheduleOnce(this::onQueueTimeout, timeout);
         JSONObject obj = new JSONObject()
                 .put("op", 4)
                 .put("d", new JSONObject()
@@ -82,6 +100,7 @@ public class AudioManagerImpl implements AudioManager
                         .put("self_deaf", false)
                 );
         api.getClient().send(obj.toString());
+        return connectFuture;
     }
 
     @Override
@@ -117,10 +136,14 @@ public class AudioManagerImpl implements AudioManager
     }
 
     @Override
-    public void closeAudioConnection()
+    public synchronized void closeAudioConnection()
     {
         if (audioConnection == null)
+        {
+            if (queuedAudioConnection != null)
+                abortQueuedConnection(new IllegalStateException("The audio connection was closed before it was ready!"));
             return;
+        }
         this.audioConnection.close(false);
         this.audioConnection = null;
     }
@@ -201,17 +224,107 @@ public class AudioManagerImpl implements AudioManager
         return receiveHandler;
     }
 
-    public void setAudioConnection(AudioConnection audioConnection)
+    @Override
+    public void setEncoderBitrate(int bitrate)
+    {
+        if (bitrate != Encoder.BITRATE_AUTO && (bitrate < 500 || bitrate > 512000))
+            throw new IllegalArgumentException("The bitrate has to be between 500 and 512000 bps. Provided: " + bitrate);
+        this.encoderBitrate = bitrate;
+        if (audioConnection != null)
+            audioConnection.getEncoder().setBitrate(bitrate);
+    }
+
+    @Override
+    public int getEncoderBitrate()
+    {
+        return encoderBitrate;
+    }
+
+    @Override
+    public void setEncoderComplexity(int complexity)
+    {
+        if (complexity < 0 || complexity > 10)
+            throw new IllegalArgumentException("The complexity has to be between 0 and 10. Provided: " + complexity);
+        this.encoderComplexity = complexity;
+        if (audioConnection != null)
+            audioConnection.getEncoder().setComplexity(complexity);
+    }
+
+    @Override
+    public int getEncoderComplexity()
+    {
+        return encoderComplexity;
+    }
+
+    @Override
+    public void setEncoderInbandFec(boolean enabled)
+    {
+        this.encoderInbandFec = enabled;
+        if (audioConnection != null)
+            audioConnection.getEncoder().setInbandFec(enabled);
+    }
+
+    @Override
+    public boolean isEncoderInbandFec()
+    {
+        return encoderInbandFec;
+    }
+
+    @Override
+    public void setEncoderPacketLoss(int percent)
+    {
+        if (percent < 0 || percent > 100)
+            throw new IllegalArgumentException("The expected packet loss has to be between 0 and 100. Provided: " + percent);
+        this.encoderPacketLoss = percent;
+        if (audioConnection != null)
+            audioConnection.getEncoder().setPacketLossPercent(percent);
+    }
+
+    @Override
+    public int getEncoderPacketLoss()
+    {
+        return encoderPacketLoss;
+    }
+
+    @Override
+    public void setEncoderDtx(boolean enabled)
+    {
+        this.encoderDtx = enabled;
+        if (audioConnection != null)
+            audioConnection.getEncoder().setDtx(enabled);
+    }
+
+    @Override
+    public boolean isEncoderDtx()
+    {
+        return encoderDtx;
+    }
+
+    public synchronized void setAudioConnection(AudioConnection audioConnection)
     {
         this.audioConnection = audioConnection;
         if (audioConnection == null)
             return;
 
         this.queuedAudioConnection = null;
+        if (queueTimeoutFuture != null)
+        {
+            queueTimeoutFuture.cancel(false);
+            queueTimeoutFuture = null;
+        }
         audioConnection.setSendingHandler(sendHandler);
         audioConnection.setReceivingHandler(receiveHandler);
         audioConnection.setQueueTimeout(queueTimeout);
-        audioConnection.ready(timeout);
+
+        Encoder encoder = audioConnection.getEncoder();
+        encoder.setBitrate(encoderBitrate);
+        encoder.setComplexity(encoderComplexity);
+        encoder.setInbandFec(encoderInbandFec);
+        encoder.setPacketLossPercent(encoderPacketLoss);
+        encoder.setDtx(encoderDtx);
+
+        //After a region change the future of the initial connect is still pending if it never became ready.
+        audioConnection.ready(timeout, connectFuture);
     }
 
     public void prepareForRegionChange()
@@ -222,6 +335,37 @@ public class AudioManagerImpl implements AudioManager
         this.queuedAudioConnection = queuedChannel;
     }
 
+    protected synchronized void onQueueTimeout()
+    {
+        queueTimeoutFuture = null;
+        if (audioConnection != null || queuedAudioConnection == null)
+            return;
+        VoiceChannel channel = queuedAudioConnection;
+        abortQueuedConnection(new TimeoutException("Discord didn't send the voice server within " + timeout + "ms"));
+        api.getEventManager().handle(new AudioTimeoutEvent(api, channel, timeout));
+    }
+
+    protected void abortQueuedConnection(Exception reason)
+    {
+        if (queueTimeoutFuture != null)
+        {
+            queueTimeoutFuture.cancel(false);
+            queueTimeoutFuture = null;
+        }
+        queuedAudioConnection = null;
+        JSONObject obj = new JSONObject()
+                .put("op", 4)
+                .put("d", new JSONObject()
+                        .put("guild_id", guild.getId())
+                        .put("channel_id", JSONObject.NULL)
+                        .put("self_mute", false)
+                        .put("self_deaf", false)
+                );
+        api.getClient().send(obj.toString());
+        if (connectFuture != null)
+            connectFuture.completeExceptionally(reason);
+    }
+
     public boolean wasUnexpectedlyDisconnected()
     {
         return unexpectedDisconnectedChannel != null;
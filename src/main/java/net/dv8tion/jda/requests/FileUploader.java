@@ -0,0 +1,438 @@
+/*
+ *     Copyright 2015-2016 Austin Keener & Michael Ritter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.dv8tion.jda.requests;
+
+import com.mashape.unirest.http.HttpResponse;
+import com.mashape.unirest.http.JsonNode;
+import com.mashape.unirest.http.Unirest;
+import com.mashape.unirest.http.exceptions.UnirestException;
+import com.mashape.unirest.request.body.MultipartBody;
+import net.dv8tion.jda.entities.Message;
+import net.dv8tion.jda.entities.impl.JDAImpl;
+import net.dv8tion.jda.exceptions.RateLimitedException;
+import net.dv8tion.jda.handle.EntityBuilder;
+import org.apache.http.entity.ContentType;
+import org.json.JSONException;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Uploads files to Discord channels.
+ * <p>
+ * Uploads are streamed from their source into the multipart request, so files are never loaded into memory
+ * as a whole. The size limit of {@value #MAX_FILE_SIZE} bytes is checked before any data is read wherever the size
+ * is known up front, and while streaming for {@link java.io.InputStream InputStreams} of unknown length.
+ * <br>Asynchronous uploads run on a bounded pool of {@value #POOL_SIZE} threads shared by all channels.
+ */
+public class FileUploader
+{
+    /**
+     * The maximum size of an upload in bytes. Currently 8MB.
+     */
+    public static final int MAX_FILE_SIZE = 8 << 20;
+
+    /**
+     * The amount of uploads that can run concurrently.
+     */
+    public static final int POOL_SIZE = 4;
+
+    /**
+     * The amount of asynchronous uploads that can wait for a free upload thread.
+     * Further uploads fail with a {@link java.util.concurrent.RejectedExecutionException RejectedExecutionException}.
+     */
+    public static final int QUEUE_CAPACITY = 1000;
+
+    private static final AtomicInteger THREAD_COUNT = new AtomicInteger(0);
+    private static final ThreadPoolExecutor EXECUTOR;
+    static
+    {
+        EXECUTOR = new ThreadPoolExecutor(POOL_SIZE, POOL_SIZE, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(QUEUE_CAPACITY), r ->
+        {
+            Thread thread = new Thread(r, "JDA File Upload " + THREAD_COUNT.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        EXECUTOR.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Uploads the provided source to a channel and blocks until Discord responded.
+     *
+     * @param api
+     *          The JDA instance used for the upload.
+     * @param channelId
+     *          The id of the channel to upload to.
+     * @param ratelimitIdentifier
+     *          The message rate-limit identifier of the channel, which is updated when the upload is rate-limited.
+     * @param source
+     *          The data to upload.
+     * @param message
+     *          The message to send along with the upload. May be null.
+     * @return
+     *      The {@link net.dv8tion.jda.entities.Message Message} created by the upload,
+     *      or null if the request failed or the response could not be parsed.
+     * @throws net.dv8tion.jda.exceptions.RateLimitedException
+     *      If the upload was rate-limited.
+     * @throws java.lang.IllegalArgumentException
+     *      If an InputStream source turned out to be larger than {@value #MAX_FILE_SIZE} bytes.
+     */
+    public static Message upload(JDAImpl api, String channelId, String ratelimitIdentifier, Source source, Message message)
+    {
+        InputStream data = source.open();
+        try
+        {
+            MultipartBody body = Unirest.post(Requester.DISCORD_API_PREFIX + "channels/" + channelId + "/messages")
+                    .header("authorization", api.getAuthToken())
+                    .header("user-agent", Requester.USER_AGENT)
+                    .fields(null);
+            if (source.file != null)
+                body.field("file", source.file);
+            else
+                body.field("file", data, ContentType.APPLICATION_OCTET_STREAM, source.name);
+            if (message != null)
+                body.field("content", message.getRawContent()).field("tts", message.isTTS());
+
+            HttpResponse<JsonNode> response = body.asJson();
+            Requester.LOG.trace(() -> String.format("Requesting %s -> %s\n\tPayload: file: %s, message: %s, tts: %s\n\tResponse: %s",
+                    body.getHttpRequest().getHttpMethod().name(), body.getHttpRequest().getUrl(),
+                    source, message == null ? "null" : message.getRawContent(), message == null ? "N/A" : message.isTTS(), body));
+
+            try
+            {
+                int status = response.getStatus();
+
+                if (status >= 200 && status < 300)
+                {
+                    return new EntityBuilder(api).createMessage(response.getBody().getObject());
+                }
+                else if (status == 429)
+                {
+                    long retryAfter = response.getBody().getObject().getLong("retry_after");
+                    api.setMessageTimeout(ratelimitIdentifier, retryAfter);
+                    throw new RateLimitedException(retryAfter);
+                }
+                else
+                {
+                    throw new RuntimeException("An unknown status code was returned when attempting to upload file. Status: " + status + " JSON: " + response.getBody().toString());
+                }
+            }
+            catch (JSONException e)
+            {
+                Requester.LOG.fatal("Following json caused an exception: " + response.getBody().toString());
+                Requester.LOG.log(e);
+            }
+        }
+        catch (UnirestException e)
+        {
+            if (source.limitExceeded)
+                throw new IllegalArgumentException("File is to big! Max file-size is 8MB");
+            Requester.LOG.log(e);
+        }
+        finally
+        {
+            if (data != null)
+            {
+                try
+                {
+                    data.close();
+                }
+                catch (IOException ignored) {}
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Uploads the provided source to a channel on the shared upload pool.
+     * <br>The returned future completes with the created {@link net.dv8tion.jda.entities.Message Message}, or
+     * exceptionally if the upload failed. The callback is called with the created Message, or null if the upload failed,
+     * before the future completes.
+     *
+     * @param api
+     *          The JDA instance used for the upload.
+     * @param channelId
+     *          The id of the channel to upload to.
+     * @param ratelimitIdentifier
+     *          The message rate-limit identifier of the channel, which is updated when the upload is rate-limited.
+     * @param source
+     *          The data to upload.
+     * @param message
+     *          The message to send along with the upload. May be null.
+     * @param callback
+     *          Called with the result of the upload. May be null.
+     * @return
+     *      A future representing the upload.
+     */
+    public static CompletableFuture<Message> uploadAsync(JDAImpl api, String channelId, String ratelimitIdentifier,
+                                                         Source source, Message message, Consumer<Message> callback)
+    {
+        CompletableFuture<Message> future = new CompletableFuture<>();
+        try
+        {
+            EXECUTOR.execute(() ->
+            {
+                Message messageReturn = null;
+                Throwable failure = null;
+                try
+                {
+                    messageReturn = upload(api, channelId, ratelimitIdentifier, source, message);
+                    if (messageReturn == null)
+                        failure = new IOException("The upload to channel " + channelId + " failed.");
+                }
+                catch (RateLimitedException e)
+                {
+                    JDAImpl.LOG.warn("Got ratelimited when trying to upload file. Providing null to callback.");
+                    failure = e;
+                }
+                catch (RuntimeException e)
+                {
+                    JDAImpl.LOG.log(e);
+                    failure = e;
+                }
+
+                if (callback != null)
+                {
+                    try
+                    {
+                        callback.accept(messageReturn);
+                    }
+                    catch (Exception e)
+                    {
+                        JDAImpl.LOG.log(e);
+                    }
+                }
+                if (failure == null)
+                    future.complete(messageReturn);
+                else
+                    future.completeExceptionally(failure);
+            });
+        }
+        catch (RejectedExecutionException e)
+        {
+            JDAImpl.LOG.warn("Too many uploads are queued. Rejected upload to channel " + channelId);
+            if (callback != null)
+                callback.accept(null);
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    /**
+     * The amount of asynchronous uploads waiting for a free upload thread.
+     *
+     * @return
+     *      The amount of queued uploads.
+     */
+    public static int getQueuedUploads()
+    {
+        return EXECUTOR.getQueue().size();
+    }
+
+    /**
+     * The amount of uploads that are currently in progress.
+     *
+     * @return
+     *      The amount of active uploads.
+     */
+    public static int getActiveUploads()
+    {
+        return EXECUTOR.getActiveCount();
+    }
+
+    /**
+     * The data of a single upload. Sources are single-use, as InputStreams can't be rewound.
+     */
+    public static class Source
+    {
+        private final File file;
+        private final InputStream stream;
+        private final ByteBuffer buffer;
+        private final String name;
+        private volatile boolean limitExceeded = false;
+
+        private Source(File file, InputStream stream, ByteBuffer buffer, String name)
+        {
+            this.file = file;
+            this.stream = stream;
+            this.buffer = buffer;
+            this.name = name;
+        }
+
+        /**
+         * Creates a source that streams the content of a file.
+         *
+         * @param file
+         *          The file to upload.
+         * @return
+         *      The new source.
+         * @throws java.lang.IllegalArgumentException
+         *      If the file doesn't exist, isn't readable or is larger than {@value #MAX_FILE_SIZE} bytes.
+         */
+        public static Source of(File file)
+        {
+            if (file == null || !file.exists() || !file.canRead())
+                throw new IllegalArgumentException("Provided file is either null, doesn't exist or is not readable!");
+            checkSize(file.length());
+            return new Source(file, null, null, file.getName());
+        }
+
+        /**
+         * Creates a source that streams the provided InputStream. The stream is closed once the upload finished.
+         * <br>As the length of a stream is not known up front, an upload that exceeds {@value #MAX_FILE_SIZE} bytes
+         * is aborted as soon as the limit is reached.
+         *
+         * @param data
+         *          The stream to upload.
+         * @param fileName
+         *          The name of the file shown in Discord. The extension is used to detect images.
+         * @return
+         *      The new source.
+         */
+        public static Source of(InputStream data, String fileName)
+        {
+            if (data == null)
+                throw new IllegalArgumentException("Cannot upload a null InputStream!");
+            checkName(fileName);
+            return new Source(null, data, null, fileName);
+        }
+
+        /**
+         * Creates a source that uploads the remaining content of the provided buffer.
+         * The position of the buffer is not modified.
+         *
+         * @param data
+         *          The buffer to upload.
+         * @param fileName
+         *          The name of the file shown in Discord. The extension is used to detect images.
+         * @return
+         *      The new source.
+         * @throws java.lang.IllegalArgumentException
+         *      If the buffer has more than {@value #MAX_FILE_SIZE} remaining bytes.
+         */
+        public static Source of(ByteBuffer data, String fileName)
+        {
+            if (data == null)
+                throw new IllegalArgumentException("Cannot upload a null ByteBuffer!");
+            checkName(fileName);
+            checkSize(data.remaining());
+            return new Source(null, null, data.duplicate(), fileName);
+        }
+
+        //Files are streamed by Unirest itself, which also lets it send a Content-Length.
+        private InputStream open()
+        {
+            if (file != null)
+                return null;
+            if (buffer != null)
+                return new ByteBufferInputStream(buffer);
+            return new LimitedInputStream(stream);
+        }
+
+        @Override
+        public String toString()
+        {
+            return file != null ? file.getAbsolutePath() : name;
+        }
+
+        private static void checkSize(long size)
+        {
+            if (size > MAX_FILE_SIZE)
+                throw new IllegalArgumentException("File is to big! Max file-size is 8MB");
+        }
+
+        private static void checkName(String fileName)
+        {
+            if (fileName == null || fileName.isEmpty())
+                throw new IllegalArgumentException("Uploads need a non-empty file name!");
+        }
+
+        //Fails the upload as soon as more than MAX_FILE_SIZE bytes were read.
+        private class LimitedInputStream extends FilterInputStream
+        {
+            private long count = 0;
+
+            LimitedInputStream(InputStream in)
+            {
+                super(in);
+            }
+
+            @Override
+            public int read() throws IOException
+            {
+                int b = super.read();
+                if (b != -1)
+                    count(1);
+                return b;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException
+            {
+                int read = super.read(b, off, len);
+                if (read > 0)
+                    count(read);
+                return read;
+            }
+
+            private void count(int amount) throws IOException
+            {
+                count += amount;
+                if (count > MAX_FILE_SIZE)
+                {
+                    limitExceeded = true;
+                    throw new IOException("Upload exceeds the maximum file-size of 8MB");
+                }
+            }
+        }
+    }
+
+    private static class ByteBufferInputStream extends InputStream
+    {
+        private final ByteBuffer buffer;
+
+        ByteBufferInputStream(ByteBuffer buffer)
+        {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read()
+        {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len)
+        {
+            if (!buffer.hasRemaining())
+                return -1;
+            int amount = Math.min(len, buffer.remaining());
+            buffer.get(b, off, amount);
+            return amount;
+        }
+
+        @Override
+        public int available()
+        {
+            return buffer.remaining();
+        }
+    }
+}
@@ -0,0 +1,309 @@
+/*
+ *     Copyright 2015-2016 Austin Keener & Michael Ritter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.dv8tion.jda.requests;
+
+import net.dv8tion.jda.utils.SimpleLog;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Records every frame JDA receives from the gateway to a gzip compressed file, to replay it later with the
+ * {@link net.dv8tion.jda.requests.GatewayReplayer GatewayReplayer}.
+ * <p>
+ * Every frame is one line of <code>&lt;timestamp millis&gt; &lt;sequence&gt; &lt;frame&gt;</code>, compressed frames
+ * are recorded inflated and frames without a sequence number have the sequence -1.
+ * The file is only ever appended to: every recorder starts a new gzip member at the end of the file, which
+ * {@link java.util.zip.GZIPInputStream GZIPInputStream} reads as one stream. Frames are flushed after every batch, so a
+ * crash loses at most the last batch and the file stays readable.
+ * <p>
+ * The gateway thread only queues the frame, a writer thread compresses and writes it. Frames are never dropped,
+ * if the disk can't keep up the gateway thread waits.
+ * A recorder belongs to one JDA instance, frames of multiple shards in one file can't be replayed.
+ */
+public class GatewayRecorder implements Closeable
+{
+    public static final SimpleLog LOG = SimpleLog.getLog("JDARecorder");
+    private static final int CAPACITY = 1 << 14;
+    private static final int BATCH_SIZE = 512;
+    private static final AtomicInteger THREAD_COUNT = new AtomicInteger(0);
+    private static final Frame CLOSE = new Frame(0, 0, null);
+
+    private final File file;
+    private final BlockingQueue<Frame> queue = new ArrayBlockingQueue<>(CAPACITY);
+    private final Thread writer;
+    private final Writer out;
+    private volatile boolean closed = false;
+    private volatile long recorded = 0;
+
+    /**
+     * Opens the file for appending and starts the writer thread.
+     *
+     * @param file
+     *          The file to record to. Created if it doesn't exist.
+     * @throws IOException
+     *          If the file can't be opened.
+     */
+    public GatewayRecorder(File file) throws IOException
+    {
+        this.file = file;
+        this.out = new BufferedWriter(new OutputStreamWriter(
+                new GZIPOutputStream(new FileOutputStream(file, true), 1 << 16, true), StandardCharsets.UTF_8), 1 << 16);
+        this.writer = new Thread(this::run, "JDA GatewayRecorder " + THREAD_COUNT.incrementAndGet());
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    public File getFile()
+    {
+        return file;
+    }
+
+    /**
+     * The amount of frames written to the file so far.
+     */
+    public long getRecordedFrames()
+    {
+        return recorded;
+    }
+
+    /**
+     * Queues a frame to be written.
+     *
+     * @param frame
+     *          The frame as received (or inflated) from the gateway.
+     * @param sequence
+     *          The sequence number of the frame, or -1.
+     */
+    public void record(String frame, int sequence)
+    {
+        if (closed)
+            return;
+        try
+        {
+            queue.put(new Frame(System.currentTimeMillis(), sequence, frame));
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Writes all queued frames, finishes the gzip member and closes the file. Frames recorded afterwards are ignored.
+     */
+    @Override
+    public void close()
+    {
+        if (closed)
+            return;
+        closed = true;
+        try
+        {
+            queue.put(CLOSE);
+            writer.join();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void run()
+    {
+        List<Frame> batch = new ArrayList<>(BATCH_SIZE);
+        boolean failed = false;
+        while (true)
+        {
+            try
+            {
+                batch.add(queue.take());
+                queue.drainTo(batch, BATCH_SIZE - 1);
+            }
+            catch (InterruptedException e)
+            {
+                continue;
+            }
+            //Checked up front, a failed write leaves the loop before it reaches the sentinel.
+            boolean close = batch.contains(CLOSE);
+            try
+            {
+                for (Frame frame : batch)
+                {
+                    if (frame == CLOSE)
+                        break;
+                    if (failed)
+                        continue;
+                    out.write(Long.toString(frame.timestamp));
+                    out.write(' ');
+                    out.write(Integer.toString(frame.sequence));
+                    out.write(' ');
+                    //Gateway JSON never contains line breaks outside of strings, where they are always escaped.
+                    out.write(frame.frame.indexOf('\n') < 0 ? frame.frame : frame.frame.replace('\n', ' '));
+                    out.write('\n');
+                    recorded++;
+                }
+                if (!failed)
+                    out.flush();
+            }
+            catch (IOException e)
+            {
+                LOG.fatal("Could not write to the gateway recording " + file + ", recording stopped!");
+                LOG.log(e);
+                failed = true;
+            }
+            batch.clear();
+            if (close)
+            {
+                //Whatever happens, the writer has to end here, close() is waiting for it.
+                try
+                {
+                    out.close();
+                }
+                catch (IOException e)
+                {
+                    if (!failed)
+                    {
+                        LOG.fatal("Could not finish the gateway recording " + file + "!");
+                        LOG.log(e);
+                    }
+                }
+                return;
+            }
+        }
+    }
+
+    /**
+     * Opens a recording for reading.
+     *
+     * @param file
+     *          The recording.
+     * @return
+     *      A reader of the frames, which has to be closed.
+     * @throws IOException
+     *          If the file can't be opened or is no gzip file.
+     */
+    public static FrameReader read(File file) throws IOException
+    {
+        return new FrameReader(new BufferedReader(new InputStreamReader(
+                new GZIPInputStream(new FileInputStream(file), 1 << 16), StandardCharsets.UTF_8), 1 << 16));
+    }
+
+    /**
+     * A recorded frame.
+     */
+    public static class Frame
+    {
+        private final long timestamp;
+        private final int sequence;
+        private final String frame;
+
+        private Frame(long timestamp, int sequence, String frame)
+        {
+            this.timestamp = timestamp;
+            this.sequence = sequence;
+            this.frame = frame;
+        }
+
+        /**
+         * The time the frame was received, in milliseconds since the epoch.
+         */
+        public long getTimestamp()
+        {
+            return timestamp;
+        }
+
+        /**
+         * The sequence number of the frame, or -1 if it had none.
+         */
+        public int getSequence()
+        {
+            return sequence;
+        }
+
+        /**
+         * The JSON of the frame.
+         */
+        public String getFrame()
+        {
+            return frame;
+        }
+    }
+
+    /**
+     * Reads the frames of a recording in order.
+     */
+    public static class FrameReader implements Closeable
+    {
+        private final BufferedReader in;
+
+        private FrameReader(BufferedReader in)
+        {
+            this.in = in;
+        }
+
+        /**
+         * The next frame.
+         *
+         * @return
+         *      The frame, or null at the end of the recording.
+         * @throws IOException
+         *          If the file can't be read or contains a malformed line.
+         */
+        public Frame next() throws IOException
+        {
+            String line;
+            try
+            {
+                line = in.readLine();
+            }
+            catch (EOFException e)
+            {
+                //The recording of a crashed JDA ends in the middle of a gzip member.
+                LOG.warn("The gateway recording ends unexpectedly, the last frames might be missing.");
+                return null;
+            }
+            if (line == null)
+                return null;
+            int first = line.indexOf(' ');
+            int second = first < 0 ? -1 : line.indexOf(' ', first + 1);
+            if (second < 0)
+                throw new IOException("Malformed frame in the gateway recording: " + line);
+            try
+            {
+                return new Frame(Long.parseLong(line.substring(0, first)), Integer.parseInt(line.substring(first + 1, second)),
+                        line.substring(second + 1));
+            }
+            catch (NumberFormatException e)
+            {
+                throw new IOException("Malformed frame in the gateway recording: " + line, e);
+            }
+        }
+
+        @Override
+        public void close() throws IOException
+        {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ *     Copyright 2015-2016 Austin Keener & Michael Ritter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.dv8tion.jda.requests;
+
+import net.dv8tion.jda.JDA;
+import net.dv8tion.jda.entities.impl.JDAImpl;
+import net.dv8tion.jda.utils.SimpleLog;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Feeds the frames of a {@link net.dv8tion.jda.requests.GatewayRecorder GatewayRecorder} recording through the
+ * {@link net.dv8tion.jda.requests.WebSocketClient WebSocketClient} of a JDA instance, without any network.
+ * <p>
+ * Every frame takes the same path as a frame received from Discord: parsing, the custom handler, the event handlers,
+ * the entity caches and the {@link net.dv8tion.jda.hooks.IEventManager IEventManager} with all listeners.
+ * Frames are fed one after another on the calling thread, like the gateway thread does, so replaying a recording
+ * twice fires the same events in the same order. Messages JDA would send to the gateway are dropped.
+ * <p>
+ * Usage:
+ * <pre><code>
+ * JDAImpl api = new JDAImpl(false, false, false);
+ * api.addEventListener(listener);
+ * long frames = new GatewayReplayer(api).replay(new File("storm.gz"), 0);
+ * </code></pre>
+ */
+public class GatewayReplayer
+{
+    public static final SimpleLog LOG = SimpleLog.getLog("JDAReplayer");
+
+    private final JDAImpl api;
+    private final WebSocketClient client;
+
+    /**
+     * Prepares the JDA instance for the replay.
+     *
+     * @param api
+     *          A JDA instance that isn't logged in.
+     */
+    public GatewayReplayer(JDAImpl api)
+    {
+        if (api.getClient() != null)
+            throw new IllegalStateException("The JDA instance is already connected to a gateway!");
+        this.api = api;
+        this.client = new ReplayClient(api);
+        api.setClient(client);
+    }
+
+    public JDAImpl getJDA()
+    {
+        return api;
+    }
+
+    /**
+     * Replays a recording.
+     *
+     * @param recording
+     *          The file written by a {@link net.dv8tion.jda.requests.GatewayRecorder GatewayRecorder}.
+     * @param speed
+     *          The speed relative to the recording, e.g. 1 to keep the recorded time between frames or 2 for twice as fast.
+     *          0 replays as fast as possible.
+     * @return
+     *      The amount of replayed frames.
+     * @throws IOException
+     *          If the recording can't be read.
+     */
+    public long replay(File recording, double speed) throws IOException
+    {
+        if (speed < 0)
+            throw new IllegalArgumentException("The speed can't be negative! Provided: " + speed);
+        long replayed = 0;
+        long firstTimestamp = -1;
+        long start = System.nanoTime();
+        try (GatewayRecorder.FrameReader reader = GatewayRecorder.read(recording))
+        {
+            GatewayRecorder.Frame frame;
+            while ((frame = reader.next()) != null)
+            {
+                if (speed > 0)
+                {
+                    if (firstTimestamp < 0)
+                        firstTimestamp = frame.getTimestamp();
+                    long due = start + (long) (TimeUnit.MILLISECONDS.toNanos(frame.getTimestamp() - firstTimestamp) / speed);
+                    long wait = due - System.nanoTime();
+                    if (wait > 0)
+                    {
+                        try
+                        {
+                            TimeUnit.NANOSECONDS.sleep(wait);
+                        }
+                        catch (InterruptedException e)
+                        {
+                            Thread.currentThread().interrupt();
+                            break;
+                        }
+                    }
+                }
+                //A READY (always sequence 1) in a session the gateway never invalidated: JDA was restarted while recording.
+                if (frame.getSequence() == 1 && client.sessionId != null)
+                    client.invalidate();
+                try
+                {
+                    client.onTextMessage(null, frame.getFrame());
+                }
+                catch (RuntimeException e)
+                {
+                    LOG.warn("Replaying frame " + frame.getSequence() + " failed: " + e);
+                }
+                replayed++;
+            }
+        }
+        return replayed;
+    }
+
+    /**
+     * A WebSocketClient without connection. Keep-alives are never started and everything sent is dropped.
+     * Reconnects of the recorded session only show up as new HELLO frames.
+     */
+    private static class ReplayClient extends WebSocketClient
+    {
+        private ReplayClient(JDAImpl api)
+        {
+            super(api, null, null, "replay");
+        }
+
+        @Override
+        protected void connect()
+        {
+            //Called by the constructor, instead of connecting.
+            api.setStatus(JDA.Status.LOADING_SUBSYSTEMS);
+            initiating = true;
+        }
+
+        @Override
+        protected void setupKeepAlive(long timeout)
+        {
+            //Every HELLO starts a new connection of the recorded session.
+            initiating = true;
+        }
+
+        @Override
+        public void send(String message, GatewaySendQueue.Lane lane) {}
+
+        @Override
+        public void close() {}
+    }
+}
@@ -0,0 +1,351 @@
+/*
+ *     Copyright 2015-2016 Austin Keener & Michael Ritter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.dv8tion.jda.requests;
+
+import com.neovisionaries.ws.client.WebSocket;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ScheduledFuture;
+
+/**
+ * Outbound queue of a gateway (main) WebSocket.
+ * <p>
+ * Discord disconnects clients that send more than 120 messages per 60 seconds. All messages therefore pass a token bucket
+ * of {@value #BUCKET_CAPACITY} tokens that refills one token every {@value #REFILL_INTERVAL} milliseconds, which can't exceed
+ * that limit in any 60 second window.<br>
+ * Messages are sent in order of their {@link Lane Lane}. The last {@value #RESERVED_TOKENS} tokens are reserved for the
+ * heartbeat and control lanes, so a burst of voice joins or member chunk requests can never delay a heartbeat.
+ * Presence updates are coalesced: only the most recent queued presence is sent.
+ * <p>
+ * Until Discord confirmed the session with READY or RESUMED, only heartbeats and control messages are sent.
+ * Everything else waits in the queue.
+ */
+public class GatewaySendQueue
+{
+    public static final int BUCKET_CAPACITY = 60;
+    public static final long REFILL_INTERVAL = 1000;
+    public static final int RESERVED_TOKENS = 3;
+
+    /**
+     * The lanes of the queue, in the order they are served.
+     */
+    public enum Lane
+    {
+        /** Heartbeats (op 1). */
+        HEARTBEAT,
+        /** Session control, like identify (op 2) and resume (op 6). */
+        CONTROL,
+        /** Everything without a dedicated lane, like voice state updates (op 4). */
+        NORMAL,
+        /** Presence updates (op 3). Only the most recent one is kept. */
+        PRESENCE,
+        /** Bulk requests like member chunk requests (op 8), which are sent when nothing else is waiting. */
+        BULK
+    }
+
+    private final WebSocketClient client;
+    private final Deque<String> heartbeats = new ArrayDeque<>();
+    private final Deque<String> control = new ArrayDeque<>();
+    private final Deque<String> normal = new ArrayDeque<>();
+    private final Deque<String> bulk = new ArrayDeque<>();
+    private String presence = null;
+
+    private int tokens = BUCKET_CAPACITY;
+    private long lastRefill = System.currentTimeMillis();
+    private boolean connected = false;
+    private boolean authenticated = false;
+    private ScheduledFuture<?> scheduledDrain = null;
+
+    private long sent = 0;
+    private long throttled = 0;
+    private long coalesced = 0;
+    private int maxDepth = 0;
+
+    public GatewaySendQueue(WebSocketClient client)
+    {
+        this.client = client;
+    }
+
+    /**
+     * Queues a message and sends it right away if the lane and the rate-limit allow it.
+     *
+     * @param message
+     *          The message to send.
+     * @param lane
+     *          The lane of the message.
+     */
+    public synchronized void enqueue(String message, Lane lane)
+    {
+        switch (lane)
+        {
+            case HEARTBEAT:
+                //An older heartbeat that is still waiting carries an outdated sequence number.
+                heartbeats.clear();
+                heartbeats.add(message);
+                break;
+            case CONTROL:
+                control.add(message);
+                break;
+            case PRESENCE:
+                if (presence != null)
+                    coalesced++;
+                presence = message;
+                break;
+            case BULK:
+                bulk.add(message);
+                break;
+            default:
+                normal.add(message);
+        }
+        maxDepth = Math.max(maxDepth, getQueueDepth());
+        drain();
+    }
+
+    /**
+     * Called when the socket connected. Heartbeats and control messages can be sent from now on.
+     */
+    public synchronized void setConnected()
+    {
+        connected = true;
+        authenticated = false;
+        drain();
+    }
+
+    /**
+     * Called when Discord confirmed the session with READY or RESUMED. All lanes are sent from now on.
+     */
+    public synchronized void setAuthenticated()
+    {
+        authenticated = true;
+        drain();
+    }
+
+    /**
+     * Called when the socket disconnected. Heartbeats and control messages of the old connection are dropped,
+     * all other messages are kept and sent once the next session is established.
+     */
+    public synchronized void setDisconnected()
+    {
+        connected = false;
+        authenticated = false;
+        heartbeats.clear();
+        control.clear();
+        if (scheduledDrain != null)
+        {
+            scheduledDrain.cancel(false);
+            scheduledDrain = null;
+        }
+    }
+
+    /**
+     * Removes all queued messages of a lane. Used when the messages became invalid, e.g. chunk requests of an
+     * invalidated session.
+     *
+     * @param lane
+     *          The lane to clear.
+     */
+    public synchronized void clear(Lane lane)
+    {
+        switch (lane)
+        {
+            case HEARTBEAT:
+                heartbeats.clear();
+                break;
+            case CONTROL:
+                control.clear();
+                break;
+            case PRESENCE:
+                presence = null;
+                break;
+            case BULK:
+                bulk.clear();
+                break;
+            default:
+                normal.clear();
+        }
+    }
+
+    public synchronized void clear()
+    {
+        for (Lane lane : Lane.values())
+            clear(lane);
+    }
+
+    /**
+     * The amount of messages waiting in all lanes.
+     *
+     * @return
+     *      The current queue depth.
+     */
+    public synchronized int getQueueDepth()
+    {
+        return heartbeats.size() + control.size() + normal.size() + bulk.size() + (presence != null ? 1 : 0);
+    }
+
+    /**
+     * The amount of messages waiting in the given lane.
+     *
+     * @param lane
+     *          The lane
+     * @return
+     *      The queue depth of the lane.
+     */
+    public synchronized int getQueueDepth(Lane lane)
+    {
+        switch (lane)
+        {
+            case HEARTBEAT:
+                return heartbeats.size();
+            case CONTROL:
+                return control.size();
+            case PRESENCE:
+                return presence != null ? 1 : 0;
+            case BULK:
+                return bulk.size();
+            default:
+                return normal.size();
+        }
+    }
+
+    /**
+     * The highest queue depth since this queue was created.
+     *
+     * @return
+     *      The maximum queue depth.
+     */
+    public synchronized int getMaxQueueDepth()
+    {
+        return maxDepth;
+    }
+
+    public synchronized int getAvailableTokens()
+    {
+        refill();
+        return tokens;
+    }
+
+    public synchronized long getSentCount()
+    {
+        return sent;
+    }
+
+    /**
+     * The amount of times messages had to wait for the rate-limit.
+     *
+     * @return
+     *      The amount of times the queue was throttled.
+     */
+    public synchronized long getThrottledCount()
+    {
+        return throttled;
+    }
+
+    /**
+     * The amount of presence updates that were replaced by a newer one before being sent.
+     *
+     * @return
+     *      The amount of coalesced presence updates.
+     */
+    public synchronized long getCoalescedCount()
+    {
+        return coalesced;
+    }
+
+    private void drain()
+    {
+        if (!connected)
+            return;
+        refill();
+        while (true)
+        {
+            Deque<String> lane = null;
+            boolean isPresence = false;
+            boolean reserved = true;
+            if (!heartbeats.isEmpty())
+                lane = heartbeats;
+            else if (!control.isEmpty())
+                lane = control;
+            else if (authenticated)
+            {
+                reserved = false;
+                if (!normal.isEmpty())
+                    lane = normal;
+                else if (presence != null)
+                    isPresence = true;
+                else if (!bulk.isEmpty())
+                    lane = bulk;
+            }
+            if (lane == null && !isPresence)
+                return;
+
+            if (tokens < (reserved ? 1 : 1 + RESERVED_TOKENS))
+            {
+                scheduleDrain();
+                return;
+            }
+
+            String message;
+            if (isPresence)
+            {
+                message = presence;
+                presence = null;
+            }
+            else
+            {
+                message = lane.poll();
+            }
+            tokens--;
+            sent++;
+            write(message);
+        }
+    }
+
+    private void write(String message)
+    {
+        WebSocket socket = client.socket;
+        if (socket == null)
+            return;
+        WebSocketClient.LOG.trace(() -> "<- " + message);
+        socket.sendText(message);
+    }
+
+    private void refill()
+    {
+        long now = System.currentTimeMillis();
+        long refills = (now - lastRefill) / REFILL_INTERVAL;
+        if (refills <= 0)
+            return;
+        tokens = (int) Math.min(BUCKET_CAPACITY, tokens + refills);
+        lastRefill = tokens == BUCKET_CAPACITY ? now : lastRefill + refills * REFILL_INTERVAL;
+    }
+
+    private void scheduleDrain()
+    {
+        if (scheduledDrain != null && !scheduledDrain.isDone())
+            return;
+        throttled++;
+        long delay = Math.max(1, lastRefill + REFILL_INTERVAL - System.currentTimeMillis());
+        scheduledDrain = KeepAliveScheduler.scheduleOnce(() ->
+        {
+            synchronized (this)
+            {
+                scheduledDrain = null;
+                drain();
+            }
+        }, delay);
+    }
+}
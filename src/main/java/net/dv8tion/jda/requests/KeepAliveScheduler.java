@@ -0,0 +1,103 @@
+/*
+ *     Copyright 2015-2016 Austin Keener & Michael Ritter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.dv8tion.jda.requests;
+
+import net.dv8tion.jda.utils.SimpleLog;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the heartbeats of all gateway (main) and voice WebSockets, and the UDP keep-alives of audio connections,
+ * on a small shared pool of high priority threads instead of one sleeping thread per connection.
+ */
+public class KeepAliveScheduler
+{
+    public static final SimpleLog LOG = SimpleLog.getLog("JDAKeepAlive");
+
+    /**
+     * The amount of threads that send keep-alives. Sending a keep-alive only enqueues a frame,
+     * so a few threads are enough for any amount of connections.
+     */
+    public static final int POOL_SIZE = 2;
+
+    private static final AtomicInteger THREAD_COUNT = new AtomicInteger(0);
+    private static final ScheduledExecutorService EXECUTOR = Executors.newScheduledThreadPool(POOL_SIZE, r ->
+    {
+        Thread thread = new Thread(r, "JDA KeepAlive " + THREAD_COUNT.incrementAndGet());
+        thread.setPriority(Thread.MAX_PRIORITY);
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Runs the task every <code>interval</code> milliseconds, starting after <code>initialDelay</code> milliseconds,
+     * until the returned future is cancelled.
+     * <br>Exceptions thrown by the task are logged and don't stop further executions.
+     *
+     * @param task
+     *          The keep-alive to run.
+     * @param initialDelay
+     *          Milliseconds until the first execution.
+     * @param interval
+     *          Milliseconds between executions.
+     * @return
+     *      The future used to cancel the keep-alive.
+     */
+    public static ScheduledFuture<?> schedule(Runnable task, long initialDelay, long interval)
+    {
+        return EXECUTOR.scheduleAtFixedRate(() ->
+        {
+            try
+            {
+                task.run();
+            }
+            catch (Exception e)
+            {
+                LOG.log(e);
+            }
+        }, initialDelay, interval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Runs the task once after the given delay. Used for short timer tasks that belong to a connection,
+     * like releasing throttled gateway messages.
+     *
+     * @param task
+     *          The task to run.
+     * @param delay
+     *          Milliseconds until the task is run.
+     * @return
+     *      The future used to cancel the task.
+     */
+    public static ScheduledFuture<?> scheduleOnce(Runnable task, long delay)
+    {
+        return EXECUTOR.schedule(() ->
+        {
+            try
+            {
+                task.run();
+            }
+            catch (Exception e)
+            {
+                LOG.log(e);
+            }
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+}
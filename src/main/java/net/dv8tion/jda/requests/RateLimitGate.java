@@ -0,0 +1,147 @@
+/*
+ *     Copyright 2015-2016 Austin Keener & Michael Ritter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.dv8tion.jda.requests;
+
+import org.json.JSONObject;
+
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Holds back the requests of one rate-limit bucket while Discord wouldn't accept them.
+ * <p>
+ * Every thread sending requests of the bucket calls {@link #await()} before and {@link #update(Requester.Response)} after
+ * each request. The gate closes until the reset of the bucket once <code>X-RateLimit-Remaining</code> reaches 0, and
+ * for <code>retry_after</code> milliseconds after a 429, so all threads pause together instead of each running into
+ * the rate-limit on its own.
+ * <p>
+ * The reset is a time on Discord's clock. The wait until the reset is measured against the <code>Date</code> header of
+ * the same response, so a local clock that is off doesn't stall the bucket, and it is never longer than
+ * {@link #MAX_RESET_WAIT}.
+ */
+public class RateLimitGate
+{
+    /**
+     * The wait after a 429 without <code>retry_after</code>, in milliseconds.
+     */
+    public static final long DEFAULT_RETRY_AFTER = 1000;
+
+    /**
+     * The longest the gate closes until the reset of a bucket, in milliseconds.
+     */
+    public static final long MAX_RESET_WAIT = TimeUnit.SECONDS.toMillis(60);
+
+    /**
+     * How often a request is sent again after a 429 before it counts as failed.
+     */
+    public static final int MAX_RATE_LIMIT_RETRIES = 5;
+
+    private long pausedUntil = 0;
+
+    /**
+     * Blocks until the gate is open. Interrupts are ignored, the gate always opens again.
+     */
+    public void await()
+    {
+        while (true)
+        {
+            long wait;
+            synchronized (this)
+            {
+                wait = pausedUntil - System.currentTimeMillis();
+            }
+            if (wait <= 0)
+                return;
+            try
+            {
+                Thread.sleep(wait);
+            }
+            catch (InterruptedException e)
+            {
+                Requester.LOG.debug("Ignored an interrupt while waiting for the rate-limit");
+            }
+        }
+    }
+
+    /**
+     * Closes the gate until the provided time, unless it is closed for longer already.
+     *
+     * @param until
+     *          The time to open the gate again, in milliseconds since the epoch.
+     */
+    public synchronized void pause(long until)
+    {
+        if (until > pausedUntil)
+            pausedUntil = until;
+    }
+
+    /**
+     * Closes the gate if the response used up the bucket or was rate-limited.
+     *
+     * @param response
+     *          The response to a request of this bucket.
+     * @return
+     *      True, if the request was rate-limited and has to be sent again. Callers give up on the request after
+     *      {@link #MAX_RATE_LIMIT_RETRIES} retries.
+     */
+    public boolean update(Requester.Response response)
+    {
+        if (response.isRateLimit())
+        {
+            JSONObject object = response.getObject();
+            long retryAfter = object != null && object.has("retry_after") ? object.getLong("retry_after") : DEFAULT_RETRY_AFTER;
+            pause(System.currentTimeMillis() + retryAfter);
+            return true;
+        }
+        String remaining = response.getHeader("X-RateLimit-Remaining");
+        String reset = response.getHeader("X-RateLimit-Reset");
+        if (remaining != null && reset != null)
+        {
+            try
+            {
+                if (Integer.parseInt(remaining) == 0)
+                {
+                    long wait = TimeUnit.SECONDS.toMillis(Long.parseLong(reset)) - getServerTime(response);
+                    pause(System.currentTimeMillis() + Math.min(wait, MAX_RESET_WAIT));
+                }
+            }
+            catch (NumberFormatException ignored) {}
+        }
+        return false;
+    }
+
+    /**
+     * The time the response was sent according to its <code>Date</code> header, or the local time if it has none.
+     */
+    private static long getServerTime(Requester.Response response)
+    {
+        String date = response.getHeader("Date");
+        if (date != null)
+        {
+            try
+            {
+                return OffsetDateTime.parse(date, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli();
+            }
+            catch (DateTimeParseException e)
+            {
+                Requester.LOG.debug("Could not parse the Date header of a response: " + date);
+            }
+        }
+        return System.currentTimeMillis();
+    }
+}
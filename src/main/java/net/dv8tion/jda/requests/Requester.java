@@ -24,11 +24,16 @@ import com.mashape.unirest.request.HttpRequest;
 import com.mashape.unirest.request.body.RequestBodyEntity;
 import net.dv8tion.jda.JDAInfo;
 import net.dv8tion.jda.entities.impl.JDAImpl;
+import net.dv8tion.jda.utils.MetricsRegistry;
 import net.dv8tion.jda.utils.SimpleLog;
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
 public class Requester
 {
     public static final SimpleLog LOG = SimpleLog.getLog("JDARequester");
@@ -84,11 +89,11 @@ public class Requester
 
     protected Response exec(BaseRequest request)
     {
+        MetricsRegistry metrics = api.getMetrics();
+        long start = metrics.isEnabled() ? System.nanoTime() : 0;
         HttpResponse<String> ret = null;
         try
         {
-            String dbg = String.format("Requesting %s -> %s\n\tPayload: %s\n\tResponse: ", request.getHttpRequest().getHttpMethod().name(),
-                    request.getHttpRequest().getUrl(), ((request instanceof RequestBodyEntity) ? ((RequestBodyEntity) request).getBody().toString() : "None"));
             ret = request.asString();
             if (ret.getBody() != null && ret.getBody().startsWith("<"))
             {
@@ -100,13 +105,22 @@ public class Requester
                 catch (InterruptedException ignored) {}
                 ret = request.asString();
             }
-            Response response = new Response(ret.getStatus(), ret.getBody());
-            LOG.trace(dbg + response.code + ": " + response.responseText);
+            Response response = new Response(ret.getStatus(), ret.getBody(), ret.getHeaders());
+            if (metrics.isEnabled())
+            {
+                String route = getRoute(request.getHttpRequest().getHttpMethod().name(), request.getHttpRequest().getUrl());
+                metrics.time(MetricsRegistry.REST_LATENCY, route, System.nanoTime() - start);
+                if (response.isRateLimit())
+                    metrics.increment(MetricsRegistry.REST_RATE_LIMITED, route);
+            }
+            LOG.trace(() -> String.format("Requesting %s -> %s\n\tPayload: %s\n\tResponse: %d: %s", request.getHttpRequest().getHttpMethod().name(),
+                    request.getHttpRequest().getUrl(), ((request instanceof RequestBodyEntity) ? ((RequestBodyEntity) request).getBody().toString() : "None"),
+                    response.code, response.responseText));
             return response;
         }
         catch (UnirestException e)
         {
-            if (LOG.getEffectiveLevel().compareTo(SimpleLog.Level.DEBUG) != 1)
+            if (LOG.isEnabled(SimpleLog.Level.DEBUG))
             {
                 LOG.log(e);
             }
@@ -114,6 +128,43 @@ public class Requester
         }
     }
 
+    /**
+     * The route of a request, used to group its metrics: the method and the url without the API prefix and query,
+     * with all ids replaced by <code>{id}</code>. E.g. <code>POST channels/{id}/messages</code>.
+     *
+     * @param method
+     *          The HTTP method.
+     * @param url
+     *          The url of the request.
+     * @return
+     *      The route.
+     */
+    public static String getRoute(String method, String url)
+    {
+        int start = url.startsWith(DISCORD_API_PREFIX) ? DISCORD_API_PREFIX.length() : 0;
+        int end = url.indexOf('?', start);
+        if (end == -1)
+            end = url.length();
+        StringBuilder route = new StringBuilder(method.length() + 1 + end - start).append(method).append(' ');
+        int segmentStart = start;
+        for (int i = start; i <= end; i++)
+        {
+            if (i < end && url.charAt(i) != '/')
+                continue;
+            boolean id = i > segmentStart;
+            for (int j = segmentStart; id && j < i; j++)
+                id = Character.isDigit(url.charAt(j));
+            if (id)
+                route.append("{id}");
+            else
+                route.append(url, segmentStart, i);
+            if (i < end)
+                route.append('/');
+            segmentStart = i + 1;
+        }
+        return route.toString();
+    }
+
     protected <T extends HttpRequest> T addHeaders(T request)
     {
         //adding token to all requests to the discord api or cdn pages
@@ -136,19 +187,27 @@ public class Requester
         public final Exception exception;
         public final int code;
         public final String responseText;
+        private final Map<String, List<String>> headers;
 
         protected Response(int code, String response)
+        {
+            this(code, response, Collections.emptyMap());
+        }
+
+        protected Response(int code, String response, Map<String, List<String>> headers)
         {
             this.code = code;
             this.responseText = response;
             this.exception = null;
+            this.headers = headers;
         }
 
-        protected Response(Exception exception)
+        public Response(Exception exception)
         {
             this.code = connectionErrCode;
             this.responseText = null;
             this.exception = exception;
+            this.headers = Collections.emptyMap();
         }
 
         public boolean isOk()
@@ -161,6 +220,24 @@ public class Requester
             return code == 429;
         }
 
+        /**
+         * The first value of a response header, e.g. <code>X-RateLimit-Remaining</code>.
+         *
+         * @param name
+         *          The name of the header, case-insensitive.
+         * @return
+         *      The value of the header, or null if the response didn't contain it.
+         */
+        public String getHeader(String name)
+        {
+            for (Map.Entry<String, List<String>> header : headers.entrySet())
+            {
+                if (name.equalsIgnoreCase(header.getKey()) && !header.getValue().isEmpty())
+                    return header.getValue().get(0);
+            }
+            return null;
+        }
+
         public JSONObject getObject()
         {
             try
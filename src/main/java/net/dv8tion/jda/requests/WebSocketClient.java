@@ -17,6 +17,7 @@ package net.dv8tion.jda.requests;
 
 import com.neovisionaries.ws.client.*;
 import net.dv8tion.jda.JDA;
+import net.dv8tion.jda.ShardManager;
 import net.dv8tion.jda.audio.AudioReceiveHandler;
 import net.dv8tion.jda.audio.AudioSendHandler;
 import net.dv8tion.jda.entities.Guild;
@@ -27,12 +28,15 @@ import net.dv8tion.jda.events.*;
 import net.dv8tion.jda.handle.*;
 import net.dv8tion.jda.managers.AudioManager;
 import net.dv8tion.jda.managers.impl.AudioManagerImpl;
+import net.dv8tion.jda.utils.LatencyHistogram;
+import net.dv8tion.jda.utils.MetricsRegistry;
 import net.dv8tion.jda.utils.SimpleLog;
 import org.apache.http.HttpHost;
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import java.time.OffsetDateTime;
@@ -40,6 +44,7 @@ import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ScheduledFuture;
 import java.util.zip.DataFormatException;
 import java.util.zip.Inflater;
 
@@ -52,17 +57,23 @@ public class WebSocketClient extends WebSocketAdapter implements WebSocketListen
     protected final int[] sharding;
     protected final HttpHost proxy;
     protected WebSocket socket;
+    protected final GatewaySendQueue sendQueue = new GatewaySendQueue(this);
     protected String gatewayUrl = null;
 
     protected String sessionId = null;
 
-    protected volatile Thread keepAliveThread;
+    protected volatile ScheduledFuture<?> keepAliveFuture;
+    protected volatile long heartbeatSentTime = 0;
+    protected volatile boolean heartbeatAcked = true;
+    protected final LatencyHistogram heartbeatLatency = new LatencyHistogram();
+    protected volatile long missedHeartbeats = 0;
     protected boolean connected;
 
     protected boolean initiating;             //cache all events?
     protected final List<JSONObject> cachedEvents = new LinkedList<>();
 
     protected boolean shouldReconnect = true;
+    protected boolean reconcileOnInvalidate = true;
     protected int reconnectTimeoutS = 2;
 
     protected final List<VoiceChannel> dcAudioConnections = new LinkedList<>();
@@ -74,10 +85,28 @@ public class WebSocketClient extends WebSocketAdapter implements WebSocketListen
     protected WebSocketCustomHandler customHandler;
 
     public WebSocketClient(JDAImpl api, HttpHost proxy, int[] sharding)
+    {
+        this(api, proxy, sharding, null);
+    }
+
+    /**
+     * Creates the client and connects it.
+     *
+     * @param api
+     *          The JDA instance.
+     * @param proxy
+     *          The proxy to connect through, or null.
+     * @param sharding
+     *          A array of length 2 used for sharding or null.
+     * @param gatewayUrl
+     *          The gateway to connect to, or null to ask Discord's REST api for it.
+     */
+    public WebSocketClient(JDAImpl api, HttpHost proxy, int[] sharding, String gatewayUrl)
     {
         this.api = api;
         this.sharding = sharding;
         this.proxy = proxy;
+        this.gatewayUrl = gatewayUrl;
         connect();
     }
 
@@ -86,6 +115,19 @@ public class WebSocketClient extends WebSocketAdapter implements WebSocketListen
         this.shouldReconnect = reconnect;
     }
 
+    /**
+     * Whether to keep all entities when Discord invalidates the session (op 9) and apply the new READY to them,
+     * instead of clearing all registries and building everything from scratch. Enabled by default.
+     * <br>With reconciling, objects held by listeners stay valid and only actual changes are fired as events.
+     *
+     * @param reconcile
+     *          False to rebuild all entities after an invalidated session.
+     */
+    public void setReconcileOnInvalidate(boolean reconcile)
+    {
+        this.reconcileOnInvalidate = reconcile;
+    }
+
     public boolean isConnected()
     {
         return connected;
@@ -96,12 +138,30 @@ public class WebSocketClient extends WebSocketAdapter implements WebSocketListen
         this.customHandler = customHandler;
     }
 
+    public LatencyHistogram getHeartbeatLatency()
+    {
+        return heartbeatLatency;
+    }
+
+    public long getMissedHeartbeats()
+    {
+        return missedHeartbeats;
+    }
+
+    public GatewaySendQueue getSendQueue()
+    {
+        return sendQueue;
+    }
+
     public void ready()
     {
         if (initiating)
         {
             initiating = false;
             reconnectTimeoutS = 2;
+            SessionReconciler reconciler = SessionReconciler.get(api);
+            if (reconciler != null)
+                reconciler.finish();
             if (firstInit)
             {
                 firstInit = false;
@@ -153,8 +213,21 @@ public class WebSocketClient extends WebSocketAdapter implements WebSocketListen
 
     public void send(String message)
     {
-        LOG.trace("<- " + message);
-        socket.sendText(message);
+        send(message, GatewaySendQueue.Lane.NORMAL);
+    }
+
+    /**
+     * Queues a message to be sent over the gateway. Messages are sent in order of their lane and never faster
+     * than Discord's gateway rate-limit allows.
+     *
+     * @param message
+     *          The message to send.
+     * @param lane
+     *          The lane of the message.
+     */
+    public void send(String message, GatewaySendQueue.Lane lane)
+    {
+        sendQueue.enqueue(message, lane);
     }
 
     public void close()
@@ -217,6 +290,7 @@ public class WebSocketClient extends WebSocketAdapter implements WebSocketListen
     {
         api.setStatus(JDA.Status.LOADING_SUBSYSTEMS);
         LOG.info("Connected to WebSocket");
+        sendQueue.setConnected();
         if (sessionId == null)
         {
             sendIdentify();
@@ -233,13 +307,11 @@ public class WebSocketClient extends WebSocketAdapter implements WebSocketListen
     {
         connected = false;
         api.setStatus(JDA.Status.DISCONNECTED);
-        if (keepAliveThread != null)
-        {
-            keepAliveThread.interrupt();
-            keepAliveThread = null;
-        }
+        stopKeepAlive();
+        sendQueue.setDisconnected();
         if (!shouldReconnect)        //we should not reconnect
         {
+            sendQueue.clear();
             LOG.info("The connection was closed!");
             LOG.info("By remote? " + closedByServer);
             if (serverCloseFrame != null)
@@ -306,9 +378,17 @@ public class WebSocketClient extends WebSocketAdapter implements WebSocketListen
     @Override
     public void onTextMessage(WebSocket websocket, String message)
     {
+        MetricsRegistry metrics = api.getMetrics();
+        long start = metrics.isEnabled() ? System.nanoTime() : 0;
         JSONObject content = new JSONObject(message);
+        if (metrics.isEnabled())
+            metrics.time(MetricsRegistry.GATEWAY_DECODE_TIME, "parse", System.nanoTime() - start);
         int opCode = content.getInt("op");
 
+        GatewayRecorder recorder = api.getGatewayRecorder();
+        if (recorder != null)
+            recorder.record(message, content.has("s") && !content.isNull("s") ? content.getInt("s") : -1);
+
         if (content.has("s") && !content.isNull("s"))
         {
             api.setResponseTotal(content.getInt("s"));
@@ -321,7 +401,27 @@ public class WebSocketClient extends WebSocketAdapter implements WebSocketListen
         switch (opCode)
         {
             case 0:
-                handleEvent(content);
+                //Uncontended unless an entity snapshot is written. Listeners run without it, see JDAImpl.getEventManager().
+                api.getCacheLock().lock();
+                try
+                {
+                    if (metrics.isEnabled())
+                    {
+                        String type = content.optString("t");
+                        metrics.increment(MetricsRegistry.GATEWAY_EVENTS, type);
+                        start = System.nanoTime();
+                        handleEvent(content);
+                        metrics.time(MetricsRegistry.GATEWAY_HANDLE_TIME, type, System.nanoTime() - start);
+                    }
+                    else
+                    {
+                        handleEvent(content);
+                    }
+                }
+                finally
+                {
+                    api.getCacheLock().unlock();
+                }
                 break;
             case 1:
                 LOG.debug("Got Keep-Alive request (OP 1). Sending response...");
@@ -342,6 +442,7 @@ public class WebSocketClient extends WebSocketAdapter implements WebSocketListen
                 break;
             case 11:
                 LOG.trace("Got Heartbeat Ack (OP 11).");
+                handleHeartbeatAck();
                 break;
             default:
                 LOG.debug("Got unknown op-code: " + opCode + " with content: " + message);
@@ -350,38 +451,83 @@ public class WebSocketClient extends WebSocketAdapter implements WebSocketListen
 
     protected void setupKeepAlive(long timeout)
     {
-        keepAliveThread = new Thread(() ->
+        stopKeepAlive();
+        heartbeatAcked = true;
+        heartbeatSentTime = 0;
+        keepAliveFuture = KeepAliveScheduler.schedule(this::heartbeat, 0, timeout);
+    }
+
+    protected void stopKeepAlive()
+    {
+        ScheduledFuture<?> future = keepAliveFuture;
+        if (future != null)
         {
-            while (connected)
-            {
-                try
-                {
-                    sendKeepAlive();
+            future.cancel(false);
+            keepAliveFuture = null;
+        }
+    }
 
-                    //Sleep for heartbeat interval
-                    Thread.sleep(timeout);
-                }
-                catch (InterruptedException ex)
-                {
-                    //connection got cut... terminating keepAliveThread
-                    break;
-                }
+    protected void heartbeat()
+    {
+        if (!connected)
+        {
+            stopKeepAlive();
+            return;
+        }
+        if (!heartbeatAcked)
+        {
+            //The previous heartbeat never got an ACK. The connection is most likely dead without the socket noticing,
+            // so a close handshake would never complete. We drop the TCP connection instead, which fires onDisconnected
+            // and lets the reconnect logic resume the session on a new connection.
+            missedHeartbeats++;
+            LOG.warn("Heartbeat was not acknowledged by Discord. Closing zombie connection and resuming...");
+            stopKeepAlive();
+            try
+            {
+                socket.getSocket().close();
             }
-        });
-        keepAliveThread.setName("JDA MainWS-KeepAlive" + (sharding != null
-                    ? " Shard [" + sharding[0] + " / " + sharding[1] + "]"
-                    : ""));
-        keepAliveThread.setPriority(Thread.MAX_PRIORITY);
-        keepAliveThread.setDaemon(true);
-        keepAliveThread.start();
+            catch (IOException e)
+            {
+                LOG.log(e);
+            }
+            return;
+        }
+        sendKeepAlive();
+    }
+
+    protected void handleHeartbeatAck()
+    {
+        long sent = heartbeatSentTime;
+        if (!heartbeatAcked && sent != 0)
+            heartbeatLatency.record((System.nanoTime() - sent) / 1_000_000);
+        heartbeatAcked = true;
     }
 
     protected void sendKeepAlive()
     {
-        send(new JSONObject().put("op", 1).put("d", api.getResponseTotal()).toString());
+        heartbeatAcked = false;
+        heartbeatSentTime = System.nanoTime();
+        send(new JSONObject().put("op", 1).put("d", api.getResponseTotal()).toString(), GatewaySendQueue.Lane.HEARTBEAT);
     }
 
     protected void sendIdentify()
+    {
+        ShardManager manager = api.getShardManager();
+        if (manager == null)
+        {
+            doIdentify();
+            return;
+        }
+        //The IDENTIFY rate-limit is shared by all shards. The connection may be gone once it's our turn.
+        WebSocket connection = socket;
+        manager.scheduleIdentify(sharding[0], () ->
+        {
+            if (socket == connection && connection.isOpen())
+                doIdentify();
+        });
+    }
+
+    protected void doIdentify()
     {
         LOG.debug("Sending Identify-packet...");
         JSONObject identify = new JSONObject()
@@ -402,7 +548,7 @@ public class WebSocketClient extends WebSocketAdapter implements WebSocketListen
         {
             identify.getJSONObject("d").put("shard", new JSONArray().put(sharding[0]).put(sharding[1]));
         }
-        send(identify.toString()); //Used to make the READY event be given as compressed binary data when over a certain size. TY @ShadowLordAlpha
+        send(identify.toString(), GatewaySendQueue.Lane.CONTROL); //Used to make the READY event be given as compressed binary data when over a certain size. TY @ShadowLordAlpha
     }
 
     protected void sendResume()
@@ -414,12 +560,27 @@ public class WebSocketClient extends WebSocketAdapter implements WebSocketListen
                         .put("session_id", sessionId)
                         .put("token", api.getAuthToken())
                         .put("seq", api.getResponseTotal()))
-                .toString());
+                .toString(), GatewaySendQueue.Lane.CONTROL);
     }
 
     protected void invalidate()
     {
         sessionId = null;
+        initiating = true;
+        //Chunk requests of the old session refer to guilds that are about to be rebuilt.
+        sendQueue.clear(GatewaySendQueue.Lane.BULK);
+
+        if (reconcileOnInvalidate && !api.getGuildMap().isEmpty())
+        {
+            //Keep all entities and let the new READY update them in place.
+            new EntityBuilder(api).clearCache();
+            new ReadyHandler(api, 0).clearCache();
+            EventCache.get(api).clear();
+            GuildLock.get(api).clear();
+            SessionReconciler.begin(api);
+            return;
+        }
+        SessionReconciler.clear(api);
 
         //Preserve the audio handlers through registry invalidation
         api.getAudioManagersMap().values().forEach(
@@ -559,7 +720,7 @@ public class WebSocketClient extends WebSocketAdapter implements WebSocketListen
         if(type.equals("PRESENCE_REPLACE"))
         {
             JSONArray presences = raw.getJSONArray("d");
-            LOG.trace(String.format("%s -> %s", type, presences.toString()));
+            LOG.trace(() -> type + " -> " + presences);
             PresenceUpdateHandler handler = new PresenceUpdateHandler(api, responseTotal);
             for (int i = 0; i < presences.length(); i++)
             {
@@ -570,16 +731,18 @@ public class WebSocketClient extends WebSocketAdapter implements WebSocketListen
         }
 
         JSONObject content = raw.getJSONObject("d");
-        LOG.trace(String.format("%s -> %s", type, content.toString()));
+        LOG.trace(() -> type + " -> " + content);
 
         try {
             switch (type) {
                 //INIT types
                 case "READY":
                     sessionId = content.getString("session_id");
+                    sendQueue.setAuthenticated();
                     new ReadyHandler(api, responseTotal).handle(raw);
                     break;
                 case "RESUMED":
+                    sendQueue.setAuthenticated();
                     initiating = false;
                     ready();
                     break;
@@ -690,19 +853,47 @@ public class WebSocketClient extends WebSocketAdapter implements WebSocketListen
     {
         //Thanks to ShadowLordAlpha for code and debugging.
         //Get the compressed message and inflate it
-        StringBuilder builder = new StringBuilder();
+        MetricsRegistry metrics = api.getMetrics();
+        long start = metrics.isEnabled() ? System.nanoTime() : 0;
+        String message = inflate(binary);
+        if (metrics.isEnabled())
+            metrics.time(MetricsRegistry.GATEWAY_DECODE_TIME, "inflate", System.nanoTime() - start);
+
+        // send the inflated message to the TextMessage method
+        onTextMessage(websocket, message);
+    }
+
+    /**
+     * Inflates a zlib compressed gateway message.
+     *
+     * @param binary
+     *          The compressed message.
+     * @return
+     *      The message as String.
+     */
+    public static String inflate(byte[] binary) throws UnsupportedEncodingException, DataFormatException
+    {
+        //Decoded once at the end, a character can be split between two inflated chunks.
+        ByteArrayOutputStream out = new ByteArrayOutputStream(binary.length * 4);
         Inflater decompresser = new Inflater();
         decompresser.setInput(binary, 0, binary.length);
-        byte[] result = new byte[128];
-        while(!decompresser.finished())
+        byte[] result = new byte[1024];
+        try
+        {
+            while(!decompresser.finished())
+            {
+                int resultLength = decompresser.inflate(result);
+                //A truncated message would otherwise never finish and block the WebSocket thread forever.
+                if (resultLength == 0 && (decompresser.needsInput() || decompresser.needsDictionary()))
+                    throw new DataFormatException("Gateway message ended before the end of the compressed data");
+                out.write(result, 0, resultLength);
+            }
+        }
+        finally
         {
-            int resultLength = decompresser.inflate(result);
-            builder.append(new String(result, 0, resultLength, "UTF-8"));
+            decompresser.end();
         }
-        decompresser.end();
-
-        // send the inflated message to the TextMessage method
-        onTextMessage(websocket, builder.toString());
+        return out.toString("UTF-8");
     }
 
     @Override
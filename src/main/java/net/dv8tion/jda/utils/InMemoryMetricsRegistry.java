@@ -0,0 +1,223 @@
+/*
+ *     Copyright 2015-2016 Austin Keener & Michael Ritter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.dv8tion.jda.utils;
+
+import net.dv8tion.jda.requests.KeepAliveScheduler;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * A {@link net.dv8tion.jda.utils.MetricsRegistry MetricsRegistry} that keeps all metrics in memory since it was created
+ * or {@link #reset() reset}.
+ * <p>
+ * The metrics can be read with {@link #getCounters()} and {@link #getTimers()}, written as text with {@link #dump()},
+ * or logged periodically with {@link #startLogging(long)}. One registry can be shared by multiple JDA instances (shards).
+ */
+public class InMemoryMetricsRegistry implements MetricsRegistry
+{
+    public static final SimpleLog LOG = SimpleLog.getLog("JDAMetrics");
+
+    private final ConcurrentMap<String, ConcurrentMap<String, LongAdder>> counters = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, ConcurrentMap<String, Timer>> timers = new ConcurrentHashMap<>();
+
+    @Override
+    public void count(String name, String tag, long amount)
+    {
+        get(counters, name, tag, LongAdder::new).add(amount);
+    }
+
+    @Override
+    public void time(String name, String tag, long nanos)
+    {
+        get(timers, name, tag, Timer::new).record(nanos);
+    }
+
+    /**
+     * The current value of a counter.
+     *
+     * @param name
+     *          The name of the metric.
+     * @param tag
+     *          The tag of the metric.
+     * @return
+     *      The value of the counter, or 0 if it was never counted.
+     */
+    public long getCount(String name, String tag)
+    {
+        Map<String, LongAdder> tags = counters.get(name);
+        LongAdder counter = tags == null ? null : tags.get(tag);
+        return counter == null ? 0 : counter.sum();
+    }
+
+    /**
+     * A timer. The returned timer keeps being updated.
+     *
+     * @param name
+     *          The name of the metric.
+     * @param tag
+     *          The tag of the metric.
+     * @return
+     *      The timer, or null if nothing was recorded for it.
+     */
+    public Timer getTimer(String name, String tag)
+    {
+        Map<String, Timer> tags = timers.get(name);
+        return tags == null ? null : tags.get(tag);
+    }
+
+    /**
+     * A snapshot of all counters, sorted by name and tag.
+     *
+     * @return
+     *      An unmodifiable Map of metric names to Maps of tags to values.
+     */
+    public Map<String, Map<String, Long>> getCounters()
+    {
+        Map<String, Map<String, Long>> snapshot = new TreeMap<>();
+        counters.forEach((name, tags) ->
+        {
+            Map<String, Long> values = new TreeMap<>();
+            tags.forEach((tag, counter) -> values.put(tag, counter.sum()));
+            snapshot.put(name, Collections.unmodifiableMap(values));
+        });
+        return Collections.unmodifiableMap(snapshot);
+    }
+
+    /**
+     * All timers, sorted by name and tag. The timers keep being updated.
+     *
+     * @return
+     *      An unmodifiable Map of metric names to Maps of tags to timers.
+     */
+    public Map<String, Map<String, Timer>> getTimers()
+    {
+        Map<String, Map<String, Timer>> snapshot = new TreeMap<>();
+        timers.forEach((name, tags) -> snapshot.put(name, Collections.unmodifiableMap(new TreeMap<>(tags))));
+        return Collections.unmodifiableMap(snapshot);
+    }
+
+    /**
+     * Removes all metrics.
+     */
+    public void reset()
+    {
+        counters.clear();
+        timers.clear();
+    }
+
+    /**
+     * Writes all metrics as text, one metric and tag per line.
+     *
+     * @return
+     *      The metrics.
+     */
+    public String dump()
+    {
+        StringBuilder out = new StringBuilder("Metrics:");
+        getCounters().forEach((name, tags) -> tags.forEach((tag, value) ->
+                out.append("\n\t").append(name).append(" [").append(tag).append("] ").append(value)));
+        getTimers().forEach((name, tags) -> tags.forEach((tag, timer) ->
+                out.append("\n\t").append(name).append(" [").append(tag).append("] ").append(timer)));
+        return out.toString();
+    }
+
+    /**
+     * Logs a {@link #dump() dump} of all metrics on info level every <code>interval</code> milliseconds,
+     * until the returned future is cancelled.
+     *
+     * @param interval
+     *          Milliseconds between logs.
+     * @return
+     *      The future used to stop logging.
+     */
+    public ScheduledFuture<?> startLogging(long interval)
+    {
+        if (interval < 1)
+            throw new IllegalArgumentException("The interval must be at least 1ms! Provided: " + interval);
+        return KeepAliveScheduler.schedule(() -> LOG.info(dump()), interval, interval);
+    }
+
+    private static <T> T get(ConcurrentMap<String, ConcurrentMap<String, T>> metrics, String name, String tag, Supplier<T> creator)
+    {
+        //Metrics almost always exist already, a plain get doesn't lock like computeIfAbsent can.
+        ConcurrentMap<String, T> tags = metrics.get(name);
+        if (tags == null)
+            tags = metrics.computeIfAbsent(name, n -> new ConcurrentHashMap<>());
+        T metric = tags.get(tag);
+        if (metric == null)
+            metric = tags.computeIfAbsent(tag, t -> creator.get());
+        return metric;
+    }
+
+    /**
+     * Counts the recorded durations and keeps their total and maximum.
+     */
+    public static class Timer
+    {
+        private final LongAdder count = new LongAdder();
+        private final LongAdder total = new LongAdder();
+        private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+        private void record(long nanos)
+        {
+            count.increment();
+            total.add(nanos);
+            max.accumulate(nanos);
+        }
+
+        public long getCount()
+        {
+            return count.sum();
+        }
+
+        public long getTotalNanos()
+        {
+            return total.sum();
+        }
+
+        public long getMaxNanos()
+        {
+            return max.get();
+        }
+
+        /**
+         * The average of the recorded durations.
+         *
+         * @return
+         *      The average in milliseconds, or 0 if nothing was recorded.
+         */
+        public double getAverageMillis()
+        {
+            long count = getCount();
+            return count == 0 ? 0 : getTotalNanos() / (double) count / 1_000_000;
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format("count=%d, avg=%.3fms, max=%.3fms, total=%.1fms",
+                    getCount(), getAverageMillis(), getMaxNanos() / 1_000_000.0, getTotalNanos() / 1_000_000.0);
+        }
+    }
+}
@@ -0,0 +1,186 @@
+/*
+ *     Copyright 2015-2016 Austin Keener & Michael Ritter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.dv8tion.jda.utils;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Keeps the most recent latency samples, in milliseconds, in a fixed size window and provides statistics about them.
+ * <br>Used by JDA to track the round-trip time of gateway heartbeats.
+ * <p>
+ * All methods are thread-safe.
+ */
+public class LatencyHistogram
+{
+    /**
+     * The default amount of samples in the window. Currently {@value #DEFAULT_WINDOW_SIZE}.
+     */
+    public static final int DEFAULT_WINDOW_SIZE = 64;
+
+    private static final long[] BUCKET_BOUNDS = {25, 50, 100, 250, 500, 1000};
+    private static final List<Long> BUCKET_BOUNDS_LIST =
+            Collections.unmodifiableList(Arrays.stream(BUCKET_BOUNDS).boxed().collect(Collectors.toList()));
+
+    private final long[] samples;
+    private int next = 0;
+    private int size = 0;
+    private long total = 0;
+    private long last = -1;
+
+    public LatencyHistogram()
+    {
+        this(DEFAULT_WINDOW_SIZE);
+    }
+
+    /**
+     * Creates a new histogram.
+     *
+     * @param windowSize
+     *          The amount of most recent samples to keep.
+     */
+    public LatencyHistogram(int windowSize)
+    {
+        if (windowSize < 1)
+            throw new IllegalArgumentException("The window size must be at least 1! Provided: " + windowSize);
+        this.samples = new long[windowSize];
+    }
+
+    /**
+     * Adds a sample, replacing the oldest one if the window is full.
+     *
+     * @param latency
+     *          The latency in milliseconds.
+     */
+    public synchronized void record(long latency)
+    {
+        samples[next] = latency;
+        next = (next + 1) % samples.length;
+        if (size < samples.length)
+            size++;
+        total++;
+        last = latency;
+    }
+
+    /**
+     * The most recent sample.
+     *
+     * @return
+     *      The last recorded latency in milliseconds, or -1 if nothing was recorded yet.
+     */
+    public synchronized long getLast()
+    {
+        return last;
+    }
+
+    /**
+     * The amount of samples recorded since this histogram was created, including ones that left the window.
+     *
+     * @return
+     *      The total amount of samples.
+     */
+    public synchronized long getTotalCount()
+    {
+        return total;
+    }
+
+    /**
+     * The amount of samples currently in the window.
+     *
+     * @return
+     *      The amount of samples the statistics are based on.
+     */
+    public synchronized int getSampleCount()
+    {
+        return size;
+    }
+
+    public synchronized long getMin()
+    {
+        return size == 0 ? -1 : Arrays.stream(samples, 0, size).min().getAsLong();
+    }
+
+    public synchronized long getMax()
+    {
+        return size == 0 ? -1 : Arrays.stream(samples, 0, size).max().getAsLong();
+    }
+
+    public synchronized double getAverage()
+    {
+        return size == 0 ? -1 : Arrays.stream(samples, 0, size).average().getAsDouble();
+    }
+
+    /**
+     * The latency below or at which the given percentage of samples in the window fall.
+     *
+     * @param percentile
+     *          The percentile, between 0 and 100.
+     * @return
+     *      The latency in milliseconds, or -1 if the window is empty.
+     */
+    public synchronized long getPercentile(double percentile)
+    {
+        if (percentile < 0 || percentile > 100)
+            throw new IllegalArgumentException("The percentile must be between 0 and 100! Provided: " + percentile);
+        if (size == 0)
+            return -1;
+        long[] sorted = Arrays.copyOf(samples, size);
+        Arrays.sort(sorted);
+        int index = (int) Math.ceil(percentile / 100 * size) - 1;
+        return sorted[Math.max(0, index)];
+    }
+
+    /**
+     * Counts the samples in the window per bucket. Bucket <code>i</code> contains the samples that are larger than
+     * bound <code>i - 1</code> and at most bound <code>i</code> of {@link #getBucketBounds()}. The additional last bucket
+     * contains all samples larger than the last bound.
+     *
+     * @return
+     *      The sample counts, one more than there are {@link #getBucketBounds() bounds}.
+     */
+    public synchronized int[] getBuckets()
+    {
+        int[] buckets = new int[BUCKET_BOUNDS.length + 1];
+        for (int i = 0; i < size; i++)
+        {
+            int bucket = 0;
+            while (bucket < BUCKET_BOUNDS.length && samples[i] > BUCKET_BOUNDS[bucket])
+                bucket++;
+            buckets[bucket]++;
+        }
+        return buckets;
+    }
+
+    /**
+     * Upper bounds, in milliseconds, of the buckets returned by {@link #getBuckets()}. The last bucket has no upper bound.
+     *
+     * @return
+     *      Unmodifiable list of the bucket bounds, in ascending order.
+     */
+    public static List<Long> getBucketBounds()
+    {
+        return BUCKET_BOUNDS_LIST;
+    }
+
+    @Override
+    public synchronized String toString()
+    {
+        return String.format("LatencyHistogram(last=%d, min=%d, avg=%.1f, p95=%d, max=%d, samples=%d)",
+                last, getMin(), getAverage(), getPercentile(95), getMax(), size);
+    }
+}
@@ -0,0 +1,371 @@
+/*
+ *     Copyright 2015-2016 Austin Keener & Michael Ritter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.dv8tion.jda.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A log file of {@link net.dv8tion.jda.utils.SimpleLog#addFileLog(SimpleLog.Level, File) SimpleLog}.
+ * <p>
+ * Logging threads only put the formatted line into a bounded ring buffer. A single writer thread takes the lines
+ * in batches, collects them per file and writes each batch with one write to the FileChannel of the file, which
+ * stays open. If the ring buffer is full, lines are dropped and a note about the dropped lines is written later.
+ * <p>
+ * Files can be rotated once they reach a size or age. The current file is renamed to <code>&lt;file&gt;.1</code>,
+ * older files are shifted up to <code>&lt;file&gt;.&lt;maxBackups&gt;</code>, and the oldest one is deleted.
+ */
+class LogFileAppender
+{
+    static final int CAPACITY = 8192;
+    private static final int BATCH_SIZE = 512;
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private static final BlockingQueue<Object> QUEUE = new ArrayBlockingQueue<>(CAPACITY);
+    private static final List<LogFileAppender> APPENDERS = new CopyOnWriteArrayList<>();
+    private static final AtomicLong DROPPED = new AtomicLong(0);
+    private static volatile int minPriority = Integer.MAX_VALUE;
+    private static Thread writer = null;
+
+    final File file;
+    private final Set<SimpleLog.Level> levels = new CopyOnWriteArraySet<>();
+    private volatile int priority = Integer.MAX_VALUE;
+    private volatile long maxSize;
+    private volatile long maxAge;
+    private volatile int maxBackups;
+    //Set when the file is removed, it stays in APPENDERS until the writer thread wrote the lines queued before.
+    private volatile boolean removed = false;
+
+    //Only used by the writer thread.
+    private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+    private FileChannel channel = null;
+    private long size;
+    private long openedAt;
+    private boolean failed = false;
+
+    private LogFileAppender(File file)
+    {
+        this.file = file;
+    }
+
+    /**
+     * Adds a level to the file, creating the appender of the file if needed. A file receives all lines of the lowest
+     * level it was added with and above, every line is only written once.
+     * Adding an existing file without any rotation settings keeps the settings it already has.
+     */
+    static synchronized void add(SimpleLog.Level level, File file, long maxSize, long maxAge, int maxBackups)
+    {
+        LogFileAppender appender = APPENDERS.stream().filter(a -> !a.removed && a.file.equals(file)).findAny().orElse(null);
+        if (appender == null)
+        {
+            appender = new LogFileAppender(file);
+            APPENDERS.add(appender);
+        }
+        if (maxSize > 0 || maxAge > 0 || maxBackups > 0)
+        {
+            appender.maxSize = maxSize;
+            appender.maxAge = maxAge;
+            appender.maxBackups = maxBackups;
+        }
+        appender.levels.add(level);
+        updateMinPriority();
+        if (writer == null)
+        {
+            writer = new Thread(LogFileAppender::run, "JDA LogFileWriter");
+            writer.setDaemon(true);
+            writer.start();
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> sync(2000), "JDA LogFileWriter Shutdown"));
+        }
+    }
+
+    static synchronized void remove(SimpleLog.Level level, File file)
+    {
+        for (LogFileAppender appender : APPENDERS)
+        {
+            if (appender.removed || (file != null && !appender.file.equals(file)))
+                continue;
+            if (level != null)
+                appender.levels.remove(level);
+            if (level == null || appender.levels.isEmpty())
+            {
+                appender.removed = true;
+                //Removed and closed by the writer thread, after the lines that were queued before.
+                try
+                {
+                    QUEUE.put(appender);
+                }
+                catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+        updateMinPriority();
+    }
+
+    /**
+     * Whether a line of the given level would be written to any file.
+     *
+     * @param level
+     *          The level of the line.
+     * @return
+     *      True, if at least one file accepts the level.
+     */
+    static boolean accepts(SimpleLog.Level level)
+    {
+        return level.getPriority() >= minPriority;
+    }
+
+    static void append(SimpleLog.Level level, String line)
+    {
+        if (!QUEUE.offer(new Line(level, line)))
+            DROPPED.incrementAndGet();
+    }
+
+    /**
+     * Waits until all lines that were queued before were written.
+     *
+     * @param timeout
+     *          The maximum time to wait in milliseconds.
+     */
+    static void sync(long timeout)
+    {
+        CountDownLatch latch = new CountDownLatch(1);
+        try
+        {
+            if (QUEUE.offer(latch, timeout, TimeUnit.MILLISECONDS))
+                latch.await(timeout, TimeUnit.MILLISECONDS);
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    static long getDroppedLines()
+    {
+        return DROPPED.get();
+    }
+
+    private static void updateMinPriority()
+    {
+        int min = Integer.MAX_VALUE;
+        for (LogFileAppender appender : APPENDERS)
+        {
+            //Removed files keep their priority to write the lines that are still queued for them.
+            if (appender.removed)
+                continue;
+            int priority = Integer.MAX_VALUE;
+            for (SimpleLog.Level level : appender.levels)
+                priority = Math.min(priority, level.getPriority());
+            appender.priority = priority;
+            min = Math.min(min, priority);
+        }
+        minPriority = min;
+    }
+
+    private static void run()
+    {
+        List<Object> batch = new ArrayList<>(BATCH_SIZE);
+        List<LogFileAppender> written = new ArrayList<>();
+        long reportedDrops = 0;
+        while (true)
+        {
+            try
+            {
+                batch.add(QUEUE.take());
+                QUEUE.drainTo(batch, BATCH_SIZE - 1);
+            }
+            catch (InterruptedException e)
+            {
+                continue;
+            }
+
+            long drops = DROPPED.get();
+            if (drops != reportedDrops)
+            {
+                String note = (drops - reportedDrops) + " log lines were dropped because the log files couldn't keep up.";
+                for (LogFileAppender appender : APPENDERS)
+                    appender.write(note, written);
+                reportedDrops = drops;
+            }
+
+            for (Object entry : batch)
+            {
+                if (entry instanceof Line)
+                {
+                    Line line = (Line) entry;
+                    for (LogFileAppender appender : APPENDERS)
+                    {
+                        if (appender.priority <= line.level.getPriority())
+                            appender.write(line.text, written);
+                    }
+                }
+                else if (entry instanceof LogFileAppender)
+                {
+                    LogFileAppender appender = (LogFileAppender) entry;
+                    APPENDERS.remove(appender);
+                    appender.flush();
+                    appender.close();
+                    written.remove(appender);
+                }
+                else if (entry instanceof CountDownLatch)
+                {
+                    flushAll(written);
+                    ((CountDownLatch) entry).countDown();
+                }
+            }
+            flushAll(written);
+            batch.clear();
+        }
+    }
+
+    private static void flushAll(List<LogFileAppender> written)
+    {
+        for (LogFileAppender appender : written)
+            appender.flush();
+        written.clear();
+    }
+
+    private void write(String line, List<LogFileAppender> written)
+    {
+        if (failed)
+            return;
+        byte[] bytes = (line + '\n').getBytes(StandardCharsets.UTF_8);
+        try
+        {
+            if (channel == null)
+                open();
+            else if ((maxSize > 0 && size + buffer.position() > 0 && size + buffer.position() + bytes.length > maxSize)
+                    || (maxAge > 0 && System.currentTimeMillis() - openedAt > maxAge))
+                rotate();
+
+            if (buffer.remaining() < bytes.length)
+                flush();
+            if (bytes.length > buffer.capacity())
+                writeFully(ByteBuffer.wrap(bytes));
+            else
+                buffer.put(bytes);
+            if (!written.contains(this))
+                written.add(this);
+        }
+        catch (IOException e)
+        {
+            fail(e);
+        }
+    }
+
+    private void flush()
+    {
+        if (channel == null || buffer.position() == 0)
+            return;
+        buffer.flip();
+        try
+        {
+            writeFully(buffer);
+        }
+        catch (IOException e)
+        {
+            fail(e);
+        }
+        finally
+        {
+            buffer.clear();
+        }
+    }
+
+    private void writeFully(ByteBuffer data) throws IOException
+    {
+        while (data.hasRemaining())
+            size += channel.write(data);
+    }
+
+    private void open() throws IOException
+    {
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (parent != null && !parent.exists())
+            parent.mkdirs();
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        size = channel.size();
+        openedAt = System.currentTimeMillis();
+    }
+
+    private void rotate() throws IOException
+    {
+        flush();
+        close();
+        if (maxBackups > 0)
+        {
+            File oldest = new File(file.getPath() + "." + maxBackups);
+            Files.deleteIfExists(oldest.toPath());
+            for (int i = maxBackups - 1; i >= 1; i--)
+            {
+                File backup = new File(file.getPath() + "." + i);
+                if (backup.exists())
+                    Files.move(backup.toPath(), new File(file.getPath() + "." + (i + 1)).toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+            Files.move(file.toPath(), new File(file.getPath() + ".1").toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+        else
+        {
+            Files.deleteIfExists(file.toPath());
+        }
+        open();
+    }
+
+    private void close()
+    {
+        if (channel == null)
+            return;
+        try
+        {
+            channel.close();
+        }
+        catch (IOException ignored) {}
+        channel = null;
+    }
+
+    private void fail(IOException e)
+    {
+        //Logging this through SimpleLog could end up in this file again.
+        System.err.println("Could not write log to logFile " + file + ", it is disabled: " + e);
+        failed = true;
+        close();
+    }
+
+    private static class Line
+    {
+        private final SimpleLog.Level level;
+        private final String text;
+
+        private Line(SimpleLog.Level level, String text)
+        {
+            this.level = level;
+            this.text = text;
+        }
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ *     Copyright 2015-2016 Austin Keener & Michael Ritter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.dv8tion.jda.utils;
+
+/**
+ * Receives the metrics JDA collects on its hot paths: the gateway, REST requests, event listeners and audio.
+ * Set with {@link net.dv8tion.jda.JDABuilder#setMetricsRegistry(MetricsRegistry) JDABuilder.setMetricsRegistry(MetricsRegistry)}.
+ * <p>
+ * Every metric has a name, one of the constants of this interface, and a tag that splits it up further,
+ * like the event type or the REST route. Metrics are either counters or timers.
+ * <br>By default JDA uses {@link #NOOP}, which doesn't collect anything. {@link net.dv8tion.jda.utils.InMemoryMetricsRegistry InMemoryMetricsRegistry}
+ * keeps all metrics in memory. To export them to another system, implement this interface.
+ * <p>
+ * Implementations are called from many threads at the same time and have to be thread-safe. They should never block.
+ */
+public interface MetricsRegistry
+{
+    /**
+     * Counter of the gateway events received. Tagged with the event type, e.g. <code>MESSAGE_CREATE</code>.
+     */
+    String GATEWAY_EVENTS = "gateway.events";
+    /**
+     * Timer of decoding gateway messages. Tagged with <code>inflate</code> for decompressing and <code>parse</code>
+     * for parsing the JSON.
+     */
+    String GATEWAY_DECODE_TIME = "gateway.decode";
+    /**
+     * Timer of handling gateway events, including firing the JDA events. Tagged with the event type.
+     */
+    String GATEWAY_HANDLE_TIME = "gateway.handle";
+    /**
+     * Timer of REST requests. Tagged with the method and route, e.g. <code>POST channels/{id}/messages</code>.
+     */
+    String REST_LATENCY = "rest.latency";
+    /**
+     * Counter of REST requests that were rate limited (429). Tagged with the method and route.
+     */
+    String REST_RATE_LIMITED = "rest.ratelimited";
+    /**
+     * Timer of event listeners. Tagged with the class name of the listener.
+     */
+    String LISTENER_TIME = "listener.time";
+    /**
+     * Counter of audio frames sent. Tagged with the guild id.
+     */
+    String AUDIO_FRAMES_SENT = "audio.frames.sent";
+    /**
+     * Counter of audio frames that were sent later than their 20ms slot. Tagged with the guild id.
+     */
+    String AUDIO_FRAMES_LATE = "audio.frames.late";
+    /**
+     * Counter of 20ms slots in which no audio frame could be sent although audio was playing,
+     * because the sending fell behind or encoding failed. Tagged with the guild id.
+     */
+    String AUDIO_FRAMES_MISSED = "audio.frames.missed";
+    /**
+     * Counter of audio packets received from users. Tagged with the guild id.
+     */
+    String AUDIO_PACKETS_RECEIVED = "audio.packets.received";
+    /**
+     * Counter of audio packets that never arrived, detected by gaps in the sequence. Tagged with the guild id.
+     */
+    String AUDIO_PACKETS_LOST = "audio.packets.lost";
+    /**
+     * Counter of audio packets decoded to PCM. Tagged with the guild id.
+     */
+    String AUDIO_PACKETS_DECODED = "audio.packets.decoded";
+
+    /**
+     * The default registry, which discards all metrics.
+     */
+    MetricsRegistry NOOP = new MetricsRegistry()
+    {
+        @Override
+        public boolean isEnabled()
+        {
+            return false;
+        }
+
+        @Override
+        public void count(String name, String tag, long amount) {}
+
+        @Override
+        public void time(String name, String tag, long nanos) {}
+    };
+
+    /**
+     * Whether this registry collects metrics. If not, JDA skips measuring times and building tags.
+     *
+     * @return
+     *      True, if metrics should be reported to this registry.
+     */
+    default boolean isEnabled()
+    {
+        return true;
+    }
+
+    /**
+     * Adds the given amount to a counter.
+     *
+     * @param name
+     *          The name of the metric.
+     * @param tag
+     *          The tag of the metric.
+     * @param amount
+     *          The amount to add.
+     */
+    void count(String name, String tag, long amount);
+
+    /**
+     * Adds one to a counter.
+     *
+     * @param name
+     *          The name of the metric.
+     * @param tag
+     *          The tag of the metric.
+     */
+    default void increment(String name, String tag)
+    {
+        count(name, tag, 1);
+    }
+
+    /**
+     * Records a duration of a timer.
+     *
+     * @param name
+     *          The name of the metric.
+     * @param tag
+     *          The tag of the metric.
+     * @param nanos
+     *          The duration in nanoseconds.
+     */
+    void time(String name, String tag, long nanos);
+}
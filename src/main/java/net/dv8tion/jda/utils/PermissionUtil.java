@@ -16,8 +16,8 @@
 package net.dv8tion.jda.utils;
 
 import net.dv8tion.jda.Permission;
+import net.dv8tion.jda.PermissionSet;
 import net.dv8tion.jda.entities.*;
-import net.dv8tion.jda.entities.impl.GuildImpl;
 import net.dv8tion.jda.entities.impl.PermissionOverrideImpl;
 import net.dv8tion.jda.entities.impl.TextChannelImpl;
 import net.dv8tion.jda.entities.impl.VoiceChannelImpl;
@@ -27,6 +27,10 @@ import java.util.Map;
 
 public class PermissionUtil
 {
+    private static final int ADMINISTRATOR = Permission.ADMINISTRATOR.getRawValue();
+    private static final int TALK = Permission.getRaw(Permission.MESSAGE_READ, Permission.MESSAGE_WRITE);
+    //Checking UNKNOWN always checked bit 31, which no role has. PermissionSets ignore UNKNOWN instead.
+    private static final int UNKNOWN = 1 << 31;
 
     /**
      * Checks if one given User can interact with a 2nd given User - in a permission sense (kick/ban/modify perms).
@@ -98,15 +102,7 @@ public class PermissionUtil
     public static PermissionOverride getFullPermOverride()
     {
         PermissionOverrideImpl override = new PermissionOverrideImpl(null, null, null);
-        int allow = 0, deny=0;
-        for (Permission permission : Permission.values())
-        {
-            if(permission != Permission.UNKNOWN)
-            {
-                allow = allow | (1 << permission.getOffset());
-            }
-        }
-        return override.setAllow(allow).setDeny(deny);
+        return override.setAllow(Permission.ALL_RAW).setDeny(0);
     }
 
     /**
@@ -133,7 +129,7 @@ public class PermissionUtil
      */
     public static boolean canTalk(User user, TextChannel channel)
     {
-        return checkPermission(channel, user, Permission.MESSAGE_READ, Permission.MESSAGE_WRITE);
+        return checkPermission(channel, user, TALK);
     }
 
     /**
@@ -160,16 +156,10 @@ public class PermissionUtil
     @Deprecated
     public static boolean checkPermission(User user, Permission perm, Channel channel)
     {
-        if (channel instanceof TextChannel)
-        {
-            return checkPermission(user, perm, ((GuildImpl) channel.getGuild()),
-                    ((TextChannelImpl) channel).getRolePermissionOverridesMap(), ((TextChannelImpl) channel).getUserPermissionOverridesMap());
-        }
-        else
-        {
-            return checkPermission(user, perm, ((GuildImpl) channel.getGuild()),
-                    ((VoiceChannelImpl) channel).getRolePermissionOverridesMap(), ((VoiceChannelImpl) channel).getUserPermissionOverridesMap());
-        }
+        Guild guild = channel.getGuild();
+        //Guild-level ADMINISTRATOR isn't checked here, like it always was.
+        return guild.getOwnerId().equals(user.getId())
+                || has(getEffectivePermission(user, guild, getRoles(guild, user), channel), getRaw(perm));
     }
 
     /**
@@ -195,14 +185,7 @@ public class PermissionUtil
     @Deprecated
     public static boolean checkPermission(User user, Permission perm, Guild guild)
     {
-        if (guild.getRolesForUser(user) == null)
-            throw new IllegalArgumentException("Provided user is not in the provided guild");
-        return guild.getOwnerId().equals(user.getId())
-                || guild.getPublicRole().hasPermission(Permission.ADMINISTRATOR)
-                || guild.getPublicRole().hasPermission(perm)
-                || guild.getRolesForUser(user).stream().anyMatch(role ->
-                            role.hasPermission(Permission.ADMINISTRATOR)
-                            || role.hasPermission(perm));
+        return checkPermission(guild, user, getRaw(perm));
     }
 
     /**
@@ -226,29 +209,27 @@ public class PermissionUtil
      */
     public static boolean checkPermission(Channel channel, User user, Permission... permissions)
     {
-        if (channel.getGuild().getOwnerId().equals(user.getId()) // Admin or owner? If yes: no need to iterate
-                || channel.getGuild().getPublicRole().hasPermission(Permission.ADMINISTRATOR)
-                || channel.getGuild().getRolesForUser(user).stream().anyMatch(role -> role.hasPermission(Permission.ADMINISTRATOR)))
-            return true;
-        if (channel instanceof TextChannel)
-        {
-            for (Permission perm : permissions)
-            {
-                if (!checkPermission(user, perm, ((GuildImpl) channel.getGuild()),
-                    ((TextChannelImpl) channel).getRolePermissionOverridesMap(), ((TextChannelImpl) channel).getUserPermissionOverridesMap()))
-                    return false;
-            }
-        }
-        else
-        {
-            for (Permission perm : permissions)
-            {
-                if (!checkPermission(user, perm, ((GuildImpl) channel.getGuild()),
-                        ((VoiceChannelImpl) channel).getRolePermissionOverridesMap(), ((VoiceChannelImpl) channel).getUserPermissionOverridesMap()))
-                    return false;
-            }
-        }
-        return true;
+        return checkPermission(channel, user, getRaw(permissions));
+    }
+
+    /**
+     * Checks to see if the {@link net.dv8tion.jda.entities.User User} has all {@link net.dv8tion.jda.Permission Permissions}
+     * of the {@link net.dv8tion.jda.PermissionSet PermissionSet} in the specified {@link net.dv8tion.jda.entities.Channel Channel}.
+     * Works like {@link #checkPermission(Channel, User, Permission...)}, but computes the effective permissions only once
+     * and allocates nothing.
+     *
+     * @param channel
+     *          The {@link net.dv8tion.jda.entities.Channel Channel} being checked.
+     * @param user
+     *          The {@link net.dv8tion.jda.entities.User User} whose permissions are being checked.
+     * @param permissions
+     *          The {@link net.dv8tion.jda.PermissionSet PermissionSet} being checked for.
+     * @return
+     *      True - if the {@link net.dv8tion.jda.entities.User User} effectively has all specified {@link net.dv8tion.jda.Permission Permissions}.
+     */
+    public static boolean checkPermission(Channel channel, User user, PermissionSet permissions)
+    {
+        return checkPermission(channel, user, permissions.getRaw());
     }
 
     /**
@@ -271,19 +252,26 @@ public class PermissionUtil
      */
     public static boolean checkPermission(Guild guild, User user, Permission... permissions)
     {
-        if (guild.getRolesForUser(user) == null)
-            throw new IllegalArgumentException("Provided user is not in the provided guild");
-        if (guild.getOwnerId().equals(user.getId()) // Admin or owner? If yes: no need to iterate
-                || guild.getPublicRole().hasPermission(Permission.ADMINISTRATOR)
-                || guild.getRolesForUser(user).stream().anyMatch(role -> role.hasPermission(Permission.ADMINISTRATOR)))
-            return true;
-        for (Permission perm : permissions)
-        {
-            if (!guild.getPublicRole().hasPermission(perm)
-                    && !guild.getRolesForUser(user).parallelStream().anyMatch(role -> role.hasPermission(perm)))
-                return false;
-        }
-        return true;
+        return checkPermission(guild, user, getRaw(permissions));
+    }
+
+    /**
+     * Checks to see if the {@link net.dv8tion.jda.entities.User User} has all {@link net.dv8tion.jda.Permission Permissions}
+     * of the {@link net.dv8tion.jda.PermissionSet PermissionSet} in the specified {@link net.dv8tion.jda.entities.Guild Guild}.
+     * Works like {@link #checkPermission(Guild, User, Permission...)}, but allocates nothing.
+     *
+     * @param guild
+     *          The {@link net.dv8tion.jda.entities.Guild Guild} being checked.
+     * @param user
+     *          The {@link net.dv8tion.jda.entities.User User} whose permissions are being checked.
+     * @param permissions
+     *          The {@link net.dv8tion.jda.PermissionSet PermissionSet} being checked for.
+     * @return
+     *      True - if the {@link net.dv8tion.jda.entities.User User} effectively has all specified {@link net.dv8tion.jda.Permission Permissions}.
+     */
+    public static boolean checkPermission(Guild guild, User user, PermissionSet permissions)
+    {
+        return checkPermission(guild, user, permissions.getRaw());
     }
 
     /**
@@ -302,16 +290,23 @@ public class PermissionUtil
      */
     public static int getEffectivePermission(User user, Channel channel)
     {
-        if (channel instanceof TextChannel)
-        {
-            return getEffectivePermission(user, ((GuildImpl) channel.getGuild()),
-                    ((TextChannelImpl) channel).getRolePermissionOverridesMap(), ((TextChannelImpl) channel).getUserPermissionOverridesMap());
-        }
-        else
-        {
-            return getEffectivePermission(user, ((GuildImpl) channel.getGuild()),
-                    ((VoiceChannelImpl) channel).getRolePermissionOverridesMap(), ((VoiceChannelImpl) channel).getUserPermissionOverridesMap());
-        }
+        return getEffectivePermission(user, channel.getGuild(), getRoles(channel.getGuild(), user), channel);
+    }
+
+    /**
+     * The effective permissions of the {@link net.dv8tion.jda.entities.User User} in the {@link net.dv8tion.jda.entities.Channel Channel}
+     * as {@link net.dv8tion.jda.PermissionSet PermissionSet}, see {@link #getEffectivePermission(User, Channel)}.
+     *
+     * @param user
+     *          The {@link net.dv8tion.jda.entities.User User} whose permissions are being checked.
+     * @param channel
+     *          The {@link net.dv8tion.jda.entities.Channel Channel} being checked.
+     * @return
+     *      The literal permissions that this {@link net.dv8tion.jda.entities.User User} has in this {@link net.dv8tion.jda.entities.Channel Channel}.
+     */
+    public static PermissionSet getEffectivePermissionSet(User user, Channel channel)
+    {
+        return PermissionSet.of(getEffectivePermission(user, channel));
     }
 
     /**
@@ -330,12 +325,70 @@ public class PermissionUtil
      *      The <code>int</code> representation of the literal permissions that this {@link net.dv8tion.jda.entities.User User} has in this {@link net.dv8tion.jda.entities.Guild Guild}.
      */
     public static int getEffectivePermission(User user, Guild guild)
+    {
+        return getEffectivePermission(guild, getRoles(guild, user));
+    }
+
+    /**
+     * The Guild-level permissions of the {@link net.dv8tion.jda.entities.User User} in the {@link net.dv8tion.jda.entities.Guild Guild}
+     * as {@link net.dv8tion.jda.PermissionSet PermissionSet}, see {@link #getEffectivePermission(User, Guild)}.
+     *
+     * @param user
+     *          The {@link net.dv8tion.jda.entities.User User} whose permissions are being checked.
+     * @param guild
+     *          The {@link net.dv8tion.jda.entities.Guild Guild} being checked.
+     * @return
+     *      The literal permissions that this {@link net.dv8tion.jda.entities.User User} has in this {@link net.dv8tion.jda.entities.Guild Guild}.
+     */
+    public static PermissionSet getEffectivePermissionSet(User user, Guild guild)
+    {
+        return PermissionSet.of(getEffectivePermission(user, guild));
+    }
+
+    private static boolean checkPermission(Channel channel, User user, int permissions)
+    {
+        Guild guild = channel.getGuild();
+        if (guild.getOwnerId().equals(user.getId()))
+            return true;
+        List<Role> roles = getRoles(guild, user);
+        int permission = getEffectivePermission(guild, roles);
+        //Guild-level ADMINISTRATOR can't be overridden by the channel.
+        if ((permission & ADMINISTRATOR) != 0)
+            return true;
+        return has(applyOverrides(user, guild, roles, channel, permission), permissions);
+    }
+
+    private static boolean checkPermission(Guild guild, User user, int permissions)
+    {
+        List<Role> roles = getRoles(guild, user);
+        return guild.getOwnerId().equals(user.getId()) || has(getEffectivePermission(guild, roles), permissions);
+    }
+
+    private static boolean has(int effective, int permissions)
+    {
+        return (effective & ADMINISTRATOR) != 0 || (effective & permissions) == permissions;
+    }
+
+    private static int getRaw(Permission... permissions)
+    {
+        int raw = 0;
+        for (Permission perm : permissions)
+            raw |= perm == Permission.UNKNOWN ? UNKNOWN : perm.getRawValue();
+        return raw;
+    }
+
+    private static List<Role> getRoles(Guild guild, User user)
+    {
+        List<Role> roles = guild.getRolesForUser(user);
+        if (roles == null)
+            throw new IllegalArgumentException("Provided user is not in the provided guild");
+        return roles;
+    }
+
+    private static int getEffectivePermission(Guild guild, List<Role> rolesOfUser)
     {
         //Default to binary OR of all global permissions in this guild
         int permission = guild.getPublicRole().getPermissionsRaw();
-        List<Role> rolesOfUser = guild.getRolesForUser(user);
-        if (rolesOfUser == null)
-            throw new IllegalArgumentException("Provided user is not in the provided guild");
         for (Role role : rolesOfUser)
         {
             permission = permission | role.getPermissionsRaw();
@@ -343,26 +396,25 @@ public class PermissionUtil
         return permission;
     }
 
-    private static boolean checkPermission(User user, Permission perm, GuildImpl guild, Map<Role, PermissionOverride> roleOverrides, Map<User, PermissionOverride> userOverrides)
+    private static int getEffectivePermission(User user, Guild guild, List<Role> rolesOfUser, Channel channel)
     {
-        //--Do we have all permissions possible? (Owner or user has ADMINISTRATOR permission)
-        //--If we have all permissions possible, then we will be able to see this room.
-        //WE DO NOT WANT TO CHECK THIS FOR CHANNELS, AS CHANNELS CAN OVERRIDE MANAGE_PERMISSIONS
-//        if (checkPermission(user, Permission.ADMINISTRATOR, guild))
-//            return true;
-
-        //BUT: WE DO WANT TO CHECK IF HE IS OWNER
-        if (guild.getOwnerId().equals(user.getId()))
-            return true;
-
-        int effectivePerms = getEffectivePermission(user, guild, roleOverrides, userOverrides);
-        return ((effectivePerms & (1 << Permission.ADMINISTRATOR.getOffset())) | (effectivePerms & (1 << perm.getOffset()))) > 0;
+        return applyOverrides(user, guild, rolesOfUser, channel, getEffectivePermission(guild, rolesOfUser));
     }
 
-    private static int getEffectivePermission(User user, GuildImpl guild, Map<Role, PermissionOverride> roleOverrides, Map<User, PermissionOverride> userOverrides)
+    private static int applyOverrides(User user, Guild guild, List<Role> rolesOfUser, Channel channel, int permission)
     {
-        int permission = getEffectivePermission(user, guild);
-        List<Role> rolesOfUser = guild.getRolesForUser(user);
+        Map<Role, PermissionOverride> roleOverrides;
+        Map<User, PermissionOverride> userOverrides;
+        if (channel instanceof TextChannel)
+        {
+            roleOverrides = ((TextChannelImpl) channel).getRolePermissionOverridesMap();
+            userOverrides = ((TextChannelImpl) channel).getUserPermissionOverridesMap();
+        }
+        else
+        {
+            roleOverrides = ((VoiceChannelImpl) channel).getRolePermissionOverridesMap();
+            userOverrides = ((VoiceChannelImpl) channel).getUserPermissionOverridesMap();
+        }
 
         //override with channel-specific overrides of @everyone
         PermissionOverride override = roleOverrides.get(guild.getPublicRole());
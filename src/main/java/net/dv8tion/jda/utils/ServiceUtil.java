@@ -147,6 +147,7 @@ public class ServiceUtil
                     "org.tritonus.sampled.convert.LawEncoder",                          //Tritonus_Remaining
                     "org.tritonus.sampled.convert.LawDecoder",                          //Tritonus_Remaining
                     "org.tritonus.sampled.convert.PCM2PCMConversionProvider",           //Tritonus_Remaining
+                    "org.tritonus.sampled.convert.PolyphaseSampleRateConversionProvider",//Tritonus_Remaining
                     "org.tritonus.sampled.convert.SampleRateConversionProvider",        //Tritonus_Remaining
                     "org.tritonus.sampled.convert.ImaAdpcmFormatConversionProvider",     //Tritonus_Remaining
                     "org.kc7bfi.jflac.sound.spi.FlacFormatConversionProvider"            //jFLAC
@@ -15,16 +15,15 @@
  */
 package net.dv8tion.jda.utils;
 
-import net.dv8tion.jda.entities.impl.JDAImpl;
 import org.apache.commons.lang3.exception.ExceptionUtils;
 
 import javax.swing.*;
 import java.io.*;
-import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
-import java.nio.file.StandardOpenOption;
-import java.text.SimpleDateFormat;
+import java.time.LocalTime;
+import java.time.format.DateTimeFormatter;
 import java.util.*;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.function.Supplier;
 
 public class SimpleLog
 {
@@ -38,12 +37,11 @@ public class SimpleLog
      */
     public static boolean ENABLE_GUI = false;
 
-    private static final String FORMAT = "[%time%] [%level%] [%name%]: %text%";
-    private static final String MSGFORMAT = "%text%";
-    private static final SimpleDateFormat DFORMAT = new SimpleDateFormat("HH:mm:ss");
+    private static final DateTimeFormatter DFORMAT = DateTimeFormatter.ofPattern("HH:mm:ss");
 
     private static final Map<String, SimpleLog> LOGS = new HashMap<>();
-    private static final Set<LogListener> listeners = new HashSet<>();
+    //Iterated on every log call, but only changed when a listener is added or removed.
+    private static final Set<LogListener> listeners = new CopyOnWriteArraySet<>();
 
     /**
      * Will get the LOG with the given LOG-name or create one if it didn't exist
@@ -64,7 +62,6 @@ public class SimpleLog
     private static PrintStream origErr = null;
     private static FileOutputStream stdOut = null;
     private static FileOutputStream errOut = null;
-    private static Map<Level, Set<File>> fileLogs = new HashMap<>();
 
     /**
      * Will duplicate the output-streams to the specified Files.
@@ -139,7 +136,10 @@ public class SimpleLog
     /**
      * Sets up a File to log all messages that are not visible via sout and serr and meet a given log-level criteria.
      * All logs that would not be printed and are above given logLevel are printed to that File.
-     * If you want to log Logs printed to sout and serr to file(s), use {@link #addFileLogs(File, File)} instead.
+     * If you want to log Logs printed to sout and serr to file(s), use {@link #addFileLog(Level, File)} instead.
+     * <p>
+     * The messages are written asynchronously by a background thread. Use {@link #flushFileLogs()} to wait for them
+     * to be written.
      *
      * @param logLevel
      *      The log-level criteria. Only logs equal or above this level are printed to the File
@@ -150,12 +150,32 @@ public class SimpleLog
      */
     public static void addFileLog(Level logLevel, File file) throws IOException
     {
-        File canonicalFile = file.getCanonicalFile();
-        if (!fileLogs.containsKey(logLevel))
-        {
-            fileLogs.put(logLevel, new HashSet<>());
-        }
-        fileLogs.get(logLevel).add(canonicalFile);
+        addFileLog(logLevel, file, 0, 0, 0);
+    }
+
+    /**
+     * Sets up a rotating File to log all messages that are not visible via sout and serr and meet a given log-level criteria.
+     * Works like {@link #addFileLog(Level, File)}, but once the File reaches the given size or age it is renamed to
+     * <code>&lt;file&gt;.1</code> (shifting older files to <code>&lt;file&gt;.2</code> and so on) and a new File is started.
+     *
+     * @param logLevel
+     *      The log-level criteria. Only logs equal or above this level are printed to the File
+     * @param file
+     *      The File where the logs should be printed
+     * @param maxSize
+     *      The size in bytes after which the File is rotated, or 0 to not rotate by size
+     * @param maxAge
+     *      The time in milliseconds after which the File is rotated, or 0 to not rotate by time
+     * @param maxBackups
+     *      The amount of rotated Files that are kept. If 0, the File is cleared instead of renamed
+     * @throws IOException
+     *      If the File can't be canonically resolved (access denied)
+     */
+    public static void addFileLog(Level logLevel, File file, long maxSize, long maxAge, int maxBackups) throws IOException
+    {
+        if (maxSize < 0 || maxAge < 0 || maxBackups < 0)
+            throw new IllegalArgumentException("The rotation settings cannot be negative! Provided: " + maxSize + ", " + maxAge + ", " + maxBackups);
+        LogFileAppender.add(logLevel, file.getCanonicalFile(), maxSize, maxAge, maxBackups);
     }
 
     /**
@@ -167,7 +187,7 @@ public class SimpleLog
      */
     public static void removeFileLog(Level logLevel)
     {
-        fileLogs.remove(logLevel);
+        LogFileAppender.remove(logLevel, null);
     }
 
     /**
@@ -181,54 +201,26 @@ public class SimpleLog
      */
     public static void removeFileLog(File file) throws IOException
     {
-        File canonicalFile = file.getCanonicalFile();
-        Iterator<Map.Entry<Level, Set<File>>> setIter = fileLogs.entrySet().iterator();
-        while (setIter.hasNext())
-        {
-            Map.Entry<Level, Set<File>> set = setIter.next();
-            Iterator<File> fileIter = set.getValue().iterator();
-            while (fileIter.hasNext())
-            {
-                File logFile = fileIter.next();
-                if(logFile.equals(canonicalFile))
-                {
-                    fileIter.remove();
-                    break;
-                }
-            }
-            if (set.getValue().isEmpty())
-            {
-                setIter.remove();
-            }
-        }
+        LogFileAppender.remove(null, file.getCanonicalFile());
     }
 
-    private static Set<File> collectFiles(Level level)
+    /**
+     * Blocks until all messages that were logged before were written to the File-logs, or the timeout is reached.
+     */
+    public static void flushFileLogs()
     {
-        Set<File> out = new HashSet<>();
-        for (Map.Entry<Level, Set<File>> mapEntry : fileLogs.entrySet())
-        {
-            if(mapEntry.getKey().getPriority() <= level.getPriority())
-                out.addAll(mapEntry.getValue());
-        }
-        return out;
+        LogFileAppender.sync(5000);
     }
 
-    private static void logToFiles(String msg, Level level)
+    /**
+     * The amount of messages that were not written to the File-logs because the files couldn't keep up.
+     *
+     * @return
+     *      The amount of dropped messages.
+     */
+    public static long getDroppedFileLogs()
     {
-        Set<File> files = collectFiles(level);
-        for (File file : files)
-        {
-            try
-            {
-                Files.write(file.toPath(), (msg + '\n').getBytes(StandardCharsets.UTF_8), StandardOpenOption.CREATE, StandardOpenOption.APPEND);
-            }
-            catch (IOException e)
-            {
-                JDAImpl.LOG.fatal("Could not write log to logFile...");
-                JDAImpl.LOG.log(e);
-            }
-        }
+        return LogFileAppender.getDroppedLines();
     }
 
     /**
@@ -237,10 +229,7 @@ public class SimpleLog
      */
     public static void addListener(LogListener listener)
     {
-        synchronized (listeners)
-        {
-            listeners.add(listener);
-        }
+        listeners.add(listener);
     }
 
     /**
@@ -249,10 +238,7 @@ public class SimpleLog
      */
     public static void removeListener(LogListener listener)
     {
-        synchronized (listeners)
-        {
-            listeners.remove(listener);
-        }
+        listeners.remove(listener);
     }
 
     public final String name;
@@ -295,6 +281,24 @@ public class SimpleLog
         return level == null ? SimpleLog.LEVEL : level;
     }
 
+    /**
+     * Whether a message of the given level would be used by this Logger: printed, written to a File-log
+     * or passed to a {@link LogListener LogListener}.
+     * Useful to skip building expensive messages, see also the {@link Supplier Supplier} overloads like {@link #trace(Supplier)}.
+     *
+     * @param level the level of the message
+     * @return true, if a message of this level is not discarded
+     */
+    public boolean isEnabled(Level level)
+    {
+        return isPrinted(level) || LogFileAppender.accepts(level) || !listeners.isEmpty();
+    }
+
+    private boolean isPrinted(Level level)
+    {
+        return level != Level.OFF && level.getPriority() >= getEffectiveLevel().getPriority();
+    }
+
     /**
      * Will LOG a message with given LOG-level
      *
@@ -302,35 +306,55 @@ public class SimpleLog
      * @param msg   The message to LOG
      */
     public void log(Level level, Object msg) {
-        synchronized (listeners)
+        boolean printed = isPrinted(level);
+        boolean toFile = !printed && LogFileAppender.accepts(level);
+        for (LogListener listener : listeners)
         {
-            for (LogListener listener : listeners)
-            {
-                listener.onLog(this, level, msg);
-            }
+            listener.onLog(this, level, msg);
         }
-        String format = (ENABLE_GUI && !isConsolePresent()) ? MSGFORMAT : FORMAT;
-        format = format.replace("%time%", DFORMAT.format(new Date())).replace("%level%", level.getTag()).replace("%name%", name).replace("%text%", String.valueOf(msg));
-        if(level == Level.OFF || level.getPriority() < ((this.level == null) ? SimpleLog.LEVEL.getPriority() : this.level.getPriority())) {
-            logToFiles(format, level);
+        if (!printed && !toFile)
+            return;
+
+        String text = String.valueOf(msg);
+        String formatted;
+        if (ENABLE_GUI && !isConsolePresent())
+        {
+            formatted = text;
         }
         else
         {
-            print(format, level);
+            formatted = new StringBuilder(text.length() + name.length() + 24)
+                    .append('[').append(LocalTime.now().format(DFORMAT)).append("] [")
+                    .append(level.getTag()).append("] [")
+                    .append(name).append("]: ")
+                    .append(text).toString();
         }
+        if (printed)
+            print(formatted, level);
+        else
+            LogFileAppender.append(level, formatted);
+    }
+
+    /**
+     * Will LOG a message with given LOG-level. The message is only created if it would be used, see {@link #isEnabled(Level)}.
+     *
+     * @param level The level of the Log
+     * @param msg   Supplies the message to LOG
+     */
+    public void log(Level level, Supplier<?> msg)
+    {
+        if (isEnabled(level))
+            log(level, msg == null ? null : msg.get());
     }
 
     public void log(Throwable ex)
     {
-        synchronized (listeners)
+        for (LogListener listener : listeners)
         {
-            for (LogListener listener : listeners)
-            {
-                listener.onError(this, ex);
-            }
+            listener.onError(this, ex);
         }
         log(Level.FATAL, "Encountered an exception:");
-        log(Level.FATAL, ExceptionUtils.getStackTrace(ex));
+        log(Level.FATAL, (Supplier<String>) () -> ExceptionUtils.getStackTrace(ex));
     }
 
     /**
@@ -342,6 +366,15 @@ public class SimpleLog
         log(Level.TRACE, msg);
     }
 
+    /**
+     * Will LOG a message with trace level. The message is only created if it would be used.
+     *
+     * @param msg supplies the object, which should be logged
+     */
+    public void trace(Supplier<?> msg) {
+        log(Level.TRACE, msg);
+    }
+
     /**
      * Will LOG a message with debug level
      *
@@ -351,6 +384,15 @@ public class SimpleLog
         log(Level.DEBUG, msg);
     }
 
+    /**
+     * Will LOG a message with debug level. The message is only created if it would be used.
+     *
+     * @param msg supplies the object, which should be logged
+     */
+    public void debug(Supplier<?> msg) {
+        log(Level.DEBUG, msg);
+    }
+
     /**
      * Will LOG a message with info level
      *
@@ -360,6 +402,15 @@ public class SimpleLog
         log(Level.INFO, msg);
     }
 
+    /**
+     * Will LOG a message with info level. The message is only created if it would be used.
+     *
+     * @param msg supplies the object, which should be logged
+     */
+    public void info(Supplier<?> msg) {
+        log(Level.INFO, msg);
+    }
+
     /**
      * Will LOG a message with warning level
      *
@@ -369,6 +420,15 @@ public class SimpleLog
         log(Level.WARNING, msg);
     }
 
+    /**
+     * Will LOG a message with warning level. The message is only created if it would be used.
+     *
+     * @param msg supplies the object, which should be logged
+     */
+    public void warn(Supplier<?> msg) {
+        log(Level.WARNING, msg);
+    }
+
     /**
      * Will LOG a message with fatal level
      *
@@ -378,6 +438,15 @@ public class SimpleLog
         log(Level.FATAL, msg);
     }
 
+    /**
+     * Will LOG a message with fatal level. The message is only created if it would be used.
+     *
+     * @param msg supplies the object, which should be logged
+     */
+    public void fatal(Supplier<?> msg) {
+        log(Level.FATAL, msg);
+    }
+
     /**
      * prints a message to the console or as message-box.
      *
@@ -0,0 +1,281 @@
+/*
+ *	PolyphaseResampler.java
+ *
+ *	This file is part of Tritonus: http://www.tritonus.org/
+ */
+
+/*
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+
+/*
+ |<---            this code is formatted to fit into 80 columns             --->|
+ */
+
+package org.tritonus.sampled.convert;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Fixed-point polyphase resampler for 16 bit interleaved PCM.
+ * <p>
+ * The sample rate ratio is reduced to an integer ratio L/M. A windowed-sinc
+ * (Kaiser) low pass prototype filter is designed once per ratio and split into
+ * L phases of {@link #TAPS} Q14 coefficients each. These tables are shared
+ * between all resamplers with the same ratio, so e.g. 44100 to 48000 Hz
+ * (L=160, M=147) costs 24 integer multiply-adds per output sample and
+ * channel, without any float conversion of the samples.
+ * <p>
+ * Instances are not thread safe, each stream needs its own resampler because
+ * the filter history is kept between calls.
+ */
+public class PolyphaseResampler {
+
+    /** Filter taps per phase. */
+    public static final int TAPS = 24;
+
+    /** Largest supported interpolation factor L after reduction. */
+    public static final int MAX_PHASES = 1024;
+
+    private static final int COEFFICIENT_BITS = 14;
+    private static final double KAISER_BETA = 7.0;
+    private static final double ROLLOFF = 0.92;
+
+    private static final Map<Long, int[]> TABLES = new ConcurrentHashMap<>();
+
+    private final int channels;
+    private final int interpolation;    // L
+    private final int decimation;       // M
+    private final int[] coefficients;   // [phase * TAPS + tap]
+
+    /** per channel history, written twice so a window is always contiguous */
+    private final int[] history;
+    private int historyPos = 0;
+    private int phase = 0;
+
+    /**
+     * Creates a new resampler.
+     *
+     * @param sourceRate the sample rate of the input, in Hz
+     * @param targetRate the sample rate of the output, in Hz
+     * @param channels the number of interleaved channels
+     * @throws IllegalArgumentException if the rates are not integers or the
+     *             reduced ratio needs more than {@link #MAX_PHASES} phases
+     */
+    public PolyphaseResampler(float sourceRate, float targetRate,
+                              int channels) {
+        if (!isSupported(sourceRate, targetRate) || channels < 1) {
+            throw new IllegalArgumentException("unsupported resampling from "
+                    + sourceRate + " Hz to " + targetRate + " Hz");
+        }
+        int source = (int) sourceRate;
+        int target = (int) targetRate;
+        int gcd = gcd(source, target);
+        this.channels = channels;
+        this.interpolation = target / gcd;
+        this.decimation = source / gcd;
+        this.coefficients = getTable(interpolation, decimation);
+        this.history = new int[channels * TAPS * 2];
+    }
+
+    /**
+     * Returns whether a resampler can be created for the given rates.
+     *
+     * @param sourceRate the sample rate of the input, in Hz
+     * @param targetRate the sample rate of the output, in Hz
+     * @return true if both rates are positive integers and the reduced ratio
+     *         needs at most {@link #MAX_PHASES} phases
+     */
+    public static boolean isSupported(float sourceRate, float targetRate) {
+        if (sourceRate <= 0 || targetRate <= 0
+                || sourceRate != (int) sourceRate
+                || targetRate != (int) targetRate) {
+            return false;
+        }
+        int gcd = gcd((int) sourceRate, (int) targetRate);
+        return (int) targetRate / gcd <= MAX_PHASES
+                && (int) sourceRate / gcd <= MAX_PHASES;
+    }
+
+    public int getChannels() {
+        return channels;
+    }
+
+    /**
+     * Returns the maximum number of frames that {@link #process} produces for
+     * the given number of input frames.
+     *
+     * @param inputFrames number of input frames
+     * @return upper bound of produced output frames
+     */
+    public int getMaxOutputFrames(int inputFrames) {
+        return (int) (((long) inputFrames * interpolation + phase)
+                / decimation) + 1;
+    }
+
+    /**
+     * Resamples the given interleaved 16 bit frames. All input frames are
+     * consumed. The output buffer must have room for at least
+     * {@link #getMaxOutputFrames(int)} frames.
+     *
+     * @param in input samples
+     * @param inOffset byte offset of the first input frame
+     * @param inFrames number of input frames
+     * @param inBigEndian byte order of the input samples
+     * @param out output buffer
+     * @param outOffset byte offset of the first output frame
+     * @param outBigEndian byte order of the output samples
+     * @return the number of frames written to out
+     */
+    public int process(byte[] in, int inOffset, int inFrames,
+                       boolean inBigEndian, byte[] out, int outOffset,
+                       boolean outBigEndian) {
+        int hi = inBigEndian ? 0 : 1;
+        int lo = 1 - hi;
+        int outHi = outBigEndian ? 0 : 1;
+        int outLo = 1 - outHi;
+        int frameBytes = channels * 2;
+        int produced = 0;
+        int outPos = outOffset;
+
+        for (int frame = 0; frame < inFrames; frame++) {
+            // push the next input frame into the history of every channel
+            int inPos = inOffset + frame * frameBytes;
+            historyPos = historyPos == 0 ? TAPS - 1 : historyPos - 1;
+            for (int c = 0; c < channels; c++) {
+                int sample = (in[inPos + hi] << 8) | (in[inPos + lo] & 0xFF);
+                int base = c * TAPS * 2 + historyPos;
+                history[base] = sample;
+                history[base + TAPS] = sample;
+                inPos += 2;
+            }
+
+            // emit every output sample that falls before the next input
+            while (phase < interpolation) {
+                int coefficientBase = phase * TAPS;
+                for (int c = 0; c < channels; c++) {
+                    int base = c * TAPS * 2 + historyPos;
+                    int acc = 0;
+                    for (int k = 0; k < TAPS; k++) {
+                        acc += coefficients[coefficientBase + k]
+                                * history[base + k];
+                    }
+                    acc = (acc + (1 << (COEFFICIENT_BITS - 1)))
+                            >> COEFFICIENT_BITS;
+                    if (acc > Short.MAX_VALUE) {
+                        acc = Short.MAX_VALUE;
+                    } else if (acc < Short.MIN_VALUE) {
+                        acc = Short.MIN_VALUE;
+                    }
+                    out[outPos + outHi] = (byte) (acc >> 8);
+                    out[outPos + outLo] = (byte) acc;
+                    outPos += 2;
+                }
+                produced++;
+                phase += decimation;
+            }
+            phase -= interpolation;
+        }
+        return produced;
+    }
+
+    /**
+     * Number of input frames of delay introduced by the filter. Feeding this
+     * many silent frames at the end of a stream flushes the remaining output.
+     *
+     * @return the filter delay in input frames
+     */
+    public int getDelayFrames() {
+        return TAPS / 2;
+    }
+
+    /**
+     * Clears the filter history, e.g. after a seek.
+     */
+    public void reset() {
+        Arrays.fill(history, 0);
+        historyPos = 0;
+        phase = 0;
+    }
+
+    private static int[] getTable(int l, int m) {
+        return TABLES.computeIfAbsent(((long) l << 32) | m,
+                key -> createTable(l, m));
+    }
+
+    private static int[] createTable(int l, int m) {
+        int length = l * TAPS;
+        double center = (length - 1) / 2.0;
+        // cutoff relative to the upsampled rate, below both Nyquist limits
+        double cutoff = ROLLOFF * 0.5 / Math.max(l, m);
+        double i0Beta = besselI0(KAISER_BETA);
+
+        double[] prototype = new double[length];
+        for (int j = 0; j < length; j++) {
+            double x = j - center;
+            double sinc = x == 0 ? 2 * cutoff
+                    : Math.sin(2 * Math.PI * cutoff * x) / (Math.PI * x);
+            double ratio = x / (center + 1);
+            double window = besselI0(KAISER_BETA
+                    * Math.sqrt(Math.max(0, 1 - ratio * ratio))) / i0Beta;
+            prototype[j] = sinc * window;
+        }
+
+        // split into phases, normalizing each phase to unity DC gain so that
+        // the quantized filter has no phase dependent ripple
+        int[] table = new int[length];
+        for (int p = 0; p < l; p++) {
+            double sum = 0;
+            for (int k = 0; k < TAPS; k++) {
+                sum += prototype[k * l + p];
+            }
+            int quantizedSum = 0;
+            for (int k = 0; k < TAPS; k++) {
+                int value = (int) Math.round(prototype[k * l + p] / sum
+                        * (1 << COEFFICIENT_BITS));
+                table[p * TAPS + k] = value;
+                quantizedSum += value;
+            }
+            // put the rounding error on the center tap
+            table[p * TAPS + TAPS / 2] += (1 << COEFFICIENT_BITS)
+                    - quantizedSum;
+        }
+        return table;
+    }
+
+    private static double besselI0(double x) {
+        double sum = 1;
+        double term = 1;
+        double halfX = x / 2;
+        for (int k = 1; k < 50; k++) {
+            term *= (halfX / k) * (halfX / k);
+            sum += term;
+            if (term < sum * 1e-12) {
+                break;
+            }
+        }
+        return sum;
+    }
+
+    private static int gcd(int a, int b) {
+        while (b != 0) {
+            int t = a % b;
+            a = b;
+            b = t;
+        }
+        return a;
+    }
+}
@@ -0,0 +1,246 @@
+/*
+ *	PolyphaseSampleRateConversionProvider.java
+ *
+ *	This file is part of Tritonus: http://www.tritonus.org/
+ */
+
+/*
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+
+/*
+ |<---            this code is formatted to fit into 80 columns             --->|
+ */
+
+package org.tritonus.sampled.convert;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+
+import org.tritonus.share.sampled.convert.TSimpleFormatConversionProvider;
+
+/**
+ * Fast path sample rate converter for 16 bit signed PCM, using a
+ * {@link PolyphaseResampler}. <br>
+ * It does:
+ * <ul>
+ * <li>conversion between integer sample rates whose reduced ratio is small
+ * enough, e.g. 44100, 22050 or 16000 Hz to 48000 Hz
+ * <li>conversion of big/small endian
+ * </ul>
+ * It does NOT:
+ * <ul>
+ * <li>change channel count or sample size
+ * <li>handle 8, 24 or 32 bit samples. Those are left to
+ * {@link SampleRateConversionProvider}
+ * </ul>
+ */
+public class PolyphaseSampleRateConversionProvider extends
+        TSimpleFormatConversionProvider {
+
+    private static final int ALL = AudioSystem.NOT_SPECIFIED;
+    private static final AudioFormat.Encoding PCM_SIGNED =
+            AudioFormat.Encoding.PCM_SIGNED;
+    private static final AudioFormat[] FORMATS = {
+            // Encoding, SampleRate, sampleSizeInBits, channels, frameSize,
+            // frameRate, bigEndian
+            new AudioFormat(PCM_SIGNED, ALL, 16, ALL, ALL, ALL, false),
+            new AudioFormat(PCM_SIGNED, ALL, 16, ALL, ALL, ALL, true),
+    };
+
+    /**
+     * Constructor.
+     */
+    public PolyphaseSampleRateConversionProvider() {
+        super(Arrays.asList(FORMATS), Arrays.asList(FORMATS));
+    }
+
+    @Override
+    public boolean isConversionSupported(AudioFormat targetFormat,
+                                         AudioFormat sourceFormat) {
+        return PCM_SIGNED.equals(sourceFormat.getEncoding())
+                && PCM_SIGNED.equals(targetFormat.getEncoding())
+                && sourceFormat.getSampleSizeInBits() == 16
+                && targetFormat.getSampleSizeInBits() == 16
+                && sourceFormat.getChannels() > 0
+                && sourceFormat.getChannels() == targetFormat.getChannels()
+                && sourceFormat.getSampleRate() != targetFormat.getSampleRate()
+                && PolyphaseResampler.isSupported(sourceFormat.getSampleRate(),
+                        targetFormat.getSampleRate());
+    }
+
+    @Override
+    public AudioInputStream getAudioInputStream(AudioFormat targetFormat,
+                                                AudioInputStream sourceStream) {
+        AudioFormat sourceFormat = sourceStream.getFormat();
+        targetFormat = replaceNotSpecified(sourceFormat, targetFormat);
+        if (!isConversionSupported(targetFormat, sourceFormat)) {
+            throw new IllegalArgumentException(
+                    "format conversion not supported");
+        }
+        return new PolyphaseResamplerStream(sourceStream, targetFormat);
+    }
+
+    /**
+     * Stream that resamples its source with a {@link PolyphaseResampler}.
+     */
+    public static class PolyphaseResamplerStream extends AudioInputStream {
+
+        /** source frames read per block */
+        private static final int BLOCK_FRAMES = 1024;
+
+        private final AudioInputStream sourceStream;
+        private final PolyphaseResampler resampler;
+        private final boolean sourceBigEndian;
+        private final boolean targetBigEndian;
+        private final int frameBytes;
+
+        private final byte[] inBuffer;
+        private int inBufferLength = 0;
+        private final byte[] outBuffer;
+        private int outBufferPos = 0;
+        private int outBufferLength = 0;
+
+        private boolean eofReached = false;
+        private boolean flushed = false;
+        private boolean closed = false;
+
+        public PolyphaseResamplerStream(AudioInputStream sourceStream,
+                                        AudioFormat targetFormat) {
+            super(new ByteArrayInputStream(new byte[0]),
+                    new AudioFormat(PCM_SIGNED, targetFormat.getSampleRate(),
+                            16, targetFormat.getChannels(),
+                            targetFormat.getChannels() * 2,
+                            targetFormat.getSampleRate(),
+                            targetFormat.isBigEndian()),
+                    SampleRateConversionProvider.convertLength(
+                            sourceStream.getFormat(), targetFormat,
+                            sourceStream.getFrameLength()));
+            AudioFormat sourceFormat = sourceStream.getFormat();
+            this.sourceStream = sourceStream;
+            this.sourceBigEndian = sourceFormat.isBigEndian();
+            this.targetBigEndian = targetFormat.isBigEndian();
+            this.frameBytes = sourceFormat.getChannels() * 2;
+            this.resampler = new PolyphaseResampler(
+                    sourceFormat.getSampleRate(),
+                    targetFormat.getSampleRate(), sourceFormat.getChannels());
+            int maxInFrames = Math.max(BLOCK_FRAMES,
+                    resampler.getDelayFrames());
+            this.inBuffer = new byte[maxInFrames * frameBytes];
+            this.outBuffer = new byte[
+                    (resampler.getMaxOutputFrames(maxInFrames) + 1)
+                            * frameBytes];
+        }
+
+        @Override
+        public int read() throws IOException {
+            throw new IOException("cannot read fraction of a frame");
+        }
+
+        @Override
+        public int read(byte[] abData, int nOffset, int nLength)
+                throws IOException {
+            nLength -= nLength % frameBytes;
+            if (nLength == 0) {
+                return 0;
+            }
+            while (outBufferPos == outBufferLength) {
+                if (!fillOutBuffer()) {
+                    return -1;
+                }
+            }
+            int amount = Math.min(nLength, outBufferLength - outBufferPos);
+            System.arraycopy(outBuffer, outBufferPos, abData, nOffset, amount);
+            outBufferPos += amount;
+            return amount;
+        }
+
+        private boolean fillOutBuffer() throws IOException {
+            if (closed) {
+                return false;
+            }
+            outBufferPos = 0;
+            outBufferLength = 0;
+            if (!eofReached) {
+                int read = sourceStream.read(inBuffer, inBufferLength,
+                        BLOCK_FRAMES * frameBytes - inBufferLength);
+                if (read < 0) {
+                    eofReached = true;
+                } else {
+                    inBufferLength += read;
+                }
+            }
+            int frames;
+            if (eofReached) {
+                if (flushed) {
+                    return false;
+                }
+                // feed silence so that the filter delay is flushed out
+                flushed = true;
+                frames = resampler.getDelayFrames();
+                Arrays.fill(inBuffer, 0, frames * frameBytes, (byte) 0);
+                inBufferLength = 0;
+            } else {
+                frames = inBufferLength / frameBytes;
+            }
+            outBufferLength = resampler.process(inBuffer, 0, frames,
+                    sourceBigEndian, outBuffer, 0, targetBigEndian)
+                    * frameBytes;
+            if (!flushed) {
+                // keep an incomplete trailing frame for the next block
+                int remaining = inBufferLength - frames * frameBytes;
+                System.arraycopy(inBuffer, frames * frameBytes, inBuffer, 0,
+                        remaining);
+                inBufferLength = remaining;
+            }
+            return true;
+        }
+
+        @Override
+        public long skip(long nSkip) throws IOException {
+            byte[] buffer = new byte[outBuffer.length];
+            long skipped = 0;
+            while (skipped < nSkip) {
+                int read = read(buffer, 0,
+                        (int) Math.min(buffer.length, nSkip - skipped));
+                if (read <= 0) {
+                    break;
+                }
+                skipped += read;
+            }
+            return skipped;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return outBufferLength - outBufferPos;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        @Override
+        public void close() throws IOException {
+            closed = true;
+            sourceStream.close();
+        }
+    }
+}
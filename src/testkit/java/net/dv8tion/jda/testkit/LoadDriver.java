@@ -0,0 +1,434 @@
+/*
+ *     Copyright 2015-2016 Austin Keener & Michael Ritter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.dv8tion.jda.testkit;
+
+import net.dv8tion.jda.audio.AudioConnection;
+import net.dv8tion.jda.audio.AudioPacket;
+import net.dv8tion.jda.audio.AudioReceiveHandler;
+import net.dv8tion.jda.audio.AudioSendHandler;
+import net.dv8tion.jda.audio.CombinedAudio;
+import net.dv8tion.jda.audio.UserAudio;
+import net.dv8tion.jda.entities.Guild;
+import net.dv8tion.jda.entities.User;
+import net.dv8tion.jda.entities.impl.JDAImpl;
+import net.dv8tion.jda.events.Event;
+import net.dv8tion.jda.events.ReadyEvent;
+import net.dv8tion.jda.hooks.EventListener;
+import net.dv8tion.jda.managers.AudioManager;
+import net.dv8tion.jda.requests.GatewayRecorder;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Drives a JDA instance with a local {@link MockGateway} (and optionally a {@link MockVoiceServer}) and reports once
+ * per second how many events reached the listeners, their latency from the gateway to the listener and the GC activity.
+ * <p>
+ * Usage: <code>gradlew loadTest -PloadTestArgs="--guilds 50 --members 2000 --rate 5000 --duration 60"</code>
+ * <ul>
+ *     <li><code>--guilds n</code> The amount of guilds. Default 10.</li>
+ *     <li><code>--members n</code> The amount of members per guild. Default 1000.</li>
+ *     <li><code>--rate n</code> The events per second, 0 for as fast as possible. Default 1000.</li>
+ *     <li><code>--duration n</code> The seconds to send events for. Default 30.</li>
+ *     <li><code>--events file</code> Replays the dispatches of a JSON-lines file in a loop instead of synthetic events.</li>
+ *     <li><code>--voice</code> Sends audio to a voice channel of the first guild.</li>
+ *     <li><code>--speakers n</code> The amount of users playing audio in that voice channel. Default 0.</li>
+ *     <li><code>--seed n</code> The seed of the synthetic events. Default 46.</li>
+ *     <li><code>--record file</code> Records all received frames with a {@link GatewayRecorder}, to replay them with the {@link ReplayDriver}.</li>
+ * </ul>
+ */
+public class LoadDriver
+{
+    private static final long READY_TIMEOUT = TimeUnit.MINUTES.toMillis(5);
+
+    private int guilds = 10;
+    private int members = 1000;
+    private int rate = 1000;
+    private int duration = 30;
+    private File events = null;
+    private boolean voice = false;
+    private int speakers = 0;
+    private long seed = 46;
+    private File record = null;
+
+    private final Latencies latencies = new Latencies();
+    private final AtomicLong received = new AtomicLong(0);
+    private final AtomicLong audioReceived = new AtomicLong(0);
+
+    public static void main(String[] args) throws Exception
+    {
+        LoadDriver driver = new LoadDriver();
+        try
+        {
+            driver.parse(args);
+        }
+        catch (IllegalArgumentException e)
+        {
+            System.err.println(e.getMessage());
+            System.err.println("Usage: LoadDriver [--guilds n] [--members n] [--rate n] [--duration s] [--events file] [--voice] [--speakers n] [--seed n] [--record file]");
+            System.exit(1);
+        }
+        driver.run();
+        System.exit(0);
+    }
+
+    private void parse(String[] args)
+    {
+        for (int i = 0; i < args.length; i++)
+        {
+            switch (args[i])
+            {
+                case "--voice":
+                    voice = true;
+                    continue;
+                case "--guilds":
+                case "--members":
+                case "--rate":
+                case "--duration":
+                case "--events":
+                case "--speakers":
+                case "--seed":
+                case "--record":
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option! Provided: " + args[i]);
+            }
+            if (i + 1 >= args.length)
+                throw new IllegalArgumentException("Missing value of " + args[i]);
+            String value = args[++i];
+            try
+            {
+                switch (args[i - 1])
+                {
+                    case "--guilds":
+                        guilds = Integer.parseInt(value);
+                        break;
+                    case "--members":
+                        members = Integer.parseInt(value);
+                        break;
+                    case "--rate":
+                        rate = Integer.parseInt(value);
+                        break;
+                    case "--duration":
+                        duration = Integer.parseInt(value);
+                        break;
+                    case "--events":
+                        events = new File(value);
+                        break;
+                    case "--speakers":
+                        speakers = Integer.parseInt(value);
+                        voice |= speakers > 0;
+                        break;
+                    case "--seed":
+                        seed = Long.parseLong(value);
+                        break;
+                    case "--record":
+                        record = new File(value);
+                        break;
+                }
+            }
+            catch (NumberFormatException e)
+            {
+                throw new IllegalArgumentException("Not a number! Provided: " + args[i - 1] + " " + value);
+            }
+        }
+        if (rate < 0 || duration < 1 || speakers < 0)
+            throw new IllegalArgumentException("The rate and speakers can't be negative and the duration has to be at least 1 second!");
+        if (events != null && !events.isFile())
+            throw new IllegalArgumentException("The events file doesn't exist! Provided: " + events);
+    }
+
+    private void run() throws Exception
+    {
+        SyntheticEvents world = new SyntheticEvents(guilds, members, seed);
+        Iterator<JSONObject> source = events == null ? world : new Looping(MockGateway.readFrames(events));
+        try (MockGateway gateway = new MockGateway(world);
+             MockVoiceServer voiceServer = voice ? new MockVoiceServer() : null)
+        {
+            if (voiceServer != null)
+            {
+                gateway.setVoiceServer(voiceServer);
+                Random random = new Random(seed);
+                for (int i = 0; i < speakers; i++)
+                {
+                    //The receive handler only counts the encoded frames, they don't have to be valid Opus.
+                    byte[][] frames = new byte[50][120];
+                    for (byte[] frame : frames)
+                        random.nextBytes(frame);
+                    voiceServer.addSpeaker(SyntheticEvents.userId(1 + i % (members - 1)), frames);
+                }
+            }
+
+            CountDownLatch ready = new CountDownLatch(1);
+            JDAImpl api = new JDAImpl(voice, false, false);
+            if (record != null)
+                api.setGatewayRecorder(new GatewayRecorder(record));
+            api.addEventListener((EventListener) event ->
+            {
+                if (event instanceof ReadyEvent)
+                    ready.countDown();
+                else
+                    onEvent(gateway, event);
+            });
+
+            System.out.printf("Connecting to %s with %d guilds of %d members...%n", gateway.getUrl(), guilds, members);
+            long loginStart = System.nanoTime();
+            api.loginToGateway("mock-token", gateway.getUrl(), null);
+            if (!ready.await(READY_TIMEOUT, TimeUnit.MILLISECONDS))
+                throw new IllegalStateException("JDA didn't get ready within " + READY_TIMEOUT + "ms");
+            System.out.printf("Ready after %d ms, %d users cached.%n",
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - loginStart), api.getUsers().size());
+
+            if (voiceServer != null)
+                connectVoice(api);
+
+            MockGateway.Stream stream = gateway.stream(source, rate);
+            report(stream, voiceServer);
+            stream.stop();
+            api.shutdown();
+        }
+    }
+
+    private void onEvent(MockGateway gateway, Event event)
+    {
+        long sentAt = gateway.getSentNanos(event.getResponseNumber());
+        received.incrementAndGet();
+        if (sentAt != 0)
+            latencies.add(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - sentAt));
+    }
+
+    private void connectVoice(JDAImpl api)
+    {
+        Guild guild = api.getGuildById(SyntheticEvents.guildId(0));
+        AudioManager manager = api.getAudioManager(guild);
+        manager.setSendingHandler(new Sine());
+        manager.setReceivingHandler(new EncodedCounter());
+        manager.openAudioConnection(guild.getVoiceChannels().get(0));
+    }
+
+    private void report(MockGateway.Stream stream, MockVoiceServer voiceServer) throws InterruptedException
+    {
+        List<GarbageCollectorMXBean> collectors = ManagementFactory.getGarbageCollectorMXBeans();
+        long lastReceived = received.get();
+        long lastSent = stream.getSentCount();
+        long lastGcCount = gcCount(collectors);
+        long lastGcTime = gcTime(collectors);
+        long total = 0;
+        long[] all = new long[0];
+
+        System.out.println(" sec |  sent/s | events/s |  p50 us |  p99 us |  max us |  gc | gc ms | heap MB" + (voiceServer != null ? " | audio out | audio in | lost" : ""));
+        for (int second = 1; second <= duration; second++)
+        {
+            Thread.sleep(1000);
+            long nowReceived = received.get();
+            long nowSent = stream.getSentCount();
+            long nowGcCount = gcCount(collectors);
+            long nowGcTime = gcTime(collectors);
+            long[] window = latencies.drain();
+            total += window.length;
+            all = merge(all, window);
+            long heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed() >> 20;
+
+            System.out.printf("%4d | %7d | %8d | %7d | %7d | %7d | %3d | %5d | %7d",
+                    second, nowSent - lastSent, nowReceived - lastReceived,
+                    percentile(window, 0.5), percentile(window, 0.99), percentile(window, 1),
+                    nowGcCount - lastGcCount, nowGcTime - lastGcTime, heap);
+            if (voiceServer != null)
+                System.out.printf(" | %9d | %8d | %4d", voiceServer.getFramesReceived(), audioReceived.get(), voiceServer.getFramesLost());
+            System.out.println();
+
+            lastReceived = nowReceived;
+            lastSent = nowSent;
+            lastGcCount = nowGcCount;
+            lastGcTime = nowGcTime;
+        }
+        System.out.printf("Total: %d events, %.1f events/s, latency p50 %d us, p99 %d us, p99.9 %d us, max %d us, %d GCs, %d ms in GC%n",
+                total, total / (double) duration, percentile(all, 0.5), percentile(all, 0.99), percentile(all, 0.999),
+                percentile(all, 1), gcCount(collectors), gcTime(collectors));
+    }
+
+    private static long gcCount(List<GarbageCollectorMXBean> collectors)
+    {
+        long count = 0;
+        for (GarbageCollectorMXBean collector : collectors)
+            count += Math.max(0, collector.getCollectionCount());
+        return count;
+    }
+
+    private static long gcTime(List<GarbageCollectorMXBean> collectors)
+    {
+        long time = 0;
+        for (GarbageCollectorMXBean collector : collectors)
+            time += Math.max(0, collector.getCollectionTime());
+        return time;
+    }
+
+    /**
+     * The percentile of sorted values.
+     */
+    private static long percentile(long[] sorted, double percentile)
+    {
+        if (sorted.length == 0)
+            return 0;
+        int index = (int) Math.ceil(percentile * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+    }
+
+    private static long[] merge(long[] a, long[] b)
+    {
+        long[] merged = Arrays.copyOf(a, a.length + b.length);
+        System.arraycopy(b, 0, merged, a.length, b.length);
+        Arrays.sort(merged);
+        return merged;
+    }
+
+    /**
+     * The latencies measured since the last report.
+     */
+    private static class Latencies
+    {
+        private long[] values = new long[1 << 12];
+        private int size = 0;
+
+        private synchronized void add(long value)
+        {
+            if (size == values.length)
+                values = Arrays.copyOf(values, size * 2);
+            values[size++] = value;
+        }
+
+        /**
+         * @return
+         *      The sorted latencies, which are removed.
+         */
+        private synchronized long[] drain()
+        {
+            long[] drained = Arrays.copyOf(values, size);
+            size = 0;
+            Arrays.sort(drained);
+            return drained;
+        }
+    }
+
+    /**
+     * Repeats recorded frames forever.
+     */
+    private static class Looping implements Iterator<JSONObject>
+    {
+        private final List<JSONObject> frames;
+        private int index = 0;
+
+        private Looping(List<JSONObject> frames)
+        {
+            if (frames.isEmpty())
+                throw new IllegalArgumentException("The events file contains no dispatches!");
+            this.frames = frames;
+        }
+
+        @Override
+        public boolean hasNext()
+        {
+            return true;
+        }
+
+        @Override
+        public JSONObject next()
+        {
+            JSONObject frame = frames.get(index);
+            index = (index + 1) % frames.size();
+            return frame;
+        }
+    }
+
+    /**
+     * A 440Hz sine tone.
+     */
+    private static class Sine implements AudioSendHandler
+    {
+        private static final int SAMPLES = AudioConnection.OPUS_FRAME_SIZE;
+        private long sample = 0;
+
+        @Override
+        public boolean canProvide()
+        {
+            return true;
+        }
+
+        @Override
+        public byte[] provide20MsAudio()
+        {
+            byte[] audio = new byte[SAMPLES * 4];
+            for (int i = 0; i < SAMPLES; i++, sample++)
+            {
+                short value = (short) (Math.sin(2 * Math.PI * 440 * sample / AudioConnection.OPUS_SAMPLE_RATE) * 8000);
+                for (int channel = 0; channel < 2; channel++)
+                {
+                    audio[i * 4 + channel * 2] = (byte) (value >> 8);
+                    audio[i * 4 + channel * 2 + 1] = (byte) value;
+                }
+            }
+            return audio;
+        }
+    }
+
+    /**
+     * Counts the received audio without decoding it.
+     */
+    private class EncodedCounter implements AudioReceiveHandler
+    {
+        @Override
+        public boolean canReceiveCombined()
+        {
+            return false;
+        }
+
+        @Override
+        public boolean canReceiveUser()
+        {
+            return false;
+        }
+
+        @Override
+        public boolean canReceiveEncoded()
+        {
+            return true;
+        }
+
+        @Override
+        public void handleEncodedAudio(User user, AudioPacket packet)
+        {
+            audioReceived.incrementAndGet();
+        }
+
+        @Override
+        public void handleCombinedAudio(CombinedAudio combinedAudio) {}
+
+        @Override
+        public void handleUserAudio(UserAudio userAudio) {}
+
+        @Override
+        public void handleUserTalking(User user, boolean talking) {}
+    }
+}
@@ -0,0 +1,448 @@
+/*
+ *     Copyright 2015-2016 Austin Keener & Michael Ritter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.dv8tion.jda.testkit;
+
+import net.dv8tion.jda.utils.SimpleLog;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.Deflater;
+
+/**
+ * A local gateway speaking enough of Discord's gateway protocol (v6) to connect JDA to it:
+ * <ul>
+ *     <li>HELLO when a client connects, and heartbeat ACKs</li>
+ *     <li>READY after an IDENTIFY, followed by a GUILD_CREATE for every guild of the {@link SyntheticEvents}</li>
+ *     <li>GUILD_MEMBERS_CHUNKs for large guilds</li>
+ *     <li>RESUMED after a RESUME</li>
+ *     <li>VOICE_STATE_UPDATE and VOICE_SERVER_UPDATE pointing to a {@link MockVoiceServer}, after a voice state update (op 4)</li>
+ * </ul>
+ * Events are dispatched with {@link #dispatch(JSONObject)}, or streamed at a fixed rate with {@link #stream(Iterator, int)}
+ * from synthetic events or from recorded frames read with {@link #readFrames(File)}.
+ */
+public class MockGateway implements Closeable
+{
+    public static final SimpleLog LOG = SimpleLog.getLog("JDAMockGateway");
+    public static final int HEARTBEAT_INTERVAL = 41250;
+    private static final int CHUNK_SIZE = 1000;
+    private static final int SENT_TIMES = 1 << 16;
+
+    private final SyntheticEvents world;
+    private final MockWebSocketServer server;
+    private final AtomicInteger sessionCount = new AtomicInteger(0);
+    private final AtomicLong dispatched = new AtomicLong(0);
+    private volatile Session current;
+    private volatile MockVoiceServer voiceServer;
+
+    /**
+     * Starts the gateway on a free port of localhost.
+     *
+     * @param world
+     *          The guilds sent to the clients.
+     * @throws IOException
+     *          If the server can't be started.
+     */
+    public MockGateway(SyntheticEvents world) throws IOException
+    {
+        this.world = world;
+        this.server = new MockWebSocketServer(0, new Handler());
+    }
+
+    public String getUrl()
+    {
+        return server.getUrl();
+    }
+
+    /**
+     * The voice server that VOICE_SERVER_UPDATEs point to. Without one, voice state updates are ignored.
+     *
+     * @param voiceServer
+     *          The voice server, or null.
+     */
+    public void setVoiceServer(MockVoiceServer voiceServer)
+    {
+        this.voiceServer = voiceServer;
+    }
+
+    /**
+     * Whether the latest client finished receiving its READY and guilds.
+     *
+     * @return
+     *      True, if events dispatched now reach a ready client.
+     */
+    public boolean isReady()
+    {
+        Session session = current;
+        return session != null && session.ready;
+    }
+
+    public long getDispatchedCount()
+    {
+        return dispatched.get();
+    }
+
+    /**
+     * The time a dispatch was sent to the latest client, to measure the latency until a listener got it.
+     *
+     * @param sequence
+     *          The sequence number of the dispatch, the response number of the JDA event.
+     * @return
+     *      The {@link System#nanoTime()} it was sent at, or 0 if it is unknown.
+     */
+    public long getSentNanos(int sequence)
+    {
+        Session session = current;
+        if (session == null || sequence <= 0 || sequence > session.sequence || session.sequence - sequence >= SENT_TIMES)
+            return 0;
+        return session.sentAt[sequence & (SENT_TIMES - 1)];
+    }
+
+    /**
+     * Sends an event to all connected and identified clients.
+     *
+     * @param frame
+     *          A dispatch frame (op 0) with type and data. The sequence number is set per client.
+     */
+    public void dispatch(JSONObject frame)
+    {
+        for (MockWebSocketServer.Connection connection : server.getConnections())
+        {
+            Session session = connection.getAttachment();
+            if (session != null && session.identified)
+                session.dispatch(frame.getString("t"), frame.get("d"));
+        }
+    }
+
+    /**
+     * Dispatches events from a separate thread at the given rate, until the events end or the stream is stopped.
+     *
+     * @param events
+     *          The dispatch frames to send.
+     * @param eventsPerSecond
+     *          The rate, or 0 to send as fast as possible.
+     * @return
+     *      The running stream.
+     */
+    public Stream stream(Iterator<JSONObject> events, int eventsPerSecond)
+    {
+        Stream stream = new Stream(events, eventsPerSecond);
+        Thread thread = new Thread(stream, "JDA MockGateway Stream");
+        thread.setDaemon(true);
+        thread.start();
+        return stream;
+    }
+
+    /**
+     * Drops the connection of all clients without a close handshake. JDA reconnects and resumes.
+     */
+    public void dropConnections()
+    {
+        server.getConnections().forEach(MockWebSocketServer.Connection::terminate);
+    }
+
+    @Override
+    public void close()
+    {
+        server.close();
+    }
+
+    /**
+     * Reads recorded dispatch frames, one JSON frame per line. Frames that aren't dispatches (op 0) are skipped.
+     *
+     * @param file
+     *          The file to read.
+     * @return
+     *      The frames.
+     * @throws IOException
+     *          If the file can't be read.
+     */
+    public static List<JSONObject> readFrames(File file) throws IOException
+    {
+        List<JSONObject> frames = new ArrayList<>();
+        for (String line : Files.readAllLines(file.toPath(), StandardCharsets.UTF_8))
+        {
+            if (line.trim().isEmpty())
+                continue;
+            JSONObject frame = new JSONObject(line);
+            if (frame.optInt("op", -1) == 0)
+                frames.add(frame);
+        }
+        return frames;
+    }
+
+    private static byte[] compress(String message)
+    {
+        Deflater deflater = new Deflater();
+        deflater.setInput(message.getBytes(StandardCharsets.UTF_8));
+        deflater.finish();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        while (!deflater.finished())
+            out.write(buffer, 0, deflater.deflate(buffer));
+        deflater.end();
+        return out.toByteArray();
+    }
+
+    /**
+     * Dispatches events at a fixed rate.
+     */
+    public class Stream implements Runnable
+    {
+        private final Iterator<JSONObject> events;
+        private final int eventsPerSecond;
+        private final AtomicLong sent = new AtomicLong(0);
+        private volatile boolean stopped = false;
+
+        private Stream(Iterator<JSONObject> events, int eventsPerSecond)
+        {
+            this.events = events;
+            this.eventsPerSecond = eventsPerSecond;
+        }
+
+        public long getSentCount()
+        {
+            return sent.get();
+        }
+
+        public void stop()
+        {
+            stopped = true;
+        }
+
+        @Override
+        public void run()
+        {
+            long start = System.nanoTime();
+            while (!stopped && events.hasNext())
+            {
+                if (eventsPerSecond > 0)
+                {
+                    //Sends whatever is due since the start, a slow send is caught up on instead of lowering the rate.
+                    long due = (System.nanoTime() - start) * eventsPerSecond / 1_000_000_000L;
+                    if (sent.get() >= due)
+                    {
+                        try
+                        {
+                            Thread.sleep(1);
+                        }
+                        catch (InterruptedException e)
+                        {
+                            return;
+                        }
+                        continue;
+                    }
+                }
+                dispatch(events.next());
+                sent.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * The gateway session of a connection.
+     */
+    private class Session
+    {
+        private final MockWebSocketServer.Connection connection;
+        private final long[] sentAt = new long[SENT_TIMES];
+        private final String sessionId = "session" + sessionCount.incrementAndGet();
+        private volatile int sequence = 0;
+        private volatile boolean identified = false;
+        private volatile boolean ready = false;
+        private int largeThreshold = 50;
+        private int chunkedGuilds = 0;
+
+        private Session(MockWebSocketServer.Connection connection)
+        {
+            this.connection = connection;
+        }
+
+        private synchronized void dispatch(String type, Object data)
+        {
+            //The sequence has to match the order the frames are written in.
+            int seq = ++sequence;
+            sentAt[seq & (SENT_TIMES - 1)] = System.nanoTime();
+            connection.sendText(new JSONObject().put("op", 0).put("t", type).put("s", seq).put("d", data).toString());
+            dispatched.incrementAndGet();
+        }
+
+        private void send(int op, Object data)
+        {
+            connection.sendText(new JSONObject().put("op", op).put("d", data).toString());
+        }
+
+        private void identify(JSONObject identify)
+        {
+            largeThreshold = identify.optInt("large_threshold", 50);
+            JSONArray guilds = new JSONArray();
+            for (int guild = 0; guild < world.getGuildCount(); guild++)
+                guilds.put(new JSONObject().put("id", SyntheticEvents.guildId(guild)).put("unavailable", true));
+            JSONObject ready = new JSONObject()
+                    .put("v", 6)
+                    .put("user", world.selfUser())
+                    .put("guilds", guilds)
+                    .put("private_channels", new JSONArray())
+                    .put("session_id", sessionId)
+                    .put("_trace", new JSONArray().put("mock-gateway"));
+            identified = true;
+            current = this;
+            if (identify.optBoolean("compress"))
+            {
+                //Like Discord, only the READY is compressed.
+                synchronized (this)
+                {
+                    int seq = ++sequence;
+                    connection.sendBinary(compress(new JSONObject().put("op", 0).put("t", "READY").put("s", seq).put("d", ready).toString()));
+                }
+            }
+            else
+            {
+                dispatch("READY", ready);
+            }
+            for (int guild = 0; guild < world.getGuildCount(); guild++)
+                dispatch("GUILD_CREATE", world.guild(guild, largeThreshold));
+            //Large guilds are only ready after their chunks, which are requested by the client.
+            if (world.getMemberCount() <= largeThreshold)
+                this.ready = true;
+        }
+
+        private void requestMembers(JSONObject request)
+        {
+            Object ids = request.get("guild_id");
+            List<String> guildIds = new ArrayList<>();
+            if (ids instanceof JSONArray)
+                ((JSONArray) ids).forEach(id -> guildIds.add(id.toString()));
+            else
+                guildIds.add(ids.toString());
+            for (String guildId : guildIds)
+            {
+                int guild = -1;
+                for (int i = 0; i < world.getGuildCount(); i++)
+                {
+                    if (SyntheticEvents.guildId(i).equals(guildId))
+                        guild = i;
+                }
+                if (guild == -1)
+                {
+                    LOG.warn("Client requested the members of an unknown guild: " + guildId);
+                    continue;
+                }
+                for (int from = 0; from < world.getMemberCount(); from += CHUNK_SIZE)
+                {
+                    dispatch("GUILD_MEMBERS_CHUNK", new JSONObject()
+                            .put("guild_id", guildId)
+                            .put("members", world.members(guild, from, Math.min(from + CHUNK_SIZE, world.getMemberCount()))));
+                }
+                chunkedGuilds++;
+            }
+            if (chunkedGuilds >= world.getGuildCount())
+                ready = true;
+        }
+
+        private void updateVoiceState(JSONObject state)
+        {
+            MockVoiceServer voice = voiceServer;
+            if (voice == null)
+            {
+                LOG.debug("Ignoring voice state update, there is no voice server: " + state);
+                return;
+            }
+            String guildId = state.getString("guild_id");
+            boolean leave = state.isNull("channel_id");
+            dispatch("VOICE_STATE_UPDATE", new JSONObject()
+                    .put("guild_id", guildId)
+                    .put("channel_id", state.get("channel_id"))
+                    .put("user_id", SyntheticEvents.SELF_ID)
+                    .put("session_id", leave ? JSONObject.NULL : sessionId)
+                    .put("deaf", false)
+                    .put("mute", false)
+                    .put("self_deaf", state.optBoolean("self_deaf"))
+                    .put("self_mute", state.optBoolean("self_mute"))
+                    .put("suppress", false));
+            if (!leave)
+            {
+                dispatch("VOICE_SERVER_UPDATE", new JSONObject()
+                        .put("guild_id", guildId)
+                        .put("token", voice.createToken(guildId))
+                        .put("endpoint", voice.getUrl()));
+            }
+        }
+    }
+
+    private class Handler implements MockWebSocketServer.Handler
+    {
+        @Override
+        public void onOpen(MockWebSocketServer.Connection connection)
+        {
+            connection.setAttachment(new Session(connection));
+            connection.sendText(new JSONObject()
+                    .put("op", 10)
+                    .put("d", new JSONObject()
+                            .put("heartbeat_interval", HEARTBEAT_INTERVAL)
+                            .put("_trace", new JSONArray().put("mock-gateway")))
+                    .toString());
+        }
+
+        @Override
+        public void onText(MockWebSocketServer.Connection connection, String message)
+        {
+            Session session = connection.getAttachment();
+            JSONObject content = new JSONObject(message);
+            int op = content.getInt("op");
+            switch (op)
+            {
+                case 1:
+                    session.send(11, JSONObject.NULL);
+                    break;
+                case 2:
+                    session.identify(content.getJSONObject("d"));
+                    break;
+                case 3:
+                    break;
+                case 4:
+                    session.updateVoiceState(content.getJSONObject("d"));
+                    break;
+                case 6:
+                    //Sessions are only kept per connection, a resume starts over with the sequence of the client.
+                    session.sequence = content.getJSONObject("d").getInt("seq");
+                    session.identified = true;
+                    session.ready = true;
+                    current = session;
+                    session.dispatch("RESUMED", new JSONObject().put("_trace", new JSONArray().put("mock-gateway")));
+                    break;
+                case 8:
+                    session.requestMembers(content.getJSONObject("d"));
+                    break;
+                default:
+                    LOG.warn("Received an unknown op " + op + ": " + message);
+            }
+        }
+
+        @Override
+        public void onClose(MockWebSocketServer.Connection connection, int code)
+        {
+            LOG.debug("Client disconnected with code " + code);
+        }
+    }
+}
@@ -0,0 +1,404 @@
+/*
+ *     Copyright 2015-2016 Austin Keener & Michael Ritter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.dv8tion.jda.testkit;
+
+import net.dv8tion.jda.audio.AudioConnection;
+import net.dv8tion.jda.audio.AudioPacket;
+import net.dv8tion.jda.audio.AudioWebSocket;
+import net.dv8tion.jda.requests.KeepAliveScheduler;
+import net.dv8tion.jda.utils.SimpleLog;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A local voice server compatible with {@link net.dv8tion.jda.audio.AudioWebSocket AudioWebSocket}:
+ * the voice WebSocket (identify, select protocol, heartbeats, speaking) and a UDP endpoint for the IP discovery and
+ * xsalsa20_poly1305 encrypted RTP audio.
+ * <p>
+ * The server decrypts and counts the audio frames JDA sends. It can also play Opus frames as other users with
+ * {@link #addSpeaker(String, byte[][])}, to load the receiving side of JDA.
+ */
+public class MockVoiceServer implements Closeable
+{
+    public static final SimpleLog LOG = SimpleLog.getLog("JDAMockVoice");
+    public static final int HEARTBEAT_INTERVAL = 5000;
+    private static final int DISCOVERY_LENGTH = 70;
+
+    private final MockWebSocketServer server;
+    private final DatagramSocket udpSocket;
+    private final Map<String, String> tokens = new ConcurrentHashMap<>();
+    private final Map<Integer, Session> sessions = new ConcurrentHashMap<>();
+    private final List<Speaker> speakers = new CopyOnWriteArrayList<>();
+    private final AtomicInteger nextSsrc = new AtomicInteger(1);
+    private final Random random = new Random();
+
+    private final AtomicLong framesReceived = new AtomicLong(0);
+    private final AtomicLong framesLost = new AtomicLong(0);
+    private final AtomicLong framesSent = new AtomicLong(0);
+    private final AtomicLong decryptFailures = new AtomicLong(0);
+
+    /**
+     * Starts the voice WebSocket and UDP endpoint on free ports of localhost.
+     *
+     * @throws IOException
+     *          If the server can't be started.
+     */
+    public MockVoiceServer() throws IOException
+    {
+        this.server = new MockWebSocketServer(0, new Handler());
+        this.udpSocket = new DatagramSocket(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        Thread receiver = new Thread(this::receive, "JDA MockVoice UDP");
+        receiver.setDaemon(true);
+        receiver.start();
+    }
+
+    /**
+     * The endpoint sent in VOICE_SERVER_UPDATEs.
+     *
+     * @return
+     *      The url of the voice WebSocket.
+     */
+    public String getUrl()
+    {
+        return server.getUrl();
+    }
+
+    public int getUdpPort()
+    {
+        return udpSocket.getLocalPort();
+    }
+
+    /**
+     * Creates the token a client has to identify with to connect to the given guild.
+     *
+     * @param guildId
+     *          The id of the guild.
+     * @return
+     *      The token.
+     */
+    public String createToken(String guildId)
+    {
+        String token = Long.toHexString(random.nextLong());
+        tokens.put(token, guildId);
+        return token;
+    }
+
+    /**
+     * Plays the given Opus frames in a loop as the given user, to every connected client.
+     *
+     * @param userId
+     *          The id of the speaking user.
+     * @param opusFrames
+     *          20ms Opus frames.
+     */
+    public void addSpeaker(String userId, byte[][] opusFrames)
+    {
+        if (opusFrames.length == 0)
+            throw new IllegalArgumentException("A speaker needs at least one frame!");
+        speakers.add(new Speaker(userId, nextSsrc.getAndIncrement(), opusFrames));
+    }
+
+    /**
+     * The audio frames received from all clients and successfully decrypted.
+     */
+    public long getFramesReceived()
+    {
+        return framesReceived.get();
+    }
+
+    /**
+     * The audio frames that never arrived, detected by gaps in the sequence of a client.
+     */
+    public long getFramesLost()
+    {
+        return framesLost.get();
+    }
+
+    /**
+     * The audio frames sent to clients by speakers.
+     */
+    public long getFramesSent()
+    {
+        return framesSent.get();
+    }
+
+    public long getDecryptFailures()
+    {
+        return decryptFailures.get();
+    }
+
+    @Override
+    public void close()
+    {
+        sessions.values().forEach(Session::stop);
+        server.close();
+        udpSocket.close();
+    }
+
+    private void receive()
+    {
+        byte[] buffer = new byte[2048];
+        DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+        while (!udpSocket.isClosed())
+        {
+            try
+            {
+                packet.setLength(buffer.length);
+                udpSocket.receive(packet);
+                if (packet.getLength() == DISCOVERY_LENGTH)
+                    discover(packet);
+                else if (packet.getLength() > AudioPacket.RTP_HEADER_BYTE_LENGTH)
+                    receiveAudio(packet);
+                //Anything else is a keep-alive.
+            }
+            catch (SocketException e)
+            {
+                return;
+            }
+            catch (IOException e)
+            {
+                LOG.log(e);
+            }
+        }
+    }
+
+    private void discover(DatagramPacket packet) throws IOException
+    {
+        int ssrc = ByteBuffer.wrap(packet.getData(), 0, 4).getInt();
+        Session session = sessions.get(ssrc);
+        if (session == null)
+        {
+            LOG.warn("Received an IP discovery for an unknown ssrc: " + ssrc);
+            return;
+        }
+        session.client = (InetSocketAddress) packet.getSocketAddress();
+
+        //ssrc, the ip as null terminated string and the port as little endian unsigned short in the last 2 bytes.
+        ByteBuffer response = ByteBuffer.allocate(DISCOVERY_LENGTH).order(ByteOrder.LITTLE_ENDIAN);
+        response.putInt(0, Integer.reverseBytes(ssrc));
+        byte[] ip = packet.getAddress().getHostAddress().getBytes(StandardCharsets.US_ASCII);
+        response.position(4);
+        response.put(ip);
+        response.putShort(DISCOVERY_LENGTH - 2, (short) packet.getPort());
+        udpSocket.send(new DatagramPacket(response.array(), DISCOVERY_LENGTH, packet.getSocketAddress()));
+    }
+
+    private void receiveAudio(DatagramPacket datagram)
+    {
+        AudioPacket packet = new AudioPacket(datagram);
+        Session session = sessions.get(packet.getSSRC());
+        if (session == null || session.secretKey == null)
+            return;
+        try
+        {
+            AudioPacket.decryptAudioPacket(packet, session.secretKey);
+        }
+        catch (RuntimeException e)
+        {
+            //TweetNaCl returns null for packets that fail the authentication.
+            decryptFailures.incrementAndGet();
+            return;
+        }
+        int sequence = packet.getSequence();
+        if (session.lastSequence >= 0)
+        {
+            int gap = (sequence - session.lastSequence - 1) & 0xFFFF;
+            //Reordered or duplicated packets show up as huge gaps, they aren't losses.
+            if (gap < 0x8000)
+                framesLost.addAndGet(gap);
+        }
+        session.lastSequence = sequence;
+        framesReceived.incrementAndGet();
+    }
+
+    /**
+     * A user playing Opus frames.
+     */
+    private static class Speaker
+    {
+        private final String userId;
+        private final int ssrc;
+        private final byte[][] frames;
+
+        private Speaker(String userId, int ssrc, byte[][] frames)
+        {
+            this.userId = userId;
+            this.ssrc = ssrc;
+            this.frames = frames;
+        }
+    }
+
+    /**
+     * The voice connection of a client.
+     */
+    private class Session
+    {
+        private final MockWebSocketServer.Connection connection;
+        private final int ssrc = nextSsrc.getAndIncrement() + 1_000_000;
+        private volatile InetSocketAddress client;
+        private volatile byte[] secretKey;
+        private volatile int lastSequence = -1;
+        private ScheduledFuture<?> speaking;
+        private char speakerSequence = 0;
+        private int speakerFrame = 0;
+
+        private Session(MockWebSocketServer.Connection connection)
+        {
+            this.connection = connection;
+        }
+
+        private void send(int op, Object data)
+        {
+            connection.sendText(new JSONObject().put("op", op).put("d", data).toString());
+        }
+
+        private void identify(JSONObject identify)
+        {
+            String guildId = tokens.get(identify.getString("token"));
+            if (guildId == null || !guildId.equals(identify.getString("server_id")))
+            {
+                //4004 is the close code of Discord for a failed authentication.
+                connection.close(4004, "Authentication failed.");
+                return;
+            }
+            sessions.put(ssrc, this);
+            send(AudioWebSocket.INITIAL_CONNECTION_RESPONSE, new JSONObject()
+                    .put("ssrc", ssrc)
+                    .put("port", getUdpPort())
+                    .put("modes", new JSONArray().put("xsalsa20_poly1305"))
+                    .put("heartbeat_interval", HEARTBEAT_INTERVAL));
+        }
+
+        private void selectProtocol(JSONObject protocol)
+        {
+            String mode = protocol.getJSONObject("data").getString("mode");
+            if (!mode.equals("xsalsa20_poly1305"))
+            {
+                connection.close(4016, "Unknown encryption mode.");
+                return;
+            }
+            byte[] key = new byte[AudioWebSocket.DISCORD_SECRET_KEY_LENGTH];
+            random.nextBytes(key);
+            JSONArray keyArray = new JSONArray();
+            for (byte b : key)
+                keyArray.put(b & 0xFF);
+            secretKey = key;
+            send(AudioWebSocket.CONNECTING_COMPLETED, new JSONObject().put("secret_key", keyArray).put("mode", mode));
+
+            if (!speakers.isEmpty())
+            {
+                for (Speaker speaker : speakers)
+                {
+                    send(AudioWebSocket.USER_SPEAKING_UPDATE, new JSONObject()
+                            .put("user_id", speaker.userId)
+                            .put("ssrc", speaker.ssrc)
+                            .put("speaking", true));
+                }
+                speaking = KeepAliveScheduler.schedule(this::speak, AudioConnection.OPUS_FRAME_TIME_AMOUNT, AudioConnection.OPUS_FRAME_TIME_AMOUNT);
+            }
+        }
+
+        private void speak()
+        {
+            InetSocketAddress address = client;
+            if (address == null || !connection.isOpen())
+                return;
+            char sequence = speakerSequence++;
+            int timestamp = sequence * AudioConnection.OPUS_FRAME_SIZE;
+            try
+            {
+                for (Speaker speaker : speakers)
+                {
+                    byte[] frame = speaker.frames[speakerFrame % speaker.frames.length];
+                    udpSocket.send(new AudioPacket(sequence, timestamp, speaker.ssrc, frame).asEncryptedUdpPacket(address, secretKey));
+                    framesSent.incrementAndGet();
+                }
+                speakerFrame++;
+            }
+            catch (IOException e)
+            {
+                LOG.log(e);
+            }
+        }
+
+        private void stop()
+        {
+            if (speaking != null)
+                speaking.cancel(false);
+            sessions.remove(ssrc);
+        }
+    }
+
+    private class Handler implements MockWebSocketServer.Handler
+    {
+        @Override
+        public void onOpen(MockWebSocketServer.Connection connection)
+        {
+            connection.setAttachment(new Session(connection));
+        }
+
+        @Override
+        public void onText(MockWebSocketServer.Connection connection, String message)
+        {
+            Session session = connection.getAttachment();
+            JSONObject content = new JSONObject(message);
+            int op = content.getInt("op");
+            switch (op)
+            {
+                case 0:
+                    session.identify(content.getJSONObject("d"));
+                    break;
+                case 1:
+                    session.selectProtocol(content.getJSONObject("d"));
+                    break;
+                case 3:
+                    session.send(AudioWebSocket.HEARTBEAT_PING_RETURN, content.get("d"));
+                    break;
+                case 5:
+                    break;
+                default:
+                    LOG.warn("Received an unknown voice op " + op + ": " + message);
+            }
+        }
+
+        @Override
+        public void onClose(MockWebSocketServer.Connection connection, int code)
+        {
+            Session session = connection.getAttachment();
+            if (session != null)
+                session.stop();
+        }
+    }
+}
@@ -0,0 +1,383 @@
+/*
+ *     Copyright 2015-2016 Austin Keener & Michael Ritter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.dv8tion.jda.testkit;
+
+import net.dv8tion.jda.utils.SimpleLog;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A minimal WebSocket server (RFC 6455) on localhost, without TLS and extensions.
+ * It understands exactly what JDA's WebSocket client sends: masked text frames, pings and close frames.
+ * <p>
+ * Every connection is read by its own thread, which calls the {@link Handler}. Messages can be sent from any thread.
+ */
+public class MockWebSocketServer implements Closeable
+{
+    public static final SimpleLog LOG = SimpleLog.getLog("JDAMockSocket");
+    private static final String ACCEPT_GUID = "258EAFA5-E914-47DA-95CA-C5AB0DC85B11";
+    private static final AtomicInteger THREAD_COUNT = new AtomicInteger(0);
+
+    private static final int OP_CONTINUATION = 0x0;
+    private static final int OP_TEXT = 0x1;
+    private static final int OP_BINARY = 0x2;
+    private static final int OP_CLOSE = 0x8;
+    private static final int OP_PING = 0x9;
+    private static final int OP_PONG = 0xA;
+
+    /**
+     * Receives the events of the connections. Called by the reading thread of the connection.
+     */
+    public interface Handler
+    {
+        void onOpen(Connection connection);
+
+        void onText(Connection connection, String message);
+
+        void onClose(Connection connection, int code);
+    }
+
+    private final ServerSocket serverSocket;
+    private final Handler handler;
+    private final List<Connection> connections = new CopyOnWriteArrayList<>();
+    private volatile boolean closed = false;
+
+    /**
+     * Starts the server on the loopback address.
+     *
+     * @param port
+     *          The port, or 0 to use any free port.
+     * @param handler
+     *          The handler of all connections.
+     * @throws IOException
+     *          If the port can't be bound.
+     */
+    public MockWebSocketServer(int port, Handler handler) throws IOException
+    {
+        this.handler = handler;
+        this.serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+        Thread accept = new Thread(this::accept, "JDA MockWebSocket Accept " + THREAD_COUNT.incrementAndGet());
+        accept.setDaemon(true);
+        accept.start();
+    }
+
+    public int getPort()
+    {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * The url clients connect to.
+     *
+     * @return
+     *      The url, e.g. <code>ws://127.0.0.1:43512</code>
+     */
+    public String getUrl()
+    {
+        return "ws://" + serverSocket.getInetAddress().getHostAddress() + ":" + getPort();
+    }
+
+    public List<Connection> getConnections()
+    {
+        return connections;
+    }
+
+    @Override
+    public void close()
+    {
+        closed = true;
+        try
+        {
+            serverSocket.close();
+        }
+        catch (IOException ignored) {}
+        connections.forEach(Connection::terminate);
+    }
+
+    private void accept()
+    {
+        while (!closed)
+        {
+            try
+            {
+                Socket socket = serverSocket.accept();
+                socket.setTcpNoDelay(true);
+                Connection connection = new Connection(socket);
+                Thread reader = new Thread(connection::run, "JDA MockWebSocket Connection " + THREAD_COUNT.incrementAndGet());
+                reader.setDaemon(true);
+                reader.start();
+            }
+            catch (IOException e)
+            {
+                if (!closed)
+                    LOG.log(e);
+            }
+        }
+    }
+
+    /**
+     * A connected client.
+     */
+    public class Connection
+    {
+        private final Socket socket;
+        private final DataInputStream in;
+        private final OutputStream out;
+        private volatile boolean open = false;
+        private volatile boolean closeSent = false;
+        private volatile Object attachment;
+
+        private Connection(Socket socket) throws IOException
+        {
+            this.socket = socket;
+            this.in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            this.out = new BufferedOutputStream(socket.getOutputStream(), 1 << 16);
+        }
+
+        public boolean isOpen()
+        {
+            return open;
+        }
+
+        /**
+         * State of the protocol spoken over this connection, kept by the handler.
+         *
+         * @return
+         *      The attachment, or null.
+         */
+        @SuppressWarnings("unchecked")
+        public <T> T getAttachment()
+        {
+            return (T) attachment;
+        }
+
+        public void setAttachment(Object attachment)
+        {
+            this.attachment = attachment;
+        }
+
+        public void sendText(String message)
+        {
+            send(OP_TEXT, message.getBytes(StandardCharsets.UTF_8));
+        }
+
+        public void sendBinary(byte[] message)
+        {
+            send(OP_BINARY, message);
+        }
+
+        /**
+         * Sends a close frame. The connection is closed once the client answers it.
+         *
+         * @param code
+         *          The close code, e.g. 4000 to make JDA resume.
+         * @param reason
+         *          The reason, or null.
+         */
+        public void close(int code, String reason)
+        {
+            byte[] text = reason == null ? new byte[0] : reason.getBytes(StandardCharsets.UTF_8);
+            byte[] payload = new byte[2 + text.length];
+            payload[0] = (byte) (code >> 8);
+            payload[1] = (byte) code;
+            System.arraycopy(text, 0, payload, 2, text.length);
+            send(OP_CLOSE, payload);
+            closeSent = true;
+        }
+
+        /**
+         * Drops the TCP connection without a close handshake, like a dead network would.
+         */
+        public void terminate()
+        {
+            open = false;
+            try
+            {
+                socket.close();
+            }
+            catch (IOException ignored) {}
+        }
+
+        private void send(int opcode, byte[] payload)
+        {
+            if (!open)
+                return;
+            //Frames are never fragmented and server frames are never masked.
+            synchronized (out)
+            {
+                try
+                {
+                    out.write(0x80 | opcode);
+                    if (payload.length < 126)
+                    {
+                        out.write(payload.length);
+                    }
+                    else if (payload.length <= 0xFFFF)
+                    {
+                        out.write(126);
+                        out.write(payload.length >> 8);
+                        out.write(payload.length);
+                    }
+                    else
+                    {
+                        out.write(127);
+                        for (int shift = 56; shift >= 0; shift -= 8)
+                            out.write((int) ((long) payload.length >> shift));
+                    }
+                    out.write(payload);
+                    out.flush();
+                }
+                catch (IOException e)
+                {
+                    terminate();
+                }
+            }
+        }
+
+        private void run()
+        {
+            int closeCode = 1006;
+            try
+            {
+                handshake();
+                open = true;
+                connections.add(this);
+                handler.onOpen(this);
+
+                ByteArrayOutputStream message = new ByteArrayOutputStream();
+                int messageOpcode = OP_TEXT;
+                while (open)
+                {
+                    int first = in.readUnsignedByte();
+                    int second = in.readUnsignedByte();
+                    boolean fin = (first & 0x80) != 0;
+                    int opcode = first & 0x0F;
+                    long length = second & 0x7F;
+                    if (length == 126)
+                        length = in.readUnsignedShort();
+                    else if (length == 127)
+                        length = in.readLong();
+                    byte[] mask = new byte[4];
+                    if ((second & 0x80) != 0)
+                        in.readFully(mask);
+                    byte[] payload = new byte[(int) length];
+                    in.readFully(payload);
+                    for (int i = 0; i < payload.length; i++)
+                        payload[i] ^= mask[i & 3];
+
+                    switch (opcode)
+                    {
+                        case OP_PING:
+                            send(OP_PONG, payload);
+                            break;
+                        case OP_PONG:
+                            break;
+                        case OP_CLOSE:
+                            closeCode = payload.length >= 2 ? ((payload[0] & 0xFF) << 8) | (payload[1] & 0xFF) : 1005;
+                            if (!closeSent)
+                                send(OP_CLOSE, payload);
+                            open = false;
+                            break;
+                        default:
+                            if (opcode != OP_CONTINUATION)
+                                messageOpcode = opcode;
+                            message.write(payload);
+                            if (fin)
+                            {
+                                if (messageOpcode == OP_TEXT)
+                                    handler.onText(this, message.toString("UTF-8"));
+                                message.reset();
+                            }
+                    }
+                }
+            }
+            catch (EOFException | SocketException ignored)
+            {
+                //The client dropped the connection.
+            }
+            catch (Exception e)
+            {
+                LOG.log(e);
+            }
+            finally
+            {
+                boolean wasOpen = connections.remove(this);
+                terminate();
+                if (wasOpen)
+                    handler.onClose(this, closeCode);
+            }
+        }
+
+        private void handshake() throws IOException
+        {
+            String key = null;
+            String line;
+            while ((line = readLine()) != null && !line.isEmpty())
+            {
+                int colon = line.indexOf(':');
+                if (colon > 0 && line.substring(0, colon).trim().equalsIgnoreCase("Sec-WebSocket-Key"))
+                    key = line.substring(colon + 1).trim();
+            }
+            if (key == null)
+                throw new IOException("The client didn't send a WebSocket handshake");
+
+            String accept;
+            try
+            {
+                MessageDigest sha1 = MessageDigest.getInstance("SHA-1");
+                accept = Base64.getEncoder().encodeToString(sha1.digest((key + ACCEPT_GUID).getBytes(StandardCharsets.US_ASCII)));
+            }
+            catch (NoSuchAlgorithmException e)
+            {
+                throw new IllegalStateException(e);
+            }
+            String response = "HTTP/1.1 101 Switching Protocols\r\n"
+                    + "Upgrade: websocket\r\n"
+                    + "Connection: Upgrade\r\n"
+                    + "Sec-WebSocket-Accept: " + accept + "\r\n\r\n";
+            synchronized (out)
+            {
+                out.write(response.getBytes(StandardCharsets.US_ASCII));
+                out.flush();
+            }
+        }
+
+        private String readLine() throws IOException
+        {
+            StringBuilder line = new StringBuilder();
+            int c;
+            while ((c = in.read()) != -1)
+            {
+                if (c == '\n')
+                    return line.toString();
+                if (c != '\r')
+                    line.append((char) c);
+            }
+            return line.length() == 0 ? null : line.toString();
+        }
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ *     Copyright 2015-2016 Austin Keener & Michael Ritter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.dv8tion.jda.testkit;
+
+import net.dv8tion.jda.entities.impl.JDAImpl;
+import net.dv8tion.jda.hooks.EventListener;
+import net.dv8tion.jda.requests.GatewayReplayer;
+
+import java.io.File;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Replays a {@link net.dv8tion.jda.requests.GatewayRecorder GatewayRecorder} recording through JDA without network and
+ * reports the throughput of the handlers, to compare two versions of JDA on the same events.
+ * <p>
+ * Usage: <code>gradlew replay -PreplayArgs="storm.gz [speed] [runs]"</code>
+ * <br>The speed is relative to the recording, 0 (the default) replays as fast as possible.
+ * Every run replays into a new JDA instance, the first runs warm up the JIT.
+ */
+public class ReplayDriver
+{
+    public static void main(String[] args) throws Exception
+    {
+        if (args.length < 1 || args.length > 3)
+        {
+            System.err.println("Usage: ReplayDriver <recording> [speed] [runs]");
+            System.exit(1);
+        }
+        File recording = new File(args[0]);
+        double speed = args.length > 1 ? Double.parseDouble(args[1]) : 0;
+        int runs = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+
+        for (int run = 1; run <= runs; run++)
+        {
+            AtomicLong events = new AtomicLong(0);
+            JDAImpl api = new JDAImpl(false, false, false);
+            api.addEventListener((EventListener) event -> events.incrementAndGet());
+            long gcCount = 0;
+            long gcTime = 0;
+            for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans())
+            {
+                gcCount -= collector.getCollectionCount();
+                gcTime -= collector.getCollectionTime();
+            }
+
+            long start = System.nanoTime();
+            long frames = new GatewayReplayer(api).replay(recording, speed);
+            long elapsed = System.nanoTime() - start;
+
+            for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans())
+            {
+                gcCount += collector.getCollectionCount();
+                gcTime += collector.getCollectionTime();
+            }
+            double seconds = elapsed / (double) TimeUnit.SECONDS.toNanos(1);
+            System.out.printf("Run %d: %d frames, %d events in %.3f s, %.0f frames/s, %.0f events/s, %d GCs, %d ms in GC%n",
+                    run, frames, events.get(), seconds, frames / seconds, events.get() / seconds, gcCount, gcTime);
+        }
+        System.exit(0);
+    }
+}
@@ -0,0 +1,324 @@
+/*
+ *     Copyright 2015-2016 Austin Keener & Michael Ritter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.dv8tion.jda.testkit;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.Iterator;
+import java.util.Random;
+
+/**
+ * Generates guilds and an endless stream of gateway events in them, seeded so every run sees the same events.
+ * <p>
+ * Guild <code>n</code> has the id <code>guildId(n)</code>, its first member is its owner and the bot user is always
+ * a member. Events are MESSAGE_CREATE, PRESENCE_UPDATE and TYPING_START in the ratio 6:3:1, which is roughly what a bot
+ * in many medium guilds receives.
+ */
+public class SyntheticEvents implements Iterator<JSONObject>
+{
+    public static final String SELF_ID = "100000000000000001";
+    private static final long GUILD_BASE = 200000000000000000L;
+    private static final long USER_BASE = 300000000000000000L;
+    private static final int TEXT_CHANNELS = 10;
+    private static final int VOICE_CHANNELS = 3;
+    private static final int ROLES = 10;
+    private static final String[] WORDS = {"hello", "there", "**bold**", "_italic_", "`code`", "~~strike~~", "gg",
+            "lol", "what", "is", "the", "best", "way", "to", "do", "this?", "thanks", "anyone", "here"};
+    private static final String[] STATUSES = {"online", "idle", "dnd", "offline"};
+
+    private final int guilds;
+    private final int members;
+    private final Random random;
+    private long nextMessageId = 400000000000000000L;
+
+    /**
+     * @param guilds
+     *          The amount of guilds the bot is in.
+     * @param members
+     *          The amount of members of every guild.
+     * @param seed
+     *          The seed of the events.
+     */
+    public SyntheticEvents(int guilds, int members, long seed)
+    {
+        if (guilds < 1 || members < 2)
+            throw new IllegalArgumentException("At least 1 guild with 2 members is needed! Provided: " + guilds + " guilds, " + members + " members");
+        this.guilds = guilds;
+        this.members = members;
+        this.random = new Random(seed);
+    }
+
+    public int getGuildCount()
+    {
+        return guilds;
+    }
+
+    public int getMemberCount()
+    {
+        return members;
+    }
+
+    public static String guildId(int guild)
+    {
+        return Long.toString(GUILD_BASE + guild * 1000L);
+    }
+
+    public static String textChannelId(int guild, int channel)
+    {
+        //The first text channel has the id of the guild, like the default channel on Discord.
+        return Long.toString(GUILD_BASE + guild * 1000L + channel);
+    }
+
+    public static String voiceChannelId(int guild, int channel)
+    {
+        return Long.toString(GUILD_BASE + guild * 1000L + 100 + channel);
+    }
+
+    public static String roleId(int guild, int role)
+    {
+        //Role 0 is @everyone, which has the id of the guild.
+        return Long.toString(GUILD_BASE + guild * 1000L + (role == 0 ? 0 : 200 + role));
+    }
+
+    /**
+     * The id of a member. Members are shared between guilds, member 0 of every guild is the bot itself.
+     */
+    public static String userId(int member)
+    {
+        return member == 0 ? SELF_ID : Long.toString(USER_BASE + member);
+    }
+
+    public JSONObject user(int member)
+    {
+        return new JSONObject()
+                .put("id", userId(member))
+                .put("username", member == 0 ? "LoadTestBot" : "user" + member)
+                .put("discriminator", String.format("%04d", member % 10000))
+                .put("avatar", JSONObject.NULL)
+                .put("bot", member == 0);
+    }
+
+    public JSONObject selfUser()
+    {
+        return user(0).put("verified", true).put("email", JSONObject.NULL);
+    }
+
+    /**
+     * The members of a guild, as in GUILD_CREATE and GUILD_MEMBERS_CHUNK.
+     *
+     * @param guild
+     *          The index of the guild.
+     * @param from
+     *          The first member.
+     * @param to
+     *          The member after the last one.
+     * @return
+     *      The members.
+     */
+    public JSONArray members(int guild, int from, int to)
+    {
+        JSONArray array = new JSONArray();
+        for (int member = from; member < to; member++)
+        {
+            JSONArray roles = new JSONArray();
+            if (member % 3 == 0)
+                roles.put(roleId(guild, 1 + member % (ROLES - 1)));
+            array.put(new JSONObject()
+                    .put("user", user(member))
+                    .put("roles", roles)
+                    .put("joined_at", "2016-01-01T00:00:00.000000+00:00")
+                    .put("deaf", false)
+                    .put("mute", false)
+                    .put("nick", member % 5 == 0 ? "nick" + member : JSONObject.NULL));
+        }
+        return array;
+    }
+
+    /**
+     * The data of the GUILD_CREATE of a guild. Guilds with more members than the large threshold only contain the
+     * first <code>largeThreshold</code> members and have to be chunked, like on Discord.
+     *
+     * @param guild
+     *          The index of the guild.
+     * @param largeThreshold
+     *          The large_threshold sent in the IDENTIFY.
+     * @return
+     *      The guild json.
+     */
+    public JSONObject guild(int guild, int largeThreshold)
+    {
+        boolean large = members > largeThreshold;
+        JSONArray roles = new JSONArray();
+        for (int role = 0; role < ROLES; role++)
+        {
+            roles.put(new JSONObject()
+                    .put("id", roleId(guild, role))
+                    .put("name", role == 0 ? "@everyone" : "role" + role)
+                    .put("position", role)
+                    .put("permissions", role == ROLES - 1 ? 0x8 : 104324161)
+                    .put("managed", false)
+                    .put("hoist", role % 4 == 1)
+                    .put("color", role * 0x111111)
+                    .put("mentionable", true));
+        }
+        JSONArray channels = new JSONArray();
+        for (int channel = 0; channel < TEXT_CHANNELS; channel++)
+        {
+            JSONArray overwrites = new JSONArray();
+            if (channel % 4 == 3)
+                overwrites.put(new JSONObject().put("id", roleId(guild, 0)).put("type", "role").put("allow", 0).put("deny", 0x400));
+            channels.put(new JSONObject()
+                    .put("id", textChannelId(guild, channel))
+                    .put("type", 0)
+                    .put("name", "channel-" + channel)
+                    .put("topic", JSONObject.NULL)
+                    .put("position", channel)
+                    .put("permission_overwrites", overwrites));
+        }
+        for (int channel = 0; channel < VOICE_CHANNELS; channel++)
+        {
+            channels.put(new JSONObject()
+                    .put("id", voiceChannelId(guild, channel))
+                    .put("type", 2)
+                    .put("name", "Voice " + channel)
+                    .put("position", channel)
+                    .put("user_limit", 0)
+                    .put("bitrate", 64000)
+                    .put("permission_overwrites", new JSONArray()));
+        }
+        JSONArray presences = new JSONArray();
+        int online = Math.min(members, large ? largeThreshold : members);
+        for (int member = 0; member < online; member += 2)
+        {
+            presences.put(new JSONObject()
+                    .put("user", new JSONObject().put("id", userId(member)))
+                    .put("status", STATUSES[member % 3])
+                    .put("game", member % 6 == 0 ? new JSONObject().put("name", "Game " + member) : JSONObject.NULL));
+        }
+        return new JSONObject()
+                .put("id", guildId(guild))
+                .put("name", "Load Test Guild " + guild)
+                .put("icon", JSONObject.NULL)
+                .put("region", "us-east")
+                .put("afk_timeout", 300)
+                .put("afk_channel_id", JSONObject.NULL)
+                .put("verification_level", 0)
+                .put("owner_id", userId(1))
+                .put("large", large)
+                .put("member_count", members)
+                .put("roles", roles)
+                .put("emojis", new JSONArray())
+                .put("members", members(guild, 0, online))
+                .put("presences", presences)
+                .put("channels", channels)
+                .put("voice_states", new JSONArray());
+    }
+
+    /**
+     * Always true, the events never end.
+     */
+    @Override
+    public boolean hasNext()
+    {
+        return true;
+    }
+
+    /**
+     * The next event, as dispatch frame without the sequence number.
+     *
+     * @return
+     *      The event.
+     */
+    @Override
+    public JSONObject next()
+    {
+        int guild = random.nextInt(guilds);
+        int member = 1 + random.nextInt(members - 1);
+        int kind = random.nextInt(10);
+        if (kind < 6)
+            return dispatch("MESSAGE_CREATE", message(guild, member));
+        if (kind < 9)
+        {
+            return dispatch("PRESENCE_UPDATE", new JSONObject()
+                    .put("guild_id", guildId(guild))
+                    .put("user", new JSONObject().put("id", userId(member)))
+                    .put("status", STATUSES[random.nextInt(STATUSES.length)])
+                    .put("game", random.nextBoolean() ? new JSONObject().put("name", "Game " + random.nextInt(100)) : JSONObject.NULL)
+                    .put("roles", new JSONArray())
+                    .put("nick", JSONObject.NULL));
+        }
+        return dispatch("TYPING_START", new JSONObject()
+                .put("channel_id", textChannelId(guild, random.nextInt(TEXT_CHANNELS)))
+                .put("user_id", userId(member))
+                .put("timestamp", System.currentTimeMillis() / 1000));
+    }
+
+    private JSONObject message(int guild, int member)
+    {
+        StringBuilder content = new StringBuilder();
+        JSONArray mentions = new JSONArray();
+        int words = 1 + random.nextInt(12);
+        for (int i = 0; i < words; i++)
+        {
+            if (i > 0)
+                content.append(' ');
+            if (random.nextInt(20) == 0)
+            {
+                int mentioned = 1 + random.nextInt(members - 1);
+                content.append("<@").append(userId(mentioned)).append('>');
+                mentions.put(user(mentioned));
+            }
+            else
+            {
+                content.append(WORDS[random.nextInt(WORDS.length)]);
+            }
+        }
+        return new JSONObject()
+                .put("id", Long.toString(nextMessageId++))
+                .put("type", 0)
+                .put("channel_id", textChannelId(guild, random.nextInt(TEXT_CHANNELS)))
+                .put("author", user(member))
+                .put("content", content.toString())
+                .put("timestamp", OffsetDateTime.now(ZoneOffset.UTC).toString())
+                .put("edited_timestamp", JSONObject.NULL)
+                .put("tts", false)
+                .put("mention_everyone", false)
+                .put("mentions", mentions)
+                .put("mention_roles", new JSONArray())
+                .put("attachments", new JSONArray())
+                .put("embeds", new JSONArray())
+                .put("pinned", false)
+                .put("nonce", JSONObject.NULL);
+    }
+
+    /**
+     * Wraps the data of an event into a dispatch frame (op 0), without a sequence number.
+     *
+     * @param type
+     *          The type of the event.
+     * @param data
+     *          The data of the event.
+     * @return
+     *      The frame.
+     */
+    public static JSONObject dispatch(String type, Object data)
+    {
+        return new JSONObject().put("op", 0).put("t", type).put("d", data);
+    }
+}